@@ -2,17 +2,21 @@ package es.uam.eps.tfg.app.tfgapp.controller;
 
 import android.content.Context;
 import android.view.Gravity;
+import android.view.MotionEvent;
 import android.view.View;
 import android.widget.ImageButton;
 import android.widget.Toast;
 
+import java.util.Set;
+
 import es.uam.eps.tfg.app.tfgapp.R;
+import es.uam.eps.tfg.app.tfgapp.controller.listener.OnActionPreviewListener;
 import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
 
 /**
  * Buttons that perform the CAS allowed actions
  */
-public class ActionButtons implements View.OnLongClickListener {
+public class ActionButtons implements View.OnLongClickListener, View.OnTouchListener {
 
     private static final int[] IDS = {
             R.id.button_exp_associate,
@@ -30,6 +34,8 @@ public class ActionButtons implements View.OnLongClickListener {
     private final ImageButton mDisassociate;
     private final ImageButton mOperate;
     private final Context mContext;
+    private OnActionPreviewListener mPreviewListener;
+    private boolean mPreviewing;
 
     public ActionButtons(final View rootView, final Context context) {
         mChangeSide = (ImageButton) rootView.findViewById(R.id.button_exp_change_side);
@@ -58,6 +64,18 @@ public class ActionButtons implements View.OnLongClickListener {
 
     }
 
+    /**
+     * Sets a listener for showing the result of an action while its button is long-pressed
+     *
+     * @param listener listener for the previews
+     */
+    public void setPreviewListener(final OnActionPreviewListener listener) {
+        mPreviewListener = listener;
+        for (final int id : IDS) {
+            getButton(id).setOnTouchListener(this);
+        }
+    }
+
     private void setOnClickListener(final View.OnClickListener listener) {
 
         mChangeSide.setOnClickListener(listener);
@@ -105,11 +123,31 @@ public class ActionButtons implements View.OnLongClickListener {
         if (view instanceof ImageButton) {
             final String msg = view.getContentDescription().toString();
             showActionDescription(msg);
+            startPreview(view.getId());
             return true;
         }
         return false;
     }
 
+    @Override
+    public boolean onTouch(final View view, final MotionEvent event) {
+        final int action = event.getActionMasked();
+        if (mPreviewing && (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL)) {
+            mPreviewing = false;
+            mPreviewListener.onActionPreviewFinished();
+        }
+        //the button still handles the event (clicks and long clicks)
+        return false;
+    }
+
+    private void startPreview(final int id) {
+        final CASAdapter.Actions action = getAction(id);
+        if (mPreviewListener != null && action != null) {
+            mPreviewing = true;
+            mPreviewListener.onActionPreviewStarted(action);
+        }
+    }
+
     private void showActionDescription(final String msg) {
         final Toast toast = Toast.makeText(mContext, msg, Toast.LENGTH_SHORT);
         toast.setGravity(Gravity.CENTER, 0, 100);
@@ -160,4 +198,15 @@ public class ActionButtons implements View.OnLongClickListener {
     public void disable(final int buttonId) {
         getButton(buttonId).setEnabled(false);
     }
+
+    /**
+     * Enables the buttons of the given actions and disables the rest
+     *
+     * @param actions actions that can be performed
+     */
+    public void enableOnly(final Set<CASAdapter.Actions> actions) {
+        for (final int id : IDS) {
+            getButton(id).setEnabled(actions.contains(getAction(id)));
+        }
+    }
 }
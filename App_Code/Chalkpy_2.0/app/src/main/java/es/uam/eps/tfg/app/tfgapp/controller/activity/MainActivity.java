@@ -1,5 +1,7 @@
 package es.uam.eps.tfg.app.tfgapp.controller.activity;
 
+import android.os.Bundle;
+import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentTransaction;
 import android.support.v4.view.GravityCompat;
@@ -14,6 +16,9 @@ import es.uam.eps.tfg.app.tfgapp.controller.fragment.HelpFragment;
 import es.uam.eps.tfg.app.tfgapp.controller.fragment.HistoryFragment;
 import es.uam.eps.tfg.app.tfgapp.controller.fragment.SettingsFragment;
 import es.uam.eps.tfg.app.tfgapp.controller.fragment.ShowcaseFragment;
+import es.uam.eps.tfg.app.tfgapp.model.EngineContext;
+import es.uam.eps.tfg.app.tfgapp.model.ExercisePack;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
 import es.uam.eps.tfg.app.tfgapp.util.Utils;
 
 /**
@@ -21,6 +26,21 @@ import es.uam.eps.tfg.app.tfgapp.util.Utils;
  */
 public class MainActivity extends NavigationDrawerFragmentActivity implements Callbacks {
 
+    @Override
+    protected void onCreate(@Nullable final Bundle savedInstanceState) {
+        //the history and the expression are restored from the previous session
+        EngineContext.setStorageDirectory(getFilesDir());
+        //only indexed when a sample is first needed, the first equation is a built-in one
+        CASImplementation.setSampleExpressions(ExercisePack.getDefault(getAssets()).asList());
+        super.onCreate(savedInstanceState);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        EngineContext.getDefault().flushCheckpoint();
+    }
+
     @Override
     protected int getDefaultFragmentId() {
         return ExpressionFragment.EXPRESSION_FRAGMENT_ID;
@@ -13,36 +13,65 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.BuildConfig;
 import es.uam.eps.tfg.app.tfgapp.R;
 import es.uam.eps.tfg.app.tfgapp.controller.ActionButtons;
+import es.uam.eps.tfg.app.tfgapp.controller.listener.OnActionPreviewListener;
 import es.uam.eps.tfg.app.tfgapp.controller.listener.OnExpressionActionListener;
+import es.uam.eps.tfg.app.tfgapp.model.Workspace;
+import es.uam.eps.tfg.app.tfgapp.model.cas.ActionPreviewCache;
 import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
-import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.DryRunResult;
 import es.uam.eps.tfg.app.tfgapp.model.history.ExpressionHistory;
-import es.uam.eps.tfg.app.tfgapp.model.history.ExpressionHistoryDB;
+import es.uam.eps.tfg.app.tfgapp.model.history.SnapshotCodec;
 import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
 import es.uam.eps.tfg.app.tfgapp.util.PreferenceUtils;
 import es.uam.eps.tfg.app.tfgapp.util.Utils;
+import es.uam.eps.tfg.app.tfgapp.util.metrics.LatencyMetrics;
 import es.uam.eps.tfg.app.tfgapp.view.ExpressionView;
+import es.uam.eps.tfg.app.tfgapp.view.layout.ExpressionLayout;
+import es.uam.eps.tfg.app.tfgapp.view.layout.LayoutCache;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
 
 /**
- * Board that shows the expressions and the allowed actions
+ * Board that shows the expressions and the allowed actions. The results of the actions applicable
+ * to the selection are computed in background as soon as it's made, so previewing or doing one of
+ * them doesn't have to wait for the CAS
  */
-public class ExpressionFragment extends BaseFragment implements OnExpressionActionListener, View.OnClickListener {
+public class ExpressionFragment extends BaseFragment implements OnExpressionActionListener, OnActionPreviewListener, View.OnClickListener {
     public static final int EXPRESSION_FRAGMENT_ID = 0;
     private static final int FRAGMENT_TITLE = R.string.expression_fragment_title;
+    private static final String METRICS_FILE = "latency_metrics.json";
+    //last layouts of the hot boards, kept between instances of the fragment
+    private static final LayoutCache LAYOUTS = new LayoutCache(Workspace.DEFAULT_MAX_HOT_BOARDS);
+    private static final Workspace.OnBoardReleasedListener RELEASED_BOARDS = new Workspace.OnBoardReleasedListener() {
+        @Override
+        public void onBoardReleased(final Workspace.Board board) {
+            LAYOUTS.remove(board);
+        }
+    };
 
     private ExpressionView mExpressionView;
     private CardView mBoardCardView;
     private ActionButtons mButtons;
     private CASAdapter mCAS;
+    private ActionPreviewCache mPreviews;
     private ExpressionHistory mHistory;
     private Operation mSingleSelectedExpression;
     private List<Operation> mMultipleSelectionExpressions;
+    //preview waiting for its result, null if none
+    private Object mPendingPreview;
 
     /**
      * @return new instance of this fragment
@@ -62,22 +91,35 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
     public void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
+        Workspace.getDefault().setOnBoardReleasedListener(RELEASED_BOARDS);
         setupCAS();
         setupHistory();
+        setupMetrics();
     }
 
     /**
-     * Gets a CAS instance
+     * Gets a CAS instance. The previews of the previous one are cancelled
      */
     private void setupCAS() {
-        mCAS = CASImplementation.getInstance();
+        if (mPreviews != null) {
+            mPreviews.clear();
+        }
+        mCAS = Workspace.getDefault().getActiveContext().getCAS();
+        mPreviews = new ActionPreviewCache(mCAS);
     }
 
     /**
      * Gets a history instance
      */
     private void setupHistory() {
-        mHistory = ExpressionHistoryDB.getInstance();
+        mHistory = Workspace.getDefault().getActiveContext().getHistory();
+    }
+
+    /**
+     * Measures latencies only on debug builds
+     */
+    private void setupMetrics() {
+        LatencyMetrics.setEnabled(BuildConfig.DEBUG);
     }
 
     @Nullable
@@ -110,10 +152,35 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
     }
 
     /**
-     * Notifies the view to be updated
+     * Notifies the view to be updated and saves the expression if it changed, to be restored if the
+     * app is closed
      */
     private void updateExpressionView() {
-        mExpressionView.onExpressionUpdated(mCAS.getCurrentExpression());
+        final Operation current = mCAS.getCurrentExpression();
+        mExpressionView.onExpressionUpdated(current, LAYOUTS.get(Workspace.getDefault().getActiveBoard(), mCAS.getExpressionVersion(), current));
+        Workspace.getDefault().getActiveContext().saveCheckpoint();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        keepLayout();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mPreviews.clear();
+    }
+
+    /**
+     * Keeps the layout of the current expression, to show it at once when coming back to the board
+     */
+    private void keepLayout() {
+        final ExpressionLayout layout = mExpressionView.getLayout();
+        if (layout != null) {
+            LAYOUTS.put(Workspace.getDefault().getActiveBoard(), mCAS.getExpressionVersion(), layout);
+        }
     }
 
     /**
@@ -133,6 +200,7 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
 
         mExpressionView.setOnExpressionActionListener(this);
         mButtons.setListeners(this);
+        mButtons.setPreviewListener(this);
     }
 
     @Override
@@ -140,16 +208,14 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
         mSingleSelectedExpression = selected;
         mMultipleSelectionExpressions = null;
         enableSingleSelectionButtons();
+        mPreviews.precompute(Collections.singletonList(selected));
     }
 
     /**
      * Enables the available actions for a single selection
      */
     private void enableSingleSelectionButtons() {
-        mButtons.disable(R.id.button_exp_associate);
-        if (!CASUtils.isOnMainLevelOfEquation(mSingleSelectedExpression)) {
-            mButtons.disable(R.id.button_exp_change_side);
-        }
+        mButtons.enableOnly(mCAS.getApplicableActions(Collections.singletonList(mSingleSelectedExpression)));
     }
 
     @Override
@@ -157,15 +223,20 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
         mMultipleSelectionExpressions = selection;
         mSingleSelectedExpression = null;
         enableMultipleSelectionButtons();
+        if (selection.size() >= 2) {
+            mPreviews.precompute(selection);
+        }
     }
 
     /**
      * Enables the available actions for a multiple selection
      */
     private void enableMultipleSelectionButtons() {
-        mButtons.disableAll();
-        mButtons.enable(R.id.button_exp_associate);
-        mButtons.enable(R.id.button_exp_operate);
+        if (mMultipleSelectionExpressions.size() < 2) {
+            mButtons.disableAll();
+            return;
+        }
+        mButtons.enableOnly(mCAS.getApplicableActions(mMultipleSelectionExpressions));
     }
 
     @Override
@@ -206,16 +277,15 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
      * @return true or false, depending on success
      */
     private boolean doSingleSelectionAction(final CASAdapter.Actions action) {
-        final String oldCASExp = mCAS.getCurrentExpression().toString();
+        final Operation oldExpression = mCAS.getCurrentExpression();
+        final ByteBuffer oldSnapshot = SnapshotCodec.encode(oldExpression);
         final Operation cloneSelection = (Operation) mSingleSelectedExpression.clone();
+        final long start = LatencyMetrics.start();
         try {
             switch (action) {
                 case CHANGE_SIDE:
-                    mCAS.changeSide(mSingleSelectedExpression);
-                    break;
                 case MOVE_RIGHT:
                 case MOVE_LEFT:
-                    mCAS.commutativeProperty(mSingleSelectedExpression, action);
                     break;
 
                 case DISASSOCIATE:
@@ -223,7 +293,6 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
                         Toast.makeText(getActivity(), R.string.operation_failure_dissociative, Toast.LENGTH_SHORT).show();
                         return false;
                     }
-                    mCAS.dissociativeProperty(mSingleSelectedExpression);
                     break;
 
                 case OPERATE:
@@ -231,63 +300,77 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
                         Toast.makeText(getActivity(), R.string.operation_failure_operate, Toast.LENGTH_SHORT).show();
                         return false;
                     }
-                    mCAS.operate(mSingleSelectedExpression);
                     break;
 
                 default:
                     return false;
             }
+            final DryRunResult result = mPreviews.get(Collections.singletonList(mSingleSelectedExpression), action);
+            mExpressionView.releaseExpression();
+            mCAS.applyDryRun(result);
         } catch (final Exception e) {
-            errorOnAction(action, oldCASExp, e);
+            recordActionLatency(action, oldSnapshot, start);
+            errorOnAction(action, e);
             return false;
         }
-        addRecordToHistory(oldCASExp, Arrays.asList(new Operation[]{cloneSelection}), action);
+        recordActionLatency(action, oldSnapshot, start);
+        addRecordToHistory(oldExpression, oldSnapshot, Arrays.asList(new Operation[]{cloneSelection}), action);
         updateExpressionView();
         return true;
     }
 
     /**
-     * Cancels an action due to an error
+     * Records the time spent by the CAS on an action
      *
      * @param action    action performed
-     * @param oldCASExp old expression for going back
-     * @param e         exception that caused the error
+     * @param oldSnapshot snapshot of the expression before the action
+     * @param start       value returned by LatencyMetrics.start() before the action
      */
-    private void errorOnAction(final CASAdapter.Actions action, final String oldCASExp, final Exception e) {
+    private void recordActionLatency(final CASAdapter.Actions action, final ByteBuffer oldSnapshot, final long start) {
+        if (start != LatencyMetrics.NOT_MEASURED) {
+            final long nanos = System.nanoTime() - start;
+            LatencyMetrics.record(LatencyMetrics.Step.CAS_ACTION, action.name(), SnapshotCodec.getNodeCount(oldSnapshot), nanos);
+        }
+    }
+
+    /**
+     * Cancels an action due to an error. Actions are applied to a copy of the expression, so the
+     * current one is still valid
+     *
+     * @param action action performed
+     * @param e      exception that caused the error
+     */
+    private void errorOnAction(final CASAdapter.Actions action, final Exception e) {
         Log.e(Utils.LOG_TAG, "Error on action: " + action.toString() + ". Cause: " + e.getMessage());
         Toast.makeText(getActivity(), R.string.operation_failure, Toast.LENGTH_SHORT).show();
         onCancelledSelectedExpression();
-        mCAS.initCAS(oldCASExp);
         updateExpressionView();
     }
 
     /**
      * Add to the history a new record
      *
-     * @param oldExpression the CAS string expression for the old one (before taken the action)
+     * @param oldExpression old expression (before taken the action), not modified by the action
+     * @param oldSnapshot   snapshot of the old expression
      * @param operations    selected expressions. At least one element is needed
      * @param action        the action that was performed
      */
-    private void addRecordToHistory(final String oldExpression, final List<Operation> operations, final CASAdapter.Actions action) {
-        final String infixExpressionFromOldExp = CASUtils.getInfixExpressionOf(oldExpression);
-        final String selection1 = CASUtils.getInfixExpressionOf(operations.get(0));
-
-        if (operations.size() == 1) {
-            mHistory.addRecord(action, infixExpressionFromOldExp, oldExpression, selection1);
-        } else {
-            final String[] stringOpers = new String[operations.size()];
-            for (int i = 0; i < operations.size(); i++) {
-                stringOpers[i] = CASUtils.getInfixExpressionOf(operations.get(i));
-            }
-            mHistory.addRecord(action, infixExpressionFromOldExp, oldExpression, stringOpers);
+    private void addRecordToHistory(final Operation oldExpression, final ByteBuffer oldSnapshot, final List<Operation> operations,
+                                    final CASAdapter.Actions action) {
+        final String[] stringOpers = new String[operations.size()];
+        for (int i = 0; i < operations.size(); i++) {
+            stringOpers[i] = CASUtils.getInfixExpressionOf(operations.get(i));
         }
+        mHistory.addRecord(action, oldExpression, oldSnapshot, stringOpers);
     }
 
     @Override
     public void onCancelledSelectedExpression() {
         mSingleSelectedExpression = null;
         mMultipleSelectionExpressions = null;
+        mPendingPreview = null;
         mButtons.enableAll();
+        mPreviews.clear();
     }
 
     /**
@@ -302,8 +385,10 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
             Toast.makeText(getActivity(), R.string.operation_failure_multiple_selection, Toast.LENGTH_SHORT).show();
             return false;
         }
-        final String oldCASExp = mCAS.getCurrentExpression().toString();
+        final Operation oldExpression = mCAS.getCurrentExpression();
+        final ByteBuffer oldSnapshot = SnapshotCodec.encode(oldExpression);
         CASAdapter.Actions actionToSave = action;
+        final long start = LatencyMetrics.start();
         try {
             switch (action) {
                 case ASSOCIATE:
@@ -311,55 +396,83 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
                         Toast.makeText(getActivity(), R.string.operation_failure_associative, Toast.LENGTH_SHORT).show();
                         return false;
                     }
-                    mCAS.associativeProperty(mMultipleSelectionExpressions.get(0), mMultipleSelectionExpressions.get(1));
                     break;
+                case CHANGE_SIDE:
+                    //all the terms are moved at once
                 case OPERATE:
-
-                    final int firstIndex = isDistributiveForm();
-                    if (firstIndex != -1) {
-                        final int secondIndex = (firstIndex == 0) ? 1 : 0;
-                        mCAS.distribute(mMultipleSelectionExpressions.get(firstIndex), mMultipleSelectionExpressions.get(secondIndex));
-                        actionToSave = CASAdapter.Actions.DISTRIBUTE;
-                    } else {
-
-                        mCAS.commonFactor(mMultipleSelectionExpressions);
-                        actionToSave = CASAdapter.Actions.COMMON_FACTOR;
-                    }
-
+                    //resolved to DISTRIBUTE or COMMON_FACTOR by the CAS
                     break;
                 default:
                     return false;
             }
+            final DryRunResult result = mPreviews.get(mMultipleSelectionExpressions, action);
+            actionToSave = result.getAction();
+            mExpressionView.releaseExpression();
+            mCAS.applyDryRun(result);
         } catch (final Exception e) {
-            errorOnAction(actionToSave, oldCASExp, e);
+            recordActionLatency(actionToSave, oldSnapshot, start);
+            errorOnAction(actionToSave, e);
             return false;
         }
-        addRecordToHistory(oldCASExp, mMultipleSelectionExpressions, actionToSave);
+        recordActionLatency(actionToSave, oldSnapshot, start);
+        addRecordToHistory(oldExpression, oldSnapshot, mMultipleSelectionExpressions, actionToSave);
         updateExpressionView();
         return true;
     }
 
-    /**
-     * @return true if multiple selection refers to distributive property
-     */
-    private int isDistributiveForm() {
-        final Operation op1 = mMultipleSelectionExpressions.get(0);
-        final Operation op2 = mMultipleSelectionExpressions.get(1);
-
-        if (!mCAS.isOnDistributiveForm(op1, op2)) {
-            if (!mCAS.isOnDistributiveForm(op2, op1)) {
-                return -1;
-            } else {
-                return 1;
+    @Override
+    public void onActionPreviewStarted(final CASAdapter.Actions action) {
+        final List<Operation> selection = getSelection();
+        if (selection == null) {
+            return;
+        }
+        final DryRunResult ready = mPreviews.getIfReady(selection, action);
+        if (ready != null) {
+            mExpressionView.showPreview(ready.getExpression());
+            return;
+        }
+        //shown when computed, unless the preview is over by then
+        final Object preview = new Object();
+        mPendingPreview = preview;
+        mPreviews.whenReady(selection, action, new ActionPreviewCache.OnResultReadyListener() {
+            @Override
+            public void onResultReady(final DryRunResult result) {
+                mExpressionView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mPendingPreview == preview) {
+                            mPendingPreview = null;
+                            mExpressionView.showPreview(result.getExpression());
+                        }
+                    }
+                });
             }
+        });
+    }
 
+    @Override
+    public void onActionPreviewFinished() {
+        mPendingPreview = null;
+        mExpressionView.hidePreview();
+    }
+
+    /**
+     * @return the selected elements, null if there's nothing selected
+     */
+    private List<Operation> getSelection() {
+        if (mSingleSelectedExpression != null) {
+            return Collections.singletonList(mSingleSelectedExpression);
+        }
+        if (mMultipleSelectionExpressions != null && mMultipleSelectionExpressions.size() >= 2) {
+            return mMultipleSelectionExpressions;
         }
-        return 0;
+        return null;
     }
 
     @Override
     public void onCreateOptionsMenu(final Menu menu, final MenuInflater inflater) {
         inflater.inflate(R.menu.fragment_expression_toolbar, menu);
+        menu.findItem(R.id.menu_item_action_dump_metrics).setVisible(BuildConfig.DEBUG);
     }
 
     @Override
@@ -385,6 +498,18 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
             case R.id.menu_item_action_undo:
                 undo();
                 return true;
+            case R.id.menu_item_action_simplify:
+                simplify();
+                return true;
+            case R.id.menu_item_action_dump_metrics:
+                dumpMetrics();
+                return true;
+            case R.id.menu_item_action_next_board:
+                switchBoard(Workspace.getDefault().getNextBoard());
+                return true;
+            case R.id.menu_item_action_close_board:
+                closeBoard();
+                return true;
             default:
                 return false;
         }
@@ -397,6 +522,85 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
         mCallbacks.navigateToFragment(HelpFragment.HELP_FRAGMENT_ID);
     }
 
+    /**
+     * Writes the latency metrics as JSON in the app files directory and in the log
+     */
+    private void dumpMetrics() {
+        final String json = LatencyMetrics.toJson();
+        Log.d(Utils.LOG_TAG, "Latency metrics: " + json);
+
+        final File file = new File(getActivity().getFilesDir(), METRICS_FILE);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(json);
+            Toast.makeText(getActivity(), getString(R.string.popup_metrics_dumped, file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+        } catch (final IOException e) {
+            Log.e(Utils.LOG_TAG, "Error while writing the metrics", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    Log.e(Utils.LOG_TAG, "Error while closing the metrics file", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Simplifies the whole expression, as a single action of the history
+     */
+    private void simplify() {
+        final Operation oldExpression = mCAS.getCurrentExpression();
+        final ByteBuffer oldSnapshot = SnapshotCodec.encode(oldExpression);
+        final long start = LatencyMetrics.start();
+        mExpressionView.releaseExpression();
+        try {
+            mCAS.simplify();
+        } catch (final NotApplicableReductionException e) {
+            Toast.makeText(getActivity(), R.string.popup_nothing_to_simplify, Toast.LENGTH_SHORT).show();
+            updateExpressionView();
+            return;
+        } finally {
+            recordActionLatency(CASAdapter.Actions.SIMPLIFY, oldSnapshot, start);
+        }
+        //the old expression isn't modified by the simplification
+        addRecordToHistory(oldExpression, oldSnapshot, Collections.singletonList(oldExpression), CASAdapter.Actions.SIMPLIFY);
+        onCancelledSelectedExpression();
+        updateExpressionView();
+    }
+
+    /**
+     * Shows another board of the workspace
+     *
+     * @param board open board
+     */
+    private void switchBoard(final Workspace.Board board) {
+        keepLayout();
+        onCancelledSelectedExpression();
+        Workspace.getDefault().switchTo(board);
+        setupCAS();
+        setupHistory();
+        updateExpressionView();
+    }
+
+    /**
+     * Closes the active board, showing the one opened before it
+     */
+    private void closeBoard() {
+        final Workspace workspace = Workspace.getDefault();
+        if (workspace.getActiveBoard() == workspace.getBoards().get(0)) {
+            Toast.makeText(getActivity(), R.string.popup_unable_to_close_board, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        onCancelledSelectedExpression();
+        workspace.closeBoard(workspace.getActiveBoard());
+        setupCAS();
+        setupHistory();
+        updateExpressionView();
+    }
+
     /**
      * Undo the last action (if it's possible)
      */
@@ -405,7 +609,8 @@ public class ExpressionFragment extends BaseFragment implements OnExpressionActi
             Toast.makeText(getActivity(), R.string.popup_unable_to_undo, Toast.LENGTH_SHORT).show();
             return;
         }
-        final String current = mHistory.returnToPreviousExpression();
+        final Operation current = mHistory.returnToPreviousExpression(mCAS.getCurrentExpression());
+        mExpressionView.releaseExpression();
         mCAS.initCAS(current);
         updateExpressionView();
     }
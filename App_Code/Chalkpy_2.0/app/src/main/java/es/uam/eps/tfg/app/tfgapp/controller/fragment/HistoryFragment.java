@@ -13,10 +13,11 @@ import android.widget.TextView;
 
 import java.util.List;
 
+import es.uam.eps.tfg.algebraicEngine.Operation;
 import es.uam.eps.tfg.app.tfgapp.R;
-import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.model.EngineContext;
+import es.uam.eps.tfg.app.tfgapp.model.Workspace;
 import es.uam.eps.tfg.app.tfgapp.model.history.ExpressionHistory;
-import es.uam.eps.tfg.app.tfgapp.model.history.ExpressionHistoryDB;
 import es.uam.eps.tfg.app.tfgapp.model.history.ExpressionRecord;
 import es.uam.eps.tfg.app.tfgapp.util.Utils;
 
@@ -74,7 +75,7 @@ public class HistoryFragment extends BaseFragment {
     }
 
     private void updateAdapter() {
-        final ExpressionHistory history = ExpressionHistoryDB.getInstance();
+        final ExpressionHistory history = Workspace.getDefault().getActiveContext().getHistory();
         final List<ExpressionRecord> records = history.getHistory();
         if (mAdapter == null) {
 
@@ -88,7 +89,7 @@ public class HistoryFragment extends BaseFragment {
     }
 
     private void updateEmptyView() {
-        if (ExpressionHistoryDB.getInstance().getRecordCount() == 0) {
+        if (Workspace.getDefault().getActiveContext().getHistory().getRecordCount() == 0) {
             mEmptyView.setVisibility(View.VISIBLE);
             mRecordRecyclerView.setVisibility(View.GONE);
         } else {
@@ -133,8 +134,9 @@ public class HistoryFragment extends BaseFragment {
         @Override
         public void onClick(final View v) {
             //just update the CAS and go back
-            final String oldExp = ExpressionHistoryDB.getInstance().returnToExpression(mRecord);
-            CASImplementation.getInstance().initCAS(oldExp);
+            final EngineContext context = Workspace.getDefault().getActiveContext();
+            final Operation oldExp = context.getHistory().returnToExpression(mRecord, context.getCAS().getCurrentExpression());
+            context.getCAS().initCAS(oldExp);
             mCallbacks.navigateToFragment(ExpressionFragment.EXPRESSION_FRAGMENT_ID);
         }
     }//END_RecordHolder
@@ -11,12 +11,9 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import java.util.List;
-
 import es.uam.eps.tfg.app.tfgapp.R;
-import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
-import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
-import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.app.tfgapp.model.ShowcaseCatalogue;
+import es.uam.eps.tfg.app.tfgapp.model.Workspace;
 import es.uam.eps.tfg.app.tfgapp.util.Utils;
 
 /**
@@ -29,6 +26,8 @@ public class ShowcaseFragment extends BaseFragment {
 
     private RecyclerView mExpRecyclerView;
     private ExpressionAdapter mAdapter;
+    private ShowcaseCatalogue mCatalogue;
+    private Typeface mTypeface;
 
     /**
      * @return new instance of this fragment
@@ -54,6 +53,7 @@ public class ShowcaseFragment extends BaseFragment {
         mCallbacks.setSubtitle(FRAGMENT_SUBTITLE);
 
         mExpRecyclerView = (RecyclerView) v.findViewById(R.id.showcase_recycler_view);
+        mTypeface = Typeface.createFromAsset(getActivity().getAssets(), Utils.FONT_PATH);
 
         final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
         mExpRecyclerView.setLayoutManager(layoutManager);
@@ -63,19 +63,48 @@ public class ShowcaseFragment extends BaseFragment {
 
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mCatalogue.setOnInfixReadyListener(null);
+    }
+
     /**
      * Updates the data of the adapter
      */
     private void updateAdapter() {
-        final CASAdapter CAS = CASImplementation.getInstance();
-        final List<String> expList = CAS.getSampleExpressions();
+        mCatalogue = ShowcaseCatalogue.getDefault(getActivity().getAssets());
+        mCatalogue.setOnInfixReadyListener(new ShowcaseCatalogue.OnInfixReadyListener() {
+            @Override
+            public void onSized(final int size) {
+                mExpRecyclerView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mAdapter != null) {
+                            mAdapter.notifyDataSetChanged();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onInfixReady(final int position) {
+                mExpRecyclerView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mAdapter != null) {
+                            mAdapter.notifyItemChanged(position);
+                        }
+                    }
+                });
+            }
+        });
         if (mAdapter == null) {
 
-            mAdapter = new ExpressionAdapter(expList);
+            mAdapter = new ExpressionAdapter();
             mExpRecyclerView.setAdapter(mAdapter);
         } else {
 
-            mAdapter.setData(expList);
             mAdapter.notifyDataSetChanged();
         }
     }
@@ -83,7 +112,7 @@ public class ShowcaseFragment extends BaseFragment {
     //ExpressionHolder for Expression class
     private class ExpressionHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         private TextView mExpressionTextView;
-        private String mExpression;
+        private int mPosition;
 
         public ExpressionHolder(final View itemView) {
             super(itemView);
@@ -93,32 +122,27 @@ public class ShowcaseFragment extends BaseFragment {
 
         private void wireComponents(final View itemView) {
             mExpressionTextView = (TextView) itemView.findViewById(R.id.showcase_item_exp_text);
-            final Typeface tf = Typeface.createFromAsset(getActivity().getAssets(), Utils.FONT_PATH);
-            mExpressionTextView.setTypeface(tf);
+            mExpressionTextView.setTypeface(mTypeface);
         }
 
-        public void bindExpression(final String expression) {
-            mExpression = expression;
-            mExpressionTextView.setText(CASUtils.getInfixExpressionOf(expression));
+        public void bindExpression(final int position) {
+            mPosition = position;
+            //made in background, shown when ready
+            final String infix = mCatalogue.getInfix(position);
+            mExpressionTextView.setText(infix != null ? infix : "");
         }
 
         @Override
         public void onClick(final View v) {
-            //just update the CAS and go back
-            CASImplementation.getInstance().initCAS(mExpression);
+            //on its own board, keeping the current one
+            Workspace.getDefault().openExercise(mCatalogue.getExpression(mPosition));
             mCallbacks.navigateToFragment(ExpressionFragment.EXPRESSION_FRAGMENT_ID);
         }
     }//END_ExpressionHolder
 
-    //Adapter for an Expression list
+    //Adapter for the expressions of the catalogue
     private class ExpressionAdapter extends RecyclerView.Adapter<ExpressionHolder> {
 
-        private List<String> mExpressionList;
-
-        public ExpressionAdapter(final List<String> expressionList) {
-            mExpressionList = expressionList;
-        }
-
         @Override
         public ExpressionHolder onCreateViewHolder(final ViewGroup parent, final int viewType) {
 
@@ -134,19 +158,13 @@ public class ShowcaseFragment extends BaseFragment {
 
         @Override
         public void onBindViewHolder(final ExpressionHolder holder, final int position) {
-            final String exp = mExpressionList.get(position);
-            holder.bindExpression(exp);
+            holder.bindExpression(position);
         }
 
         @Override
         public int getItemCount() {
-            return mExpressionList.size();
-        }
-
-        public void setData(final List<String> expList) {
-            mExpressionList = expList;
+            return mCatalogue.size();
         }
     }//END_ExpressionAdapter
 
 }
-
@@ -0,0 +1,21 @@
+package es.uam.eps.tfg.app.tfgapp.controller.listener;
+
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+
+/**
+ * Listener for showing the result of an action before performing it
+ */
+public interface OnActionPreviewListener {
+
+    /**
+     * The user started asking for the result of an action (e.g. long-pressing its button)
+     *
+     * @param action action to preview
+     */
+    void onActionPreviewStarted(CASAdapter.Actions action);
+
+    /**
+     * The user is no longer asking for the preview
+     */
+    void onActionPreviewFinished();
+}
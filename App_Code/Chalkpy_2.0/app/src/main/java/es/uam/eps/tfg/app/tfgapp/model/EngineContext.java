@@ -0,0 +1,165 @@
+package es.uam.eps.tfg.app.tfgapp.model;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.model.history.CheckpointWriter;
+import es.uam.eps.tfg.app.tfgapp.model.history.ExpressionHistory;
+import es.uam.eps.tfg.app.tfgapp.model.history.ExpressionHistoryDB;
+import es.uam.eps.tfg.app.tfgapp.model.history.HistoryLog;
+import es.uam.eps.tfg.app.tfgapp.model.history.MappedExpressionHistory;
+import es.uam.eps.tfg.app.tfgapp.model.history.SnapshotCodec;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.app.tfgapp.util.Utils;
+import es.uam.eps.tfg.app.tfgapp.util.metrics.LatencyMetrics;
+
+/**
+ * Everything needed for working on an equation: a CAS (with its own engine and id index) and a
+ * history. Contexts don't share any state, so several of them can be used at the same time (such
+ * as background solvers or tests), as long as each one is confined to a single thread.
+ * <p>
+ * The app works with the default context, which is kept in a {@link HistoryLog} when a storage
+ * directory is given.
+ */
+public final class EngineContext {
+    private static final String HISTORY_DIRECTORY = "history";
+    private static volatile File sStorageDirectory;
+
+    private final CASAdapter mCAS;
+    private final ExpressionHistory mHistory;
+    private final CheckpointWriter mCheckpointWriter;
+    //version of the expression of the last checkpoint, to skip saving it again
+    private int mCheckpointVersion = -1;
+
+    /**
+     * Creates a context kept only in memory
+     */
+    public EngineContext() {
+        mCAS = CASImplementation.newInstance();
+        mHistory = ExpressionHistoryDB.newInstance();
+        mCheckpointWriter = null;
+    }
+
+    /**
+     * Creates a context kept only in memory, going on with a history. Used for restoring the boards
+     * of a {@link Workspace}
+     *
+     * @param history    history of the context
+     * @param expression current expression
+     */
+    EngineContext(final ExpressionHistory history, final Operation expression) {
+        mCAS = CASImplementation.newInstance();
+        mHistory = history;
+        mCheckpointWriter = null;
+        mCAS.initCAS(expression);
+    }
+
+    /**
+     * Creates a context kept in a log, restoring the history and the last checkpoint of the
+     * expression. Only the snapshot of the checkpoint is read, whatever the length of the history,
+     * and the log is compacted afterwards on the writer thread
+     *
+     * @param log                    log of the context
+     * @param checkpointWindowMillis time that the checkpoints are gathered before writing them
+     */
+    public EngineContext(final HistoryLog log, final long checkpointWindowMillis) {
+        mCAS = CASImplementation.newInstance();
+        mHistory = MappedExpressionHistory.newInstance(log);
+        mCheckpointWriter = new CheckpointWriter(log, checkpointWindowMillis);
+        final ByteBuffer checkpoint = log.readCheckpoint();
+        if (checkpoint != null) {
+            mCAS.initCAS(SnapshotCodec.decode(checkpoint));
+            mCheckpointVersion = mCAS.getExpressionVersion();
+        }
+        mCheckpointWriter.compactLog();
+    }
+
+    /**
+     * Sets where the default context is kept. It must be called before the first use of the
+     * default context, otherwise it's kept only in memory
+     *
+     * @param directory private directory of the app
+     */
+    public static void setStorageDirectory(final File directory) {
+        sStorageDirectory = directory;
+    }
+
+    /**
+     * @return the context used by the app, created on first use
+     */
+    public static EngineContext getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public CASAdapter getCAS() {
+        return mCAS;
+    }
+
+    public ExpressionHistory getHistory() {
+        return mHistory;
+    }
+
+    /**
+     * Saves the current expression, to be restored when the context is created again. It's
+     * written on a background thread, gathering the checkpoints close in time. Nothing is done if
+     * the context is kept only in memory, or if the expression didn't change since the last one
+     */
+    public void saveCheckpoint() {
+        if (mCheckpointWriter == null || mCAS.getExpressionVersion() == mCheckpointVersion) {
+            return;
+        }
+        mCheckpointVersion = mCAS.getExpressionVersion();
+        final long start = LatencyMetrics.start();
+        final Operation current = mCAS.getCurrentExpression();
+        mCheckpointWriter.request(current);
+        if (start != LatencyMetrics.NOT_MEASURED) {
+            LatencyMetrics.stop(LatencyMetrics.Step.CHECKPOINT, null, CASUtils.getNumberOfNodes(current), start);
+        }
+    }
+
+    /**
+     * Writes the pending checkpoint now, such as when the app goes to the background. It's written
+     * on the background thread, so this doesn't wait for the storage
+     */
+    public void flushCheckpoint() {
+        if (mCheckpointWriter != null) {
+            mCheckpointWriter.flush();
+        }
+    }
+
+    /**
+     * Writes the pending checkpoint and waits until it's in the storage
+     */
+    public void flushCheckpointAndWait() {
+        if (mCheckpointWriter != null) {
+            mCheckpointWriter.flushAndWait();
+        }
+    }
+
+    private static EngineContext createDefault() {
+        final File directory = sStorageDirectory;
+        if (directory == null) {
+            return new EngineContext();
+        }
+        try {
+            final HistoryLog log = HistoryLog.open(new File(directory, HISTORY_DIRECTORY), HistoryLog.DEFAULT_SEGMENT_SIZE);
+            return new EngineContext(log, CheckpointWriter.DEFAULT_WINDOW_MILLIS);
+        } catch (final IOException e) {
+            Log.e(Utils.LOG_TAG, "Error opening the history log, it will be kept only in memory", e);
+            return new EngineContext();
+        }
+    }
+
+    /**
+     * Lazy and thread safe initialization of the default context
+     */
+    private static class DefaultHolder {
+        private static final EngineContext INSTANCE = createDefault();
+    }
+}
@@ -0,0 +1,362 @@
+package es.uam.eps.tfg.app.tfgapp.model;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import es.uam.eps.tfg.app.tfgapp.util.Utils;
+
+/**
+ * Collection of exercises grouped by topic, read from a text file: one equation in CAS form per
+ * line, a line "[Name]" starting each topic and lines starting with "//" ignored.
+ * <p>
+ * The file is never read whole. The first time the pack is used, it's streamed once to build a
+ * small index: the offset of every {@link #BLOCK}th exercise and the first exercise of each topic.
+ * Reading exercise #N then skips to the offset of its block and reads at most a block of lines,
+ * and the last block read is kept for the next ones. The pack asset is stored uncompressed, so
+ * skipping in it is a seek. Exercises are plain strings: they are parsed only when one is chosen.
+ * <p>
+ * Thread safe.
+ */
+public final class ExercisePack {
+    public static final String ASSET = "exercises.pack";
+    static final int BLOCK = 64;
+    private static final String COMMENT = "//";
+    private static final char TOPIC_START = '[';
+    private static final char TOPIC_END = ']';
+    private static ExercisePack sDefault;
+
+    private final Source mSource;
+    private final ExerciseList mList;
+
+    //guarded by this
+    private Index mIndex;
+    private int mCachedBlock = -1;
+    private List<String> mCachedLines;
+
+    /**
+     * @param source file of the pack. It isn't read until the pack is used
+     */
+    public ExercisePack(final Source source) {
+        mSource = source;
+        mList = new ExerciseList();
+    }
+
+    /**
+     * @param assets assets of the app
+     * @return the pack of the app, kept in {@link #ASSET}
+     */
+    public static synchronized ExercisePack getDefault(final AssetManager assets) {
+        if (sDefault == null) {
+            sDefault = new ExercisePack(new Source() {
+                @Override
+                public InputStream open() throws IOException {
+                    return assets.open(ASSET, AssetManager.ACCESS_RANDOM);
+                }
+            });
+        }
+        return sDefault;
+    }
+
+    /**
+     * @return number of exercises
+     * @throws IOException if the pack can't be read
+     */
+    public synchronized int size() throws IOException {
+        return getIndex().mSize;
+    }
+
+    /**
+     * @return names of the topics, in the order of the pack
+     * @throws IOException if the pack can't be read
+     */
+    public synchronized List<String> getTopics() throws IOException {
+        return Collections.unmodifiableList(getIndex().mTopics);
+    }
+
+    /**
+     * @param topic position of a topic
+     * @return position of the first exercise of the topic
+     * @throws IOException if the pack can't be read
+     */
+    public synchronized int getTopicStart(final int topic) throws IOException {
+        return getIndex().mTopicStarts.get(topic);
+    }
+
+    /**
+     * @param position position of an exercise
+     * @return the exercise, in CAS form
+     * @throws IOException if the pack can't be read
+     */
+    public synchronized String getExpression(final int position) throws IOException {
+        final Index index = getIndex();
+        if (position < 0 || position >= index.mSize) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", size: " + index.mSize);
+        }
+        final int block = position / BLOCK;
+        if (block != mCachedBlock) {
+            mCachedLines = readBlock(index, block);
+            mCachedBlock = block;
+        }
+        return mCachedLines.get(position % BLOCK);
+    }
+
+    /**
+     * @return a view of the exercises, read as they are used. If the pack can't be read, it's
+     * empty
+     */
+    public List<String> asList() {
+        return mList;
+    }
+
+    /**
+     * @return a reader of all the exercises in order, from the start of the file
+     * @throws IOException if the pack can't be opened
+     */
+    public ExerciseReader read() throws IOException {
+        return new ExerciseReader(new LineReader(mSource.open()));
+    }
+
+    private Index getIndex() throws IOException {
+        if (mIndex == null) {
+            final long start = System.nanoTime();
+            final Index index = new Index();
+            final ExerciseReader reader = read();
+            try {
+                while (reader.next()) {
+                    if (reader.mTopicChanged) {
+                        index.mTopics.add(reader.getTopic());
+                        index.mTopicStarts.add(index.mSize);
+                    }
+                    if (index.mSize % BLOCK == 0) {
+                        index.mBlockOffsets.add(reader.mLines.getLineOffset());
+                    }
+                    index.mSize++;
+                }
+            } finally {
+                reader.close();
+            }
+            index.mEnd = reader.mLines.getOffset();
+            mIndex = index;
+            Log.d(Utils.LOG_TAG, "Exercise pack indexed: " + index.mSize + " exercises in "
+                    + (System.nanoTime() - start) / 1000 + "us");
+        }
+        return mIndex;
+    }
+
+    private List<String> readBlock(final Index index, final int block) throws IOException {
+        final long start = index.mBlockOffsets.get(block);
+        final long end = (block + 1 < index.mBlockOffsets.size()) ? index.mBlockOffsets.get(block + 1) : index.mEnd;
+        final InputStream in = mSource.open();
+        try {
+            skipFully(in, start);
+            final ExerciseReader reader = new ExerciseReader(new LineReader(in, start, end));
+            final List<String> lines = new ArrayList<>(BLOCK);
+            while (lines.size() < BLOCK && reader.next()) {
+                lines.add(reader.getExpression());
+            }
+            return lines;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void skipFully(final InputStream in, final long bytes) throws IOException {
+        long left = bytes;
+        while (left > 0) {
+            final long skipped = in.skip(left);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Exercise pack shorter than its index");
+                }
+                left--;
+            } else {
+                left -= skipped;
+            }
+        }
+    }
+
+    /**
+     * Opens the file of a pack
+     */
+    public interface Source {
+        /**
+         * @return a new stream of the file, from its start
+         * @throws IOException if it can't be opened
+         */
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Reads the exercises of a pack in order, one line at a time
+     */
+    public static final class ExerciseReader implements Closeable {
+        private final LineReader mLines;
+        private String mExpression;
+        private String mTopic;
+        private boolean mTopicChanged;
+
+        private ExerciseReader(final LineReader lines) {
+            mLines = lines;
+        }
+
+        /**
+         * Moves to the next exercise
+         *
+         * @return false if there are no more exercises
+         * @throws IOException if the pack can't be read
+         */
+        public boolean next() throws IOException {
+            mTopicChanged = false;
+            String line;
+            while ((line = mLines.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith(COMMENT)) {
+                    continue;
+                }
+                if (line.charAt(0) == TOPIC_START && line.charAt(line.length() - 1) == TOPIC_END) {
+                    mTopic = line.substring(1, line.length() - 1).trim();
+                    mTopicChanged = true;
+                    continue;
+                }
+                mExpression = line;
+                return true;
+            }
+            mExpression = null;
+            return false;
+        }
+
+        /**
+         * @return the current exercise, in CAS form
+         */
+        public String getExpression() {
+            return mExpression;
+        }
+
+        /**
+         * @return topic of the current exercise, null if the pack has no topic before it
+         */
+        public String getTopic() {
+            return mTopic;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mLines.close();
+        }
+    }
+
+    /**
+     * Lines of a stream in UTF-8, keeping the offset where each one starts
+     */
+    private static final class LineReader implements Closeable {
+        private final InputStream mIn;
+        private final long mEnd;
+        private final byte[] mBuffer = new byte[8192];
+        private final ByteArrayOutputStream mLine = new ByteArrayOutputStream(128);
+        private int mPosition;
+        private int mLimit;
+        private long mOffset;
+        private long mLineOffset;
+
+        private LineReader(final InputStream in) {
+            this(in, 0, Long.MAX_VALUE);
+        }
+
+        /**
+         * @param in     stream, already at the given offset
+         * @param offset offset of the stream in the file
+         * @param end    offset where reading stops
+         */
+        private LineReader(final InputStream in, final long offset, final long end) {
+            mIn = in;
+            mOffset = offset;
+            mEnd = end;
+        }
+
+        /**
+         * @return the next line without its end, null at the end
+         */
+        private String readLine() throws IOException {
+            if (mOffset >= mEnd) {
+                return null;
+            }
+            mLineOffset = mOffset;
+            mLine.reset();
+            while (mOffset < mEnd) {
+                if (mPosition == mLimit) {
+                    mLimit = mIn.read(mBuffer, 0, mBuffer.length);
+                    mPosition = 0;
+                    if (mLimit <= 0) {
+                        mLimit = 0;
+                        return mLine.size() == 0 ? null : mLine.toString("UTF-8");
+                    }
+                }
+                final byte b = mBuffer[mPosition++];
+                mOffset++;
+                if (b == '\n') {
+                    break;
+                }
+                mLine.write(b);
+            }
+            return mLine.toString("UTF-8");
+        }
+
+        private long getLineOffset() {
+            return mLineOffset;
+        }
+
+        private long getOffset() {
+            return mOffset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+
+    /**
+     * Offsets of the blocks of exercises and the topics
+     */
+    private static final class Index {
+        private final List<Long> mBlockOffsets = new ArrayList<>();
+        private final List<String> mTopics = new ArrayList<>();
+        private final List<Integer> mTopicStarts = new ArrayList<>();
+        private int mSize;
+        private long mEnd;
+    }
+
+    /**
+     * Exercises of the pack as a list of strings
+     */
+    private class ExerciseList extends AbstractList<String> {
+        @Override
+        public String get(final int index) {
+            try {
+                return getExpression(index);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Error reading exercise " + index, e);
+            }
+        }
+
+        @Override
+        public int size() {
+            try {
+                return ExercisePack.this.size();
+            } catch (final IOException e) {
+                Log.e(Utils.LOG_TAG, "Error reading the exercise pack", e);
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package es.uam.eps.tfg.app.tfgapp.model;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.app.tfgapp.util.Utils;
+
+/**
+ * Expressions shown as examples, in CAS form.
+ * <p>
+ * The catalogue is sized on a background thread, so it's empty until then. The infix form of each
+ * expression is made on the same thread, with its own engine, and kept once made, the ones asked
+ * for last first. So showing an expression is only a lookup, and the CAS isn't needed until one of
+ * them is chosen. The catalogue of the app is the {@link ExercisePack} of the app, whose
+ * exercises are only read as they are shown, so only the infix forms asked for are made.
+ */
+public final class ShowcaseCatalogue {
+    private static final ExecutorService RENDER_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "showcase-infix");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+    private static ShowcaseCatalogue sDefault;
+
+    private final ConcurrentMap<Integer, String> mInfix;
+    private final BlockingDeque<Integer> mPending;
+    private final Runnable mRenderTask = new Runnable() {
+        @Override
+        public void run() {
+            renderPending();
+        }
+    };
+    private volatile OnInfixReadyListener mListener;
+    //empty until sized
+    private volatile List<String> mExpressions;
+    private volatile int mSize;
+
+    //only used by the render thread
+    private AlgebraicEngine mEngine;
+
+    private ShowcaseCatalogue(final List<String> expressions, final List<String> fallback) {
+        mInfix = new ConcurrentHashMap<>();
+        mPending = new LinkedBlockingDeque<>();
+        mExpressions = Collections.emptyList();
+        RENDER_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                setExpressions(expressions, fallback);
+            }
+        });
+    }
+
+    /**
+     * @param expressions expressions of the catalogue, not copied. They are sized in background
+     *                    and only the infix forms asked for are made
+     * @return the catalogue
+     */
+    public static ShowcaseCatalogue of(final List<String> expressions) {
+        return new ShowcaseCatalogue(expressions, null);
+    }
+
+    /**
+     * @param expressions expressions of the catalogue, not copied
+     * @param fallback    expressions used instead if there are none
+     * @return the catalogue
+     */
+    static ShowcaseCatalogue of(final List<String> expressions, final List<String> fallback) {
+        return new ShowcaseCatalogue(expressions, fallback);
+    }
+
+    /**
+     * @param assets assets of the app
+     * @return the catalogue of the app, with the exercises of {@link ExercisePack#ASSET}. If it
+     * can't be read, the built-in samples are used instead
+     */
+    public static synchronized ShowcaseCatalogue getDefault(final AssetManager assets) {
+        if (sDefault == null) {
+            sDefault = of(ExercisePack.getDefault(assets).asList(), CASImplementation.getBuiltInSamples());
+        }
+        return sDefault;
+    }
+
+    /**
+     * @return number of expressions
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param position position of an expression
+     * @return the expression, in CAS form
+     */
+    public String getExpression(final int position) {
+        return mExpressions.get(position);
+    }
+
+    /**
+     * Returns the infix form of an expression if it's made, asking for it before the others if not
+     *
+     * @param position position of an expression
+     * @return infix form of the expression, null if it isn't ready yet
+     */
+    public String getInfix(final int position) {
+        final String infix = mInfix.get(position);
+        if (infix == null) {
+            mPending.offerFirst(position);
+            RENDER_EXECUTOR.execute(mRenderTask);
+        }
+        return infix;
+    }
+
+    /**
+     * @param listener listener told when an infix form is ready, null for none
+     */
+    public void setOnInfixReadyListener(final OnInfixReadyListener listener) {
+        mListener = listener;
+    }
+
+    private void setExpressions(final List<String> expressions, final List<String> fallback) {
+        //the first call indexes a pack
+        int size = expressions.size();
+        if (size == 0 && fallback != null) {
+            Log.e(Utils.LOG_TAG, "No showcase expressions, using the samples");
+            mExpressions = Collections.unmodifiableList(fallback);
+            size = fallback.size();
+        } else {
+            mExpressions = Collections.unmodifiableList(expressions);
+        }
+        mSize = size;
+        final OnInfixReadyListener listener = mListener;
+        if (listener != null) {
+            listener.onSized(size);
+        }
+    }
+
+    private void renderPending() {
+        Integer position;
+        while ((position = mPending.pollFirst()) != null) {
+            if (mInfix.containsKey(position)) {
+                continue;
+            }
+            mInfix.put(position, render(mExpressions.get(position)));
+            final OnInfixReadyListener listener = mListener;
+            if (listener != null) {
+                listener.onInfixReady(position);
+            }
+        }
+    }
+
+    private String render(final String expression) {
+        if (mEngine == null) {
+            mEngine = new AlgebraicEngine();
+        }
+        try {
+            final Operation op = mEngine.createOper(expression);
+            return CASUtils.getInfixExpressionOf(op);
+        } catch (final Exception e) {
+            Log.e(Utils.LOG_TAG, "Error on showcase expression " + expression, e);
+            return expression;
+        }
+    }
+
+    /**
+     * Listener for the size and the infix forms found in background
+     */
+    public interface OnInfixReadyListener {
+        /**
+         * Called on the background thread when the catalogue is sized
+         *
+         * @param size number of expressions
+         */
+        void onSized(int size);
+
+
+        /**
+         * Called on the background thread when the infix form of an expression is ready
+         *
+         * @param position position of the expression
+         */
+        void onInfixReady(int position);
+    }
+}
@@ -0,0 +1,303 @@
+package es.uam.eps.tfg.app.tfgapp.model;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.history.ExpressionHistory;
+import es.uam.eps.tfg.app.tfgapp.model.history.SnapshotCodec;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.app.tfgapp.util.Utils;
+
+/**
+ * Equations open at the same time, each one on its own board with its own {@link EngineContext}.
+ * An exercise is opened once: opening it again switches to its board, with its history.
+ * <p>
+ * Switching to a board used lately only changes the active one. The boards not used lately are
+ * kept cold: their CAS is dropped and their expression kept as a {@link SnapshotCodec} snapshot,
+ * and the CAS is created again when switching back to them. Their histories are kept as they are.
+ * Boards are cooled, the least recently used first, when the expressions of the others take more
+ * nodes than the given budget or when there are too many of them. The first board, the one kept
+ * in the storage, is never cooled. Whatever is kept for the CAS of a board outside of it, such as
+ * its last layout, is dropped by an {@link OnBoardReleasedListener} when the board is cooled or
+ * closed.
+ * <p>
+ * Not thread safe: it's used from the main thread.
+ */
+public final class Workspace {
+    public static final int DEFAULT_MAX_HOT_NODES = 200000;
+    public static final int DEFAULT_MAX_HOT_BOARDS = 8;
+
+    private final List<Board> mBoards;
+    //least recently used first
+    private final Set<Board> mHot;
+    private final int mMaxHotNodes;
+    private final int mMaxHotBoards;
+    private Board mActive;
+    private OnBoardReleasedListener mListener;
+    private int mHotNodes;
+    private int mNextId;
+
+    /**
+     * @param first        context of the first board
+     * @param maxHotNodes  number of nodes that the expressions of the boards other than the active
+     *                     and the first one can take before cooling them
+     * @param maxHotBoards number of boards that are kept with their CAS
+     */
+    public Workspace(final EngineContext first, final int maxHotNodes, final int maxHotBoards) {
+        mBoards = new ArrayList<>();
+        mHot = new LinkedHashSet<>();
+        mMaxHotNodes = maxHotNodes;
+        mMaxHotBoards = maxHotBoards;
+        mActive = addBoard(first, null);
+    }
+
+    /**
+     * @return the workspace used by the app, created on first use. Its first board is the
+     * default context
+     */
+    public static Workspace getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @param listener listener of the boards that are cooled or closed, null to remove it
+     */
+    public void setOnBoardReleasedListener(final OnBoardReleasedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return context of the active board
+     */
+    public EngineContext getActiveContext() {
+        return mActive.mContext;
+    }
+
+    /**
+     * @return the active board
+     */
+    public Board getActiveBoard() {
+        return mActive;
+    }
+
+    /**
+     * @return the open boards, in the order they were opened
+     */
+    public List<Board> getBoards() {
+        return Collections.unmodifiableList(mBoards);
+    }
+
+    /**
+     * Opens a new board and makes it the active one
+     *
+     * @param expression expression of the board, in CAS form
+     * @return context of the new board
+     */
+    public EngineContext openBoard(final String expression) {
+        final EngineContext context = new EngineContext();
+        context.getCAS().initCAS(expression);
+        return activate(addBoard(context, null));
+    }
+
+    /**
+     * Switches to the board of an exercise, opening it if it isn't open
+     *
+     * @param expression expression of the exercise, in CAS form
+     * @return context of the board
+     */
+    public EngineContext openExercise(final String expression) {
+        for (final Board board : mBoards) {
+            if (expression.equals(board.mExercise)) {
+                return switchTo(board);
+            }
+        }
+        final EngineContext context = new EngineContext();
+        context.getCAS().initCAS(expression);
+        return activate(addBoard(context, expression));
+    }
+
+    /**
+     * Opens a new board and makes it the active one
+     *
+     * @param expression expression of the board. The board uses it, it mustn't be modified
+     * @return context of the new board
+     */
+    public EngineContext openBoard(final Operation expression) {
+        final EngineContext context = new EngineContext();
+        context.getCAS().initCAS(expression);
+        return activate(addBoard(context, null));
+    }
+
+    /**
+     * Makes a board the active one, restoring its CAS if it was cold
+     *
+     * @param board open board
+     * @return context of the board
+     */
+    public EngineContext switchTo(final Board board) {
+        if (!mBoards.contains(board)) {
+            throw new IllegalArgumentException("Board " + board.getId() + " isn't open");
+        }
+        if (board.mContext == null) {
+            board.mContext = new EngineContext(board.mHistory, SnapshotCodec.decode(board.mSnapshot));
+            board.mSnapshot = null;
+            Log.d(Utils.LOG_TAG, "Restored board " + board.getId());
+        }
+        return activate(board);
+    }
+
+    /**
+     * @return the board opened after the active one, the first one after the last one
+     */
+    public Board getNextBoard() {
+        return mBoards.get((mBoards.indexOf(mActive) + 1) % mBoards.size());
+    }
+
+    /**
+     * Closes a board. If it's the active one, the board opened before it becomes active
+     *
+     * @param board open board, other than the first one
+     */
+    public void closeBoard(final Board board) {
+        final int index = mBoards.indexOf(board);
+        if (index < 0) {
+            throw new IllegalArgumentException("Board " + board.getId() + " isn't open");
+        }
+        if (index == 0) {
+            throw new IllegalArgumentException("The first board can't be closed");
+        }
+        if (board == mActive) {
+            switchTo(mBoards.get(index - 1));
+        }
+        mBoards.remove(index);
+        if (mHot.remove(board)) {
+            mHotNodes -= board.mNodes;
+        }
+        board.mContext = null;
+        board.mSnapshot = null;
+        release(board);
+    }
+
+    private Board addBoard(final EngineContext context, final String exercise) {
+        final Board board = new Board(mNextId++, context, exercise);
+        mBoards.add(board);
+        return board;
+    }
+
+    /**
+     * Leaves the active board among the hot ones, cooling the oldest ones if needed
+     */
+    private EngineContext activate(final Board board) {
+        if (board == mActive) {
+            return board.mContext;
+        }
+        final Board previous = mActive;
+        if (mHot.remove(board)) {
+            mHotNodes -= board.mNodes;
+        }
+        mActive = board;
+        if (previous != mBoards.get(0)) {
+            previous.mNodes = CASUtils.getNumberOfNodes(previous.mContext.getCAS().getCurrentExpression());
+            mHot.add(previous);
+            mHotNodes += previous.mNodes;
+        }
+        trim();
+        return board.mContext;
+    }
+
+    private void trim() {
+        //the first and the active boards aren't in the set
+        final int pinned = (mActive == mBoards.get(0)) ? 1 : 2;
+        final Iterator<Board> oldest = mHot.iterator();
+        while (oldest.hasNext() && (mHotNodes > mMaxHotNodes || mHot.size() + pinned > mMaxHotBoards)) {
+            final Board board = oldest.next();
+            oldest.remove();
+            mHotNodes -= board.mNodes;
+            board.mSnapshot = SnapshotCodec.encode(board.mContext.getCAS().getCurrentExpression());
+            board.mContext = null;
+            release(board);
+            Log.d(Utils.LOG_TAG, "Cooled board " + board.getId());
+        }
+    }
+
+    private void release(final Board board) {
+        if (mListener != null) {
+            mListener.onBoardReleased(board);
+        }
+    }
+
+    /**
+     * @return number of boards whose CAS is kept
+     */
+    int getHotCount() {
+        int hot = 0;
+        for (final Board board : mBoards) {
+            if (board.isHot()) {
+                hot++;
+            }
+        }
+        return hot;
+    }
+
+    /**
+     * An open equation
+     */
+    public static final class Board {
+        private final int mId;
+        private final ExpressionHistory mHistory;
+        //expression of the exercise the board was opened for, null if none
+        private final String mExercise;
+        private EngineContext mContext;
+        private ByteBuffer mSnapshot;
+        private int mNodes;
+
+        private Board(final int id, final EngineContext context, final String exercise) {
+            mId = id;
+            mHistory = context.getHistory();
+            mExercise = exercise;
+            mContext = context;
+        }
+
+        /**
+         * @return id of the board, different for each board of the workspace
+         */
+        public int getId() {
+            return mId;
+        }
+
+        /**
+         * @return true if the CAS of the board is kept, so switching to it doesn't create it again
+         */
+        public boolean isHot() {
+            return mContext != null;
+        }
+    }
+
+    /**
+     * Listener of the boards whose CAS is dropped
+     */
+    public interface OnBoardReleasedListener {
+        /**
+         * Called when a board is cooled or closed
+         *
+         * @param board board whose CAS was dropped
+         */
+        void onBoardReleased(Board board);
+    }
+
+    /**
+     * Lazy and thread safe initialization of the default workspace
+     */
+    private static class DefaultHolder {
+        private static final Workspace INSTANCE = new Workspace(EngineContext.getDefault(), DEFAULT_MAX_HOT_NODES,
+                DEFAULT_MAX_HOT_BOARDS);
+    }
+}
@@ -0,0 +1,238 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+/**
+ * Decides which actions can be applied to a selection, without modifying the expression.
+ * <p>
+ * Each selected node is classified once (position in its parent, side of the equation, whether it
+ * can be operated...) and the classification is kept until the expression changes, which is known
+ * through the version of the CAS. Whether a node can be operated is decided from the kinds of its
+ * numbers (see {@link OperateKinds}), and multiple selections from the classification of their
+ * nodes and their parents, without trying the actions. The rules follow the checks made by the CAS
+ * actions, so an action is only offered when applying it won't fail.
+ * <p>
+ * Not thread safe: it belongs to a single CAS.
+ */
+class ActionClassifier {
+    private static final int HAS_PARENT = 1;
+    private static final int SUM_OR_PROD_PARENT = 1 << 1;
+    private static final int FIRST_ARG = 1 << 2;
+    private static final int LAST_ARG = 1 << 3;
+    private static final int SAME_OPERATOR_AS_PARENT = 1 << 4;
+    private static final int MATHEMATICAL_OPERATION = 1 << 5;
+    private static final int SUM_OR_PROD = 1 << 6;
+    private static final int SIDE = 1 << 7;
+    private static final int MAIN_TERM = 1 << 8;
+    private static final int ZERO_IN_PRODUCT = 1 << 9;
+    private static final int OPERABLE = 1 << 10;
+    private static final String SUM = AlgebraicEngine.Opers.SUM.toString();
+    private static final String PROD = AlgebraicEngine.Opers.PROD.toString();
+
+    private final CASImplementation mCAS;
+    private final Map<Operation, Integer> mClassification;
+    private int mVersion;
+
+    ActionClassifier(final CASImplementation CAS) {
+        mCAS = CAS;
+        mClassification = new IdentityHashMap<>();
+        mVersion = -1;
+    }
+
+    /**
+     * @param selection selected elements of the current expression
+     * @return the actions that can be applied to the selection
+     */
+    Set<CASAdapter.Actions> getApplicableActions(final List<Operation> selection) {
+        if (mVersion != mCAS.getExpressionVersion()) {
+            mClassification.clear();
+            mVersion = mCAS.getExpressionVersion();
+        }
+        if (selection == null || selection.isEmpty()) {
+            return EnumSet.noneOf(CASAdapter.Actions.class);
+        }
+        if (selection.size() == 1) {
+            return getSingleSelectionActions(classify(selection.get(0)));
+        }
+        return getMultipleSelectionActions(selection);
+    }
+
+    private static Set<CASAdapter.Actions> getSingleSelectionActions(final int flags) {
+        final Set<CASAdapter.Actions> actions = EnumSet.noneOf(CASAdapter.Actions.class);
+        if (has(flags, SUM_OR_PROD_PARENT)) {
+            if (!has(flags, FIRST_ARG)) {
+                actions.add(CASAdapter.Actions.MOVE_LEFT);
+            }
+            if (!has(flags, LAST_ARG)) {
+                actions.add(CASAdapter.Actions.MOVE_RIGHT);
+            }
+        }
+        if (has(flags, SUM_OR_PROD | SAME_OPERATOR_AS_PARENT)) {
+            actions.add(CASAdapter.Actions.DISASSOCIATE);
+        }
+        if (has(flags, OPERABLE)) {
+            actions.add(CASAdapter.Actions.OPERATE);
+        }
+        final boolean mainTerm = has(flags, MAIN_TERM) && has(flags, SUM_OR_PROD_PARENT);
+        if ((has(flags, SIDE) || mainTerm) && !has(flags, ZERO_IN_PRODUCT)) {
+            actions.add(CASAdapter.Actions.CHANGE_SIDE);
+        }
+        return actions;
+    }
+
+    private static boolean has(final int flags, final int expected) {
+        return (flags & expected) == expected;
+    }
+
+    /**
+     * @return the actions of a selection of several nodes. OPERATE is included along with
+     * DISTRIBUTE or COMMON_FACTOR, the action it's resolved to
+     */
+    private Set<CASAdapter.Actions> getMultipleSelectionActions(final List<Operation> selection) {
+        final Set<CASAdapter.Actions> actions = EnumSet.noneOf(CASAdapter.Actions.class);
+        final Operation first = selection.get(0);
+        final Operation parent = mCAS.getParent(first);
+        boolean sameParent = parent != null;
+        boolean anyZeroInProduct = false;
+        for (final Operation op : selection) {
+            sameParent &= mCAS.getParent(op) == parent;
+            anyZeroInProduct |= has(classify(op), ZERO_IN_PRODUCT);
+        }
+        if (sameParent && has(classify(first), SUM_OR_PROD_PARENT) && isDistinct(selection)) {
+            //the whole parent can't be associated
+            if (selection.size() == 2 && parent.getNumberArgs() > 2) {
+                actions.add(CASAdapter.Actions.ASSOCIATE);
+            }
+            if (has(classify(parent), SIDE) && !anyZeroInProduct) {
+                actions.add(CASAdapter.Actions.CHANGE_SIDE);
+            }
+        }
+        final Operation second = selection.get(1);
+        if (CASImplementation.isOnDistributiveForm(first, second, parent)
+                || CASImplementation.isOnDistributiveForm(second, first, parent)) {
+            actions.add(CASAdapter.Actions.DISTRIBUTE);
+            actions.add(CASAdapter.Actions.OPERATE);
+        } else if (isCommonFactor(selection)) {
+            actions.add(CASAdapter.Actions.COMMON_FACTOR);
+            actions.add(CASAdapter.Actions.OPERATE);
+        }
+        return actions;
+    }
+
+    private static boolean isDistinct(final List<Operation> selection) {
+        final Set<Operation> seen = Collections.newSetFromMap(new IdentityHashMap<Operation, Boolean>());
+        for (final Operation op : selection) {
+            if (!seen.add(op)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Follows {@link CommonFactors#factorize(Operation, List)}: the selection must be the same
+     * factor, taken from different terms of the closest sum above the first element
+     *
+     * @return true if the common factor can be extracted from the selection
+     */
+    private boolean isCommonFactor(final List<Operation> selection) {
+        final Operation sum = getCommonFactorSum(selection.get(0));
+        if (sum == null || mCAS.getParent(sum) == null) {
+            return false;
+        }
+        final Map<Operation, Integer> termOf = new IdentityHashMap<>();
+        final List<Operation> terms = sum.getArgs();
+        for (int i = 0; i < terms.size(); i++) {
+            for (final Operation factor : CommonFactors.getFactors(terms.get(i))) {
+                if (!termOf.containsKey(factor)) {
+                    termOf.put(factor, i);
+                }
+            }
+        }
+        final boolean[] used = new boolean[terms.size()];
+        final CommonFactors factors = new CommonFactors();
+        for (final Operation op : selection) {
+            final Integer term = termOf.get(op);
+            if (term == null || used[term] || !factors.structurallyEquals(selection.get(0), op)) {
+                return false;
+            }
+            used[term] = true;
+        }
+        return true;
+    }
+
+    /**
+     * @return the closest sum above a factor, up to its great-grandparent. Null if there is none
+     */
+    private Operation getCommonFactorSum(final Operation factor) {
+        Operation ancestor = mCAS.getParent(factor);
+        for (int level = 0; level < 3 && ancestor != null; level++) {
+            if (SUM.equals(ancestor.getOperId())) {
+                return ancestor;
+            }
+            ancestor = mCAS.getParent(ancestor);
+        }
+        return null;
+    }
+
+    private int classify(final Operation op) {
+        final Integer cached = mClassification.get(op);
+        if (cached != null) {
+            return cached;
+        }
+        int flags = 0;
+        final String operId = op.getOperId();
+        if (CASUtils.isMathematicalOperation(op)) {
+            flags |= MATHEMATICAL_OPERATION;
+        }
+        if (isSumOrProd(operId)) {
+            flags |= SUM_OR_PROD;
+        }
+
+        final Operation parent = mCAS.getParent(op);
+        if (parent != null) {
+            flags |= HAS_PARENT;
+            final String parentOperId = parent.getOperId();
+            final int index = parent.getIndexOfArg(op);
+            if (index == 0) {
+                flags |= FIRST_ARG;
+            }
+            if (index == parent.getNumberArgs() - 1) {
+                flags |= LAST_ARG;
+            }
+            if (isSumOrProd(parentOperId)) {
+                flags |= SUM_OR_PROD_PARENT;
+            }
+            if (parentOperId.equals(operId)) {
+                flags |= SAME_OPERATOR_AS_PARENT;
+            }
+            if (AlgebraicEngine.Opers.PROD.toString().equals(parentOperId)
+                    && AlgebraicEngine.Opers.ZERO.toString().equals(operId)) {
+                flags |= ZERO_IN_PRODUCT;
+            }
+            if (AlgebraicEngine.Opers.EQU.toString().equals(parentOperId)) {
+                flags |= SIDE;
+            } else if (CASUtils.isMainTermOfEquation(mCAS, op)) {
+                flags |= MAIN_TERM;
+            }
+            if (has(flags, MATHEMATICAL_OPERATION) && OperateKinds.canOperate(op)) {
+                flags |= OPERABLE;
+            }
+        }
+        mClassification.put(op, flags);
+        return flags;
+    }
+
+    private static boolean isSumOrProd(final String operId) {
+        return SUM.equals(operId) || PROD.equals(operId);
+    }
+}
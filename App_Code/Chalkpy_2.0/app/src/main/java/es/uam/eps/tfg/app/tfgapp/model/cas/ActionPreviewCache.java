@@ -0,0 +1,309 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+/**
+ * Results of the actions applicable to a selection, computed in background before the user asks
+ * for them. Previews and clicks on an action just take the result from here.
+ * <p>
+ * A click that comes before the background thread gets to its action computes it on the caller
+ * instead of waiting for the actions queued before it. Previews never wait: they are told when the
+ * result is ready.
+ * <p>
+ * Results are dry runs (see {@link CASAdapter#dryRun(CASAdapter.Actions, List)}) kept by expression
+ * version, selection and action, so the expression must only change through
+ * {@link CASAdapter#applyDryRun(DryRunResult)} or by being replaced while they are computed.
+ * <p>
+ * Must be used from a single thread, usually the main one.
+ */
+public class ActionPreviewCache {
+    private static final int MAX_ENTRIES = 32;
+    private static final ExecutorService PREVIEW_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "action-preview");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final CASAdapter mCAS;
+    private final ExecutorService mExecutor;
+    private final Map<Key, DryRunTask> mResults;
+
+    /**
+     * @param CAS CAS whose actions are computed
+     */
+    public ActionPreviewCache(final CASAdapter CAS) {
+        this(CAS, PREVIEW_EXECUTOR);
+    }
+
+    /**
+     * @param CAS      CAS whose actions are computed
+     * @param executor where the actions are computed
+     */
+    public ActionPreviewCache(final CASAdapter CAS, final ExecutorService executor) {
+        mCAS = CAS;
+        mExecutor = executor;
+        mResults = new LinkedHashMap<Key, DryRunTask>(MAX_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, DryRunTask> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Starts computing, in parallel, the result of every action applicable to a selection. Results
+     * of older versions of the expression are discarded
+     *
+     * @param selection selected elements of the current expression
+     */
+    public void precompute(final List<Operation> selection) {
+        final int version = mCAS.getExpressionVersion();
+        discardOlderThan(version);
+        for (final CASAdapter.Actions action : getCandidateActions(selection)) {
+            final Key key = new Key(version, selection, action);
+            if (!mResults.containsKey(key)) {
+                final DryRunTask task = new DryRunTask(createDryRun(key));
+                mResults.put(key, task);
+                mExecutor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * @param selection selected elements of the current expression
+     * @param action    action to apply
+     * @return the result of the action if it's already computed, null otherwise
+     */
+    public DryRunResult getIfReady(final List<Operation> selection, final CASAdapter.Actions action) {
+        final DryRunTask result = mResults.get(new Key(mCAS.getExpressionVersion(), selection, action));
+        if (result == null || !result.isDone() || result.isCancelled()) {
+            return null;
+        }
+        try {
+            return result.get();
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells when the result of an action is ready, computing it in background if it wasn't
+     * requested before. If it's already computed, the listener is told at once
+     *
+     * @param selection selected elements of the current expression
+     * @param action    action to apply
+     * @param listener  listener told, on any thread, if the action can be applied
+     */
+    public void whenReady(final List<Operation> selection, final CASAdapter.Actions action,
+                          final OnResultReadyListener listener) {
+        final Key key = new Key(mCAS.getExpressionVersion(), selection, action);
+        DryRunTask task = mResults.get(key);
+        if (task == null || task.isCancelled()) {
+            task = new DryRunTask(createDryRun(key));
+            mResults.put(key, task);
+            mExecutor.execute(task);
+        }
+        task.setListener(listener);
+    }
+
+    /**
+     * Gets the result of an action. If no thread has started computing it, it's computed now on
+     * the caller, otherwise it waits for the thread computing it
+     *
+     * @param selection selected elements of the current expression
+     * @param action    action to apply
+     * @return the result of the action
+     * @throws NotApplicableReductionException if the action can't be applied
+     */
+    public DryRunResult get(final List<Operation> selection, final CASAdapter.Actions action) throws NotApplicableReductionException {
+        final Key key = new Key(mCAS.getExpressionVersion(), selection, action);
+        DryRunTask result = mResults.get(key);
+        if (result == null || result.isCancelled()) {
+            result = new DryRunTask(createDryRun(key));
+            mResults.put(key, result);
+        }
+        //does nothing if a thread already started it
+        result.run();
+        try {
+            return result.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof NotApplicableReductionException) {
+                throw (NotApplicableReductionException) e.getCause();
+            }
+            throw new NotApplicableReductionException("Error on " + action + ": " + e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotApplicableReductionException("Interrupted while computing " + action);
+        }
+    }
+
+    /**
+     * Discards every result, cancelling the ones not computed yet
+     */
+    public void clear() {
+        for (final DryRunTask result : mResults.values()) {
+            result.cancel(false);
+        }
+        mResults.clear();
+    }
+
+    /**
+     * @return number of results kept
+     */
+    public int size() {
+        return mResults.size();
+    }
+
+    /**
+     * Distributing and extracting a common factor are done by operating the selection, so only
+     * the result of operating is computed
+     */
+    private Set<CASAdapter.Actions> getCandidateActions(final List<Operation> selection) {
+        final Set<CASAdapter.Actions> actions = mCAS.getApplicableActions(selection);
+        if (selection.size() > 1) {
+            actions.remove(CASAdapter.Actions.DISTRIBUTE);
+            actions.remove(CASAdapter.Actions.COMMON_FACTOR);
+        }
+        return actions;
+    }
+
+    private void discardOlderThan(final int version) {
+        final Iterator<Map.Entry<Key, DryRunTask>> it = mResults.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Key, DryRunTask> entry = it.next();
+            if (entry.getKey().mVersion != version) {
+                entry.getValue().cancel(false);
+                it.remove();
+            }
+        }
+    }
+
+    private Callable<DryRunResult> createDryRun(final Key key) {
+        return new Callable<DryRunResult>() {
+            @Override
+            public DryRunResult call() throws NotApplicableReductionException {
+                return mCAS.dryRun(key.mAction, key.mSelection);
+            }
+        };
+    }
+
+    /**
+     * Listener of a result computed in background
+     */
+    public interface OnResultReadyListener {
+        /**
+         * Called when the action can be applied, on the thread that computed it or on the one
+         * that asked for it if it was already computed
+         *
+         * @param result result of the action
+         */
+        void onResultReady(DryRunResult result);
+    }
+
+    /**
+     * Dry run that tells its listener when it ends
+     */
+    private static final class DryRunTask extends FutureTask<DryRunResult> {
+        //guarded by this
+        private OnResultReadyListener mListener;
+
+        DryRunTask(final Callable<DryRunResult> dryRun) {
+            super(dryRun);
+        }
+
+        synchronized void setListener(final OnResultReadyListener listener) {
+            if (isDone()) {
+                tell(listener);
+            } else {
+                mListener = listener;
+            }
+        }
+
+        @Override
+        protected synchronized void done() {
+            if (mListener != null) {
+                tell(mListener);
+                mListener = null;
+            }
+        }
+
+        private void tell(final OnResultReadyListener listener) {
+            if (isCancelled()) {
+                return;
+            }
+            final DryRunResult result;
+            try {
+                result = get();
+            } catch (final Exception e) {
+                //the action can't be applied
+                return;
+            }
+            listener.onResultReady(result);
+        }
+    }
+
+    /**
+     * Version of the expression, selected nodes (compared by reference) and action
+     */
+    private static final class Key {
+        private final int mVersion;
+        private final List<Operation> mSelection;
+        private final CASAdapter.Actions mAction;
+        private final int mHash;
+
+        Key(final int version, final List<Operation> selection, final CASAdapter.Actions action) {
+            mVersion = version;
+            //the selection list may be modified by the view later on
+            mSelection = new ArrayList<>(selection);
+            mAction = action;
+            int hash = 31 * version + action.hashCode();
+            for (final Operation op : mSelection) {
+                hash = 31 * hash + System.identityHashCode(op);
+            }
+            mHash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            if (mVersion != other.mVersion || mAction != other.mAction || mSelection.size() != other.mSelection.size()) {
+                return false;
+            }
+            for (int i = 0; i < mSelection.size(); i++) {
+                if (mSelection.get(i) != other.mSelection.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
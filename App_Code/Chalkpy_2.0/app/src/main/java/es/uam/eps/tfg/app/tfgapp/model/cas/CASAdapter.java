@@ -1,6 +1,7 @@
 package es.uam.eps.tfg.app.tfgapp.model.cas;
 
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import es.uam.eps.tfg.algebraicEngine.Operation;
@@ -19,6 +20,14 @@ public interface CASAdapter {
      */
     void initCAS(String exp);
 
+    /**
+     * Initializes the CAS with an expression already built, such as a generated one. All changes
+     * in the last one will be lost.
+     *
+     * @param exp new expression to be consider the main one. It will be modified by the actions
+     */
+    void initCAS(Operation exp);
+
     /**
      * Gets an operation given an id
      *
@@ -32,6 +41,44 @@ public interface CASAdapter {
      */
     Operation getCurrentExpression();
 
+    /**
+     * @return a number that changes every time the current expression is initialized or an
+     * action is applied to it, so results computed for an expression can be discarded
+     */
+    int getExpressionVersion();
+
+    /**
+     * Decides which actions can be applied to a selection, without modifying the expression
+     *
+     * @param selection selected elements of the current expression
+     * @return the applicable actions. For multiple selections, OPERATE is included along with
+     * DISTRIBUTE or COMMON_FACTOR, whichever the selection allows
+     */
+    Set<Actions> getApplicableActions(List<Operation> selection);
+
+    /**
+     * Applies an action to a copy of the current expression, which is not modified. It can be
+     * called from several threads at once, as long as the current expression doesn't change.
+     *
+     * @param action    action to apply. OPERATE on several elements distributes or extracts the
+     *                  common factor, as the user would do
+     * @param selection selected elements of the current expression
+     * @return the resulting expression, sharing the subtrees the action didn't change, and the ids
+     * of the changed nodes
+     * @throws NotApplicableReductionException if the action can't be applied
+     */
+    DryRunResult dryRun(Actions action, List<Operation> selection) throws NotApplicableReductionException;
+
+    /**
+     * Makes the result of a dry run the current expression. The previous one is not modified, so
+     * dry runs still working on it are not affected
+     *
+     * @param result result of a dry run on the current expression
+     * @return the new current expression
+     * @throws NotApplicableReductionException if the expression changed after the dry run
+     */
+    Operation applyDryRun(DryRunResult result) throws NotApplicableReductionException;
+
     /**
      * Given an expression, it returns the operator symbol as a string
      *
@@ -40,6 +87,25 @@ public interface CASAdapter {
      */
     String getStringOperatorSymbol(Operation exp);
 
+    /**
+     * @param exp operation of the current expression
+     * @return its parent, null for the root or if it's not in the expression
+     */
+    Operation getParent(Operation exp);
+
+    /**
+     * @param exp operation of the current expression
+     * @return its distance to the root (0 for the root), -1 if it's not in the expression
+     */
+    int getDepth(Operation exp);
+
+    /**
+     * @param exp operation of the current expression
+     * @return index of the side of the equation containing the operation, -1 for the root or if
+     * it's not in the equation
+     */
+    int getSideOfEquation(Operation exp);
+
     /**
      * Given an expression, it returns the operator symbol for the parent expression as a string
      *
@@ -96,12 +162,47 @@ public interface CASAdapter {
 
     Operation operate(Operation selection) throws NotApplicableReductionException;
 
+    /**
+     * Extracts a factor shared by several terms of a sum
+     *
+     * @param commonElems the factor in each term, all of them in the same sum
+     * @return new expression with the factor extracted
+     * @throws NotApplicableReductionException if the elements aren't the same factor of different
+     *                                         terms of a sum
+     */
     Operation commonFactor(List<Operation> commonElems) throws NotApplicableReductionException;
 
+    /**
+     * Finds every factor that can be extracted from the terms of a sum
+     *
+     * @param sum sum of the current expression
+     * @return for each factor found in two terms or more, its occurrences in the terms, ready to
+     * be passed to {@link #commonFactor(List)}. Empty if the operation isn't a sum
+     */
+    List<List<Operation>> findCommonFactors(Operation sum);
+
     Operation changeSide(Operation selection) throws NotApplicableReductionException;
 
+    /**
+     * Moves several terms of the same side of the equation to the other one at once
+     *
+     * @param terms terms of the sum or product of a side
+     * @return new expression with the terms on the other side
+     * @throws NotApplicableReductionException
+     */
+    Operation changeSide(List<Operation> terms) throws NotApplicableReductionException;
+
     Operation distribute(Operation elemToDistribute, Operation sumOperation) throws NotApplicableReductionException;
 
+    /**
+     * Operates everything that can be operated in the expression: numbers are operated together,
+     * sums of zero and products by one are removed and nested sums or products are joined
+     *
+     * @return the simplified expression
+     * @throws NotApplicableReductionException if there's nothing to simplify
+     */
+    Operation simplify() throws NotApplicableReductionException;
+
 
     boolean isOnDistributiveForm(final Operation singleElem, final Operation sumOperation);
 
@@ -126,7 +227,7 @@ public interface CASAdapter {
         MOVE_RIGHT(R.string.action_move_right),
         ASSOCIATE(R.string.action_associate), DISASSOCIATE(R.string.action_disassociate),
         OPERATE(R.string.action_operate), DISTRIBUTE(R.string.action_distribute),
-        COMMON_FACTOR(R.string.action_common_factor);
+        COMMON_FACTOR(R.string.action_common_factor), SIMPLIFY(R.string.action_simplify);
 
         private final int mStringCode;
 
@@ -3,8 +3,13 @@ package es.uam.eps.tfg.app.tfgapp.model.cas;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 
 import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
@@ -15,34 +20,39 @@ import es.uam.eps.tfg.exception.EquationCreationException;
 import es.uam.eps.tfg.exception.NotApplicableReductionException;
 
 /**
- * Implementation of the CASAdapter. Singleton pattern.
+ * Implementation of the CASAdapter. Not thread safe: each engine context has its own instance.
  */
 public class CASImplementation implements CASAdapter {
-    private static final String DEFAULT_SYMBOL = "o-";
-    private static final List<String> mShowcaseExpressionList = new ArrayList<>();
-    private static CASAdapter mCASInstance = null;
-
-    static {
-        mShowcaseExpressionList.add(CASUtils.createShortSampleExpression());
-        mShowcaseExpressionList.add(CASUtils.createMediumSampleExpression());
-        mShowcaseExpressionList.add(CASUtils.createLongSampleExpression());
-        mShowcaseExpressionList.add(CASUtils.createUltraLongSampleExpression());
-    }
-
     private final AlgebraicEngine mCAS;
+    private final OperationIndex mIndex;
+    private final NodeLevels mLevels;
+    private final ActionClassifier mClassifier;
+    /**
+     * Written after the expression is replaced, so dry runs on other threads that read it before
+     * the expression never pair an old version with a new expression
+     */
+    private volatile int mVersion;
+    /**
+     * Samples set by the app, shared by all the instances
+     */
+    private static volatile List<String> sSamples;
 
     private CASImplementation() {
         mCAS = new AlgebraicEngine();
+        mIndex = new OperationIndex();
+        mLevels = new NodeLevels();
+        mClassifier = new ActionClassifier(this);
+        mVersion = 0;
     }
 
     /**
-     * @return the instance of the CAS
+     * Creates a CAS independent from any other, with its own engine and id index. Each instance
+     * must be used by a single thread.
+     *
+     * @return a new instance of the CAS
      */
-    public static CASAdapter getInstance() {
-        if (mCASInstance == null) {
-            mCASInstance = new CASImplementation();
-        }
-        return mCASInstance;
+    public static CASAdapter newInstance() {
+        return new CASImplementation();
     }
 
     @Override
@@ -50,7 +60,9 @@ public class CASImplementation implements CASAdapter {
         final Operation current = mCAS.getOperEq();
         if (current == null) {
             final Random rand = new Random();
-            final String newCurrent = mShowcaseExpressionList.get(rand.nextInt((mShowcaseExpressionList.size() - 1) + 1));
+            //the built-in ones, so the pack isn't read on the main thread to start
+            final List<String> samples = Samples.LIST;
+            final String newCurrent = samples.get(rand.nextInt((samples.size() - 1) + 1));
             initCAS(newCurrent);
             return mCAS.getOperEq();
         }
@@ -65,16 +77,268 @@ public class CASImplementation implements CASAdapter {
         } catch (final EquationCreationException e) {
             Log.e(Utils.LOG_TAG, "Error while initializing CAS", e);
         }
+        mVersion++;
+    }
+
+    @Override
+    public void initCAS(final Operation exp) {
+        Log.d(Utils.LOG_TAG, "Initializing CAS with a built expression");
+        exp.setParentIdsRec(null);
+        mCAS.setOperEq(exp);
+        mVersion++;
     }
 
     @Override
     public Operation getOperationById(final UUID id) {
-        return mCAS.getOperById(id);
+        return findOperation(id);
+    }
+
+    @Override
+    public int getExpressionVersion() {
+        return mVersion;
+    }
+
+    @Override
+    public Set<Actions> getApplicableActions(final List<Operation> selection) {
+        return mClassifier.getApplicableActions(selection);
+    }
+
+    @Override
+    public DryRunResult dryRun(final Actions action, final List<Operation> selection) throws NotApplicableReductionException {
+        //the version is read first: if the expression is replaced meanwhile, the result is stale
+        final int version = mVersion;
+        final Operation expression = mCAS.getOperEq();
+        if (expression == null || selection == null || selection.isEmpty()) {
+            throw new NotApplicableReductionException("No selection");
+        }
+        final List<List<Operation>> paths = new ArrayList<>(selection.size());
+        final boolean repeatedIds = findPaths(expression, selection, paths);
+        final Actions resolvedAction = resolveAction(action, selection, paths);
+
+        final PartialCopy copy = new PartialCopy(getScopePath(resolvedAction, paths, repeatedIds));
+        final List<Operation> copiedSelection = new ArrayList<>(selection.size());
+        for (final Operation op : selection) {
+            copiedSelection.add(copy.getCopy(op));
+        }
+
+        //the scratch CAS only sees the copy, so the current expression is never modified
+        final CASImplementation scratch = new CASImplementation();
+        scratch.mCAS.setOperEq(copy.getRoot());
+        try {
+            scratch.apply(resolvedAction, copiedSelection);
+        } catch (final RuntimeException e) {
+            throw new NotApplicableReductionException("Error on " + resolvedAction + ": " + e);
+        }
+
+        final List<UUID> changedIds = new ArrayList<>();
+        final Operation result = copy.share(scratch.mCAS.getOperEq(), changedIds);
+        return new DryRunResult(resolvedAction, result, changedIds, version);
+    }
+
+    @Override
+    public Operation applyDryRun(final DryRunResult result) throws NotApplicableReductionException {
+        if (result.getExpressionVersion() != mVersion) {
+            throw new NotApplicableReductionException("The expression changed after the dry run");
+        }
+        Log.d(Utils.LOG_TAG, "Applying dry run of " + result.getAction());
+        final Operation oldExpression = mCAS.getOperEq();
+        mCAS.setOperEq(result.getExpression());
+        mVersion++;
+        mLevels.update(oldExpression, result, mVersion);
+        return mCAS.getOperEq();
+    }
+
+    /**
+     * Finds the nodes from the root to each selected element
+     *
+     * @param paths where the paths are added, in the order of the selection
+     * @return true if some id is repeated in the expression
+     * @throws NotApplicableReductionException if an element is not in the expression
+     */
+    private static boolean findPaths(final Operation expression, final List<Operation> selection, final List<List<Operation>> paths) throws NotApplicableReductionException {
+        final Map<Operation, List<Operation>> found = new IdentityHashMap<>();
+        for (final Operation op : selection) {
+            found.put(op, null);
+        }
+        final Map<UUID, Operation> ids = new IdentityHashMap<>();
+        final boolean repeatedIds = findPaths(expression, new ArrayList<Operation>(), found, ids);
+        for (final Operation op : selection) {
+            final List<Operation> path = found.get(op);
+            if (path == null) {
+                throw new NotApplicableReductionException("Selection is not in the expression");
+            }
+            paths.add(path);
+        }
+        return repeatedIds;
+    }
+
+    private static boolean findPaths(final Operation op, final List<Operation> path, final Map<Operation, List<Operation>> found, final Map<UUID, Operation> ids) {
+        boolean repeatedIds = ids.put(op.getId(), op) != null;
+        path.add(op);
+        if (found.containsKey(op) && found.get(op) == null) {
+            found.put(op, new ArrayList<>(path));
+        }
+        for (final Operation arg : op.getArgs()) {
+            repeatedIds |= findPaths(arg, path, found, ids);
+        }
+        path.remove(path.size() - 1);
+        return repeatedIds;
+    }
+
+    /**
+     * A multiple selection is operated by distributing when it's on distributive form, and
+     * extracting the common factor otherwise
+     */
+    private static Actions resolveAction(final Actions action, final List<Operation> selection, final List<List<Operation>> paths) {
+        if (action != Actions.OPERATE || selection.size() == 1) {
+            return action;
+        }
+        return isOnDistributiveForm(selection, paths) ? Actions.DISTRIBUTE : Actions.COMMON_FACTOR;
+    }
+
+    /**
+     * @return true if the first two elements of the selection are on distributive form, in any order
+     */
+    private static boolean isOnDistributiveForm(final List<Operation> selection, final List<List<Operation>> paths) {
+        if (selection.size() < 2) {
+            return false;
+        }
+        final Operation first = selection.get(0);
+        final Operation second = selection.get(1);
+        final Operation parent = getParent(paths.get(0));
+        return isOnDistributiveForm(first, second, parent) || isOnDistributiveForm(second, first, parent);
+    }
+
+    private static Operation getParent(final List<Operation> path) {
+        return path.size() > 1 ? path.get(path.size() - 2) : null;
+    }
+
+    /**
+     * Decides which part of the expression an action may modify
+     *
+     * @return nodes from the root to the root of that part
+     */
+    private static List<Operation> getScopePath(final Actions action, final List<List<Operation>> paths, final boolean repeatedIds) {
+        final List<Operation> first = paths.get(0);
+        //with repeated ids the CAS could find nodes outside the scope
+        if (repeatedIds || action == Actions.CHANGE_SIDE || action == Actions.COMMON_FACTOR
+                || action == Actions.SIMPLIFY) {
+            return first.subList(0, 1);
+        }
+        //operate modifies the selection and its parent, the rest of actions the parent and grandparent
+        final int levelsUp = (action == Actions.OPERATE) ? 0 : 1;
+        int depth = first.size() - levelsUp;
+        for (final List<Operation> path : paths) {
+            depth = Math.min(depth, path.size() - levelsUp);
+            for (int i = 0; i < depth; i++) {
+                if (path.get(i) != first.get(i)) {
+                    depth = i;
+                    break;
+                }
+            }
+        }
+        return first.subList(0, Math.max(1, depth));
+    }
+
+    /**
+     * Applies an action to the current expression
+     */
+    private void apply(final Actions action, final List<Operation> selection) throws NotApplicableReductionException {
+        final Operation first = selection.get(0);
+        switch (action) {
+            case CHANGE_SIDE:
+                changeSide(selection);
+                break;
+            case MOVE_LEFT:
+            case MOVE_RIGHT:
+                commutativeProperty(first, action);
+                break;
+            case ASSOCIATE:
+                if (selection.size() != 2) {
+                    throw new NotApplicableReductionException("Associative property needs two elements");
+                }
+                associativeProperty(first, selection.get(1));
+                break;
+            case DISASSOCIATE:
+                dissociativeProperty(first);
+                break;
+            case OPERATE:
+                operate(first);
+                break;
+            case DISTRIBUTE:
+                if (selection.size() < 2) {
+                    throw new NotApplicableReductionException("Bad distributive form");
+                }
+                if (isOnDistributiveForm(first, selection.get(1))) {
+                    distribute(first, selection.get(1));
+                } else {
+                    distribute(selection.get(1), first);
+                }
+                break;
+            case COMMON_FACTOR:
+                commonFactor(new ArrayList<>(selection));
+                break;
+            case SIMPLIFY:
+                simplify();
+                break;
+            default:
+                throw new NotApplicableReductionException("Unknown action: " + action);
+        }
+    }
+
+    /**
+     * Finds an operation of the current expression through the id index
+     *
+     * @param id id of the operation
+     * @return the operation, null if it's not in the current expression
+     */
+    private Operation findOperation(final UUID id) {
+        return mIndex.get(mCAS.getOperEq(), id);
+    }
+
+    /**
+     * Finds the level of an operation of the current expression. An operation outside of it, like
+     * a copy of one of its nodes, gets the level it would have under the parent with its parent id
+     *
+     * @return the level, null if the operation isn't in the expression nor has a parent there
+     */
+    private NodeLevels.Level getLevel(final Operation exp) {
+        final Operation root = mCAS.getOperEq();
+        final NodeLevels.Level level = mLevels.get(root, mVersion, exp);
+        if (level != null || exp == null) {
+            return level;
+        }
+        final Operation parent = findOperation(exp.getParentID());
+        final NodeLevels.Level parentLevel = mLevels.get(root, mVersion, parent);
+        if (parentLevel == null) {
+            return null;
+        }
+        final int side = (parentLevel.getDepth() > 0) ? parentLevel.getSide()
+                : (AlgebraicEngine.Opers.EQU.toString().equals(root.getOperId()) ? root.getIndexOfArg(exp) : -1);
+        return new NodeLevels.Level(parent, parentLevel.getDepth() + 1, side);
+    }
+
+    @Override
+    public Operation getParent(final Operation exp) {
+        final NodeLevels.Level level = getLevel(exp);
+        return (level != null) ? level.getParent() : null;
+    }
+
+    @Override
+    public int getDepth(final Operation exp) {
+        final NodeLevels.Level level = getLevel(exp);
+        return (level != null) ? level.getDepth() : -1;
+    }
+
+    @Override
+    public int getSideOfEquation(final Operation exp) {
+        final NodeLevels.Level level = getLevel(exp);
+        return (level != null) ? level.getSide() : -1;
     }
 
     @Override
     public String getGrandParentStringOperatorSymbol(final Operation exp) {
-        final Operation parent = mCAS.getOperById(exp.getParentID());
+        final Operation parent = getParent(exp);
         if (parent != null) {
             return getParentStringOperatorSymbol(parent);
         }
@@ -83,7 +347,7 @@ public class CASImplementation implements CASAdapter {
 
     @Override
     public String getParentStringOperatorSymbol(final Operation exp) {
-        final Operation parent = mCAS.getOperById(exp.getParentID());
+        final Operation parent = getParent(exp);
         if (parent != null) {
             return getStringOperatorSymbol(parent);
         }
@@ -92,44 +356,15 @@ public class CASImplementation implements CASAdapter {
 
     @Override
     public String getStringOperatorSymbol(final Operation exp) {
-
-        final AlgebraicEngine.Opers symbol = exp.getRepresentationOperID();
-
-        //when custom operation creation
-        if (exp.isNumber() || exp.isString()) {
-            return null;
-        }
-
-        if (symbol == null) {
-            return DEFAULT_SYMBOL;
-        }
-
-        switch (symbol) {
-            case NUMBER:
-            case VAR:
-                return null;
-            case ZERO:
-                return CASUtils.ZERO;
-            case ONE:
-                return CASUtils.ONE;
-            case MONE:
-                return CASUtils.M_ONE;
-            case SUM:
-            case PROD:
-            case EQU:
-            case MINUS:
-                return symbol.getSymbol();
-            case INV:
-                return CASUtils.INV_OP;
-            default:
-                return null;
-        }
+        return CASUtils.getStringOperatorSymbol(exp);
     }
 
     @Override
     public Operation commutativeProperty(final Operation elementToCommute, final Actions leftOrRight) throws NotApplicableReductionException {
+        //even failed actions may have changed the expression
+        mVersion++;
         final UUID parentId = elementToCommute.getParentID();
-        final Operation parent = mCAS.getOperById(parentId);
+        final Operation parent = findOperation(parentId);
 
         if (parent == null) {
             throw new NotApplicableReductionException("No parent");
@@ -157,7 +392,7 @@ public class CASImplementation implements CASAdapter {
     private Operation applyCommutativeProp(final Operation parent, final int startingPosition, final int finalPosition) throws NotApplicableReductionException {
         final Operation commutedOperation = mCAS.commute(parent, startingPosition, finalPosition);
 
-        final Operation grandParent = mCAS.getOperById(parent.getParentID());
+        final Operation grandParent = findOperation(parent.getParentID());
 
         if (grandParent == null) {
             mCAS.setOperEq(commutedOperation);
@@ -182,28 +417,18 @@ public class CASImplementation implements CASAdapter {
 
     @Override
     public String getSymbolStringExpression(final Operation exp) {
-        final String symbol = getStringOperatorSymbol(exp);
-        if (symbol == null) {
-            if (exp.isNumber()) {
-                return exp.getArgNumber() + "";
-            }
-            if (exp.isString()) {
-                return exp.getArgStr();
-            }
-            return exp.getArg(0).toString();
-        } else {
-            return symbol;
-        }
+        return CASUtils.getSymbolStringExpression(exp);
     }
 
     @Override
     public Operation associativeProperty(final Operation startElement, final Operation endElement) throws NotApplicableReductionException {
-        final Operation parent = mCAS.getOperById(startElement.getParentID());
+        mVersion++;
+        final Operation parent = findOperation(startElement.getParentID());
 
         if (parent == null) {
             throw new NotApplicableReductionException("No parent");
         }
-        if (!parent.equals(mCAS.getOperById(endElement.getParentID()))) {
+        if (!parent.equals(findOperation(endElement.getParentID()))) {
             throw new NotApplicableReductionException("Parent on associative property are not the same");
         }
         final int startIndex = parent.getIndexOfArg(startElement);
@@ -211,7 +436,7 @@ public class CASImplementation implements CASAdapter {
 
         final Operation associatedElement = mCAS.associate(parent, Math.min(startIndex, endIndex), Math.max(startIndex, endIndex));
 
-        final Operation grandParent = mCAS.getOperById(parent.getParentID());
+        final Operation grandParent = findOperation(parent.getParentID());
 
         if (grandParent == null) {
             mCAS.setOperEq(associatedElement);
@@ -225,7 +450,8 @@ public class CASImplementation implements CASAdapter {
 
     @Override
     public Operation dissociativeProperty(final Operation elementToDissociate) throws NotApplicableReductionException {
-        final Operation parent = mCAS.getOperById(elementToDissociate.getParentID());
+        mVersion++;
+        final Operation parent = findOperation(elementToDissociate.getParentID());
 
         if (parent == null) {
             throw new NotApplicableReductionException("No parent");
@@ -236,7 +462,7 @@ public class CASImplementation implements CASAdapter {
 
         final Operation dissociatedElement = mCAS.disociate(parent, parent.getIndexOfArg(elementToDissociate));
 
-        final Operation grandParent = mCAS.getOperById(parent.getParentID());
+        final Operation grandParent = findOperation(parent.getParentID());
 
         if (grandParent == null) {
             mCAS.setOperEq(dissociatedElement);
@@ -251,9 +477,10 @@ public class CASImplementation implements CASAdapter {
 
     @Override
     public Operation operate(final Operation selection) throws NotApplicableReductionException {
+        mVersion++;
 
         final UUID parentId = selection.getParentID();
-        final Operation parent = mCAS.getOperById(parentId);
+        final Operation parent = findOperation(parentId);
         if (parent == null) {
             throw new NotApplicableReductionException("No parent");
         }
@@ -400,132 +627,19 @@ public class CASImplementation implements CASAdapter {
         return oper;
     }
 
+    /**
+     * Operates a sum or product of two numbers, or the inverse or opposite of a number
+     *
+     * @param oper operation to calculate
+     * @return the result, null if there's no rule for it
+     * @throws NotApplicableReductionException
+     */
     private Operation calculateSingleResult(final Operation oper) throws NotApplicableReductionException {
-        final String operId = oper.getOperId();
-
-        final String operArgId0 = (oper.getArg(0) != null) ? oper.getArg(0).getOperId() : null;
-        final String operArgId1 = (oper.getArg(1) != null) ? oper.getArg(1).getOperId() : null;
-
-        return operateMathById(oper, operId, operArgId0, operArgId1);
-    }
-
-    private Operation operateMathById(final Operation oper, final String operId, final String operArgId0, final String operArgId1) throws NotApplicableReductionException {
-        final Operation result;
-        switch (operId) {
-            case "SUM":
-                result = operateSum(oper, operArgId0, operArgId1);
-                break;
-            case "PROD":
-                result = operateProd(oper, operArgId0, operArgId1);
-                break;
-            case "INV":
-                result = operateInverse(oper, operArgId0);
-                break;
-            case "MINUS":
-                result = operateMinus(oper, operArgId0);
-                break;
-            default:
-                return null;
-        }
-        return result;
-    }
-
-    private Operation operateSum(final Operation oper, final String operArgId0, final String operArgId1) throws NotApplicableReductionException {
-        final Operation result;
-
-        //ZERO
-        if (operArgId0.equals("ZERO")) {
-            final Operation commuted = mCAS.commute(oper, 0, 1);
-            result = mCAS.reduction3(commuted);
-        } else if (operArgId1.equals("ZERO")) {
-            result = mCAS.reduction3(oper);
-        }
-        //ONE
-        else if (operArgId0.equals("ONE")) {
-            if (operArgId1.equals("ONE")) {
-                result = mCAS.reduction2(oper);
-            } else {
-                final Operation commuted = mCAS.commute(oper, 0, 1);
-                result = mCAS.reduction1(commuted);
-            }
-        } else if (operArgId1.equals("ONE")) {
-            result = mCAS.reduction1(oper);
-        }
-        //MINUS
-        else if (operArgId0.equals("MONE")) {
-
-            if (operArgId1.equals("MONE")) {
-                result = mCAS.reduction34(oper);
-            } else {
-                final Operation commuted = mCAS.commute(oper, 0, 1);
-                result = mCAS.reduction33(commuted);
-            }
-        } else if (operArgId1.equals("MONE")) {
-            result = mCAS.reduction33(oper);
-        } else {
-            result = mCAS.reduction0(oper);
-        }
-        return result;
-    }
-
-    private Operation operateProd(final Operation oper, final String operArgId0, final String operArgId1) throws NotApplicableReductionException {
-        final Operation result;//ZERO
-        if (operArgId0.equals("ZERO")) {
-            final Operation commuted = mCAS.commute(oper, 0, 1);
-            result = mCAS.reduction6(commuted);
-        } else if (operArgId1.equals("ZERO")) {
-            result = mCAS.reduction6(oper);
-        }
-        //ONE
-        else if (operArgId0.equals("ONE")) {
-            final Operation commuted = mCAS.commute(oper, 0, 1);
-            result = mCAS.reduction7(commuted);
-        } else if (operArgId1.equals("ONE")) {
-            result = mCAS.reduction7(oper);
-        }
-        //MINUS ONE
-        else if (operArgId0.equals("MONE")) {
-            final Operation commuted = mCAS.commute(oper, 0, 1);
-            result = mCAS.reduction35(commuted);
-        } else if (operArgId1.equals("ONE")) {
-            result = mCAS.reduction35(oper);
-        } else {
-            result = mCAS.reduction5(oper);
-        }
-        return result;
-    }
-
-    private Operation operateInverse(final Operation oper, final String operArgId) throws NotApplicableReductionException {
-        final Operation result;//ONE
-        if (operArgId.equals("ONE")) {
-            result = mCAS.reduction24(oper);
-        }
-        //MINUS ONE
-        else if (operArgId.equals("MONE")) {
-            result = mCAS.reduction25(oper);
-        }
-        //ZERO
-        else if (operArgId.equals("ZERO")) {
-            throw new NotApplicableReductionException("INFINITY!! Trying to destroy the world?? ¬¬");
-        } else {
-            result = mCAS.reduction23(oper);
-        }
-        return result;
-    }
-
-    private Operation operateMinus(final Operation oper, final String operArgId) {
-        final Operation result;
-
-        if (operArgId.equals("ONE")) {
-            result = mCAS.reduction12(oper);
-        } else if (operArgId.equals("MONE")) {
-            result = mCAS.reduction13(oper);
-        } else if (operArgId.equals("ZERO")) {
-            result = mCAS.reduction11(oper);
-        } else {
-            result = mCAS.reduction10(oper);
+        final RewriteRule rule = RewriteRules.OPERATE.findFirst(oper, RewriteRule.ROOT);
+        if (rule == null) {
+            return null;
         }
-        return result;
+        return rule.apply(mCAS, oper);
     }
 
     private Operation createNegativeNumber(final float number) {
@@ -537,242 +651,145 @@ public class CASImplementation implements CASAdapter {
     }
 
     @Override
-    public Operation commonFactor(final List<Operation> commonElements) throws NotApplicableReductionException {
-
-        final Operation sumOperation = canApplyCommonFactor(commonElements);
-        if (sumOperation == null) {
-            throw new NotApplicableReductionException("Can't apply common factor");
+    public List<List<Operation>> findCommonFactors(final Operation sum) {
+        if (sum == null || !AlgebraicEngine.Opers.SUM.toString().equals(sum.getOperId())) {
+            return Collections.emptyList();
         }
-
-        return applyCommonFactor(commonElements);
+        return new CommonFactors().find(sum);
     }
 
-    /**
-     * Decides if can extract a common factor
-     *
-     * @param commonElements user selection of multiple terms
-     * @return the sum operation that contains the common terms in their product expressions, null otherwise
-     * @throws NotApplicableReductionException
-     */
-    private Operation canApplyCommonFactor(final List<Operation> commonElements) throws NotApplicableReductionException {
-        if (!allElementsAreTheSame(commonElements)) {
-            return null;
-        }
-
-        final List<Operation> grandpaOrphanList = new ArrayList<>();
-
-        Operation sumOperation = createSumOperation(commonElements, grandpaOrphanList);
-
-        final boolean orphansLeft = !grandpaOrphanList.isEmpty();
-
-        if (sumOperation == null) {
-            if (orphansLeft) {
-                sumOperation = (Operation) mCAS.getOperById(commonElements.get(0).getParentID()).clone();
-            } else {
-                return null; //no grandpa found
-            }
-        }
-
-        if (orphansLeft) {
-            for (final Operation op : grandpaOrphanList) {
-                convertSingleTermsToProduct(commonElements, sumOperation, op);
+    @Override
+    public Operation commonFactor(final List<Operation> commonElements) throws NotApplicableReductionException {
+        mVersion++;
+
+        final Operation sum = findCommonFactorSum(commonElements.get(0));
+        final Operation sumParent = (sum != null) ? findOperation(sum.getParentID()) : null;
+        if (sumParent != null) {
+            final Operation factorized = new CommonFactors().factorize(sum, commonElements);
+            if (factorized != null) {
+                if (factorized != sum) {
+                    sumParent.setArg(sumParent.getIndexOfArg(sum), factorized);
+                }
+                return mCAS.getOperEq();
             }
         }
-
-        //at this point, we can apply common factor to the sum operation
-        return sumOperation;
+        throw new NotApplicableReductionException("Can't apply common factor");
     }
 
-    private Operation createSumOperation(final List<Operation> commonElements, final List<Operation> grandpaOrphanList) throws NotApplicableReductionException {
-        Operation sumOperation = null;
-        for (final Operation commonTerm : commonElements) {
-            final Operation parent = mCAS.getOperById(commonTerm.getParentID());
-            final String parentOperId = parent.getOperId();
-
-            if (parentOperId.equals(AlgebraicEngine.Opers.PROD.toString())) {
-                sumOperation = getSumOperationFromProduct(parent);
-
-            } else if (parentOperId.equals(AlgebraicEngine.Opers.SUM.toString())) {
-
-                assignSumOperation(commonElements, sumOperation, grandpaOrphanList, commonTerm, parent);
-
-            } else {
-                throw new NotApplicableReductionException("Can't apply common factor");
+    /**
+     * @param factor factor of a term of a sum
+     * @return the sum, null if the factor isn't in a term of a sum
+     */
+    private Operation findCommonFactorSum(final Operation factor) {
+        Operation ancestor = findOperation(factor.getParentID());
+        for (int level = 0; level < 3 && ancestor != null; level++) {
+            if (AlgebraicEngine.Opers.SUM.toString().equals(ancestor.getOperId())) {
+                return ancestor;
             }
+            ancestor = findOperation(ancestor.getParentID());
         }
-        return sumOperation;
-    }
-
-    private void assignSumOperation(final List<Operation> commonElements, final Operation sumOperation, final List<Operation> grandpaOrphanList, final Operation commonTerm, final Operation parent) throws NotApplicableReductionException {
-        if (sumOperation == null) {
-            grandpaOrphanList.add(commonTerm);
-        } else if (parent.getId().equals(sumOperation.getId())) {
-            convertSingleTermsToProduct(commonElements, sumOperation, commonTerm);
-        } else {
-            throw new NotApplicableReductionException("Can't apply common factor");
-        }
-    }
-
-    private void convertSingleTermsToProduct(final List<Operation> commonElements, final Operation sumOperation, final Operation op) {
-        //reduction8 => a= 1*a
-        final Operation multipliedByOneOp = mCAS.reduction8(op);
-        commonElements.set(commonElements.indexOf(op), multipliedByOneOp.getArg(1));
-        //replace the element in the sum operation
-        sumOperation.getArgs().set(sumOperation.getIndexOfArg(op), multipliedByOneOp);
-    }
-
-    private Operation getSumOperationFromProduct(final Operation parent) throws NotApplicableReductionException {
-        Operation currentGrandpa = mCAS.getOperById(parent.getParentID());
-        if (currentGrandpa.getOperId().equals(AlgebraicEngine.Opers.MINUS.toString())) {
-            currentGrandpa = convertNegativeNumbersToProducts(parent, currentGrandpa);
-        }
-
-        if (!currentGrandpa.getOperId().equals(AlgebraicEngine.Opers.SUM.toString())) {
-            throw new NotApplicableReductionException("Can't apply common factor");
-        }
-
-        return (Operation) currentGrandpa.clone();
-
+        return null;
     }
 
-    private Operation convertNegativeNumbersToProducts(final Operation parent, Operation currentGrandpa) throws NotApplicableReductionException {
-
-        final Operation greatGrandParent = mCAS.getOperById(currentGrandpa.getParentID());
-        if (!greatGrandParent.getOperId().equals(AlgebraicEngine.Opers.SUM.toString())) {
-            throw new NotApplicableReductionException("Can't apply common factor");
+    @Override
+    public Operation changeSide(final Operation selection) throws NotApplicableReductionException {
+        mVersion++;
+        if (!canChangeSide(selection)) {
+            throw new NotApplicableReductionException("Can't change side of the equation");
         }
+        final Operation changedEq = changeSideOfEquation(selection);
 
-        final Integer indexGrandParent = greatGrandParent.getIndexOfArg(currentGrandpa);
-        Operation negMult = mCAS.reduction46(currentGrandpa);
-        if (parent.getNumberArgs() > 1) {
-            negMult = mCAS.disociate(negMult, 1);
-        }
-        greatGrandParent.setArg(indexGrandParent, negMult);
-        currentGrandpa = mCAS.getOperById(mCAS.getOperById(negMult.getId()).getParentID());
-        return currentGrandpa;
+        return changedEq;
     }
 
-    private boolean allElementsAreTheSame(final List<Operation> operList) {
-        final Operation first = operList.get(0);
-        for (int i = 1; i < operList.size(); i++) {
-            if (!first.genericEquals(operList.get(i))) {
-                return false;
-            }
+    @Override
+    public Operation changeSide(final List<Operation> terms) throws NotApplicableReductionException {
+        if (terms.size() == 1) {
+            return changeSide(terms.get(0));
+        }
+        mVersion++;
+        final Operation side = findOperation(terms.get(0).getParentID());
+        final Operation equation = (side != null) ? findOperation(side.getParentID()) : null;
+        if (equation == null || !AlgebraicEngine.Opers.EQU.toString().equals(equation.getOperId())) {
+            throw new NotApplicableReductionException("Can't change side of the equation");
         }
-        return true;
-    }
-
-    private Operation applyCommonFactor(final List<Operation> commonElements) throws NotApplicableReductionException {
-
-        Operation pivot = mCAS.getOperById(commonElements.get(0).getParentID());
-        Operation grandParent = mCAS.getOperById(pivot.getParentID());
-        final int indexParent = grandParent.getIndexOfArg(pivot);
-        final Operation greatGranParent = mCAS.getOperById(grandParent.getParentID());
-        final int indexGrandParent = greatGranParent.getIndexOfArg(grandParent);
-        final int indexOfCommonElement0 = pivot.getIndexOfArg(commonElements.get(0));
-
-        pivot = movePivotToEnd(pivot, grandParent, indexParent, indexOfCommonElement0);
-        pivot = associatePivot(pivot, grandParent, indexParent);
-
-        //insert the new element in grandpa
-        grandParent = mCAS.commute(grandParent, grandParent.getIndexOfArg(pivot), 0);
-        greatGranParent.setArg(indexGrandParent, grandParent);
-
-        boolean associate = false;
-        for (int i = 1; i < commonElements.size(); i++) {
-
-            Operation nextElement = nextEndElement(commonElements, grandParent, i);
-            nextElement = associateNextElement(grandParent, nextElement);
-
-            //insert the new element in grandpa and associate
-            grandParent = mCAS.commute(grandParent, grandParent.getIndexOfArg(nextElement), 1);
-            greatGranParent.setArg(indexGrandParent, grandParent);
-
-            //checkIf we have to associate
-            if (grandParent.getNumberArgs() > 2 && !grandParent.getOperId().equals(AlgebraicEngine.Opers.EQU.toString())) {
-                grandParent = mCAS.associate(grandParent, 0, 1);
-                greatGranParent.setArg(indexGrandParent, grandParent);
-                associate = true;
-            }
-
-            // decide where to insert the common factor result
-            if (associate) {
-                //reduction19 => commonfactor
-                pivot = mCAS.reduction19(grandParent.getArg(0));
-                grandParent.setArg(0, pivot);
+        final boolean isSum = AlgebraicEngine.Opers.SUM.toString().equals(side.getOperId());
+        if (!isSum && !AlgebraicEngine.Opers.PROD.toString().equals(side.getOperId())) {
+            throw new NotApplicableReductionException("Can't change side, parent not a sum or product");
+        }
+        final Set<Operation> moved = Collections.newSetFromMap(new IdentityHashMap<Operation, Boolean>());
+        moved.addAll(terms);
+
+        //single pass over the side: the terms left stay in order, the moved ones are inverted
+        final int sideIndex = (equation.getArg(0) == side) ? 0 : 1;
+        final Operation otherSide = equation.getArg(1 - sideIndex);
+        final Operation newOtherSide = new Operation(side.getOperId());
+        newOtherSide.addArg(otherSide);
+        final List<Operation> kept = new ArrayList<>(side.getNumberArgs());
+        for (final Operation term : side.getArgs()) {
+            if (!moved.contains(term)) {
+                kept.add(term);
+            } else if (!isSum && AlgebraicEngine.Opers.ZERO.toString().equals(term.getOperId())) {
+                throw new NotApplicableReductionException("Trying to divide by zero");
             } else {
-                pivot = mCAS.reduction19(greatGranParent.getArg(indexGrandParent));
-                greatGranParent.setArg(indexGrandParent, pivot);
+                final Operation inverted = invertTerm(term, isSum);
+                if (inverted.getArg(0) == term) {
+                    term.setParentID(inverted.getId());
+                }
+                newOtherSide.addArg(inverted);
             }
         }
-
-        //if asscoiated, set the argument of the main expression
-        if (associate) {
-            greatGranParent.setArg(indexGrandParent, grandParent);
-        }
-
-        return mCAS.getOperEq();
-    }
-
-    private Operation associateNextElement(final Operation grandParent, Operation nextElement) throws NotApplicableReductionException {
-        if (nextElement.getNumberArgs() > 2) {
-            final int indexOfNextCommonOper = grandParent.getIndexOfArg(nextElement);
-            //associate
-            nextElement = mCAS.associate(nextElement, 0, nextElement.getNumberArgs() - 2);
-            grandParent.setArg(indexOfNextCommonOper, nextElement);
-        }
-        return nextElement;
-    }
-
-    private Operation nextEndElement(final List<Operation> commonElements, final Operation grandParent, final int i) throws NotApplicableReductionException {
-        Operation nextElement = mCAS.getOperById(commonElements.get(i).getParentID());
-        final int indexOfNextCommonElement = nextElement.getIndexOfArg(commonElements.get(i));
-        if (indexOfNextCommonElement != nextElement.getNumberArgs() - 1) {
-            final int indexOfNextCommonOper = grandParent.getIndexOfArg(nextElement);
-            //move to the end
-            nextElement = mCAS.commute(nextElement, indexOfNextCommonElement, nextElement.getNumberArgs() - 1);
-            grandParent.setArg(indexOfNextCommonOper, nextElement);
+        if (side.getNumberArgs() - kept.size() != moved.size()) {
+            throw new NotApplicableReductionException("Can't change side, terms not in the same side");
         }
-        return nextElement;
-    }
 
-    private Operation associatePivot(Operation pivot, final Operation grandParent, final int indexParent) throws NotApplicableReductionException {
-        if (pivot.getNumberArgs() > 2) {
-            //associate
-            pivot = mCAS.associate(pivot, 0, pivot.getNumberArgs() - 2);
-            grandParent.setArg(indexParent, pivot);
+        final Operation newSide;
+        if (kept.isEmpty()) {
+            newSide = new Operation(isSum ? AlgebraicEngine.Opers.ZERO.toString() : AlgebraicEngine.Opers.ONE.toString());
+        } else if (kept.size() == 1) {
+            newSide = kept.get(0);
+        } else {
+            side.getArgs().clear();
+            for (final Operation term : kept) {
+                side.addArg(term);
+            }
+            newSide = side;
         }
-        return pivot;
-    }
+        equation.setArg(sideIndex, newSide);
+        equation.setArg(1 - sideIndex, newOtherSide);
 
-    private Operation movePivotToEnd(Operation pivot, final Operation grandParent, final int indexParent, final int indexOfCommonElement0) throws NotApplicableReductionException {
-        if (indexOfCommonElement0 != pivot.getNumberArgs() - 1) {
-            //move to the end
-            pivot = mCAS.commute(pivot, indexOfCommonElement0, pivot.getNumberArgs() - 1);
-            grandParent.setArg(indexParent, pivot);
+        //only the nodes that got a new parent are updated
+        newSide.setParentID(equation.getId());
+        newOtherSide.setParentID(equation.getId());
+        for (final Operation arg : newOtherSide.getArgs()) {
+            arg.setParentID(newOtherSide.getId());
         }
-        return pivot;
+        return mCAS.getOperEq();
     }
 
-    @Override
-    public Operation changeSide(final Operation selection) throws NotApplicableReductionException {
-        if (!canChangeSide(selection)) {
-            throw new NotApplicableReductionException("Can't change side of the equation");
+    /**
+     * @return the opposite of a term for a sum, or its inverse for a product, without doubling
+     * the operator if the term already has it
+     */
+    private static Operation invertTerm(final Operation term, final boolean isSum) {
+        final String operId = isSum ? AlgebraicEngine.Opers.MINUS.toString() : AlgebraicEngine.Opers.INV.toString();
+        if (operId.equals(term.getOperId()) && term.getArg(0) != null) {
+            return term.getArg(0);
         }
-        final Operation changedEq = changeSideOfEquation(selection);
-
-        return changedEq;
+        final Operation inverted = new Operation(operId);
+        inverted.addArg(term);
+        return inverted;
     }
 
     private boolean canChangeSide(final Operation op) {
-        if (!CASUtils.isOnMainLevelOfEquation(op)) {
+        if (!CASUtils.isOnMainLevelOfEquation(this, op)) {
             return false;
         }
         return true;
     }
 
     private Operation changeSideOfEquation(final Operation elementToChange) throws NotApplicableReductionException {
-        final Operation parent = mCAS.getOperById(elementToChange.getParentID());
+        final Operation parent = findOperation(elementToChange.getParentID());
         final int indexOfElementToChangeInParent = parent.getIndexOfArg(elementToChange);
         final String parentOperdId = parent.getOperId();
 
@@ -780,15 +797,14 @@ public class CASImplementation implements CASAdapter {
             throw new NotApplicableReductionException("Trying to divide by zero");
         }
 
-        if (CASUtils.isMainTermOfEquation(elementToChange)) {
-
-            final boolean isTermNegative = CASUtils.isMinusOperation(elementToChange);
-            final boolean isTermInverse = CASUtils.isInverseOperation(elementToChange);
+        if (CASUtils.isMainTermOfEquation(this, elementToChange)) {
+            //the levels are those of the expression before modifying it
+            final int sideOfEquation = CASUtils.getSideOfEquation(this, elementToChange);
 
             //move to the end
             final int finalPosition = parent.getNumberArgs() - 1;
             final Operation commutedOperation = mCAS.commute(parent, indexOfElementToChangeInParent, finalPosition);
-            final Operation grandParent = mCAS.getOperById(parent.getParentID());//must be the equal
+            final Operation grandParent = findOperation(parent.getParentID());//must be the equal
             final int indexOfParent = grandParent.getIndexOfArg(parent);
             grandParent.setArg(indexOfParent, commutedOperation);
 
@@ -800,80 +816,29 @@ public class CASImplementation implements CASAdapter {
 
             grandParent.setArg(indexOfParent, associatedElement);
 
-            final int sideOfEquation = CASUtils.getSideOfEquation(elementToChange);
-
-            if (parentOperdId.equals(AlgebraicEngine.Opers.SUM.toString())) {
-
-                if (sideOfEquation == 0) {
-                    if (isTermNegative) {
-                        final Operation finalExp = mCAS.reduction38(grandParent);
-                        mCAS.setOperEq(finalExp);
-                        return finalExp;
-                    } else {
-                        final Operation finalExp = mCAS.reduction30(grandParent);
-                        mCAS.setOperEq(finalExp);
-                        return finalExp;
-                    }
-                } else if (sideOfEquation == 1) {
-                    if (isTermNegative) {
-                        final Operation finalExp = mCAS.reduction43(grandParent);
-                        mCAS.setOperEq(finalExp);
-                        return finalExp;
-                    } else {
-                        final Operation finalExp = mCAS.reduction41(grandParent);
-                        mCAS.setOperEq(finalExp);
-                        return finalExp;
-                    }
-                } else {
-                    throw new NotApplicableReductionException("Bad index: not in a side of equation");
-                }
+            if (sideOfEquation != 0 && sideOfEquation != 1) {
+                throw new NotApplicableReductionException("Bad index: not in a side of equation");
+            }
 
-            } else if (parentOperdId.equals(AlgebraicEngine.Opers.PROD.toString())) {
-
-                if (sideOfEquation == 0) {
-                    if (isTermInverse) {
-                        final Operation finalExp = mCAS.reduction44(grandParent);
-                        mCAS.setOperEq(finalExp);
-                        return finalExp;
-                    } else {
-                        final Operation finalExp = mCAS.reduction32(grandParent);
-                        mCAS.setOperEq(finalExp);
-                        return finalExp;
-                    }
-                } else if (sideOfEquation == 1) {
-                    if (isTermInverse) {
-                        final Operation finalExp = mCAS.reduction45(grandParent);
-                        mCAS.setOperEq(finalExp);
-                        return finalExp;
-                    } else {
-                        final Operation finalExp = mCAS.reduction42(grandParent);
-                        mCAS.setOperEq(finalExp);
-                        return finalExp;
-                    }
-                } else {
-                    throw new NotApplicableReductionException("Bad index: not in a side of equation");
-                }
-            } else {
+            //the term is now the last one of a sum or product of one or two elements
+            final int[] focus = {sideOfEquation, associatedElement.getNumberArgs() - 1};
+            final RewriteRule rule = RewriteRules.CHANGE_SIDE.findFirst(grandParent, focus);
+            if (rule == null) {
                 throw new NotApplicableReductionException("Can't change side, parent not a sum or product");
             }
+            final Operation finalExp = rule.apply(mCAS, grandParent);
+            mCAS.setOperEq(finalExp);
+            return finalExp;
 
-        } else if (CASUtils.isSideOfEquation(elementToChange)) {
-
-            Operation finalExp = null;
-            if (indexOfElementToChangeInParent == 0) {
-
-                final Operation changedExpression = mCAS.reduction39(parent);
-                mCAS.setOperEq(changedExpression);
-                finalExp = mCAS.getOperEq();
-
-            } else if (indexOfElementToChangeInParent == 1) {
+        } else if (CASUtils.isSideOfEquation(this, elementToChange)) {
 
-                final Operation changedExpression = mCAS.reduction40(parent);
-                mCAS.setOperEq(changedExpression);
-                finalExp = mCAS.getOperEq();
+            final RewriteRule rule = RewriteRules.CHANGE_SIDE.findFirst(parent,
+                    indexOfElementToChangeInParent == 0 ? RewriteRules.LEFT_SIDE : RewriteRules.RIGHT_SIDE);
+            if (rule == null) {
+                return null;
             }
-
-            return finalExp;
+            mCAS.setOperEq(rule.apply(mCAS, parent));
+            return mCAS.getOperEq();
         }
 
         return null;
@@ -890,13 +855,14 @@ public class CASImplementation implements CASAdapter {
 
     @Override
     public Operation distribute(final Operation elemToDistribute, final Operation sumOperation) throws NotApplicableReductionException {
+        mVersion++;
         if (!isOnDistributiveForm(elemToDistribute, sumOperation)) {
             throw new NotApplicableReductionException("Bad distributive form");
         }
 
-        final Operation parent = mCAS.getOperById(elemToDistribute.getParentID());
+        final Operation parent = findOperation(elemToDistribute.getParentID());
 
-        final Operation grandParent = mCAS.getOperById(parent.getParentID());
+        final Operation grandParent = findOperation(parent.getParentID());
 
         final int indexOfParentInGrandpa = grandParent.getIndexOfArg(parent);
         final int indexOfSingleElem = parent.getIndexOfArg(elemToDistribute);
@@ -917,18 +883,39 @@ public class CASImplementation implements CASAdapter {
         return mCAS.getOperEq();
     }
 
+    @Override
+    public Operation simplify() throws NotApplicableReductionException {
+        mVersion++;
+        //the current expression may be shared with dry runs
+        final Simplifier simplifier = new Simplifier();
+        final Operation simplified = simplifier.simplify(CASUtils.copyOf(mCAS.getOperEq()));
+        if (simplifier.getChanges() == 0) {
+            throw new NotApplicableReductionException("Nothing to simplify");
+        }
+        Log.d(Utils.LOG_TAG, "Simplified with " + simplifier.getChanges() + " changes");
+        simplified.setParentIdsRec(null);
+        mCAS.setOperEq(simplified);
+        return mCAS.getOperEq();
+    }
+
     @Override
     public boolean isOnDistributiveForm(final Operation singleElem, final Operation sumOperation) {
+        return isOnDistributiveForm(singleElem, sumOperation, findOperation(singleElem.getParentID()));
+    }
+
+    /**
+     * @param parent parent of the single element
+     */
+    static boolean isOnDistributiveForm(final Operation singleElem, final Operation sumOperation, final Operation parent) {
         final UUID parentId = singleElem.getParentID();
 
         //same parent
-        if (!parentId.equals(sumOperation.getParentID())) {
+        if (parentId == null || !parentId.equals(sumOperation.getParentID())) {
             return false;
         }
-        final Operation parent = mCAS.getOperById(parentId);
 
         //parent is a product
-        if (!AlgebraicEngine.Opers.PROD.toString().equals(parent.getOperId())) {
+        if (parent == null || !AlgebraicEngine.Opers.PROD.toString().equals(parent.getOperId())) {
             return false;
         }
 
@@ -950,9 +937,28 @@ public class CASImplementation implements CASAdapter {
         return true;
     }
 
+    /**
+     * Sets the sample expressions of all the instances. The list isn't copied, so it can be a view
+     * that reads them as they are used
+     *
+     * @param samples expressions in CAS form, null for the built-in ones
+     */
+    public static void setSampleExpressions(final List<String> samples) {
+        sSamples = samples;
+    }
+
+    /**
+     * @return the built-in sample expressions, in CAS form
+     */
+    public static List<String> getBuiltInSamples() {
+        return Samples.LIST;
+    }
+
     @Override
     public List<String> getSampleExpressions() {
-        return mShowcaseExpressionList;
+        //shared by all the instances
+        final List<String> samples = sSamples;
+        return (samples != null) ? samples : Samples.LIST;
     }
 
     @Override
@@ -984,4 +990,12 @@ public class CASImplementation implements CASAdapter {
 
     }
 
+    /**
+     * Sample expressions, created the first time they are needed instead of when the class is loaded
+     */
+    private static class Samples {
+        private static final List<String> LIST = Collections.unmodifiableList(Arrays.asList(CASUtils.createShortSampleExpression(),
+                CASUtils.createMediumSampleExpression(), CASUtils.createLongSampleExpression(),
+                CASUtils.createUltraLongSampleExpression()));
+    }
 }
@@ -0,0 +1,265 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+/**
+ * Finds and extracts the common factors of the terms of a sum.
+ * <p>
+ * The factors of a term are the arguments of a product, the arguments of a product inside an
+ * opposite, or the term itself. The sum is scanned once, grouping its factors by a structural hash
+ * that is computed bottom-up and memoized, so every node is hashed a single time. Factors with the
+ * same hash are confirmed to be equal before being grouped.
+ * <p>
+ * A factorization is applied with a single rewrite of the sum, which is modified in place. Any
+ * other selection can't be factorized.
+ */
+class CommonFactors {
+    private static final String SUM = AlgebraicEngine.Opers.SUM.toString();
+    private static final String PROD = AlgebraicEngine.Opers.PROD.toString();
+    private static final String MINUS = AlgebraicEngine.Opers.MINUS.toString();
+    private static final String ONE = AlgebraicEngine.Opers.ONE.toString();
+    private static final String MONE = AlgebraicEngine.Opers.MONE.toString();
+
+    private final Map<Operation, Integer> mHashes;
+
+    CommonFactors() {
+        mHashes = new IdentityHashMap<>();
+    }
+
+    /**
+     * @param sum sum whose terms are analyzed
+     * @return every factor found in two terms or more, as the list of its occurrences (one per
+     * term, in the order of the terms). Each list is a valid selection for {@link #factorize}
+     */
+    List<List<Operation>> find(final Operation sum) {
+        mHashes.clear();
+        final List<Group> groups = new ArrayList<>();
+        final Map<Integer, List<Group>> buckets = new HashMap<>();
+        final List<Operation> terms = sum.getArgs();
+        for (int i = 0; i < terms.size(); i++) {
+            for (final Operation factor : getFactors(terms.get(i))) {
+                final Integer hash = hash(factor);
+                List<Group> bucket = buckets.get(hash);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(1);
+                    buckets.put(hash, bucket);
+                }
+                final Group group = findGroup(bucket, factor);
+                if (group == null) {
+                    final Group created = new Group(factor, i);
+                    bucket.add(created);
+                    groups.add(created);
+                } else if (group.mLastTerm != i) {
+                    group.mOccurrences.add(factor);
+                    group.mLastTerm = i;
+                }
+            }
+        }
+
+        final List<List<Operation>> common = new ArrayList<>();
+        for (final Group group : groups) {
+            if (group.mOccurrences.size() > 1) {
+                common.add(Collections.unmodifiableList(group.mOccurrences));
+            }
+        }
+        mHashes.clear();
+        return common;
+    }
+
+    /**
+     * Extracts a common factor: the selected terms are replaced by the product of the sum of what's
+     * left of each one and the factor. The product becomes the first term of the sum, or replaces
+     * it if no other term is left.
+     *
+     * @param sum         sum containing the factors
+     * @param occurrences factors to extract, each one from a different term of the sum
+     * @return the rewritten sum or the product that replaces it, null if the selection isn't a set
+     * of factors of different terms of the sum
+     * @throws NotApplicableReductionException if the factors aren't the same
+     */
+    Operation factorize(final Operation sum, final List<Operation> occurrences) throws NotApplicableReductionException {
+        if (!SUM.equals(sum.getOperId()) || occurrences.size() < 2) {
+            return null;
+        }
+        final Map<Operation, Integer> termOf = new IdentityHashMap<>();
+        final List<Operation> terms = sum.getArgs();
+        for (int i = 0; i < terms.size(); i++) {
+            for (final Operation factor : getFactors(terms.get(i))) {
+                if (!termOf.containsKey(factor)) {
+                    termOf.put(factor, i);
+                }
+            }
+        }
+
+        final boolean[] factorized = new boolean[terms.size()];
+        for (final Operation occurrence : occurrences) {
+            final Integer term = termOf.get(occurrence);
+            if (term == null || factorized[term]) {
+                return null;
+            }
+            factorized[term] = true;
+        }
+        final Operation factor = occurrences.get(0);
+        for (int i = 1; i < occurrences.size(); i++) {
+            if (!structurallyEquals(factor, occurrences.get(i))) {
+                throw new NotApplicableReductionException("Not a common factor: " + occurrences.get(i));
+            }
+        }
+
+        final Operation rests = new Operation(SUM);
+        for (final Operation occurrence : occurrences) {
+            rests.addArg(getRest(terms.get(termOf.get(occurrence)), occurrence));
+        }
+        final Operation product = new Operation(PROD);
+        product.addArg(rests);
+        product.addArg(factor);
+
+        final List<Operation> others = new ArrayList<>();
+        for (int i = 0; i < terms.size(); i++) {
+            if (!factorized[i]) {
+                others.add(terms.get(i));
+            }
+        }
+        if (others.isEmpty()) {
+            product.setParentIdsRec(sum.getParentID());
+            return product;
+        }
+        terms.clear();
+        sum.addArg(product);
+        for (final Operation other : others) {
+            sum.addArg(other);
+        }
+        product.setParentIdsRec(sum.getId());
+        return sum;
+    }
+
+    /**
+     * @return the factors of a term of a sum
+     */
+    static List<Operation> getFactors(final Operation term) {
+        if (PROD.equals(term.getOperId())) {
+            return term.getArgs();
+        }
+        final Operation arg = term.getArg(0);
+        if (MINUS.equals(term.getOperId()) && arg != null && PROD.equals(arg.getOperId())) {
+            return arg.getArgs();
+        }
+        return Collections.singletonList(term);
+    }
+
+    /**
+     * @return what's left of a term after extracting one of its factors
+     */
+    private static Operation getRest(final Operation term, final Operation factor) {
+        if (term == factor) {
+            return new Operation(ONE);
+        }
+        final boolean negative = MINUS.equals(term.getOperId());
+        final Operation product = negative ? term.getArg(0) : term;
+        final Operation rest = new Operation(PROD);
+        if (negative) {
+            rest.addArg(new Operation(MONE));
+        }
+        for (final Operation arg : product.getArgs()) {
+            if (arg != factor) {
+                rest.addArg(arg);
+            }
+        }
+        if (rest.getNumberArgs() == 0) {
+            return new Operation(ONE);
+        } else if (rest.getNumberArgs() == 1) {
+            return rest.getArg(0);
+        }
+        return rest;
+    }
+
+    private Group findGroup(final List<Group> bucket, final Operation factor) {
+        for (final Group group : bucket) {
+            if (structurallyEquals(group.mOccurrences.get(0), factor)) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hash of the structure of an operation: operators, values and arguments, in order
+     */
+    private int hash(final Operation op) {
+        final Integer memo = mHashes.get(op);
+        if (memo != null) {
+            return memo;
+        }
+        int hash = hashValue(op);
+        for (final Operation arg : op.getArgs()) {
+            hash = 31 * hash + hash(arg);
+        }
+        mHashes.put(op, hash);
+        return hash;
+    }
+
+    private static int hashValue(final Operation op) {
+        int hash = (op.getOperId() != null) ? op.getOperId().hashCode() : 0;
+        if (op.getArgNumber() != null) {
+            hash = 31 * hash + op.getArgNumber().hashCode();
+        }
+        if (op.getArgStr() != null) {
+            hash = 31 * hash + op.getArgStr().hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Unlike {@link Operation#genericEquals(Operation)}, every operator and value must be the same
+     */
+    boolean structurallyEquals(final Operation op1, final Operation op2) {
+        if (op1 == op2) {
+            return true;
+        }
+        final Integer hash1 = mHashes.get(op1);
+        final Integer hash2 = mHashes.get(op2);
+        if (hash1 != null && hash2 != null && !hash1.equals(hash2)) {
+            return false;
+        }
+        if (!equalsOrNull(op1.getOperId(), op2.getOperId())
+                || !equalsOrNull(op1.getArgNumber(), op2.getArgNumber())
+                || !equalsOrNull(op1.getArgStr(), op2.getArgStr())) {
+            return false;
+        }
+        final List<Operation> args1 = op1.getArgs();
+        final List<Operation> args2 = op2.getArgs();
+        if (args1.size() != args2.size()) {
+            return false;
+        }
+        for (int i = 0; i < args1.size(); i++) {
+            if (!structurallyEquals(args1.get(i), args2.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsOrNull(final Object o1, final Object o2) {
+        return (o1 == null) ? o2 == null : o1.equals(o2);
+    }
+
+    private static final class Group {
+        private final List<Operation> mOccurrences;
+        private int mLastTerm;
+
+        private Group(final Operation first, final int term) {
+            mOccurrences = new ArrayList<>();
+            mOccurrences.add(first);
+            mLastTerm = term;
+        }
+    }
+}
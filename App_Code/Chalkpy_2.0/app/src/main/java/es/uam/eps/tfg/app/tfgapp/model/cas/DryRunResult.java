@@ -0,0 +1,57 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Result of applying an action to a copy of the current expression, see
+ * {@link CASAdapter#dryRun(CASAdapter.Actions, List)}
+ */
+public final class DryRunResult {
+    private final CASAdapter.Actions mAction;
+    private final Operation mExpression;
+    private final List<UUID> mChangedIds;
+    private final int mExpressionVersion;
+
+    DryRunResult(final CASAdapter.Actions action, final Operation expression, final List<UUID> changedIds, final int expressionVersion) {
+        mAction = action;
+        mExpression = expression;
+        mChangedIds = Collections.unmodifiableList(changedIds);
+        mExpressionVersion = expressionVersion;
+    }
+
+    /**
+     * @return the action applied. A multiple selection operated is resolved to DISTRIBUTE or
+     * COMMON_FACTOR
+     */
+    public CASAdapter.Actions getAction() {
+        return mAction;
+    }
+
+    /**
+     * @return the resulting expression. Subtrees not changed by the action are shared with the
+     * expression it was applied to, so it must not be modified while that one is in use
+     */
+    public Operation getExpression() {
+        return mExpression;
+    }
+
+    /**
+     * @return ids of the nodes of the resulting expression that are new or different from the
+     * original ones, children before their parents
+     */
+    public List<UUID> getChangedIds() {
+        return mChangedIds;
+    }
+
+    /**
+     * @return version of the expression the action was applied to, see
+     * {@link CASAdapter#getExpressionVersion()}
+     */
+    public int getExpressionVersion() {
+        return mExpressionVersion;
+    }
+}
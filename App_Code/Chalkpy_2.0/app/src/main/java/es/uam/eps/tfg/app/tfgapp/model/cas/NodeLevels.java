@@ -0,0 +1,195 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Parent, depth and side of the equation of every node of an expression, so the questions about
+ * the level of a node are answered without looking up its parent and grandparent by id.
+ * <p>
+ * Nodes are found by reference. Actions modify the expression in place, so the table belongs to a
+ * version of the expression and is rebuilt with a single walk the first time it's used after the
+ * version changes. A dry run applied instead only walks the nodes it changed (see
+ * {@link #update(Operation, DryRunResult, int)}).
+ * <p>
+ * Not thread safe: it belongs to a single CAS.
+ */
+class NodeLevels {
+    private final Map<Operation, Level> mLevels;
+    private Operation mRoot;
+    private int mVersion;
+
+    NodeLevels() {
+        mLevels = new IdentityHashMap<>();
+        mRoot = null;
+    }
+
+    /**
+     * @param root    root of the current expression
+     * @param version version of the current expression
+     * @param op      operation to find
+     * @return the level of the operation, null if it's not in the expression
+     */
+    Level get(final Operation root, final int version, final Operation op) {
+        if (root == null || op == null) {
+            return null;
+        }
+        if (root != mRoot || version != mVersion) {
+            rebuild(root, version);
+        }
+        return mLevels.get(op);
+    }
+
+    /**
+     * Moves the table to the result of a dry run of its expression. The nodes of the result that
+     * aren't in the table are the changed ones and get new levels, and so do the subtrees the
+     * action moved to another depth or side. The rest of the table is carried over
+     *
+     * @param oldRoot root of the expression the dry run was applied to
+     * @param result  the dry run
+     * @param version version of the expression after applying it
+     */
+    void update(final Operation oldRoot, final DryRunResult result, final int version) {
+        if (oldRoot == null || oldRoot != mRoot || result.getExpressionVersion() != mVersion) {
+            //not built for that expression, so it's rebuilt when it's used
+            return;
+        }
+        final Operation root = result.getExpression();
+        mRoot = root;
+        mVersion = version;
+        if (mLevels.containsKey(root)) {
+            return;
+        }
+
+        final boolean isEquation = AlgebraicEngine.Opers.EQU.toString().equals(root.getOperId());
+        final Map<Operation, Level> changed = new IdentityHashMap<>();
+        final Set<Operation> kept = Collections.newSetFromMap(new IdentityHashMap<Operation, Boolean>());
+        final Deque<Operation> pending = new ArrayDeque<>();
+        changed.put(root, new Level(null, 0, -1));
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Operation op = pending.pop();
+            final Level level = changed.get(op);
+            final List<Operation> args = op.getArgs();
+            for (int i = 0; i < args.size(); i++) {
+                final Operation arg = args.get(i);
+                if (arg.getOperId() == null || changed.containsKey(arg)) {
+                    continue;
+                }
+                final int side = (level.mDepth == 0) ? (isEquation ? i : -1) : level.mSide;
+                final Level argLevel = new Level(op, level.mDepth + 1, side);
+                final Level oldLevel = mLevels.get(arg);
+                changed.put(arg, argLevel);
+                if (oldLevel == null) {
+                    pending.push(arg);
+                } else {
+                    kept.add(arg);
+                    //an unchanged subtree keeps its levels unless the action moved it
+                    if (oldLevel.mDepth != argLevel.mDepth || oldLevel.mSide != argLevel.mSide) {
+                        walk(arg, argLevel, changed);
+                    }
+                }
+            }
+        }
+
+        //the nodes replaced by the action are above the kept ones
+        pending.push(oldRoot);
+        while (!pending.isEmpty()) {
+            final Operation op = pending.pop();
+            if (kept.contains(op) || mLevels.remove(op) == null) {
+                continue;
+            }
+            for (final Operation arg : op.getArgs()) {
+                pending.push(arg);
+            }
+        }
+        mLevels.putAll(changed);
+    }
+
+    /**
+     * Finds the levels of the nodes below one whose level is known
+     */
+    private static void walk(final Operation top, final Level topLevel, final Map<Operation, Level> levels) {
+        final Deque<Operation> pending = new ArrayDeque<>();
+        pending.push(top);
+        while (!pending.isEmpty()) {
+            final Operation op = pending.pop();
+            final Level level = (op == top) ? topLevel : levels.get(op);
+            for (final Operation arg : op.getArgs()) {
+                //values of numbers and variables aren't nodes of the expression
+                if (arg.getOperId() == null || levels.containsKey(arg)) {
+                    continue;
+                }
+                levels.put(arg, new Level(op, level.mDepth + 1, level.mSide));
+                pending.push(arg);
+            }
+        }
+    }
+
+    private void rebuild(final Operation root, final int version) {
+        mLevels.clear();
+        mRoot = root;
+        mVersion = version;
+        final boolean isEquation = AlgebraicEngine.Opers.EQU.toString().equals(root.getOperId());
+        final Deque<Operation> pending = new ArrayDeque<>();
+        mLevels.put(root, new Level(null, 0, -1));
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Operation op = pending.pop();
+            final Level level = mLevels.get(op);
+            final List<Operation> args = op.getArgs();
+            for (int i = 0; i < args.size(); i++) {
+                final Operation arg = args.get(i);
+                //values of numbers and variables aren't nodes of the expression
+                if (arg.getOperId() == null || mLevels.containsKey(arg)) {
+                    continue;
+                }
+                final int side = (level.mDepth == 0) ? (isEquation ? i : -1) : level.mSide;
+                mLevels.put(arg, new Level(op, level.mDepth + 1, side));
+                pending.push(arg);
+            }
+        }
+    }
+
+    static final class Level {
+        private final Operation mParent;
+        private final int mDepth;
+        private final int mSide;
+
+        Level(final Operation parent, final int depth, final int side) {
+            mParent = parent;
+            mDepth = depth;
+            mSide = side;
+        }
+
+        /**
+         * @return the parent, null for the root
+         */
+        Operation getParent() {
+            return mParent;
+        }
+
+        /**
+         * @return distance to the root, 0 for the root itself
+         */
+        int getDepth() {
+            return mDepth;
+        }
+
+        /**
+         * @return index of the side of the equation containing the node, -1 for the root or if
+         * the expression isn't an equation
+         */
+        int getSide() {
+            return mSide;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+/**
+ * Decides if an operation can be operated without operating it.
+ * <p>
+ * Operating (see {@link CASImplementation#operate(Operation)}) applies the rules of
+ * {@link RewriteRules#OPERATE} bottom-up, and which rule matches and what kind of element it gives
+ * back only depend on the kinds of the arguments: a number, zero, one, minus one, the opposite of
+ * a number or anything else. So the selection is walked once, following the kinds instead of the
+ * values. The kind given by each operator for each kind of arguments is found by applying its rule
+ * to an element of every kind, once for all the instances, so it's the same as operating.
+ */
+final class OperateKinds {
+    private static final int FAIL = -1;
+    private static final int NUMBER = 0;
+    private static final int ZERO = 1;
+    private static final int ONE = 2;
+    private static final int MONE = 3;
+    private static final int NEGATIVE = 4;
+    private static final int OTHER = 5;
+    private static final int KINDS = 6;
+    private static final int UNKNOWN = -2;
+    private static final String ZERO_ID = AlgebraicEngine.Opers.ZERO.toString();
+    private static final String ONE_ID = AlgebraicEngine.Opers.ONE.toString();
+    private static final String MONE_ID = AlgebraicEngine.Opers.MONE.toString();
+    private static final String MINUS_ID = AlgebraicEngine.Opers.MINUS.toString();
+    private static final String SUM_ID = AlgebraicEngine.Opers.SUM.toString();
+
+    //kinds given by each operator: binary ones first, then the unary ones. Guarded by the class
+    private static final Map<String, int[]> RESULTS = new HashMap<>();
+    private static AlgebraicEngine sEngine;
+
+    private OperateKinds() {
+    }
+
+    /**
+     * @param op mathematical operation
+     * @return true if operating it gives a number
+     */
+    static boolean canOperate(final Operation op) {
+        final int kind = evaluate(op);
+        //the number of the result is read from it, so it must be a plain or a negative number
+        return kind == NUMBER || kind == NEGATIVE;
+    }
+
+    /**
+     * Follows CASImplementation.operateRecursive: the operations among the arguments are operated
+     * first and must give numbers, and sums and products of more than two elements are operated
+     * from the left
+     */
+    private static int evaluate(final Operation op) {
+        final List<Operation> args = op.getArgs();
+        final int[] kinds = new int[args.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            final Operation arg = args.get(i);
+            if (CASUtils.isVariable(arg)) {
+                return FAIL;
+            }
+            final int kind = CASUtils.isMathematicalOperation(arg) ? evaluate(arg) : getKind(arg);
+            if (kind < NUMBER || kind > MONE) {
+                return FAIL;
+            }
+            kinds[i] = kind;
+        }
+        final String operId = op.getOperId();
+        if (kinds.length > 2 && !CASUtils.isInverseOperation(op)) {
+            int pivot = kinds[0];
+            for (int i = 1; i < kinds.length - 1 && pivot != FAIL; i++) {
+                pivot = getResult(operId, pivot, kinds[i]);
+            }
+            return (pivot == FAIL) ? FAIL : getResult(operId, pivot, kinds[kinds.length - 1]);
+        }
+        if (kinds.length == 2) {
+            return getResult(operId, kinds[0], kinds[1]);
+        }
+        if (kinds.length == 1) {
+            return getResult(operId, kinds[0], UNKNOWN);
+        }
+        return FAIL;
+    }
+
+    private static int getKind(final Operation op) {
+        final String operId = op.getOperId();
+        if (ZERO_ID.equals(operId)) {
+            return ZERO;
+        }
+        if (ONE_ID.equals(operId)) {
+            return ONE;
+        }
+        if (MONE_ID.equals(operId)) {
+            return MONE;
+        }
+        if (CASUtils.isNumber(op)) {
+            return NUMBER;
+        }
+        if (MINUS_ID.equals(operId) && op.getNumberArgs() == 1 && getKind(op.getArg(0)) == NUMBER) {
+            return NEGATIVE;
+        }
+        return OTHER;
+    }
+
+    /**
+     * @param second kind of the second argument, UNKNOWN for unary operators
+     * @return kind given by the operator, FAIL if it can't be operated
+     */
+    private static synchronized int getResult(final String operId, final int first, final int second) {
+        int[] results = RESULTS.get(operId);
+        if (results == null) {
+            results = new int[KINDS * KINDS + KINDS];
+            Arrays.fill(results, UNKNOWN);
+            RESULTS.put(operId, results);
+        }
+        final int index = (second == UNKNOWN) ? KINDS * KINDS + first : first * KINDS + second;
+        if (results[index] == UNKNOWN) {
+            results[index] = apply(operId, first, second);
+        }
+        return results[index];
+    }
+
+    private static int apply(final String operId, final int first, final int second) {
+        final Operation op = new Operation(operId);
+        op.addArg(createExample(first));
+        if (second != UNKNOWN) {
+            op.addArg(createExample(second));
+        }
+        final RewriteRule rule = RewriteRules.OPERATE.findFirst(op, RewriteRule.ROOT);
+        if (rule == null) {
+            return FAIL;
+        }
+        if (sEngine == null) {
+            sEngine = new AlgebraicEngine();
+        }
+        try {
+            final Operation result = rule.apply(sEngine, op);
+            return (result == null) ? FAIL : getKind(result);
+        } catch (final Exception e) {
+            return FAIL;
+        }
+    }
+
+    /**
+     * @return a new element of a kind
+     */
+    private static Operation createExample(final int kind) {
+        switch (kind) {
+            case ZERO:
+                return new Operation(ZERO_ID);
+            case ONE:
+                return new Operation(ONE_ID);
+            case MONE:
+                return new Operation(MONE_ID);
+            case NEGATIVE:
+                final Operation negative = new Operation(MINUS_ID);
+                negative.addArg(createNumber());
+                return negative;
+            case OTHER:
+                final Operation other = new Operation(SUM_ID);
+                other.addArg(createNumber());
+                other.addArg(createExample(NEGATIVE));
+                return other;
+            default:
+                return createNumber();
+        }
+    }
+
+    private static Operation createNumber() {
+        final Operation number = new Operation(AlgebraicEngine.Opers.NUMBER.toString());
+        number.addArg(new Operation(2f));
+        return number;
+    }
+}
@@ -0,0 +1,96 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Index from ids to the operations of an expression, so they can be found without walking the
+ * whole tree.
+ * <p>
+ * Actions modify the expression in place, so an entry is only returned after checking that it's
+ * still attached to the root through its parents. If the check fails, or the id is missing, the
+ * index is rebuilt. Ids are compared by reference, as the CAS does.
+ * <p>
+ * Not thread safe: it belongs to a single CAS.
+ */
+class OperationIndex {
+    private final Map<UUID, Operation> mOperations;
+    private Operation mRoot;
+
+    OperationIndex() {
+        mOperations = new IdentityHashMap<>();
+        mRoot = null;
+    }
+
+    /**
+     * @param root root of the current expression
+     * @param id   id of the operation to find
+     * @return the operation of the expression with the given id, null if there is no one
+     */
+    Operation get(final Operation root, final UUID id) {
+        if (root == null || id == null) {
+            return null;
+        }
+        if (root == mRoot) {
+            final Operation indexed = mOperations.get(id);
+            if (indexed != null && isAttached(root, indexed)) {
+                return indexed;
+            }
+        }
+        rebuild(root);
+        return mOperations.get(id);
+    }
+
+    private boolean isAttached(final Operation root, final Operation op) {
+        Operation child = op;
+        //the number of steps is bounded, in case the parent ids form a cycle
+        for (int steps = 0; steps <= mOperations.size(); steps++) {
+            if (child == root) {
+                return true;
+            }
+            final Operation parent = mOperations.get(child.getParentID());
+            if (parent == null || !containsArg(parent, child)) {
+                return false;
+            }
+            child = parent;
+        }
+        return false;
+    }
+
+    private static boolean containsArg(final Operation parent, final Operation child) {
+        final List<Operation> args = parent.getArgs();
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i) == child) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indexes the expression in pre-order. If several operations share an id (clones), the first
+     * one is kept, the same one the CAS would find
+     */
+    private void rebuild(final Operation root) {
+        mOperations.clear();
+        mRoot = root;
+        final Deque<Operation> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Operation op = pending.pop();
+            if (!mOperations.containsKey(op.getId())) {
+                mOperations.put(op.getId(), op);
+            }
+            final List<Operation> args = op.getArgs();
+            for (int i = args.size() - 1; i >= 0; i--) {
+                pending.push(args.get(i));
+            }
+        }
+    }
+}
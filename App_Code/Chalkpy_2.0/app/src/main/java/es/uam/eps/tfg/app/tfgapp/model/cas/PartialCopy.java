@@ -0,0 +1,139 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Copy of an expression where an action can be applied without touching the original.
+ * <p>
+ * Only the part the action may modify (the scope) is copied completely. Its ancestors are copied
+ * without their other arguments, which stay shared with the original. Once the action is applied,
+ * {@link #share(Operation, List)} replaces the copied nodes that didn't change by the original
+ * ones, so the result only owns the changed nodes.
+ * <p>
+ * Copies keep the ids of the original nodes, so the CAS finds and compares them the same way.
+ */
+class PartialCopy {
+    private final Map<Operation, Operation> mCopies;
+    private final Map<Operation, Operation> mOriginals;
+    private final Set<Operation> mShared;
+    private final Operation mRoot;
+
+    /**
+     * @param scopePath nodes from the root of the expression to the root of the scope
+     */
+    PartialCopy(final List<Operation> scopePath) {
+        mCopies = new IdentityHashMap<>();
+        mOriginals = new IdentityHashMap<>();
+        mShared = Collections.newSetFromMap(new IdentityHashMap<Operation, Boolean>());
+        mRoot = copyPath(scopePath, 0);
+    }
+
+    /**
+     * @return root of the copy
+     */
+    Operation getRoot() {
+        return mRoot;
+    }
+
+    /**
+     * @param original node of the original expression
+     * @return its copy, null if it's shared or not in the expression
+     */
+    Operation getCopy(final Operation original) {
+        return mCopies.get(original);
+    }
+
+    /**
+     * Replaces the unchanged nodes of an expression obtained from the copy by the original ones
+     *
+     * @param op         node of the expression obtained from the copy
+     * @param changedIds where the ids of the changed nodes are added
+     * @return the node to use in place of the given one
+     */
+    Operation share(final Operation op, final List<UUID> changedIds) {
+        if (mShared.contains(op)) {
+            return op;
+        }
+        final Operation original = mOriginals.get(op);
+        boolean unchanged = original != null && isSameNode(op, original);
+        for (int i = 0; i < op.getArgs().size(); i++) {
+            final Operation arg = op.getArg(i);
+            final Operation sharedArg = share(arg, changedIds);
+            if (sharedArg != arg) {
+                op.setArg(i, sharedArg);
+            }
+            if (unchanged && sharedArg != original.getArg(i)) {
+                unchanged = false;
+            }
+        }
+        if (unchanged) {
+            return original;
+        }
+        //values of numbers and variables aren't nodes of the expression
+        if (op.getOperId() != null) {
+            changedIds.add(op.getId());
+        }
+        return op;
+    }
+
+    private Operation copyPath(final List<Operation> scopePath, final int depth) {
+        final Operation original = scopePath.get(depth);
+        if (depth == scopePath.size() - 1) {
+            return copyScope(original);
+        }
+        final Operation next = scopePath.get(depth + 1);
+        final Operation copy = copyNode(original);
+        for (final Operation arg : original.getArgs()) {
+            if (arg == next) {
+                copy.addArg(copyPath(scopePath, depth + 1));
+            } else {
+                mShared.add(arg);
+                copy.addArg(arg);
+            }
+        }
+        return copy;
+    }
+
+    private Operation copyScope(final Operation original) {
+        final Operation copy = copyNode(original);
+        for (final Operation arg : original.getArgs()) {
+            copy.addArg(copyScope(arg));
+        }
+        return copy;
+    }
+
+    private Operation copyNode(final Operation original) {
+        final Operation copy = new Operation(original.getOperId());
+        if (original.getArgNumber() != null) {
+            copy.setArgNumber(original.getArgNumber());
+        }
+        if (original.getArgStr() != null) {
+            copy.setArgStr(original.getArgStr());
+        }
+        copy.setId(original.getId());
+        copy.setParentID(original.getParentID());
+        mCopies.put(original, copy);
+        mOriginals.put(copy, original);
+        return copy;
+    }
+
+    private static boolean isSameNode(final Operation op, final Operation original) {
+        return op.getId() == original.getId()
+                && op.getParentID() == original.getParentID()
+                && equal(op.getOperId(), original.getOperId())
+                && equal(op.getArgNumber(), original.getArgNumber())
+                && equal(op.getArgStr(), original.getArgStr())
+                && op.getArgs().size() == original.getArgs().size();
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
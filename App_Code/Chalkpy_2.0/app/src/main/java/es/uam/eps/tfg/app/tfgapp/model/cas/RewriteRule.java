@@ -0,0 +1,299 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+/**
+ * Rule of the CAS: a pattern of the expressions it applies to and the reduction of the algebraic
+ * engine that rewrites them.
+ * <p>
+ * Patterns are written like the operators of the CAS: {@code SUM(ZERO,*)} is a sum of two elements
+ * whose first one is zero. An operator without arguments ({@code ZERO}) matches it whatever its
+ * arguments are, and {@code *} matches any element. The rule may be applied to one of the
+ * elements of the matched expression (the focus), given by its path of argument indexes.
+ */
+final class RewriteRule {
+    /**
+     * Focus of the rules applied to the matched expression itself
+     */
+    static final int[] ROOT = new int[0];
+
+    static final String ANY = "*";
+
+    /**
+     * Last reduction of the algebraic engine, see {@link #reduce(AlgebraicEngine, int, Operation)}
+     */
+    private static final int LAST_REDUCTION = 46;
+    private static final int NO_REDUCTION = -1;
+
+    private final String mName;
+    private final String mPattern;
+    private final List<String> mSymbols;
+    private final int[] mFocus;
+    private final boolean mCommuted;
+    private final int mReduction;
+    private final String mFailure;
+    private final String mDescription;
+    private int mPriority;
+
+    private RewriteRule(final String name, final String pattern, final int[] focus, final boolean commuted,
+                        final int reduction, final String failure, final String description) {
+        mName = name;
+        mPattern = pattern;
+        mSymbols = parse(pattern);
+        mFocus = focus;
+        mCommuted = commuted;
+        mReduction = reduction;
+        mFailure = failure;
+        mDescription = description;
+    }
+
+    /**
+     * @param pattern     expressions the rule applies to
+     * @param focus       path of the element the rule is applied to
+     * @param reduction   number of the reduction of the algebraic engine
+     * @param description the rewriting, for humans
+     * @return the rule
+     */
+    static RewriteRule reduction(final String pattern, final int[] focus, final int reduction, final String description) {
+        return new RewriteRule("r" + reduction, pattern, focus, false, checkReduction(reduction), null, description);
+    }
+
+    /**
+     * Rule for binary expressions whose reduction expects their arguments the other way round
+     *
+     * @param pattern     expressions the rule applies to
+     * @param reduction   number of the reduction of the algebraic engine
+     * @param description the rewriting, for humans
+     * @return the rule
+     */
+    static RewriteRule commutedReduction(final String pattern, final int reduction, final String description) {
+        return new RewriteRule("r" + reduction + "'", pattern, ROOT, true, checkReduction(reduction), null, description);
+    }
+
+    /**
+     * Rule that forbids rewriting the expressions it matches
+     *
+     * @param pattern expressions the rule applies to
+     * @param failure why they can't be rewritten
+     * @return the rule
+     */
+    static RewriteRule failure(final String pattern, final String failure) {
+        return new RewriteRule("fail", pattern, ROOT, false, NO_REDUCTION, failure, failure);
+    }
+
+    /**
+     * @return name of the rule, the reduction it applies (with ' if the arguments are commuted
+     * before)
+     */
+    String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the rewriting, for humans
+     */
+    String getDescription() {
+        return mDescription;
+    }
+
+    int[] getFocus() {
+        return mFocus;
+    }
+
+    /**
+     * @return symbols of the pattern in preorder
+     */
+    List<String> getSymbols() {
+        return mSymbols;
+    }
+
+    /**
+     * @return position of the rule in the catalogue. When several rules match, the lowest one is
+     * applied
+     */
+    int getPriority() {
+        return mPriority;
+    }
+
+    void setPriority(final int priority) {
+        mPriority = priority;
+    }
+
+    /**
+     * Rewrites an expression matched by the pattern
+     *
+     * @param CAS algebraic engine to use
+     * @param op  matched expression
+     * @return the rewritten expression
+     * @throws NotApplicableReductionException if the expression can't be rewritten
+     */
+    Operation apply(final AlgebraicEngine CAS, final Operation op) throws NotApplicableReductionException {
+        if (mReduction == NO_REDUCTION) {
+            throw new NotApplicableReductionException(mFailure);
+        }
+        final Operation arg = mCommuted ? CAS.commute(op, 0, 1) : op;
+        return reduce(CAS, mReduction, arg);
+    }
+
+    @Override
+    public String toString() {
+        return mName + " " + mPattern + ": " + mDescription;
+    }
+
+    private static int checkReduction(final int reduction) {
+        if (reduction < 0 || reduction > LAST_REDUCTION) {
+            throw new IllegalArgumentException("No reduction " + reduction);
+        }
+        return reduction;
+    }
+
+    /**
+     * Calls a reduction of the algebraic engine by its number. They are called directly, so a
+     * reduction missing from the engine doesn't compile
+     */
+    private static Operation reduce(final AlgebraicEngine CAS, final int reduction, final Operation op) {
+        switch (reduction) {
+            case 0:
+                return CAS.reduction0(op);
+            case 1:
+                return CAS.reduction1(op);
+            case 2:
+                return CAS.reduction2(op);
+            case 3:
+                return CAS.reduction3(op);
+            case 4:
+                return CAS.reduction4(op);
+            case 5:
+                return CAS.reduction5(op);
+            case 6:
+                return CAS.reduction6(op);
+            case 7:
+                return CAS.reduction7(op);
+            case 8:
+                return CAS.reduction8(op);
+            case 9:
+                return CAS.reduction9(op);
+            case 10:
+                return CAS.reduction10(op);
+            case 11:
+                return CAS.reduction11(op);
+            case 12:
+                return CAS.reduction12(op);
+            case 13:
+                return CAS.reduction13(op);
+            case 14:
+                return CAS.reduction14(op);
+            case 15:
+                return CAS.reduction15(op);
+            case 16:
+                return CAS.reduction16(op);
+            case 17:
+                return CAS.reduction17(op);
+            case 18:
+                return CAS.reduction18(op);
+            case 19:
+                return CAS.reduction19(op);
+            case 20:
+                return CAS.reduction20(op);
+            case 21:
+                return CAS.reduction21(op);
+            case 22:
+                return CAS.reduction22(op);
+            case 23:
+                return CAS.reduction23(op);
+            case 24:
+                return CAS.reduction24(op);
+            case 25:
+                return CAS.reduction25(op);
+            case 26:
+                return CAS.reduction26(op);
+            case 27:
+                return CAS.reduction27(op);
+            case 28:
+                return CAS.reduction28(op);
+            case 29:
+                return CAS.reduction29(op);
+            case 30:
+                return CAS.reduction30(op);
+            case 31:
+                return CAS.reduction31(op);
+            case 32:
+                return CAS.reduction32(op);
+            case 33:
+                return CAS.reduction33(op);
+            case 34:
+                return CAS.reduction34(op);
+            case 35:
+                return CAS.reduction35(op);
+            case 36:
+                return CAS.reduction36(op);
+            case 37:
+                return CAS.reduction37(op);
+            case 38:
+                return CAS.reduction38(op);
+            case 39:
+                return CAS.reduction39(op);
+            case 40:
+                return CAS.reduction40(op);
+            case 41:
+                return CAS.reduction41(op);
+            case 42:
+                return CAS.reduction42(op);
+            case 43:
+                return CAS.reduction43(op);
+            case 44:
+                return CAS.reduction44(op);
+            case 45:
+                return CAS.reduction45(op);
+            case 46:
+                return CAS.reduction46(op);
+            default:
+                throw new IllegalArgumentException("No reduction " + reduction);
+        }
+    }
+
+    /**
+     * Symbols of a pattern in preorder: {@link #ANY}, an operator with any arguments ("ZERO") or an
+     * operator and its number of arguments ("SUM/2"), followed by the arguments
+     */
+    private static List<String> parse(final String pattern) {
+        final List<String> symbols = new ArrayList<>();
+        final int end = parse(pattern.replace(" ", ""), 0, symbols);
+        if (end != pattern.replace(" ", "").length()) {
+            throw new IllegalArgumentException("Bad pattern: " + pattern);
+        }
+        return symbols;
+    }
+
+    private static int parse(final String pattern, final int start, final List<String> symbols) {
+        int pos = start;
+        while (pos < pattern.length() && "(),".indexOf(pattern.charAt(pos)) < 0) {
+            pos++;
+        }
+        final String operator = pattern.substring(start, pos);
+        if (operator.isEmpty()) {
+            throw new IllegalArgumentException("Bad pattern: " + pattern);
+        }
+        if (operator.equals(ANY) || pos == pattern.length() || pattern.charAt(pos) != '(') {
+            symbols.add(operator);
+            return pos;
+        }
+        final int index = symbols.size();
+        symbols.add(null);
+        int args = 0;
+        do {
+            pos = parse(pattern, pos + 1, symbols);
+            args++;
+        } while (pos < pattern.length() && pattern.charAt(pos) == ',');
+        if (pos == pattern.length() || pattern.charAt(pos) != ')') {
+            throw new IllegalArgumentException("Bad pattern: " + pattern);
+        }
+        symbols.set(index, operator + "/" + args);
+        return pos + 1;
+    }
+}
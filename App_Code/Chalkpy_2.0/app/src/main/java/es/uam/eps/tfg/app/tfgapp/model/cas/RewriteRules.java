@@ -0,0 +1,273 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Catalogue of the rules of the CAS, indexed by their patterns in a discrimination tree: a trie
+ * over the symbols of the patterns in preorder. All the rules matching an expression are found
+ * with a single walk of the tree, following at every step the branches of the element found and
+ * the wildcard ones.
+ */
+final class RewriteRules {
+    /**
+     * Rules of the operations with numbers, for sums and products of two elements and inverses and
+     * opposites of one
+     */
+    static final RewriteRules OPERATE = new RewriteRules(Arrays.asList(
+            RewriteRule.commutedReduction("SUM(ZERO,*)", 3, "0 + a -> a"),
+            RewriteRule.reduction("SUM(*,ZERO)", RewriteRule.ROOT, 3, "a + 0 -> a"),
+            RewriteRule.reduction("SUM(ONE,ONE)", RewriteRule.ROOT, 2, "1 + 1 -> 2"),
+            RewriteRule.commutedReduction("SUM(ONE,*)", 1, "1 + n -> n+1"),
+            RewriteRule.reduction("SUM(*,ONE)", RewriteRule.ROOT, 1, "n + 1 -> n+1"),
+            RewriteRule.reduction("SUM(MONE,MONE)", RewriteRule.ROOT, 34, "-1 + -1 -> -2"),
+            RewriteRule.commutedReduction("SUM(MONE,*)", 33, "-1 + n -> n-1"),
+            RewriteRule.reduction("SUM(*,MONE)", RewriteRule.ROOT, 33, "n + -1 -> n-1"),
+            RewriteRule.reduction("SUM(*,*)", RewriteRule.ROOT, 0, "n + m -> n+m"),
+            RewriteRule.commutedReduction("PROD(ZERO,*)", 6, "0 * a -> 0"),
+            RewriteRule.reduction("PROD(*,ZERO)", RewriteRule.ROOT, 6, "a * 0 -> 0"),
+            RewriteRule.commutedReduction("PROD(ONE,*)", 7, "1 * a -> a"),
+            RewriteRule.reduction("PROD(*,ONE)", RewriteRule.ROOT, 7, "a * 1 -> a"),
+            //n * -1 isn't a rule: it has always been operated as any other product
+            RewriteRule.commutedReduction("PROD(MONE,*)", 35, "-1 * a -> -a"),
+            RewriteRule.reduction("PROD(*,*)", RewriteRule.ROOT, 5, "n * m -> n*m"),
+            RewriteRule.reduction("INV(ONE)", RewriteRule.ROOT, 24, "1/1 -> 1"),
+            RewriteRule.reduction("INV(MONE)", RewriteRule.ROOT, 25, "1/-1 -> -1"),
+            RewriteRule.failure("INV(ZERO)", "INFINITY!! Trying to destroy the world?? ¬¬"),
+            RewriteRule.reduction("INV(*)", RewriteRule.ROOT, 23, "1/n -> 1/n"),
+            RewriteRule.reduction("MINUS(ONE)", RewriteRule.ROOT, 12, "-(1) -> -1"),
+            RewriteRule.reduction("MINUS(MONE)", RewriteRule.ROOT, 13, "-(-1) -> 1"),
+            RewriteRule.reduction("MINUS(ZERO)", RewriteRule.ROOT, 11, "-0 -> 0"),
+            RewriteRule.reduction("MINUS(*)", RewriteRule.ROOT, 10, "-(n) -> -n")));
+
+    /**
+     * Focus of the rules that move the last term of a side of an equation to the other one, when
+     * the side has two terms or just one
+     */
+    static final int[] LEFT_TERM = {0, 1};
+    static final int[] RIGHT_TERM = {1, 1};
+    static final int[] LEFT_SINGLE_TERM = {0, 0};
+    static final int[] RIGHT_SINGLE_TERM = {1, 0};
+    /**
+     * Focus of the rules that move a whole side of an equation to the other one
+     */
+    static final int[] LEFT_SIDE = {0};
+    static final int[] RIGHT_SIDE = {1};
+
+    /**
+     * Rules for changing elements of side in an equation. The terms must be the last element of a
+     * sum or product of one or two elements
+     */
+    static final RewriteRules CHANGE_SIDE = new RewriteRules(Arrays.asList(
+            RewriteRule.reduction("EQU(SUM(*,MINUS),*)", LEFT_TERM, 38, "a + -b = c -> a = c + b"),
+            RewriteRule.reduction("EQU(SUM(*,*),*)", LEFT_TERM, 30, "a + b = c -> a = c + -b"),
+            RewriteRule.reduction("EQU(*,SUM(*,MINUS))", RIGHT_TERM, 43, "c = a + -b -> c + b = a"),
+            RewriteRule.reduction("EQU(*,SUM(*,*))", RIGHT_TERM, 41, "c = a + b -> c + -b = a"),
+            RewriteRule.reduction("EQU(PROD(*,INV),*)", LEFT_TERM, 44, "a * 1/b = c -> a = c * b"),
+            RewriteRule.reduction("EQU(PROD(*,*),*)", LEFT_TERM, 32, "a * b = c -> a = c * 1/b"),
+            RewriteRule.reduction("EQU(*,PROD(*,INV))", RIGHT_TERM, 45, "c = a * 1/b -> c * b = a"),
+            RewriteRule.reduction("EQU(*,PROD(*,*))", RIGHT_TERM, 42, "c = a * b -> c * 1/b = a"),
+            RewriteRule.reduction("EQU(SUM(MINUS),*)", LEFT_SINGLE_TERM, 38, "-b = c, as a + -b = c"),
+            RewriteRule.reduction("EQU(SUM(*),*)", LEFT_SINGLE_TERM, 30, "b = c, as a + b = c"),
+            RewriteRule.reduction("EQU(*,SUM(MINUS))", RIGHT_SINGLE_TERM, 43, "c = -b, as c = a + -b"),
+            RewriteRule.reduction("EQU(*,SUM(*))", RIGHT_SINGLE_TERM, 41, "c = b, as c = a + b"),
+            RewriteRule.reduction("EQU(PROD(INV),*)", LEFT_SINGLE_TERM, 44, "1/b = c, as a * 1/b = c"),
+            RewriteRule.reduction("EQU(PROD(*),*)", LEFT_SINGLE_TERM, 32, "b = c, as a * b = c"),
+            RewriteRule.reduction("EQU(*,PROD(INV))", RIGHT_SINGLE_TERM, 45, "c = 1/b, as c = a * 1/b"),
+            RewriteRule.reduction("EQU(*,PROD(*))", RIGHT_SINGLE_TERM, 42, "c = b, as c = a * b"),
+            RewriteRule.reduction("EQU(*,*)", LEFT_SIDE, 39, "a = b -> 0 = b + -a"),
+            RewriteRule.reduction("EQU(*,*)", RIGHT_SIDE, 40, "a = b -> a + -b = 0")));
+
+    private static final Comparator<RewriteRule> BY_PRIORITY = new Comparator<RewriteRule>() {
+        @Override
+        public int compare(final RewriteRule r1, final RewriteRule r2) {
+            return r1.getPriority() - r2.getPriority();
+        }
+    };
+
+    private final List<RewriteRule> mRules;
+    //one tree for each focus of the rules
+    private final List<int[]> mFoci;
+    private final List<Node> mRoots;
+    //room for the elements still to match: a pattern adds its arguments to them, minus the element
+    private final int mMaxPending;
+
+    /**
+     * @param rules rules of the catalogue, by priority
+     */
+    RewriteRules(final List<RewriteRule> rules) {
+        mRules = Collections.unmodifiableList(new ArrayList<>(rules));
+        mFoci = new ArrayList<>();
+        mRoots = new ArrayList<>();
+        int maxPending = 1;
+        for (int i = 0; i < mRules.size(); i++) {
+            final RewriteRule rule = mRules.get(i);
+            rule.setPriority(i);
+            Node node = getRoot(rule.getFocus());
+            if (node == null) {
+                node = new Node();
+                mFoci.add(rule.getFocus());
+                mRoots.add(node);
+            }
+            node.mFirstPriority = Math.min(node.mFirstPriority, i);
+            for (final String symbol : rule.getSymbols()) {
+                node = node.getOrCreateChild(symbol);
+                node.mFirstPriority = Math.min(node.mFirstPriority, i);
+            }
+            node.mRules.add(rule);
+            maxPending = Math.max(maxPending, rule.getSymbols().size());
+        }
+        mMaxPending = maxPending;
+    }
+
+    /**
+     * @return every rule of the catalogue, by priority
+     */
+    List<RewriteRule> getRules() {
+        return mRules;
+    }
+
+    /**
+     * @param op    expression to rewrite
+     * @param focus path of the element of the expression the rule must be applied to
+     * @return the rules matching the expression, by priority
+     */
+    List<RewriteRule> match(final Operation op, final int[] focus) {
+        final List<RewriteRule> matches = new ArrayList<>();
+        final Node root = getRoot(focus);
+        if (root != null) {
+            final Operation[] pending = new Operation[mMaxPending];
+            pending[0] = op;
+            find(root, pending, 1, null, matches);
+            Collections.sort(matches, BY_PRIORITY);
+        }
+        return matches;
+    }
+
+    /**
+     * Like {@link #match(Operation, int[])}, leaving the branches of the tree that only lead to
+     * rules after the best one found
+     *
+     * @param op    expression to rewrite
+     * @param focus path of the element of the expression the rule must be applied to
+     * @return the matching rule with the highest priority, null if there's none
+     */
+    RewriteRule findFirst(final Operation op, final int[] focus) {
+        final Node root = getRoot(focus);
+        if (root == null) {
+            return null;
+        }
+        final Operation[] pending = new Operation[mMaxPending];
+        pending[0] = op;
+        return find(root, pending, 1, null, null);
+    }
+
+    private Node getRoot(final int[] focus) {
+        for (int i = 0; i < mFoci.size(); i++) {
+            if (Arrays.equals(mFoci.get(i), focus)) {
+                return mRoots.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Follows every branch of the tree matching the next pending element. The pending elements are
+     * the same when it returns
+     *
+     * @param node    node of the tree reached
+     * @param pending elements still to match, the next one last
+     * @param size    number of elements still to match
+     * @param first   matching rule with the highest priority found, null if none yet
+     * @param matches where the rules found are added, null to find only the first one
+     * @return the matching rule with the highest priority found
+     */
+    private static RewriteRule find(final Node node, final Operation[] pending, final int size, final RewriteRule first,
+                                    final List<RewriteRule> matches) {
+        if (matches == null && first != null && node.mFirstPriority >= first.getPriority()) {
+            return first;
+        }
+        if (size == 0) {
+            if (matches != null) {
+                matches.addAll(node.mRules);
+            }
+            final boolean better = !node.mRules.isEmpty() && (first == null || node.mRules.get(0).getPriority() < first.getPriority());
+            return better ? node.mRules.get(0) : first;
+        }
+        final Operation op = pending[size - 1];
+        final String operId = op.getOperId();
+        RewriteRule found = first;
+
+        if (node.mAny != null) {
+            found = find(node.mAny, pending, size - 1, found, matches);
+        }
+        final Node operator = node.mOperators.get(operId);
+        if (operator != null) {
+            found = find(operator, pending, size - 1, found, matches);
+        }
+        final List<Operation> args = op.getArgs();
+        final Node withArgs = node.getChild(operId, args.size());
+        if (withArgs != null) {
+            for (int i = 0; i < args.size(); i++) {
+                pending[size - 1 + i] = args.get(args.size() - 1 - i);
+            }
+            found = find(withArgs, pending, size - 1 + args.size(), found, matches);
+        }
+        pending[size - 1] = op;
+        return found;
+    }
+
+    /**
+     * Node of the tree. Its children are kept by the symbol of the patterns: the wildcard, an
+     * operator with any arguments, and an operator by its number of arguments
+     */
+    private static final class Node {
+        private final Map<String, Node> mOperators = new HashMap<>();
+        private final Map<String, Node[]> mWithArgs = new HashMap<>();
+        private final List<RewriteRule> mRules = new ArrayList<>(1);
+        private Node mAny;
+        //highest priority of the rules of the node and the ones below
+        private int mFirstPriority = Integer.MAX_VALUE;
+
+        private Node getOrCreateChild(final String symbol) {
+            if (symbol.equals(RewriteRule.ANY)) {
+                if (mAny == null) {
+                    mAny = new Node();
+                }
+                return mAny;
+            }
+            final int slash = symbol.indexOf('/');
+            if (slash < 0) {
+                Node child = mOperators.get(symbol);
+                if (child == null) {
+                    child = new Node();
+                    mOperators.put(symbol, child);
+                }
+                return child;
+            }
+            final String operId = symbol.substring(0, slash);
+            final int args = Integer.parseInt(symbol.substring(slash + 1));
+            Node[] byArgs = mWithArgs.get(operId);
+            if (byArgs == null || byArgs.length <= args) {
+                byArgs = (byArgs == null) ? new Node[args + 1] : Arrays.copyOf(byArgs, args + 1);
+                mWithArgs.put(operId, byArgs);
+            }
+            if (byArgs[args] == null) {
+                byArgs[args] = new Node();
+            }
+            return byArgs[args];
+        }
+
+        private Node getChild(final String operId, final int args) {
+            final Node[] byArgs = mWithArgs.get(operId);
+            return (byArgs != null && args < byArgs.length) ? byArgs[args] : null;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Simplifies a whole expression until nothing else can be simplified: numbers are operated
+ * together, zeros of sums, ones of products, double opposites and double inverses are removed and
+ * sums or products inside another one of the same kind are joined to it.
+ * <p>
+ * Nodes are simplified bottom-up from a worklist. A node is simplified again only when one of its
+ * arguments changes, so every node is visited a few times at most instead of rescanning the whole
+ * expression until it stops changing.
+ * <p>
+ * The expression is modified in place and the parent ids aren't updated.
+ */
+class Simplifier {
+    private static final String SUM = AlgebraicEngine.Opers.SUM.toString();
+    private static final String PROD = AlgebraicEngine.Opers.PROD.toString();
+    private static final String MINUS = AlgebraicEngine.Opers.MINUS.toString();
+    private static final String INV = AlgebraicEngine.Opers.INV.toString();
+    private static final String NUMBER = AlgebraicEngine.Opers.NUMBER.toString();
+    private static final String ZERO = AlgebraicEngine.Opers.ZERO.toString();
+    private static final String ONE = AlgebraicEngine.Opers.ONE.toString();
+    private static final String MONE = AlgebraicEngine.Opers.MONE.toString();
+
+    private final Map<Operation, Operation> mParents;
+    private final Deque<Operation> mWorklist;
+    private final Set<Operation> mQueued;
+    private Operation mRoot;
+    private int mChanges;
+    private int mVisits;
+
+    Simplifier() {
+        mParents = new IdentityHashMap<>();
+        mWorklist = new ArrayDeque<>();
+        mQueued = Collections.newSetFromMap(new IdentityHashMap<Operation, Boolean>());
+    }
+
+    /**
+     * @param root expression to simplify
+     * @return the simplified expression, which may be a different node than the given one
+     */
+    Operation simplify(final Operation root) {
+        mRoot = root;
+        mChanges = 0;
+        mVisits = 0;
+        addInPostorder(root, null);
+        while (!mWorklist.isEmpty()) {
+            final Operation node = mWorklist.poll();
+            mQueued.remove(node);
+            mVisits++;
+            if (node != mRoot && !mParents.containsKey(node)) {
+                continue;//removed by the simplification of another node
+            }
+            final int changes = mChanges;
+            final Operation simplified = simplifyNode(node);
+            if (simplified != node) {
+                replace(node, simplified);
+                mChanges++;
+            }
+            if (mChanges != changes) {
+                markDirty(mParents.get(simplified));
+            }
+        }
+        mParents.clear();
+        return mRoot;
+    }
+
+    /**
+     * @return number of simplifications done by the last call to {@link #simplify(Operation)}
+     */
+    int getChanges() {
+        return mChanges;
+    }
+
+    /**
+     * @return number of nodes taken from the worklist by the last call to
+     * {@link #simplify(Operation)}
+     */
+    int getVisits() {
+        return mVisits;
+    }
+
+    private void addInPostorder(final Operation op, final Operation parent) {
+        if (op.getOperId() == null) {
+            return;//value of a number or variable
+        }
+        if (parent != null) {
+            mParents.put(op, parent);
+        }
+        for (final Operation arg : op.getArgs()) {
+            addInPostorder(arg, op);
+        }
+        mWorklist.add(op);
+        mQueued.add(op);
+    }
+
+    private void markDirty(final Operation op) {
+        if (op != null && mQueued.add(op)) {
+            mWorklist.add(op);
+        }
+    }
+
+    private void replace(final Operation op, final Operation replacement) {
+        final Operation parent = mParents.remove(op);
+        if (parent == null) {
+            mRoot = replacement;
+            mParents.remove(replacement);
+            return;
+        }
+        //ids may be repeated, so the argument is searched by reference
+        final List<Operation> args = parent.getArgs();
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i) == op) {
+                parent.setArg(i, replacement);
+                break;
+            }
+        }
+        mParents.put(replacement, parent);
+    }
+
+    /**
+     * Forgets an argument removed from the expression and its subexpressions
+     */
+    private void detach(final Operation op) {
+        if (mParents.remove(op) != null) {
+            for (final Operation arg : op.getArgs()) {
+                detach(arg);
+            }
+        }
+    }
+
+    /**
+     * @return the node that replaces the given one, or the same node if it's kept
+     */
+    private Operation simplifyNode(final Operation op) {
+        final String operId = op.getOperId();
+        if (MINUS.equals(operId)) {
+            return simplifyMinus(op);
+        } else if (INV.equals(operId)) {
+            return simplifyInverse(op);
+        } else if (SUM.equals(operId) || PROD.equals(operId)) {
+            return simplifySumOrProduct(op);
+        }
+        return op;
+    }
+
+    private static Operation simplifyMinus(final Operation op) {
+        final Operation arg = op.getArg(0);
+        if (arg == null) {
+            return op;
+        }
+        final String argId = arg.getOperId();
+        if (ZERO.equals(argId)) {
+            return new Operation(ZERO);
+        } else if (ONE.equals(argId)) {
+            return new Operation(MONE);
+        } else if (MONE.equals(argId)) {
+            return new Operation(ONE);
+        } else if (MINUS.equals(argId) && arg.getArg(0) != null) {
+            return arg.getArg(0);
+        }
+        return op;
+    }
+
+    private static Operation simplifyInverse(final Operation op) {
+        final Operation arg = op.getArg(0);
+        if (arg == null) {
+            return op;
+        }
+        final String argId = arg.getOperId();
+        if (ONE.equals(argId) || MONE.equals(argId)) {
+            return new Operation(argId);
+        } else if (INV.equals(argId) && arg.getArg(0) != null) {
+            return arg.getArg(0);
+        }
+        return op;
+    }
+
+    private Operation simplifySumOrProduct(final Operation op) {
+        final boolean isSum = SUM.equals(op.getOperId());
+        final float identity = isSum ? 0 : 1;
+
+        boolean changed = false;
+        final List<Operation> args = new ArrayList<>(op.getNumberArgs());
+        for (final Operation arg : op.getArgs()) {
+            if (op.getOperId().equals(arg.getOperId())) {
+                //inverse of the dissociative property
+                mParents.remove(arg);
+                args.addAll(arg.getArgs());
+                changed = true;
+            } else {
+                args.add(arg);
+            }
+        }
+
+        int numbers = 0;
+        int firstNumber = -1;
+        float result = identity;
+        for (int i = 0; i < args.size(); i++) {
+            final Float value = getValue(args.get(i));
+            if (value != null) {
+                if (numbers++ == 0) {
+                    firstNumber = i;
+                }
+                result = isSum ? result + value : result * value;
+                if (value == identity) {
+                    changed = true;
+                }
+            }
+        }
+        if (numbers > 1) {
+            changed = true;
+        }
+        if (!isSum && numbers > 0 && result == 0) {
+            for (final Operation arg : args) {
+                detach(arg);
+            }
+            return new Operation(ZERO);
+        }
+        if (!changed) {
+            return op;
+        }
+
+        final List<Operation> simplifiedArgs = new ArrayList<>(args.size());
+        for (int i = 0; i < args.size(); i++) {
+            if (i == firstNumber && result != identity) {
+                simplifiedArgs.add(createNumber(result));
+            } else if (getValue(args.get(i)) == null) {
+                simplifiedArgs.add(args.get(i));
+            } else {
+                detach(args.get(i));
+            }
+        }
+        if (simplifiedArgs.isEmpty()) {
+            return createNumber(identity);
+        } else if (simplifiedArgs.size() == 1) {
+            //the argument takes the place of the operation
+            mParents.remove(simplifiedArgs.get(0));
+            return simplifiedArgs.get(0);
+        }
+        mChanges++;
+        op.getArgs().clear();
+        for (final Operation arg : simplifiedArgs) {
+            op.addArg(arg);
+            mParents.put(arg, op);
+        }
+        return op;
+    }
+
+    /**
+     * @return the value of a number, null if the operation isn't one
+     */
+    private static Float getValue(final Operation op) {
+        final String operId = op.getOperId();
+        if (ZERO.equals(operId)) {
+            return 0f;
+        } else if (ONE.equals(operId)) {
+            return 1f;
+        } else if (MONE.equals(operId)) {
+            return -1f;
+        } else if (NUMBER.equals(operId)) {
+            final Operation value = op.getArg(0);
+            return (value != null) ? value.getArgNumber() : null;
+        } else if (MINUS.equals(operId) && op.getArg(0) != null && NUMBER.equals(op.getArg(0).getOperId())) {
+            final Float value = getValue(op.getArg(0));
+            return (value != null) ? -value : null;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a number the same way the CAS does when operating
+     */
+    private static Operation createNumber(final float number) {
+        if (number == 0) {
+            return new Operation(ZERO);
+        } else if (number == 1) {
+            return new Operation(ONE);
+        } else if (number == -1) {
+            return new Operation(MONE);
+        }
+        final Operation numberOp = new Operation(NUMBER);
+        numberOp.addArg(new Operation(Math.abs(number)));
+        if (number > 0) {
+            return numberOp;
+        }
+        final Operation negNumber = new Operation(MINUS);
+        negNumber.addArg(numberOp);
+        return negNumber;
+    }
+}
@@ -0,0 +1,58 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Branches left when going back in a history: for each one, the id of its newest record and the
+ * expression it reached after that record, kept in a {@link SharedTrees} so the expressions of the
+ * branches only take room for the terms they don't share.
+ */
+class BranchHeads {
+    private final SharedTrees mTrees;
+    private final Map<Long, SharedTrees.Node> mHeads;
+
+    /**
+     * @param trees store for the expressions of the branches
+     */
+    BranchHeads(final SharedTrees trees) {
+        mTrees = trees;
+        mHeads = new LinkedHashMap<>();
+    }
+
+    /**
+     * Keeps a branch that is being left
+     *
+     * @param newestId id of the newest record of the branch
+     * @param current  expression reached after that record
+     */
+    void put(final long newestId, final Operation current) {
+        //moved to the end, as the last branch left
+        mHeads.remove(newestId);
+        mHeads.put(newestId, mTrees.intern(current));
+    }
+
+    /**
+     * Forgets a branch that becomes the current one
+     *
+     * @param newestId id of the newest record of the branch
+     * @return expression reached by the branch, null if there is no branch ending in that record
+     */
+    SharedTrees.Node remove(final long newestId) {
+        return mHeads.remove(newestId);
+    }
+
+    /**
+     * @return ids of the newest records of the branches, the last one left first
+     */
+    List<Long> getIds() {
+        final List<Long> ids = new ArrayList<>(mHeads.keySet());
+        Collections.reverse(ids);
+        return ids;
+    }
+}
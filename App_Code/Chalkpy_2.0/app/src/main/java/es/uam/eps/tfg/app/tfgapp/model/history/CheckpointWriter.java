@@ -0,0 +1,166 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.util.Utils;
+
+/**
+ * Writes the checkpoints of the current expression to a {@link HistoryLog} on a background thread.
+ * <p>
+ * The caller only encodes the expression into a buffer. The first request starts a window, and
+ * the requests made during it replace the pending snapshot, so a burst of actions ends in a
+ * single write. There are two buffers: one is filled by the callers while the writer thread writes
+ * the other one, and they are swapped when a write starts. Flushing and compacting the log are done
+ * by the writer thread too.
+ */
+public final class CheckpointWriter {
+    public static final long DEFAULT_WINDOW_MILLIS = 300;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final HistoryLog mLog;
+    private final long mWindowMillis;
+    private final ScheduledExecutorService mExecutor;
+    private final AtomicInteger mWrites;
+    private final Runnable mWriteTask = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+            mLog.force();
+        }
+    };
+    private final Runnable mCompactTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                mLog.compactIfNeeded();
+            } catch (final IOException e) {
+                Log.e(Utils.LOG_TAG, "Error compacting the history log", e);
+            }
+        }
+    };
+
+    //guarded by this
+    private ByteBuffer mPending;
+    private boolean mDirty;
+    private boolean mScheduled;
+
+    //only used by the writer thread
+    private ByteBuffer mWriting;
+
+    /**
+     * @param log          log where the checkpoints are written
+     * @param windowMillis time that the requests are gathered before writing them
+     */
+    public CheckpointWriter(final HistoryLog log, final long windowMillis) {
+        mLog = log;
+        mWindowMillis = windowMillis;
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "checkpoint-writer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mWrites = new AtomicInteger();
+        mPending = ByteBuffer.allocate(INITIAL_CAPACITY);
+        mWriting = ByteBuffer.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Asks for a checkpoint of the expression, that will be written when the window ends. The
+     * expression can be modified as soon as this returns
+     *
+     * @param expression current expression
+     */
+    public synchronized void request(final Operation expression) {
+        mPending = SnapshotCodec.encodeReusing(expression, mPending);
+        mDirty = true;
+        if (!mScheduled) {
+            mScheduled = true;
+            mExecutor.schedule(mWriteTask, mWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the pending checkpoint, if any, and then the changes of the log to the storage, on
+     * the writer thread. The caller doesn't wait for them
+     */
+    public void flush() {
+        mExecutor.execute(mFlushTask);
+    }
+
+    /**
+     * Compacts the log on the writer thread if it needs it, see {@link HistoryLog#compactIfNeeded()}.
+     * The caller doesn't wait for it
+     */
+    public void compactLog() {
+        mExecutor.execute(mCompactTask);
+    }
+
+    /**
+     * Like {@link #flush()}, waiting until the checkpoint is in the storage
+     */
+    public void flushAndWait() {
+        final Future<?> done = mExecutor.submit(mFlushTask);
+        try {
+            done.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            Log.e(Utils.LOG_TAG, "Error flushing the checkpoint", e);
+        }
+    }
+
+    /**
+     * Flushes the pending checkpoint and stops the writer thread
+     */
+    public void close() {
+        flushAndWait();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * @return number of checkpoints written
+     */
+    int getWriteCount() {
+        return mWrites.get();
+    }
+
+    private void writePending() {
+        synchronized (this) {
+            mScheduled = false;
+            if (!mDirty) {
+                return;
+            }
+            final ByteBuffer pending = mPending;
+            mPending = mWriting;
+            mWriting = pending;
+            mDirty = false;
+        }
+        try {
+            mLog.writeCheckpoint(mWriting);
+            mWrites.incrementAndGet();
+        } catch (final IOException e) {
+            Log.e(Utils.LOG_TAG, "Error writing the checkpoint", e);
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package es.uam.eps.tfg.app.tfgapp.model.history;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
+import es.uam.eps.tfg.algebraicEngine.Operation;
 import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
 
 /**
- * Repository for the expression history
+ * Repository for the expression history. Going back doesn't lose the records left out: the
+ * history is a tree of records, and the current branch is the path from its newest record to the
+ * oldest one
  */
 public interface ExpressionHistory {
     /**
@@ -16,37 +20,102 @@ public interface ExpressionHistory {
     /**
      * Add a new record to the history (single selection)
      *
-     * @param action        performed action
-     * @param global        expression BEFORE doing the action
-     * @param CASExpression expression for the CAS to be init in case of restart
-     * @param selection     element the action was performed on
+     * @param action    performed action
+     * @param global    expression BEFORE doing the action
+     * @param snapshot  snapshot of the expression for the CAS to be init in case of restart
+     * @param selection element the action was performed on
      */
-    void addRecord(CASAdapter.Actions action, String global, String CASExpression, String selection);
+    void addRecord(CASAdapter.Actions action, String global, ByteBuffer snapshot, String selection);
 
     /**
      * Add a new record to the history (multiple selection)
      *
-     * @param action        performed action
-     * @param global        expression BEFORE doing the action
-     * @param CASExpression expression for the CAS to be init in case of restart
-     * @param selection     elements the action was performed on
+     * @param action    performed action
+     * @param global    expression BEFORE doing the action
+     * @param snapshot  snapshot of the expression for the CAS to be init in case of restart
+     * @param selection elements the action was performed on
      */
-    void addRecord(CASAdapter.Actions action, String global, String CASExpression, String... selection);
+    void addRecord(CASAdapter.Actions action, String global, ByteBuffer snapshot, String... selection);
 
     /**
-     * Goes back to the last previous expression on the register. IT DOES NOT INIT THE CAS
+     * Add a new record to the history from the expression itself, so it's not decoded from the
+     * snapshot
      *
+     * @param action     performed action
+     * @param expression expression BEFORE doing the action, only read during the call
+     * @param snapshot   snapshot of the expression for the CAS to be init in case of restart
+     * @param selection  elements the action was performed on
+     */
+    void addRecord(CASAdapter.Actions action, Operation expression, ByteBuffer snapshot, String... selection);
+
+    /**
+     * Goes back to the last previous expression on the register. IT DOES NOT INIT THE CAS. The
+     * record left out is kept as a branch, see {@link #getBranches()}
+     *
+     * @param current current expression, reached by the branch being left
+     * @return the previous expression
+     */
+    Operation returnToPreviousExpression(Operation current);
+
+    /**
+     * Goes back to a previous expression. IT DOES NOT INIT THE CAS. The records left out are kept
+     * as a branch, see {@link #getBranches()}
+     *
+     * @param record  previous record
+     * @param current current expression, reached by the branch being left
      * @return the previous expression
      */
-    String returnToPreviousExpression();
+    Operation returnToExpression(ExpressionRecord record, Operation current);
 
     /**
-     * Goes back to a previous expression. IT DOES NOT INIT THE CAS
+     * Goes back to a previous expression. IT DOES NOT INIT THE CAS. The records left out are kept
+     * as a branch, see {@link #getBranches()}
      *
-     * @param record previous record
+     * @param id      id of a record of the history
+     * @param current current expression, reached by the branch being left
      * @return the previous expression
+     * @throws IllegalArgumentException if there is no record with that id in the history
+     */
+    Operation returnToExpression(long id, Operation current);
+
+    /**
+     * @return the newest record of each branch left when going back, the last one left first
+     */
+    List<ExpressionRecord> getBranches();
+
+    /**
+     * Makes a branch the current one, keeping the current one as a branch. IT DOES NOT INIT THE CAS
+     *
+     * @param newest  newest record of a branch, see {@link #getBranches()}
+     * @param current current expression, reached by the branch being left
+     * @return the expression the branch reached
+     * @throws IllegalArgumentException if there is no branch ending in that record
+     */
+    Operation switchToBranch(ExpressionRecord newest, Operation current);
+
+    /**
+     * @param id id of a record
+     * @return the record, null if there is no record with that id in the history
+     */
+    ExpressionRecord getRecord(long id);
+
+    /**
+     * @param terms numbers and variables to find, such as "3x"
+     * @return records whose expression has all of them, newest first
+     */
+    List<ExpressionRecord> findRecordsWithTerms(String terms);
+
+    /**
+     * @param action performed action
+     * @return records of the action, newest first
+     */
+    List<ExpressionRecord> findRecordsWithAction(CASAdapter.Actions action);
+
+    /**
+     * @param expression expression to find
+     * @return records whose expression is structurally equal to the given one, newest first
      */
-    String returnToExpression(ExpressionRecord record);
+    List<ExpressionRecord> findRecordsEqualTo(Operation expression);
 
     /**
      * @return the number os entries the history has
@@ -2,31 +2,66 @@ package es.uam.eps.tfg.app.tfgapp.model.history;
 
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import es.uam.eps.tfg.algebraicEngine.Operation;
 import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
 import es.uam.eps.tfg.app.tfgapp.util.Utils;
+import es.uam.eps.tfg.app.tfgapp.util.metrics.LatencyMetrics;
 
 /**
- * Implementation of the history.Singleton.
+ * Implementation of the history. Not thread safe: each engine context has its own instance.
+ * <p>
+ * Records form a tree: each one points to the record before it, and going back only moves the
+ * pointer to the newest record of the current branch, so the records left out are kept as a branch
+ * that shares all the older ones. The expressions of the records and of the branches are kept in a
+ * {@link SharedTrees}, so the memory used by many branches grows with the terms they don't share.
+ * <p>
+ * Ids are the positions of the records in the list of all of them, so they always grow and a
+ * record is found by its id in constant time. The current branch is also kept in an array, oldest
+ * first, to read it by position and to go back without walking it. After switching branches, that
+ * array is fixed the next time it's needed, from the newest record to the first one it shares with
+ * the previous branch. The search index, of the current branch, is built the first time it's needed.
  */
 public class ExpressionHistoryDB implements ExpressionHistory {
+    private static final int INITIAL_CAPACITY = 16;
 
-    private static ExpressionHistory mInstance = null;
-    private final List<ExpressionRecord> mRecords;
+    private final List<Node> mNodes;
+    private final SharedTrees mTrees;
+    private final BranchHeads mBranches;
+    private final RecordList mRecords;
+    private Node mNewest;
+    private Node[] mPath;
+    private int mPathSize;
+    private boolean mPathValid;
+    private HistoryIndex mIndex;
 
     private ExpressionHistoryDB() {
-        mRecords = new ArrayList<>();
+        mNodes = new ArrayList<>();
+        mTrees = new SharedTrees();
+        mBranches = new BranchHeads(mTrees);
+        mRecords = new RecordList();
+        mNewest = null;
+        mPath = new Node[INITIAL_CAPACITY];
+        mPathSize = 0;
+        mPathValid = true;
     }
 
-    public static ExpressionHistory getInstance() {
-        if (mInstance == null) {
-            mInstance = new ExpressionHistoryDB();
-        }
-        return mInstance;
+    /**
+     * @return a new empty history
+     */
+    public static ExpressionHistory newInstance() {
+        return new ExpressionHistoryDB();
     }
 
+    /**
+     * @return a view of the records of the current branch, newest first
+     */
     @Override
     public List<ExpressionRecord> getHistory() {
         Log.d(Utils.LOG_TAG, "Recovering history");
@@ -34,7 +69,50 @@ public class ExpressionHistoryDB implements ExpressionHistory {
     }
 
     @Override
-    public void addRecord(final CASAdapter.Actions action, final String global, final String CASExpression, final String... selection) {
+    public void addRecord(final CASAdapter.Actions action, final String global, final ByteBuffer snapshot, final String... selection) {
+        addRecord(action, global, snapshot, join(selection));
+    }
+
+    @Override
+    public void addRecord(final CASAdapter.Actions action, final String global, final ByteBuffer snapshot, final String selection) {
+        Log.d(Utils.LOG_TAG, "Adding history record");
+        final long start = LatencyMetrics.start();
+        addRecord(action, global, SnapshotCodec.decode(snapshot.duplicate()), snapshot, selection, start);
+    }
+
+    @Override
+    public void addRecord(final CASAdapter.Actions action, final Operation expression, final ByteBuffer snapshot, final String... selection) {
+        Log.d(Utils.LOG_TAG, "Adding history record");
+        final long start = LatencyMetrics.start();
+        addRecord(action, CASUtils.getInfixExpressionOf(expression), expression, snapshot, join(selection), start);
+    }
+
+    private void addRecord(final CASAdapter.Actions action, final String global, final Operation expression, final ByteBuffer snapshot,
+                           final String selection, final long start) {
+        final SharedTrees.Node tree = mTrees.intern(expression);
+        final ExpressionRecord record = new ExpressionRecord(action, global, selection, tree, mNodes.size());
+        final Node node = new Node(record, mNewest);
+        mNodes.add(node);
+        if (mNewest != null) {
+            mNewest.mChildren++;
+        }
+        ensurePath();
+        if (mPathSize == mPath.length) {
+            mPath = Arrays.copyOf(mPath, 2 * mPath.length);
+        }
+        mPath[mPathSize++] = node;
+        mNewest = node;
+        if (mIndex != null) {
+            mIndex.add(record.getId(), action, global, snapshot);
+        }
+
+        if (start != LatencyMetrics.NOT_MEASURED) {
+            final long nanos = System.nanoTime() - start;
+            LatencyMetrics.record(LatencyMetrics.Step.HISTORY_APPEND, action.name(), SnapshotCodec.getNodeCount(snapshot), nanos);
+        }
+    }
+
+    private static String join(final String... selection) {
         final StringBuilder sb = new StringBuilder();
         for (int i = 0; i < selection.length; i++) {
             sb.append(selection[i]);
@@ -42,44 +120,188 @@ public class ExpressionHistoryDB implements ExpressionHistory {
                 sb.append(",");
             }
         }
-        addRecord(action, global, CASExpression, sb.toString());
+        return sb.toString();
     }
 
     @Override
-    public void addRecord(final CASAdapter.Actions action, final String global, final String CASExpression, final String selection) {
-        Log.d(Utils.LOG_TAG, "Adding history record");
+    public Operation returnToPreviousExpression(final Operation current) {
+        return returnToExpression(mNewest.mRecord, current);
+    }
+
+    @Override
+    public Operation returnToExpression(final ExpressionRecord record, final Operation current) {
+        return returnToExpression(record.getId(), current);
+    }
+
+    @Override
+    public Operation returnToExpression(final long id, final Operation current) {
+        final ExpressionRecord record = getRecord(id);
+        if (record == null) {
+            throw new IllegalArgumentException("No record with id " + id);
+        }
+        final Node node = mNodes.get((int) id);
+        leaveBranch(current);
+        ensurePath();
+        if (node.mDepth <= mPathSize && mPath[node.mDepth - 1] == node) {
+            mPathSize = node.mDepth - 1;
+            if (mIndex != null) {
+                mIndex.removeFrom(id);
+            }
+        } else {
+            //a record of another branch
+            mPathValid = false;
+            mIndex = null;
+        }
+        mNewest = node.mParent;
+        return record.getExpression();
+    }
+
+    @Override
+    public List<ExpressionRecord> getBranches() {
+        final List<Long> ids = mBranches.getIds();
+        final List<ExpressionRecord> branches = new ArrayList<>(ids.size());
+        for (final Long id : ids) {
+            branches.add(mNodes.get(id.intValue()).mRecord);
+        }
+        return branches;
+    }
 
-        final ExpressionRecord record = new ExpressionRecord(action, global, selection, CASExpression);
-        mRecords.add(0, record);//always added in first position
+    @Override
+    public Operation switchToBranch(final ExpressionRecord newest, final Operation current) {
+        final SharedTrees.Node head = mBranches.remove(newest.getId());
+        if (head == null) {
+            throw new IllegalArgumentException("No branch ending in " + newest);
+        }
+        leaveBranch(current);
+        mNewest = mNodes.get((int) newest.getId());
+        mPathValid = false;
+        mIndex = null;
+        return SharedTrees.materialize(head);
+    }
 
+    /**
+     * Keeps the current branch if it ends in its newest record, so no other branch has it
+     */
+    private void leaveBranch(final Operation current) {
+        if (mNewest != null && mNewest.mChildren == 0) {
+            mBranches.put(mNewest.mRecord.getId(), current);
+        }
+    }
+
+    /**
+     * Fixes the array of the current branch after switching branches, only writing the records it
+     * doesn't share with the previous one
+     */
+    private void ensurePath() {
+        if (mPathValid) {
+            return;
+        }
+        final int depth = (mNewest == null) ? 0 : mNewest.mDepth;
+        if (depth > mPath.length) {
+            mPath = Arrays.copyOf(mPath, Math.max(depth, 2 * mPath.length));
+        }
+        //the first mPathSize slots are still the previous branch
+        Node node = mNewest;
+        while (node != null && (node.mDepth > mPathSize || mPath[node.mDepth - 1] != node)) {
+            mPath[node.mDepth - 1] = node;
+            node = node.mParent;
+        }
+        mPathSize = depth;
+        mPathValid = true;
     }
 
     @Override
-    public String returnToPreviousExpression() {
+    public ExpressionRecord getRecord(final long id) {
+        if (id < 0 || id >= mNodes.size()) {
+            return null;
+        }
+        return mNodes.get((int) id).mRecord;
+    }
 
-        final String newCurrent = mRecords.get(0).getCASExpression();
-        //delete the last and return the new last
-        mRecords.remove(0);
+    @Override
+    public List<ExpressionRecord> findRecordsWithTerms(final String terms) {
+        return getRecords(getIndex().findWithTerms(terms));
+    }
 
-        return newCurrent;
+    @Override
+    public List<ExpressionRecord> findRecordsWithAction(final CASAdapter.Actions action) {
+        return getRecords(getIndex().findWithAction(action));
     }
 
     @Override
-    public String returnToExpression(final ExpressionRecord record) {
-        final int indexOfRecord = mRecords.indexOf(record);
-        for (int i = 0; i < indexOfRecord; i++) {
-            mRecords.remove(0);
+    public List<ExpressionRecord> findRecordsEqualTo(final Operation expression) {
+        return getRecords(getIndex().findEqualTo(SnapshotCodec.encode(expression)));
+    }
+
+    private List<ExpressionRecord> getRecords(final List<Long> ids) {
+        final List<ExpressionRecord> records = new ArrayList<>(ids.size());
+        for (final Long id : ids) {
+            records.add(mNodes.get(id.intValue()).mRecord);
         }
-        if (mRecords.size() == 1) {
-            mRecords.clear();
-        } else {
-            mRecords.remove(0);
+        return records;
+    }
+
+    /**
+     * @return the search index of the current branch, built from its records the first time
+     */
+    private HistoryIndex getIndex() {
+        if (mIndex == null) {
+            ensurePath();
+            final HistoryIndex index = new HistoryIndex();
+            for (int i = 0; i < mPathSize; i++) {
+                final ExpressionRecord record = mPath[i].mRecord;
+                index.add(record.getId(), record.getAction(), record.getGlobalExp(), record.getSnapshot());
+            }
+            mIndex = index;
         }
-        return record.getCASExpression();
+        return mIndex;
     }
 
     @Override
     public int getRecordCount() {
-        return mRecords.size();
+        return (mNewest == null) ? 0 : mNewest.mDepth;
+    }
+
+    /**
+     * @return number of different nodes kept for the expressions of the records and branches
+     */
+    int getSharedNodeCount() {
+        return mTrees.size();
+    }
+
+    /**
+     * Record of the tree, pointing to the record before it
+     */
+    private static final class Node {
+        private final ExpressionRecord mRecord;
+        private final Node mParent;
+        private final int mDepth;
+        private int mChildren;
+
+        private Node(final ExpressionRecord record, final Node parent) {
+            mRecord = record;
+            mParent = parent;
+            mDepth = (parent == null) ? 1 : parent.mDepth + 1;
+        }
+    }
+
+    /**
+     * Records of the current branch, newest first
+     */
+    private class RecordList extends AbstractList<ExpressionRecord> {
+        @Override
+        public ExpressionRecord get(final int index) {
+            final int size = size();
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            ensurePath();
+            return mPath[mPathSize - 1 - index].mRecord;
+        }
+
+        @Override
+        public int size() {
+            return getRecordCount();
+        }
     }
 }
@@ -1,5 +1,8 @@
 package es.uam.eps.tfg.app.tfgapp.model.history;
 
+import java.nio.ByteBuffer;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
 import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
 
 /**
@@ -9,13 +12,42 @@ public class ExpressionRecord {
     private final CASAdapter.Actions mAction;
     private final String mGlobalExp;
     private final String mSelectedExp;
-    private final String mCASExpression;
+    private final ByteBuffer mSnapshot;
+    private final SharedTrees.Node mTree;
+    private final long mId;
+
+    /**
+     * @param action    performed action
+     * @param global    expression before doing the action, in infix form
+     * @param selection elements the action was performed on, in infix form
+     * @param snapshot  snapshot of the expression before doing the action, see {@link SnapshotCodec}
+     * @param id        id of the record in its history. Newer records have greater ids
+     */
+    public ExpressionRecord(final CASAdapter.Actions action, final String global, final String selection, final ByteBuffer snapshot,
+                            final long id) {
+        mAction = action;
+        mGlobalExp = global;
+        mSelectedExp = selection;
+        mSnapshot = snapshot.asReadOnlyBuffer();
+        mTree = null;
+        mId = id;
+    }
 
-    public ExpressionRecord(final CASAdapter.Actions action, final String global, final String selection, final String CASExpression) {
+    /**
+     * @param action    performed action
+     * @param global    expression before doing the action, in infix form
+     * @param selection elements the action was performed on, in infix form
+     * @param tree      expression before doing the action, shared with the other records
+     * @param id        id of the record in its history. Newer records have greater ids
+     */
+    ExpressionRecord(final CASAdapter.Actions action, final String global, final String selection, final SharedTrees.Node tree,
+                     final long id) {
         mAction = action;
         mGlobalExp = global;
         mSelectedExp = selection;
-        mCASExpression = CASExpression;
+        mSnapshot = null;
+        mTree = tree;
+        mId = id;
     }
 
     public CASAdapter.Actions getAction() {
@@ -30,8 +62,31 @@ public class ExpressionRecord {
         return mSelectedExp;
     }
 
-    public String getCASExpression() {
-        return mCASExpression;
+    /**
+     * @return snapshot of the expression before doing the action, ready to be read
+     */
+    public ByteBuffer getSnapshot() {
+        if (mTree != null) {
+            return SnapshotCodec.encode(SharedTrees.materialize(mTree));
+        }
+        return mSnapshot.duplicate();
+    }
+
+    /**
+     * @return the expression before doing the action, a new one on each call
+     */
+    public Operation getExpression() {
+        if (mTree != null) {
+            return SharedTrees.materialize(mTree);
+        }
+        return SnapshotCodec.decode(getSnapshot());
+    }
+
+    /**
+     * @return id of the record in its history, see {@link ExpressionHistory#getRecord(long)}
+     */
+    public long getId() {
+        return mId;
     }
 
     @Override
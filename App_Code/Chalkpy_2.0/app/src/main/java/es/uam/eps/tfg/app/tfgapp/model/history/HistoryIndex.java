@@ -0,0 +1,252 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+
+/**
+ * Search index of the records of a history, by ids.
+ * <p>
+ * Each key (a token of the infix expression, an action or the hash of a snapshot) has the list of
+ * ids of the records that have it, oldest first. Records are only added after the newest one and
+ * removed from the newest one, so those lists are kept sorted by only adding and removing at their
+ * ends. Removing records is done the next time the index is used, so going back in the history
+ * doesn't depend on the number of records left out.
+ * <p>
+ * Snapshots of expressions with the same structure are equal byte by byte, so structurally equal
+ * expressions are found by the hash of their snapshots, checking the bytes of the candidates.
+ */
+class HistoryIndex {
+    private final Map<String, List<Long>> mTokens;
+    private final Map<CASAdapter.Actions, List<Long>> mActions;
+    private final Map<Integer, List<Long>> mSnapshots;
+    private final Map<Long, Entry> mEntries;
+    private final Deque<Long> mIds;
+    private long mRemovedFrom;
+
+    HistoryIndex() {
+        mTokens = new HashMap<>();
+        mActions = new EnumMap<>(CASAdapter.Actions.class);
+        mSnapshots = new HashMap<>();
+        mEntries = new HashMap<>();
+        mIds = new ArrayDeque<>();
+        mRemovedFrom = Long.MAX_VALUE;
+    }
+
+    /**
+     * Adds a record, newer than all the ones in the index
+     *
+     * @param id       id of the record
+     * @param action   performed action
+     * @param global   expression before doing the action, in infix form
+     * @param snapshot snapshot of the expression before doing the action
+     */
+    void add(final long id, final CASAdapter.Actions action, final String global, final ByteBuffer snapshot) {
+        removePending();
+        if (!mIds.isEmpty() && mIds.peekLast() >= id) {
+            throw new IllegalArgumentException("Records must be added in order");
+        }
+        final Set<String> tokens = tokenize(global);
+        final int hash = snapshot.hashCode();
+        for (final String token : tokens) {
+            getPostings(mTokens, token).add(id);
+        }
+        getPostings(mActions, action).add(id);
+        getPostings(mSnapshots, hash).add(id);
+        mEntries.put(id, new Entry(tokens, action, hash, snapshot.asReadOnlyBuffer()));
+        mIds.addLast(id);
+    }
+
+    /**
+     * Removes a record and all the newer ones
+     *
+     * @param id id of the oldest record to remove
+     */
+    void removeFrom(final long id) {
+        mRemovedFrom = Math.min(mRemovedFrom, id);
+    }
+
+    private void removePending() {
+        final long id = mRemovedFrom;
+        mRemovedFrom = Long.MAX_VALUE;
+        while (!mIds.isEmpty() && mIds.peekLast() >= id) {
+            final long newest = mIds.removeLast();
+            final Entry entry = mEntries.remove(newest);
+            for (final String token : entry.mTokens) {
+                removeLast(mTokens, token);
+            }
+            removeLast(mActions, entry.mAction);
+            removeLast(mSnapshots, entry.mHash);
+        }
+    }
+
+    /**
+     * @param id id of a record
+     * @return true if the record is in the index
+     */
+    boolean contains(final long id) {
+        removePending();
+        return mEntries.containsKey(id);
+    }
+
+    /**
+     * @param text text with numbers and names of variables, such as "3x" or "y + 2"
+     * @return ids of the records whose expression has all the numbers and variables of the text,
+     * newest first. Empty if the text has none
+     */
+    List<Long> findWithTerms(final String text) {
+        removePending();
+        final Set<String> tokens = tokenize(text);
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //the shortest list is walked, looking up its ids in the others
+        final List<List<Long>> postings = new ArrayList<>();
+        List<Long> shortest = null;
+        for (final String token : tokens) {
+            final List<Long> ids = mTokens.get(token);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            postings.add(ids);
+            if (shortest == null || ids.size() < shortest.size()) {
+                shortest = ids;
+            }
+        }
+        final List<Long> found = new ArrayList<>();
+        for (int i = shortest.size() - 1; i >= 0; i--) {
+            final Long id = shortest.get(i);
+            boolean inAll = true;
+            for (final List<Long> ids : postings) {
+                if (ids != shortest && Collections.binarySearch(ids, id) < 0) {
+                    inAll = false;
+                    break;
+                }
+            }
+            if (inAll) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param action performed action
+     * @return ids of the records of the action, newest first
+     */
+    List<Long> findWithAction(final CASAdapter.Actions action) {
+        removePending();
+        return newestFirst(mActions.get(action));
+    }
+
+    /**
+     * @param snapshot snapshot of an expression
+     * @return ids of the records whose expression is structurally equal to the one of the snapshot,
+     * newest first
+     */
+    List<Long> findEqualTo(final ByteBuffer snapshot) {
+        removePending();
+        final List<Long> candidates = newestFirst(mSnapshots.get(snapshot.hashCode()));
+        final List<Long> found = new ArrayList<>();
+        for (final Long id : candidates) {
+            if (mEntries.get(id).mSnapshot.equals(snapshot)) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Splits a text in the numbers and names of variables it contains. Numbers are written the same
+     * way whatever the form they have in the text, so "3" and "3.0" are the same token
+     *
+     * @param text text to split, such as the infix form of an expression
+     * @return tokens of the text, without repeating them
+     */
+    static Set<String> tokenize(final String text) {
+        final Set<String> tokens = new LinkedHashSet<>();
+        int i = 0;
+        while (i < text.length()) {
+            final char c = text.charAt(i);
+            int end = i + 1;
+            if (Character.isDigit(c) || c == '.') {
+                while (end < text.length() && (Character.isDigit(text.charAt(end)) || text.charAt(end) == '.')) {
+                    end++;
+                }
+                tokens.add(normalizeNumber(text.substring(i, end)));
+            } else if (Character.isLetter(c)) {
+                while (end < text.length() && Character.isLetter(text.charAt(end))) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+            }
+            i = end;
+        }
+        return tokens;
+    }
+
+    private static String normalizeNumber(final String number) {
+        try {
+            final float value = Float.parseFloat(number);
+            if (value == (long) value) {
+                return String.valueOf((long) value);
+            }
+            return String.valueOf(value);
+        } catch (final NumberFormatException e) {
+            return number;
+        }
+    }
+
+    private static List<Long> newestFirst(final List<Long> ids) {
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        final List<Long> reversed = new ArrayList<>(ids);
+        Collections.reverse(reversed);
+        return reversed;
+    }
+
+    private static <K> List<Long> getPostings(final Map<K, List<Long>> index, final K key) {
+        List<Long> ids = index.get(key);
+        if (ids == null) {
+            ids = new ArrayList<>();
+            index.put(key, ids);
+        }
+        return ids;
+    }
+
+    private static <K> void removeLast(final Map<K, List<Long>> index, final K key) {
+        final List<Long> ids = index.get(key);
+        ids.remove(ids.size() - 1);
+        if (ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Keys of a record, to remove it from the index
+     */
+    private static final class Entry {
+        private final Set<String> mTokens;
+        private final CASAdapter.Actions mAction;
+        private final int mHash;
+        private final ByteBuffer mSnapshot;
+
+        private Entry(final Set<String> tokens, final CASAdapter.Actions action, final int hash, final ByteBuffer snapshot) {
+            mTokens = tokens;
+            mAction = action;
+            mHash = hash;
+            mSnapshot = snapshot;
+        }
+    }
+}
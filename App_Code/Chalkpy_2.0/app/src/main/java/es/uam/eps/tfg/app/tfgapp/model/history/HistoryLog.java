@@ -0,0 +1,660 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.util.Utils;
+
+/**
+ * History stored in files mapped to memory, so it survives the death of the process and is
+ * restored without reading it.
+ * <p>
+ * The log is a header file and a sequence of segment files where records are only appended. The
+ * header holds the end of the log, the newest record, the number of records and their size, twice:
+ * changes are written to the copy not in use, which then becomes the current one, so the process
+ * can die at any moment. The checkpoint of the current expression is kept in two slots of the
+ * header the same way, so it takes the same room however many times it's saved. Each record points
+ * to the previous one, so going back in the history only moves the newest record, and opening the
+ * log only maps the header: segments are mapped the first time they are read.
+ * <p>
+ * Records left out of the history aren't overwritten, so the history can go back to them while the
+ * log is open. When it's opened again, only the records of the history can be reached, and if they
+ * take less than half of the log, they can be copied to new segments (the next generation of the
+ * log) and the old ones deleted, see {@link #compactIfNeeded()}.
+ * <p>
+ * Locations of records are the index of their segment in the high half and their position in the
+ * low one. The location of a record is its id, which grows with each new record until the log is
+ * cleared or compacted.
+ */
+public final class HistoryLog {
+    public static final long NONE = -1;
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+
+    private static final String HEADER_FILE = "history.log";
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x43484C47;
+    private static final int VERSION = 2;
+    private static final int COMPACTION_RATIO = 2;
+
+    private static final int VERSION_OFFSET = 4;
+    private static final int STATE_OFFSET = 8;
+    private static final int CHECKPOINT_OFFSET = 12;
+    private static final int SLOTS_OFFSET = 16;
+    private static final int SLOT_SIZE = 8;
+    private static final int STATES_OFFSET = SLOTS_OFFSET + 2 * SLOT_SIZE;
+    private static final int STATE_SIZE = 40;
+    private static final int HEADER_SIZE = STATES_OFFSET + 2 * STATE_SIZE;
+    private static final int INITIAL_SLOT_CAPACITY = 16 * 1024;
+
+    //fields of a state
+    private static final int GENERATION = 0;
+    private static final int END = 4;
+    private static final int NEWEST = 12;
+    private static final int COUNT = 20;
+    private static final int USED = 24;
+    private static final int LIVE = 32;
+
+    private static final byte RECORD = 1;
+    private static final int ENTRY_HEADER_SIZE = 5;
+    //previous record, number of records and their size up to the record
+    private static final int RECORD_PREFIX_SIZE = 8 + 4 + 8;
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private MappedByteBuffer mHeader;
+    private Segments mSegments;
+    //first segment written since the last force, -1 if none
+    private int mDirtySegment = -1;
+    //compacting moves the records, so it's not done once a location is known outside
+    private boolean mLocationsGiven;
+
+    private HistoryLog(final File directory, final int segmentSize) {
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the log of a directory, creating it if there isn't one. Only the header is mapped, the
+     * log is compacted later by {@link #compactIfNeeded()}
+     *
+     * @param directory   directory for the log files
+     * @param segmentSize size of new segment files in bytes
+     * @return the log
+     * @throws IOException if the files can't be mapped or aren't a log
+     */
+    public static HistoryLog open(final File directory, final int segmentSize) throws IOException {
+        if (segmentSize <= ENTRY_HEADER_SIZE + RECORD_PREFIX_SIZE) {
+            throw new IllegalArgumentException("Segments must be bigger than " + (ENTRY_HEADER_SIZE + RECORD_PREFIX_SIZE) + " bytes");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        final HistoryLog log = new HistoryLog(directory, segmentSize);
+        log.mapHeader();
+        log.deleteOtherGenerations();
+        return log;
+    }
+
+    private void mapHeader() throws IOException {
+        final File file = new File(mDirectory, HEADER_FILE);
+        if (file.exists()) {
+            mHeader = map(file, (int) file.length());
+            if (mHeader.capacity() < HEADER_SIZE || mHeader.getInt(0) != MAGIC || mHeader.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Not a history log: " + file);
+            }
+        } else {
+            mHeader = map(file, HEADER_SIZE + 2 * INITIAL_SLOT_CAPACITY);
+            setSlot(0, HEADER_SIZE, INITIAL_SLOT_CAPACITY);
+            setSlot(1, HEADER_SIZE + INITIAL_SLOT_CAPACITY, INITIAL_SLOT_CAPACITY);
+            mHeader.putInt(CHECKPOINT_OFFSET, -1);
+            mHeader.putInt(STATE_OFFSET, 0);
+            writeState(0, 0, 0, NONE, 0, 0, 0);
+            mHeader.putInt(VERSION_OFFSET, VERSION);
+            //a header without its magic number isn't taken as a log
+            mHeader.putInt(0, MAGIC);
+        }
+        mSegments = new Segments(getState(GENERATION));
+    }
+
+    /**
+     * Deletes the segments left by a compaction that didn't finish, or by one whose old segments
+     * weren't deleted
+     */
+    private void deleteOtherGenerations() {
+        final String current = SEGMENT_PREFIX + getState(GENERATION) + "-";
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && !name.startsWith(current) && !file.delete()) {
+                Log.e(Utils.LOG_TAG, "Can't delete old history segment " + file);
+            }
+        }
+    }
+
+    private File getSegmentFile(final int generation, final int segment) {
+        return new File(mDirectory, SEGMENT_PREFIX + generation + "-" + segment + SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(final File file, final int size) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            //the mapping stays valid after closing the file
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Adds a record after the newest one
+     *
+     * @param action    performed action
+     * @param global    expression before doing the action, in infix form
+     * @param selection elements the action was performed on, in infix form
+     * @param snapshot  snapshot of the expression before doing the action. Its position isn't moved
+     * @return location of the new record
+     * @throws IOException if a new segment can't be mapped
+     */
+    public synchronized long appendRecord(final CASAdapter.Actions action, final String global, final String selection,
+                                          final ByteBuffer snapshot) throws IOException {
+        final byte[] actionBytes = action.name().getBytes(UTF_8);
+        final byte[] globalBytes = global.getBytes(UTF_8);
+        final byte[] selectionBytes = selection.getBytes(UTF_8);
+        final int snapshotSize = snapshot.remaining();
+        final int bodySize = RECORD_PREFIX_SIZE + getStringSize(actionBytes) + getStringSize(globalBytes)
+                + getStringSize(selectionBytes) + SnapshotCodec.getVarintSize(snapshotSize) + snapshotSize;
+
+        final long previous = getNewest();
+        final int count = getCount() + 1;
+        final Appender appender = new Appender(getSegments(), getStateLong(END), getStateLong(USED));
+        final long location = appender.reserve(bodySize);
+        if (mDirtySegment < 0) {
+            mDirtySegment = getSegment(location);
+        }
+        final ByteBuffer out = appender.getBody(location);
+        out.putLong(previous);
+        out.putInt(count);
+        final long live = getStateLong(LIVE) + ENTRY_HEADER_SIZE + bodySize;
+        out.putLong(live);
+        putString(out, actionBytes);
+        putString(out, globalBytes);
+        putString(out, selectionBytes);
+        SnapshotCodec.putVarint(out, snapshotSize);
+        out.put(snapshot.duplicate());
+
+        //the record is written before being part of the history
+        commitState(getState(GENERATION), appender.mEnd, location, count, appender.mUsed, live);
+        return location;
+    }
+
+    /**
+     * Replaces the checkpoint of the current expression. It's written to the slot not in use,
+     * which grows if the snapshot doesn't fit, and then becomes the current one
+     *
+     * @param snapshot snapshot of the current expression. Its position isn't moved
+     * @throws IOException if the header can't be grown
+     */
+    public synchronized void writeCheckpoint(final ByteBuffer snapshot) throws IOException {
+        final int current = mHeader.getInt(CHECKPOINT_OFFSET);
+        final int slot = (current == 0) ? 1 : 0;
+        final int size = 4 + snapshot.remaining();
+        if (size > getSlotCapacity(slot)) {
+            growSlot(slot, size);
+        }
+        final ByteBuffer out = mHeader.duplicate();
+        out.position(getSlotPosition(slot));
+        out.putInt(snapshot.remaining());
+        out.put(snapshot.duplicate());
+        mHeader.putInt(CHECKPOINT_OFFSET, slot);
+    }
+
+    /**
+     * Moves a slot to the first room of the header that doesn't overlap the other slot, making
+     * the header bigger if needed
+     */
+    private void growSlot(final int slot, final int size) throws IOException {
+        final int capacity = Math.max(2 * getSlotCapacity(slot), size);
+        final int other = 1 - slot;
+        final int position = (HEADER_SIZE + capacity <= getSlotPosition(other))
+                ? HEADER_SIZE : getSlotPosition(other) + getSlotCapacity(other);
+        if (position + capacity > mHeader.capacity()) {
+            mHeader = map(new File(mDirectory, HEADER_FILE), position + capacity);
+        }
+        setSlot(slot, position, capacity);
+    }
+
+    /**
+     * @return snapshot of the last checkpoint, read from the mapped file. It's valid until the next
+     * checkpoint is written. Null if there isn't any
+     */
+    public synchronized ByteBuffer readCheckpoint() {
+        final int slot = mHeader.getInt(CHECKPOINT_OFFSET);
+        if (slot < 0) {
+            return null;
+        }
+        final int position = getSlotPosition(slot);
+        if (position + getSlotCapacity(slot) > mHeader.capacity()) {
+            //grown by another instance of the log
+            try {
+                mHeader = map(new File(mDirectory, HEADER_FILE), position + getSlotCapacity(slot));
+            } catch (final IOException e) {
+                throw new IllegalStateException("Can't map the history header", e);
+            }
+        }
+        final ByteBuffer in = mHeader.duplicate();
+        in.position(position);
+        final int size = in.getInt();
+        in.limit(in.position() + size);
+        return in.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return location of the newest record of the history, {@link #NONE} if it's empty
+     */
+    public synchronized long getNewest() {
+        mLocationsGiven = true;
+        return getStateLong(NEWEST);
+    }
+
+    /**
+     * @return number of records of the history
+     */
+    public synchronized int getCount() {
+        return getState(COUNT);
+    }
+
+    /**
+     * @param location location of a record
+     * @return location of the record before it, {@link #NONE} for the oldest one
+     */
+    public synchronized long getPrevious(final long location) {
+        return getRecordBody(location).getLong();
+    }
+
+    /**
+     * Checks a location without reading the record: it must be the start of a record written
+     * before the end of the log, whose previous record comes before it
+     *
+     * @param location any location
+     * @return true if there is a record at the location
+     */
+    public synchronized boolean isRecord(final long location) {
+        if (location < 0 || location >= getStateLong(END)) {
+            return false;
+        }
+        final ByteBuffer in = getSegments().get(getSegment(location), 0);
+        final int position = getPosition(location);
+        if (position + ENTRY_HEADER_SIZE + RECORD_PREFIX_SIZE > in.capacity() || in.get(position) != RECORD) {
+            return false;
+        }
+        final int bodySize = in.getInt(position + 1);
+        final long previous = in.getLong(position + ENTRY_HEADER_SIZE);
+        return bodySize >= RECORD_PREFIX_SIZE && position + ENTRY_HEADER_SIZE + bodySize <= in.capacity()
+                && previous < location && (previous >= 0 || previous == NONE);
+    }
+
+    /**
+     * Reads a record. The snapshot of the record isn't copied: it's read from the mapped file
+     *
+     * @param location location of a record
+     * @return the record
+     */
+    public synchronized ExpressionRecord readRecord(final long location) {
+        final ByteBuffer in = getRecordBody(location);
+        in.position(in.position() + RECORD_PREFIX_SIZE);
+        final CASAdapter.Actions action = CASAdapter.Actions.valueOf(getString(in));
+        final String global = getString(in);
+        final String selection = getString(in);
+        final int snapshotSize = SnapshotCodec.getVarint(in);
+        in.limit(in.position() + snapshotSize);
+        return new ExpressionRecord(action, global, selection, in.slice(), location);
+    }
+
+    /**
+     * Leaves a record and all the newer ones out of the history
+     *
+     * @param location location of a record of the history
+     */
+    public synchronized void truncateBefore(final long location) {
+        final ByteBuffer in = getRecordBody(location);
+        final int size = ENTRY_HEADER_SIZE + in.getInt(in.position() - 4);
+        final long previous = in.getLong();
+        final int count = in.getInt();
+        setNewest(previous, count - 1, in.getLong() - size);
+    }
+
+    /**
+     * Makes a record the newest one of the history, with all the ones before it. Records are never
+     * overwritten while the log is open, so this can go back to records left out by
+     * {@link #truncateBefore(long)}
+     *
+     * @param location location of a record
+     */
+    public synchronized void moveNewestTo(final long location) {
+        final ByteBuffer in = getRecordBody(location);
+        in.getLong();
+        setNewest(location, in.getInt(), in.getLong());
+    }
+
+    /**
+     * Writes the changes of the mapped files to the storage. They are kept if the process dies
+     * anyway, this is only needed to keep them if the whole system stops. Only the header and the
+     * segments written since the last time are written, usually the last one
+     */
+    public synchronized void force() {
+        if (mDirtySegment >= 0) {
+            final int last = getSegment(getStateLong(END));
+            for (int segment = mDirtySegment; segment <= last; segment++) {
+                getSegments().get(segment, 0).force();
+            }
+            mDirtySegment = -1;
+        }
+        mHeader.force();
+    }
+
+    /**
+     * Empties the history and forgets the checkpoint, keeping the files
+     */
+    public synchronized void clear() {
+        mHeader.putInt(CHECKPOINT_OFFSET, -1);
+        commitState(getState(GENERATION), 0, NONE, 0, 0, 0);
+    }
+
+    /**
+     * @return bytes of the segments taken by records, reachable or not. The ends of the segments
+     * left unused aren't counted
+     */
+    synchronized long getUsedBytes() {
+        return getStateLong(USED);
+    }
+
+    /**
+     * @return bytes of the segments taken by the records of the history
+     */
+    synchronized long getLiveBytes() {
+        return getStateLong(LIVE);
+    }
+
+    /**
+     * @return number of segments mapped
+     */
+    synchronized int getMappedSegmentCount() {
+        return mSegments.getMappedCount();
+    }
+
+    /**
+     * Compacts the log if most of it can't be reached from the history. It copies the whole
+     * history, so it's meant for a background thread. The records get new locations, so nothing is
+     * done once a location has been given out (by {@link #getNewest()} or
+     * {@link #appendRecord}): the log will be compacted the next time it's opened
+     *
+     * @return true if the log was compacted
+     * @throws IOException if the new segments can't be mapped. The old ones are still used
+     */
+    public synchronized boolean compactIfNeeded() throws IOException {
+        if (mLocationsGiven || !needsCompaction()) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    private boolean needsCompaction() {
+        final long used = getStateLong(USED);
+        return used > mSegmentSize && used > COMPACTION_RATIO * getLiveBytes();
+    }
+
+    /**
+     * Copies the records of the history to the segments of the next generation, oldest first, and
+     * then switches the log to them. If the process dies before, the old segments are still used
+     */
+    private void compact() throws IOException {
+        final List<Long> chain = new ArrayList<>(getCount());
+        for (long id = getStateLong(NEWEST); id != NONE; id = getPrevious(id)) {
+            chain.add(id);
+        }
+        final int generation = getState(GENERATION) + 1;
+        final Segments segments = new Segments(generation);
+        final Appender appender = new Appender(segments, 0, 0);
+        long previous = NONE;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            final ByteBuffer in = getRecordBody(chain.get(i));
+            final int bodySize = in.getInt(in.position() - 4);
+            in.limit(in.position() + bodySize);
+            final long location = appender.reserve(bodySize);
+            final ByteBuffer out = appender.getBody(location);
+            out.put(in);
+            out.putLong(out.position() - bodySize, previous);
+            previous = location;
+        }
+        segments.forceAll();
+
+        final Segments old = mSegments;
+        commitState(generation, appender.mEnd, previous, chain.size(), appender.mUsed, appender.mUsed);
+        mHeader.force();
+        mSegments = segments;
+        Log.d(Utils.LOG_TAG, "History compacted: " + chain.size() + " records, " + old.getGeneration() + " -> " + generation);
+        deleteOtherGenerations();
+    }
+
+    private void setNewest(final long location, final int count, final long live) {
+        commitState(getState(GENERATION), getStateLong(END), location, count, getStateLong(USED), live);
+    }
+
+    /**
+     * @return the segments of the current generation. If another instance of the log compacted
+     * it, the new ones
+     */
+    private Segments getSegments() {
+        final int generation = getState(GENERATION);
+        if (mSegments.getGeneration() != generation) {
+            mSegments = new Segments(generation);
+        }
+        return mSegments;
+    }
+
+    private ByteBuffer getRecordBody(final long location) {
+        if (location == NONE || location >= getStateLong(END)) {
+            throw new IllegalArgumentException("Bad location: " + location);
+        }
+        final ByteBuffer in = getSegments().get(getSegment(location), 0).duplicate();
+        in.position(getPosition(location));
+        if (in.get() != RECORD) {
+            throw new IllegalArgumentException("Bad location: " + location);
+        }
+        in.getInt();
+        return in;
+    }
+
+    private int getStateOffset() {
+        return STATES_OFFSET + STATE_SIZE * mHeader.getInt(STATE_OFFSET);
+    }
+
+    private int getState(final int field) {
+        return mHeader.getInt(getStateOffset() + field);
+    }
+
+    private long getStateLong(final int field) {
+        return mHeader.getLong(getStateOffset() + field);
+    }
+
+    /**
+     * Writes a state to the copy not in use and makes it the current one
+     */
+    private void commitState(final int generation, final long end, final long newest, final int count, final long used,
+                             final long live) {
+        final int state = 1 - mHeader.getInt(STATE_OFFSET);
+        writeState(state, generation, end, newest, count, used, live);
+        mHeader.putInt(STATE_OFFSET, state);
+    }
+
+    private void writeState(final int state, final int generation, final long end, final long newest, final int count,
+                            final long used, final long live) {
+        final int offset = STATES_OFFSET + STATE_SIZE * state;
+        mHeader.putInt(offset + GENERATION, generation);
+        mHeader.putLong(offset + END, end);
+        mHeader.putLong(offset + NEWEST, newest);
+        mHeader.putInt(offset + COUNT, count);
+        mHeader.putLong(offset + USED, used);
+        mHeader.putLong(offset + LIVE, live);
+    }
+
+    private int getSlotPosition(final int slot) {
+        return mHeader.getInt(SLOTS_OFFSET + SLOT_SIZE * slot);
+    }
+
+    private int getSlotCapacity(final int slot) {
+        return mHeader.getInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4);
+    }
+
+    private void setSlot(final int slot, final int position, final int capacity) {
+        mHeader.putInt(SLOTS_OFFSET + SLOT_SIZE * slot, position);
+        mHeader.putInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4, capacity);
+    }
+
+    private static int getStringSize(final byte[] bytes) {
+        return SnapshotCodec.getVarintSize(bytes.length) + bytes.length;
+    }
+
+    private static void putString(final ByteBuffer out, final byte[] bytes) {
+        SnapshotCodec.putVarint(out, bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(final ByteBuffer in) {
+        final byte[] bytes = new byte[SnapshotCodec.getVarint(in)];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static long getLocation(final int segment, final int position) {
+        return ((long) segment << 32) | position;
+    }
+
+    private static int getSegment(final long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int getPosition(final long location) {
+        return (int) location;
+    }
+
+    /**
+     * Segment files of a generation, mapped the first time they are used
+     */
+    private final class Segments {
+        private final int mGeneration;
+        private final List<MappedByteBuffer> mMapped;
+
+        private Segments(final int generation) {
+            mGeneration = generation;
+            mMapped = new ArrayList<>();
+        }
+
+        private int getGeneration() {
+            return mGeneration;
+        }
+
+        /**
+         * @param segment index of the segment
+         * @param minSize bytes the segment must have. If it's bigger than the file, or there's no
+         *                file, the file grows to that size or to the size of the segments
+         * @return the mapped segment
+         */
+        private MappedByteBuffer get(final int segment, final int minSize) {
+            while (mMapped.size() <= segment) {
+                mMapped.add(null);
+            }
+            MappedByteBuffer mapped = mMapped.get(segment);
+            if (mapped == null || mapped.capacity() < minSize) {
+                final File file = getSegmentFile(mGeneration, segment);
+                final int length = (int) file.length();
+                final int size = (length > 0 && length >= minSize) ? length : Math.max(mSegmentSize, minSize);
+                try {
+                    mapped = map(file, size);
+                } catch (final IOException e) {
+                    throw new IllegalStateException("Can't map " + file, e);
+                }
+                mMapped.set(segment, mapped);
+            }
+            return mapped;
+        }
+
+        private int getMappedCount() {
+            int count = 0;
+            for (final MappedByteBuffer mapped : mMapped) {
+                if (mapped != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private void forceAll() {
+            for (final MappedByteBuffer mapped : mMapped) {
+                if (mapped != null) {
+                    mapped.force();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds room for entries at the end of a generation of the log
+     */
+    private static final class Appender {
+        private final Segments mSegments;
+        private long mEnd;
+        private long mUsed;
+
+        private Appender(final Segments segments, final long end, final long used) {
+            mSegments = segments;
+            mEnd = end;
+            mUsed = used;
+        }
+
+        /**
+         * Reserves an entry, in a new segment if it doesn't fit in the last one, and writes its
+         * header
+         *
+         * @return location of the entry
+         */
+        private long reserve(final int bodySize) {
+            final int size = ENTRY_HEADER_SIZE + bodySize;
+            int segment = getSegment(mEnd);
+            int position = getPosition(mEnd);
+            if (position > 0 && position + size > mSegments.get(segment, 0).capacity()) {
+                //the rest of the segment is left unused
+                segment++;
+                position = 0;
+            }
+            final ByteBuffer out = mSegments.get(segment, size);
+            out.put(position, RECORD);
+            out.putInt(position + 1, bodySize);
+            mEnd = getLocation(segment, position + size);
+            mUsed += size;
+            return getLocation(segment, position);
+        }
+
+        private ByteBuffer getBody(final long location) {
+            final ByteBuffer out = mSegments.get(getSegment(location), 0).duplicate();
+            out.position(getPosition(location) + ENTRY_HEADER_SIZE);
+            return out;
+        }
+    }
+}
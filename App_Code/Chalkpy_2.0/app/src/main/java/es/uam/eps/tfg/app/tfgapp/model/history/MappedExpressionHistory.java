@@ -0,0 +1,239 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.app.tfgapp.util.Utils;
+import es.uam.eps.tfg.app.tfgapp.util.metrics.LatencyMetrics;
+
+/**
+ * History kept in a {@link HistoryLog}, so it's restored when the app starts again. Records are
+ * read from the mapped files when they are needed, and going back only moves the newest record of
+ * the log. The search index is built the first time it's needed, so opening the history doesn't
+ * read its records. Not thread safe: each engine context has its own instance.
+ * <p>
+ * The log never overwrites records, and each one points to the one before it, so the records left
+ * out when going back are still a branch of the tree. The branches left, with the expressions they
+ * reached, are kept while the app runs; after a restart only the current branch is restored.
+ */
+public class MappedExpressionHistory implements ExpressionHistory {
+
+    private final HistoryLog mLog;
+    private final RecordList mRecords;
+    private final BranchHeads mBranches;
+    private boolean mNewestIsLeaf;
+    private HistoryIndex mIndex;
+
+    private MappedExpressionHistory(final HistoryLog log) {
+        mLog = log;
+        mRecords = new RecordList();
+        mBranches = new BranchHeads(new SharedTrees());
+        mNewestIsLeaf = true;
+    }
+
+    /**
+     * @param log log holding the history
+     * @return the history of the log
+     */
+    public static ExpressionHistory newInstance(final HistoryLog log) {
+        return new MappedExpressionHistory(log);
+    }
+
+    /**
+     * @return a view of the records, newest first, read from the log as they are used
+     */
+    @Override
+    public List<ExpressionRecord> getHistory() {
+        Log.d(Utils.LOG_TAG, "Recovering history");
+        return mRecords;
+    }
+
+    @Override
+    public void addRecord(final CASAdapter.Actions action, final String global, final ByteBuffer snapshot, final String... selection) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < selection.length; i++) {
+            sb.append(selection[i]);
+            if (i < selection.length - 1) {
+                sb.append(",");
+            }
+        }
+        addRecord(action, global, snapshot, sb.toString());
+    }
+
+    @Override
+    public void addRecord(final CASAdapter.Actions action, final Operation expression, final ByteBuffer snapshot, final String... selection) {
+        //the log only keeps the snapshot
+        addRecord(action, CASUtils.getInfixExpressionOf(expression), snapshot, selection);
+    }
+
+    @Override
+    public void addRecord(final CASAdapter.Actions action, final String global, final ByteBuffer snapshot, final String selection) {
+        Log.d(Utils.LOG_TAG, "Adding history record");
+        final long start = LatencyMetrics.start();
+
+        try {
+            final long id = mLog.appendRecord(action, global, selection, snapshot);
+            mNewestIsLeaf = true;
+            if (mIndex != null) {
+                mIndex.add(id, action, global, snapshot);
+            }
+        } catch (final IOException e) {
+            Log.e(Utils.LOG_TAG, "Error adding history record, it won't be kept", e);
+            return;
+        }
+
+        if (start != LatencyMetrics.NOT_MEASURED) {
+            final long nanos = System.nanoTime() - start;
+            LatencyMetrics.record(LatencyMetrics.Step.HISTORY_APPEND, action.name(), SnapshotCodec.getNodeCount(snapshot), nanos);
+        }
+    }
+
+    @Override
+    public Operation returnToPreviousExpression(final Operation current) {
+        return returnToExpression(mLog.readRecord(mLog.getNewest()), current);
+    }
+
+    @Override
+    public Operation returnToExpression(final ExpressionRecord record, final Operation current) {
+        leaveBranch(current);
+        mLog.truncateBefore(record.getId());
+        mNewestIsLeaf = false;
+        if (mIndex != null) {
+            if (mIndex.contains(record.getId())) {
+                mIndex.removeFrom(record.getId());
+            } else {
+                //a record of another branch
+                mIndex = null;
+            }
+        }
+        return record.getExpression();
+    }
+
+    @Override
+    public Operation returnToExpression(final long id, final Operation current) {
+        final ExpressionRecord record = getRecord(id);
+        if (record == null) {
+            throw new IllegalArgumentException("No record with id " + id);
+        }
+        return returnToExpression(record, current);
+    }
+
+    @Override
+    public List<ExpressionRecord> getBranches() {
+        return getRecords(mBranches.getIds());
+    }
+
+    @Override
+    public Operation switchToBranch(final ExpressionRecord newest, final Operation current) {
+        final SharedTrees.Node head = mBranches.remove(newest.getId());
+        if (head == null) {
+            throw new IllegalArgumentException("No branch ending in " + newest);
+        }
+        leaveBranch(current);
+        mLog.moveNewestTo(newest.getId());
+        mNewestIsLeaf = true;
+        mIndex = null;
+        return SharedTrees.materialize(head);
+    }
+
+    /**
+     * Keeps the current branch if it ends in its newest record, so no other branch has it
+     */
+    private void leaveBranch(final Operation current) {
+        final long newest = mLog.getNewest();
+        if (newest != HistoryLog.NONE && mNewestIsLeaf) {
+            mBranches.put(newest, current);
+        }
+    }
+
+    @Override
+    public ExpressionRecord getRecord(final long id) {
+        return mLog.isRecord(id) ? mLog.readRecord(id) : null;
+    }
+
+    @Override
+    public List<ExpressionRecord> findRecordsWithTerms(final String terms) {
+        return getRecords(getIndex().findWithTerms(terms));
+    }
+
+    @Override
+    public List<ExpressionRecord> findRecordsWithAction(final CASAdapter.Actions action) {
+        return getRecords(getIndex().findWithAction(action));
+    }
+
+    @Override
+    public List<ExpressionRecord> findRecordsEqualTo(final Operation expression) {
+        return getRecords(getIndex().findEqualTo(SnapshotCodec.encode(expression)));
+    }
+
+    private List<ExpressionRecord> getRecords(final List<Long> ids) {
+        final List<ExpressionRecord> records = new ArrayList<>(ids.size());
+        for (final Long id : ids) {
+            records.add(mLog.readRecord(id));
+        }
+        return records;
+    }
+
+    /**
+     * @return the search index, built from the records of the log the first time
+     */
+    private HistoryIndex getIndex() {
+        if (mIndex == null) {
+            final List<Long> ids = new ArrayList<>(mLog.getCount());
+            for (long id = mLog.getNewest(); id != HistoryLog.NONE; id = mLog.getPrevious(id)) {
+                ids.add(id);
+            }
+            final HistoryIndex index = new HistoryIndex();
+            for (int i = ids.size() - 1; i >= 0; i--) {
+                final ExpressionRecord record = mLog.readRecord(ids.get(i));
+                index.add(record.getId(), record.getAction(), record.getGlobalExp(), record.getSnapshot());
+            }
+            mIndex = index;
+        }
+        return mIndex;
+    }
+
+    @Override
+    public int getRecordCount() {
+        return mLog.getCount();
+    }
+
+    /**
+     * Records of the log, newest first. The ones already read are kept until the history changes,
+     * so walking the list in order reads each record once
+     */
+    private class RecordList extends AbstractList<ExpressionRecord> {
+        private final List<ExpressionRecord> mRead = new ArrayList<>();
+        private long mNewest = HistoryLog.NONE;
+
+        @Override
+        public ExpressionRecord get(final int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+            final long newest = mLog.getNewest();
+            if (newest != mNewest) {
+                mRead.clear();
+                mNewest = newest;
+            }
+            while (mRead.size() <= index) {
+                final long location = mRead.isEmpty() ? newest : mLog.getPrevious(mRead.get(mRead.size() - 1).getId());
+                mRead.add(mLog.readRecord(location));
+            }
+            return mRead.get(index);
+        }
+
+        @Override
+        public int size() {
+            return mLog.getCount();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Store of expressions that keeps each different subtree only once, so expressions that differ in
+ * a few terms share the rest of their nodes.
+ * <p>
+ * Nodes are immutable and found by their content: two nodes are equal when they have the same
+ * operator or value and the very same arguments, which were already shared. Expressions are
+ * materialized as new {@link Operation} trees, with new ids.
+ * <p>
+ * Not thread safe: it belongs to a single history.
+ */
+class SharedTrees {
+    private final Map<Node, Node> mNodes;
+
+    SharedTrees() {
+        mNodes = new HashMap<>();
+    }
+
+    /**
+     * @param op expression to keep
+     * @return the shared node of the expression
+     */
+    Node intern(final Operation op) {
+        final List<Operation> args = op.getArgs();
+        final Node[] sharedArgs = new Node[args.size()];
+        for (int i = 0; i < sharedArgs.length; i++) {
+            sharedArgs[i] = intern(args.get(i));
+        }
+        final Node node = new Node(op.getOperId(), op.getArgNumber(), op.getArgStr(), sharedArgs);
+        final Node shared = mNodes.get(node);
+        if (shared != null) {
+            return shared;
+        }
+        mNodes.put(node, node);
+        return node;
+    }
+
+    /**
+     * @return number of different nodes kept
+     */
+    int size() {
+        return mNodes.size();
+    }
+
+    /**
+     * @param node shared node of an expression
+     * @return a new expression, with new ids and its parent ids set
+     */
+    static Operation materialize(final Node node) {
+        return materialize(node, null);
+    }
+
+    private static Operation materialize(final Node node, final UUID parentId) {
+        final Operation op = new Operation(node.mOperId);
+        if (node.mNumber != null) {
+            op.setArgNumber(node.mNumber);
+        }
+        if (node.mName != null) {
+            op.setArgStr(node.mName);
+        }
+        op.setParentID(parentId);
+        for (final Node arg : node.mArgs) {
+            op.addArg(materialize(arg, op.getId()));
+        }
+        return op;
+    }
+
+    /**
+     * Immutable node of an expression
+     */
+    static final class Node {
+        private final String mOperId;
+        private final Float mNumber;
+        private final String mName;
+        private final Node[] mArgs;
+        private final int mHash;
+
+        private Node(final String operId, final Float number, final String name, final Node[] args) {
+            mOperId = operId;
+            mNumber = number;
+            mName = name;
+            mArgs = args;
+            int hash = (operId == null) ? 0 : operId.hashCode();
+            hash = 31 * hash + ((number == null) ? 0 : number.hashCode());
+            hash = 31 * hash + ((name == null) ? 0 : name.hashCode());
+            for (final Node arg : args) {
+                hash = 31 * hash + System.identityHashCode(arg);
+            }
+            mHash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Node)) {
+                return false;
+            }
+            final Node other = (Node) o;
+            if (mHash != other.mHash || mArgs.length != other.mArgs.length
+                    || !equalsOrNull(mOperId, other.mOperId) || !equalsOrNull(mNumber, other.mNumber)
+                    || !equalsOrNull(mName, other.mName)) {
+                return false;
+            }
+            //the arguments are already shared
+            for (int i = 0; i < mArgs.length; i++) {
+                if (mArgs[i] != other.mArgs[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public String toString() {
+            return mOperId + "[" + (mNumber != null ? mNumber : mName != null ? mName : "") + Arrays.toString(mArgs) + "]";
+        }
+
+        private static boolean equalsOrNull(final Object a, final Object b) {
+            return (a == null) ? b == null : a.equals(b);
+        }
+    }
+}
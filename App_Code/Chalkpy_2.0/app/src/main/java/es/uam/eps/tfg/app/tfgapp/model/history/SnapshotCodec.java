@@ -0,0 +1,332 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Compact binary form of an expression, much smaller and faster to read than the CAS string.
+ * <p>
+ * A snapshot has a header (format version and number of nodes), a table with the different
+ * numbers, a table with the different names of variables and the elements of the expression in
+ * preorder. Each element is a varint with its kind and number of arguments, followed by the index
+ * of its value in a table for the values of numbers and variables. Ids aren't stored: decoded
+ * expressions get new ones.
+ */
+public final class SnapshotCodec {
+    private static final byte VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Operators by code. The codes are part of the format, so new operators must be added at the end
+     */
+    private static final String[] OPERATORS = {
+            AlgebraicEngine.Opers.EQU.toString(), AlgebraicEngine.Opers.SUM.toString(),
+            AlgebraicEngine.Opers.PROD.toString(), AlgebraicEngine.Opers.MINUS.toString(),
+            AlgebraicEngine.Opers.INV.toString(), AlgebraicEngine.Opers.NUMBER.toString(),
+            AlgebraicEngine.Opers.VAR.toString(), AlgebraicEngine.Opers.ZERO.toString(),
+            AlgebraicEngine.Opers.ONE.toString(), AlgebraicEngine.Opers.MONE.toString()};
+    private static final int VALUE_NUMBER = OPERATORS.length;
+    private static final int VALUE_STRING = OPERATORS.length + 1;
+    private static final int VALUE_EMPTY = OPERATORS.length + 2;
+    private static final int KINDS = OPERATORS.length + 3;
+    private static final Map<String, Integer> CODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            CODES.put(OPERATORS[i], i);
+        }
+    }
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * @param op expression to encode
+     * @return a buffer with the snapshot of the expression, ready to be read
+     */
+    public static ByteBuffer encode(final Operation op) {
+        final Tables tables = new Tables(op);
+        final ByteBuffer buffer = ByteBuffer.allocate(tables.getEncodedSize());
+        write(op, tables, buffer);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the snapshot of an expression at the position of the buffer, moving it to the end of
+     * the snapshot
+     *
+     * @param op  expression to encode
+     * @param out buffer to write to
+     * @throws java.nio.BufferOverflowException if the snapshot doesn't fit in the buffer
+     */
+    public static void encode(final Operation op, final ByteBuffer out) {
+        write(op, new Tables(op), out);
+    }
+
+    /**
+     * Encodes an expression reusing a buffer when the snapshot fits in it
+     *
+     * @param op     expression to encode
+     * @param buffer buffer to reuse, its content is replaced
+     * @return the buffer used, with the snapshot ready to be read
+     */
+    static ByteBuffer encodeReusing(final Operation op, final ByteBuffer buffer) {
+        final Tables tables = new Tables(op);
+        final int size = tables.getEncodedSize();
+        final ByteBuffer out = (buffer.capacity() >= size) ? buffer : ByteBuffer.allocate(Math.max(size, 2 * buffer.capacity()));
+        out.clear();
+        write(op, tables, out);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * @param op expression to encode
+     * @return size of its snapshot in bytes
+     */
+    public static int getEncodedSize(final Operation op) {
+        return new Tables(op).getEncodedSize();
+    }
+
+    /**
+     * Reads the snapshot at the position of the buffer, moving it to the end of the snapshot
+     *
+     * @param in buffer with the snapshot
+     * @return the expression, with new ids and its parent ids set
+     * @throws IllegalArgumentException if the buffer doesn't contain a valid snapshot
+     */
+    public static Operation decode(final ByteBuffer in) {
+        checkVersion(in);
+        getVarint(in);//number of nodes
+
+        final Float[] numbers = new Float[getVarint(in)];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = in.getFloat();
+        }
+        final String[] names = new String[getVarint(in)];
+        for (int i = 0; i < names.length; i++) {
+            final byte[] bytes = new byte[getVarint(in)];
+            in.get(bytes);
+            names[i] = new String(bytes, UTF_8);
+        }
+
+        //arguments still to be read for each operation being decoded
+        final Deque<Operation> parents = new ArrayDeque<>();
+        final Deque<Integer> pending = new ArrayDeque<>();
+        Operation root = null;
+        do {
+            final int code = getVarint(in);
+            final Operation op = createElement(code % KINDS, in, numbers, names);
+            if (root == null) {
+                root = op;
+                op.setParentID(null);
+            } else {
+                final Operation parent = parents.peek();
+                parent.addArg(op);
+                op.setParentID(parent.getId());
+                final int left = pending.pop() - 1;
+                if (left == 0) {
+                    parents.pop();
+                } else {
+                    pending.push(left);
+                }
+            }
+            final int args = code / KINDS;
+            if (args > 0) {
+                parents.push(op);
+                pending.push(args);
+            }
+        } while (!parents.isEmpty());
+        return root;
+    }
+
+    /**
+     * @param snapshot buffer with a snapshot at its position, which isn't moved
+     * @return number of nodes of the expression, counted as {@link es.uam.eps.tfg.app.tfgapp.util.CASUtils#getNumberOfNodes(Operation)}
+     */
+    public static int getNodeCount(final ByteBuffer snapshot) {
+        final ByteBuffer header = snapshot.duplicate();
+        checkVersion(header);
+        return getVarint(header);
+    }
+
+    private static void checkVersion(final ByteBuffer in) {
+        final byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown snapshot version: " + version);
+        }
+    }
+
+    private static Operation createElement(final int kind, final ByteBuffer in, final Float[] numbers, final String[] names) {
+        if (kind < OPERATORS.length) {
+            return new Operation(OPERATORS[kind]);
+        }
+        //values of numbers and variables, created as the CAS does
+        final Operation value = new Operation((String) null);
+        if (kind == VALUE_NUMBER) {
+            value.setArgNumber(getValue(numbers, getVarint(in)));
+        } else if (kind == VALUE_STRING) {
+            value.setArgStr(getValue(names, getVarint(in)));
+        } else if (kind != VALUE_EMPTY) {
+            throw new IllegalArgumentException("Bad element kind: " + kind);
+        }
+        return value;
+    }
+
+    private static <T> T getValue(final T[] table, final int index) {
+        if (index < 0 || index >= table.length) {
+            throw new IllegalArgumentException("Bad value index: " + index);
+        }
+        return table[index];
+    }
+
+    private static void write(final Operation op, final Tables tables, final ByteBuffer out) {
+        out.put(VERSION);
+        putVarint(out, tables.mNodes);
+        putVarint(out, tables.mNumbers.size());
+        for (final Float number : tables.mNumbers) {
+            out.putFloat(number);
+        }
+        putVarint(out, tables.mNameBytes.size());
+        for (final byte[] name : tables.mNameBytes) {
+            putVarint(out, name.length);
+            out.put(name);
+        }
+
+        final Deque<Operation> pending = new ArrayDeque<>();
+        pending.push(op);
+        while (!pending.isEmpty()) {
+            final Operation element = pending.pop();
+            final int kind = getKind(element);
+            final List<Operation> args = element.getArgs();
+            putVarint(out, args.size() * KINDS + kind);
+            if (kind == VALUE_NUMBER) {
+                putVarint(out, tables.mNumberIndexes.get(element.getArgNumber()));
+            } else if (kind == VALUE_STRING) {
+                putVarint(out, tables.mNameIndexes.get(element.getArgStr()));
+            }
+            for (int i = args.size() - 1; i >= 0; i--) {
+                pending.push(args.get(i));
+            }
+        }
+    }
+
+    private static int getKind(final Operation element) {
+        final String operId = element.getOperId();
+        if (operId != null) {
+            final Integer code = CODES.get(operId);
+            if (code == null) {
+                throw new IllegalArgumentException("Unknown operator: " + operId);
+            }
+            return code;
+        } else if (element.getArgNumber() != null) {
+            return VALUE_NUMBER;
+        } else if (element.getArgStr() != null) {
+            return VALUE_STRING;
+        }
+        return VALUE_EMPTY;
+    }
+
+    static void putVarint(final ByteBuffer out, final int value) {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.put((byte) remaining);
+    }
+
+    static int getVarint(final ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Bad varint");
+    }
+
+    static int getVarintSize(final int value) {
+        int size = 1;
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            remaining >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Tables of values of an expression and the size of its snapshot, found with a first walk
+     */
+    private static final class Tables {
+        private final List<Float> mNumbers = new ArrayList<>();
+        private final Map<Float, Integer> mNumberIndexes = new HashMap<>();
+        private final List<byte[]> mNameBytes = new ArrayList<>();
+        private final Map<String, Integer> mNameIndexes = new HashMap<>();
+        private int mNodes;
+        private int mElementsSize;
+
+        private Tables(final Operation op) {
+            final Deque<Operation> pending = new ArrayDeque<>();
+            pending.push(op);
+            while (!pending.isEmpty()) {
+                final Operation element = pending.pop();
+                final int kind = getKind(element);
+                if (kind < OPERATORS.length) {
+                    mNodes++;
+                }
+                mElementsSize += getVarintSize(element.getArgs().size() * KINDS + kind);
+                if (kind == VALUE_NUMBER) {
+                    mElementsSize += getVarintSize(addNumber(element.getArgNumber()));
+                } else if (kind == VALUE_STRING) {
+                    mElementsSize += getVarintSize(addName(element.getArgStr()));
+                }
+                for (final Operation arg : element.getArgs()) {
+                    pending.push(arg);
+                }
+            }
+        }
+
+        private int addNumber(final Float number) {
+            Integer index = mNumberIndexes.get(number);
+            if (index == null) {
+                index = mNumbers.size();
+                mNumbers.add(number);
+                mNumberIndexes.put(number, index);
+            }
+            return index;
+        }
+
+        private int addName(final String name) {
+            Integer index = mNameIndexes.get(name);
+            if (index == null) {
+                index = mNameBytes.size();
+                mNameBytes.add(name.getBytes(UTF_8));
+                mNameIndexes.put(name, index);
+            }
+            return index;
+        }
+
+        private int getEncodedSize() {
+            int size = 1 + getVarintSize(mNodes) + getVarintSize(mNumbers.size()) + 4 * mNumbers.size()
+                    + getVarintSize(mNameBytes.size()) + mElementsSize;
+            for (final byte[] name : mNameBytes) {
+                size += getVarintSize(name.length) + name.length;
+            }
+            return size;
+        }
+    }
+}
@@ -3,7 +3,6 @@ package es.uam.eps.tfg.app.tfgapp.util;
 import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
 import es.uam.eps.tfg.algebraicEngine.Operation;
 import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
-import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
 
 /**
  * CAS Utilities for using them without using the CAS directly
@@ -13,6 +12,7 @@ public final class CASUtils {
     public static final String ONE = "1";
     public static final String M_ONE = "-1";
     public static final String INV_OP = "1/";
+    private static final String DEFAULT_SYMBOL = "o-";
 
     private CASUtils() {
     }
@@ -66,9 +66,38 @@ public final class CASUtils {
      * @return string representation of the expression operator, null if the expression is not an operation
      */
     public static String getStringOperatorSymbol(final Operation exp) {
-        final CASAdapter CAS = CASImplementation.getInstance();
 
-        return CAS.getStringOperatorSymbol(exp);
+        final AlgebraicEngine.Opers symbol = exp.getRepresentationOperID();
+
+        //when custom operation creation
+        if (exp.isNumber() || exp.isString()) {
+            return null;
+        }
+
+        if (symbol == null) {
+            return DEFAULT_SYMBOL;
+        }
+
+        switch (symbol) {
+            case NUMBER:
+            case VAR:
+                return null;
+            case ZERO:
+                return ZERO;
+            case ONE:
+                return ONE;
+            case MONE:
+                return M_ONE;
+            case SUM:
+            case PROD:
+            case EQU:
+            case MINUS:
+                return symbol.getSymbol();
+            case INV:
+                return INV_OP;
+            default:
+                return null;
+        }
     }
 
     /**
@@ -113,50 +142,49 @@ public final class CASUtils {
      * @return string representation of an operation symbol
      */
     public static String getSymbolStringExpression(final Operation op) {
-        final CASAdapter CAS = CASImplementation.getInstance();
-        return CAS.getSymbolStringExpression(op);
+        final String symbol = getStringOperatorSymbol(op);
+        if (symbol == null) {
+            if (op.isNumber()) {
+                return op.getArgNumber() + "";
+            }
+            if (op.isString()) {
+                return op.getArgStr();
+            }
+            return op.getArg(0).toString();
+        } else {
+            return symbol;
+        }
     }
 
     /**
-     * @param op operation to know if it's on the main level of the equation
+     * @param CAS CAS that holds the operation
+     * @param op  operation to know if it's on the main level of the equation
      * @return true if its parent or grandparent is the main equation, false if not
      */
-    public static boolean isOnMainLevelOfEquation(final Operation op) {
-        if (isSideOfEquation(op)) {
+    public static boolean isOnMainLevelOfEquation(final CASAdapter CAS, final Operation op) {
+        if (isSideOfEquation(CAS, op)) {
             return true;
         }
-        return isMainTermOfEquation(op);
+        return isMainTermOfEquation(CAS, op);
 
     }
 
     /**
-     * @param op operation to know if its grandparent is the equation
+     * @param CAS CAS that holds the operation
+     * @param op  operation to know if its grandparent is the equation
      * @return true if the operation it's grandchildren of the equation
      */
-    public static boolean isMainTermOfEquation(final Operation op) {
-        final String grandParentSymbol = CASImplementation.getInstance().getGrandParentStringOperatorSymbol(op);
-
-        if (grandParentSymbol != null) {
-            if (grandParentSymbol.equals(AlgebraicEngine.Opers.EQU.getSymbol())) {
-                return true;
-            }
-        }
-        return false;
+    public static boolean isMainTermOfEquation(final CASAdapter CAS, final Operation op) {
+        return CAS.getDepth(op) == 2 && CAS.getSideOfEquation(op) != -1;
     }
 
     /**
-     * @param op operation to know if it's one of the two sides of an equation
+     * @param CAS CAS that holds the operation
+     * @param op  operation to know if it's one of the two sides of an equation
      * @return true if the operation it's a whole side of the equation
      */
-    public static boolean isSideOfEquation(final Operation op) {
-        final String parentSymbol = CASUtils.getParentStringOperatorSymbol(op);
-        if (parentSymbol != null) {
-            if (parentSymbol.equals(AlgebraicEngine.Opers.EQU.getSymbol())) {
-                return true;
-            }
-            return false;
-        }
-        return false;
+    public static boolean isSideOfEquation(final CASAdapter CAS, final Operation op) {
+        return CAS.getDepth(op) == 1 && CAS.getSideOfEquation(op) != -1;
     }
 
     public static boolean minusOperationHasSubexpressions(final Operation op) {
@@ -175,11 +203,11 @@ public final class CASUtils {
     /**
      * Given an expression, returns the string parent operator symbol
      *
+     * @param CAS CAS that holds the expression
      * @param exp expression to know its parent operator symbol
      * @return string representation of the expression's parent operator, null if the expression is not an operation
      */
-    public static String getParentStringOperatorSymbol(final Operation exp) {
-        final CASAdapter CAS = CASImplementation.getInstance();
+    public static String getParentStringOperatorSymbol(final CASAdapter CAS, final Operation exp) {
         return CAS.getParentStringOperatorSymbol(exp);
     }
 
@@ -267,11 +295,12 @@ public final class CASUtils {
     /**
      * Returns the infix notation for an string represtantion in the CAS form
      *
+     * @param CAS           CAS used for parsing the expression
      * @param CASExpression string representation of the operation to transform
      * @return string representation in infix form
      */
-    public static String getInfixExpressionOf(final String CASExpression) {
-        final Operation op = CASImplementation.getInstance().createOperationFromString(CASExpression);
+    public static String getInfixExpressionOf(final CASAdapter CAS, final String CASExpression) {
+        final Operation op = CAS.createOperationFromString(CASExpression);
         return getInfixExpressionOf(op);
     }
 
@@ -327,18 +356,71 @@ public final class CASUtils {
         return false;
     }
 
-    public static int getSideOfEquation(final Operation oper) {
-        if (isMainTermOfEquation(oper)) {
-            final Operation parent = CASImplementation.getInstance().getOperationById(oper.getParentID());
-            final Operation grandparent = CASImplementation.getInstance().getOperationById(parent.getParentID());
-            final int indexOfElementToChangeInParent = grandparent.getIndexOfArg(parent);
-            return indexOfElementToChangeInParent;
-
-        } else if (isSideOfEquation(oper)) {
-            final Operation parent = CASImplementation.getInstance().getOperationById(oper.getParentID());
-            final int indexOfElementToChangeInParent = parent.getIndexOfArg(oper);
-            return indexOfElementToChangeInParent;
+    /**
+     * @param CAS  CAS that holds the operation
+     * @param oper term or side of the equation
+     * @return index of the side of the equation where the operation is, -1 if it's not on the main level
+     */
+    public static int getSideOfEquation(final CASAdapter CAS, final Operation oper) {
+        if (isOnMainLevelOfEquation(CAS, oper)) {
+            return CAS.getSideOfEquation(oper);
         }
         return -1;
     }
+
+    /**
+     * Counts the nodes of an expression (numbers and variables count as one node)
+     *
+     * @param op expression to measure
+     * @return number of nodes of the expression
+     */
+    public static int getNumberOfNodes(final Operation op) {
+        if (op.getOperId() == null) {
+            return 0;
+        }
+        int nodes = 1;
+        for (final Operation arg : op.getArgs()) {
+            nodes += getNumberOfNodes(arg);
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the nodes of an expression in the CAS form, without creating it
+     *
+     * @param CASExpression string representation of the expression
+     * @return number of nodes of the expression
+     */
+    public static int getNumberOfNodes(final String CASExpression) {
+        int nodes = 0;
+        for (int i = 0; i < CASExpression.length(); i++) {
+            if (CASExpression.charAt(i) == '[') {
+                nodes++;
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Copies a whole expression without sharing any node with it. The copy keeps the ids of the
+     * original nodes, so the CAS finds and compares them the same way
+     *
+     * @param op expression to copy
+     * @return deep copy of the expression
+     */
+    public static Operation copyOf(final Operation op) {
+        final Operation copy = new Operation(op.getOperId());
+        if (op.getArgNumber() != null) {
+            copy.setArgNumber(op.getArgNumber());
+        }
+        if (op.getArgStr() != null) {
+            copy.setArgStr(op.getArgStr());
+        }
+        copy.setId(op.getId());
+        copy.setParentID(op.getParentID());
+        for (final Operation arg : op.getArgs()) {
+            copy.addArg(copyOf(arg));
+        }
+        return copy;
+    }
 }
@@ -0,0 +1,109 @@
+package es.uam.eps.tfg.app.tfgapp.util.metrics;
+
+/**
+ * Histogram of latencies with logarithmic buckets: four buckets for each power of two
+ * microseconds, so percentiles are at most 25% over the real value. Thread safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    /**
+     * Enough for 2^32 microseconds (more than an hour)
+     */
+    private static final int BUCKETS = 32 * SUB_BUCKETS;
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final long[] mBuckets;
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+    private long mOverBudget;
+    private final long mBudgetNanos;
+
+    /**
+     * @param budgetNanos latencies over this value are counted apart
+     */
+    public LatencyHistogram(final long budgetNanos) {
+        mBuckets = new long[BUCKETS];
+        mBudgetNanos = budgetNanos;
+    }
+
+    /**
+     * Adds a new latency
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public synchronized void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        mBuckets[getBucket(value / NANOS_PER_MICRO)]++;
+        mCount++;
+        mTotalNanos += value;
+        if (value > mMaxNanos) {
+            mMaxNanos = value;
+        }
+        if (value > mBudgetNanos) {
+            mOverBudget++;
+        }
+    }
+
+    private static int getBucket(final long micros) {
+        if (micros < 1) {
+            return 0;
+        }
+        final int log2 = 63 - Long.numberOfLeadingZeros(micros);
+        //next two bits after the highest one
+        final int fraction = log2 >= 2 ? (int) (micros >>> (log2 - 2)) & (SUB_BUCKETS - 1) : (int) (micros << (2 - log2)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, log2 * SUB_BUCKETS + fraction + 1);
+    }
+
+    /**
+     * @return upper bound of a bucket, in microseconds
+     */
+    private static double getBucketLimit(final int bucket) {
+        if (bucket == 0) {
+            return 1;
+        }
+        final int log2 = (bucket - 1) / SUB_BUCKETS;
+        final int fraction = (bucket - 1) % SUB_BUCKETS;
+        return Math.pow(2, log2) * (1 + (fraction + 1) / (double) SUB_BUCKETS);
+    }
+
+    /**
+     * @param percentile value between 0 and 100
+     * @return latency in milliseconds below which the given percentage of the values are, 0 if
+     * there are no values
+     */
+    public synchronized double getPercentileMillis(final double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+        long accumulated = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            accumulated += mBuckets[bucket];
+            if (accumulated >= rank) {
+                return Math.min(getBucketLimit(bucket) / 1000, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return number of latencies over the budget
+     */
+    public synchronized long getOverBudgetCount() {
+        return mOverBudget;
+    }
+
+    public synchronized double getMeanMillis() {
+        return mCount == 0 ? 0 : mTotalNanos / (double) mCount / 1000000;
+    }
+
+    public synchronized double getMaxMillis() {
+        return mMaxNanos / 1000000.0;
+    }
+}
@@ -0,0 +1,173 @@
+package es.uam.eps.tfg.app.tfgapp.util.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms of the main steps of the app, tagged by action and expression size. When
+ * disabled (the default), measuring costs a single volatile read.
+ * <p>
+ * Usage:
+ * <pre>
+ * final long start = LatencyMetrics.start();
+ * ...
+ * LatencyMetrics.stop(LatencyMetrics.Step.DRAW, null, nodes, start);
+ * </pre>
+ */
+public final class LatencyMetrics {
+    /**
+     * Time available for drawing a frame at 60 fps
+     */
+    public static final long FRAME_BUDGET_NANOS = 16000000;
+    /**
+     * Returned by start() when the metrics are disabled
+     */
+    public static final long NOT_MEASURED = -1;
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+    private static volatile boolean mEnabled = false;
+
+    private LatencyMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public static void setEnabled(final boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * @return current time to give to stop(), NOT_MEASURED if the metrics are disabled
+     */
+    public static long start() {
+        return mEnabled ? System.nanoTime() : NOT_MEASURED;
+    }
+
+    /**
+     * Records the time since a call to start()
+     *
+     * @param step  step measured
+     * @param tag   action (or any other tag) of the step, null if none
+     * @param size  size of the expression, in nodes. Grouped by powers of two
+     * @param start value returned by start()
+     */
+    public static void stop(final Step step, final String tag, final int size, final long start) {
+        if (start == NOT_MEASURED || !mEnabled) {
+            return;
+        }
+        record(step, tag, size, System.nanoTime() - start);
+    }
+
+    /**
+     * Records a latency
+     *
+     * @param step  step measured
+     * @param tag   action (or any other tag) of the step, null if none
+     * @param size  size of the expression, in nodes. Grouped by powers of two
+     * @param nanos latency in nanoseconds
+     */
+    public static void record(final Step step, final String tag, final int size, final long nanos) {
+        final String key = getKey(step, tag, getSizeGroup(size));
+        LatencyHistogram histogram = mHistograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(FRAME_BUDGET_NANOS);
+            final LatencyHistogram previous = mHistograms.putIfAbsent(key, histogram);
+            if (previous != null) {
+                histogram = previous;
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * @param step step measured
+     * @param tag  tag of the step, null if none
+     * @param size size of the expression, in nodes
+     * @return the histogram of the step, null if there are no measures
+     */
+    public static LatencyHistogram getHistogram(final Step step, final String tag, final int size) {
+        return mHistograms.get(getKey(step, tag, getSizeGroup(size)));
+    }
+
+    /**
+     * Deletes all the measures
+     */
+    public static void reset() {
+        mHistograms.clear();
+    }
+
+    /**
+     * @param size size of the expression, in nodes
+     * @return the smallest power of two greater or equal than the size
+     */
+    static int getSizeGroup(final int size) {
+        if (size <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static String getKey(final Step step, final String tag, final int sizeGroup) {
+        return step.name() + "|" + (tag == null ? "" : tag) + "|" + sizeGroup;
+    }
+
+    /**
+     * @return all the histograms as a JSON document, sorted by step, tag and size
+     */
+    public static String toJson() {
+        final List<String> keys = new ArrayList<>(mHistograms.keySet());
+        Collections.sort(keys);
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"enabled\":").append(mEnabled);
+        sb.append(",\"frame_budget_ms\":").append(FRAME_BUDGET_NANOS / 1000000);
+        sb.append(",\"histograms\":[");
+        boolean first = true;
+        for (final String key : keys) {
+            final LatencyHistogram histogram = mHistograms.get(key);
+            if (histogram == null) {
+                continue;
+            }
+            final String[] parts = key.split("\\|", -1);
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"step\":\"").append(parts[0]).append('"');
+            if (!parts[1].isEmpty()) {
+                sb.append(",\"tag\":\"").append(escape(parts[1])).append('"');
+            }
+            sb.append(",\"max_nodes\":").append(parts[2]);
+            sb.append(",\"count\":").append(histogram.getCount());
+            sb.append(",\"over_budget\":").append(histogram.getOverBudgetCount());
+            sb.append(",\"mean_ms\":").append(format(histogram.getMeanMillis()));
+            sb.append(",\"p50_ms\":").append(format(histogram.getPercentileMillis(50)));
+            sb.append(",\"p90_ms\":").append(format(histogram.getPercentileMillis(90)));
+            sb.append(",\"p99_ms\":").append(format(histogram.getPercentileMillis(99)));
+            sb.append(",\"max_ms\":").append(format(histogram.getMaxMillis()));
+            sb.append('}');
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private static String format(final double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    private static String escape(final String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Steps of the app that are measured
+     */
+    public enum Step {
+        CAS_ACTION, HISTORY_APPEND, CHECKPOINT, DRAWABLE_BUILD, LAYOUT, DRAW, HIT_TEST
+    }
+}
@@ -2,14 +2,17 @@ package es.uam.eps.tfg.app.tfgapp.view;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.widget.Toast;
 
@@ -22,22 +25,53 @@ import es.uam.eps.tfg.app.tfgapp.controller.listener.OnExpressionActionListener;
 import es.uam.eps.tfg.app.tfgapp.controller.listener.OnExpressionUpdateListener;
 import es.uam.eps.tfg.app.tfgapp.util.PreferenceUtils;
 import es.uam.eps.tfg.app.tfgapp.util.Utils;
-import es.uam.eps.tfg.app.tfgapp.view.drawable.DrawableExpression;
-import es.uam.eps.tfg.app.tfgapp.view.drawable.DrawableExpressionList;
+import es.uam.eps.tfg.app.tfgapp.util.metrics.LatencyMetrics;
+import es.uam.eps.tfg.app.tfgapp.view.layout.ExpressionLayout;
+import es.uam.eps.tfg.app.tfgapp.view.layout.ExpressionLayoutLoader;
 
 /**
- * View for an expression from the CAS
+ * View for an expression from the CAS. The expression layout is computed in background, so the
+ * view only draws the last one received.
  */
-public class ExpressionView extends View implements OnExpressionUpdateListener {
+public class ExpressionView extends View implements OnExpressionUpdateListener, ExpressionLayoutLoader.OnLayoutReadyListener {
 
     private static final int POPUP_MARGIN = 15;
+    private static final float MIN_SCALE = 0.05f;
+    private static final float MAX_SCALE = 5f;
+    /**
+     * Below this zoom, subexpressions narrower than LOD_MIN_WIDTH pixels are drawn collapsed
+     */
+    private static final float LOD_SCALE_THRESHOLD = 0.5f;
+    private static final int LOD_MIN_WIDTH = 48;
+    private static final String COLLAPSED_GLYPH = "…";
+    /**
+     * Opacity (0-255) and distance to the expression, in pixels, of the previewed result
+     */
+    private static final int PREVIEW_ALPHA = 0x60;
+    private static final int PREVIEW_MARGIN = 40;
 
     private final GestureDetector mGestureDetector;
+    private final ScaleGestureDetector mScaleGestureDetector;
+    private final Matrix mViewMatrix;
+    private final Matrix mInverseViewMatrix;
+    private final RectF mVisibleAreaF;
+    private final Rect mVisibleArea;
+    private final float[] mTouchPoint;
+    private float mScale;
     private final Typeface mFont;
+    private final Paint mExpressionPaint;
     private final Paint mMultiSelectionTextPaint;
-    private DrawableExpression mExp;
+    private final ExpressionLayoutLoader mLayoutLoader;
+    private final ExpressionLayoutLoader mPreviewLoader;
+    private final Paint mPreviewPaint;
+    private Operation mExp;
+    private ExpressionLayout mLayout;
+    private Operation mPreview;
+    private ExpressionLayout mPreviewLayout;
+    private int mNormalColor;
+    private int mSelectedColor;
     private OnExpressionActionListener mOnExpressionActionListener;
-    private int mCurrentTextSize;
+    private final int mCurrentTextSize;
     private boolean mMultiSelection = false;
     private String mMultipleSelectionText;
     private int mPopupX;
@@ -53,12 +87,40 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
         mFont = Typeface.createFromAsset(context.getAssets(), Utils.FONT_PATH);
 
         mGestureDetector = new GestureDetector(context, new SelectionGestureListener());
+        mScaleGestureDetector = new ScaleGestureDetector(context, new ZoomGestureListener());
+
+        mViewMatrix = new Matrix();
+        mInverseViewMatrix = new Matrix();
+        mVisibleAreaF = new RectF();
+        mVisibleArea = new Rect();
+        mTouchPoint = new float[2];
+        mScale = 1f;
 
         mExp = null;
+        mLayout = null;
+        mCurrentTextSize = getResources().getDimensionPixelSize(R.dimen.exp_text_size);
+        mLayoutLoader = new ExpressionLayoutLoader(mFont, this);
+        mPreview = null;
+        mPreviewLayout = null;
+        mPreviewLoader = new ExpressionLayoutLoader(mFont, new ExpressionLayoutLoader.OnLayoutReadyListener() {
+            @Override
+            public void onLayoutReady(final ExpressionLayout layout) {
+                if (layout.getRoot() == mPreview) {
+                    mPreviewLayout = layout;
+                    mPreviewPaint.setTextSize(layout.getTextSize());
+                    invalidate();
+                }
+            }
+        });
 
-        mMultiSelectionTextPaint = new Paint();
+        mExpressionPaint = new Paint();
+        mExpressionPaint.setStyle(Paint.Style.FILL);
+        mExpressionPaint.setTextAlign(Paint.Align.CENTER);
+        mExpressionPaint.setTypeface(mFont);
+
+        mPreviewPaint = new Paint(mExpressionPaint);
 
-        //Log.d(Utils.LOG_TAG, "Main exp position: " + mExp.x() + " " + mExp.y());
+        mMultiSelectionTextPaint = new Paint();
     }
 
     public ExpressionView(final Context context, final AttributeSet attrs) {
@@ -67,25 +129,27 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
 
     @Override
     protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
-
-        //FOR DEBUGGING!!!!!!
-        if (w / 2 == 952.0)
-            Log.d(Utils.LOG_TAG, "Main exp position: " + mExp.x() + " " + mExp.y());
-        //FOR DEBUGGING!!!!!!
-
-        mExp.updateCoordinates(w / 2, h / 2);
-        mCurrentTextSize = getResources().getDimensionPixelSize(R.dimen.exp_text_size);
-        mExp.setTextSize(mCurrentTextSize);
+        resetViewport();
 
         super.onSizeChanged(w, h, oldw, oldh);
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        mLayoutLoader.cancel();
+        mPreviewLoader.cancel();
+        super.onDetachedFromWindow();
+    }
+
     @Override
     public boolean onTouchEvent(final MotionEvent event) {
         if (event.getAction() == MotionEvent.ACTION_UP) {
             invalidate();
         }
-        mGestureDetector.onTouchEvent(event);
+        mScaleGestureDetector.onTouchEvent(event);
+        if (!mScaleGestureDetector.isInProgress()) {
+            mGestureDetector.onTouchEvent(event);
+        }
         invalidate();
 
         return true;
@@ -95,13 +159,159 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
     protected void onDraw(final Canvas canvas) {
         super.onDraw(canvas);
 
-        mExp.onDraw(canvas);
+        if (mLayout != null) {
+            final long start = LatencyMetrics.start();
+            canvas.save();
+            canvas.concat(mViewMatrix);
+            final Rect visibleArea = getVisibleArea();
+            if (mLayout.getNodeCount() > 0 && intersects(mLayout, ExpressionLayout.ROOT, visibleArea)) {
+                drawList(canvas, mLayout, ExpressionLayout.ROOT, visibleArea, getMinExpandedWidth(), isSelected(ExpressionLayout.ROOT));
+            }
+            if (mPreviewLayout != null) {
+                drawPreview(canvas, visibleArea);
+            }
+            canvas.restore();
+            LatencyMetrics.stop(LatencyMetrics.Step.DRAW, null, mLayout.getNodeCount(), start);
+        }
 
         if (mMultiSelection) {
             canvas.drawText(mMultipleSelectionText, mPopupX, mPopupY, mMultiSelectionTextPaint);
         }
     }
 
+    /**
+     * Draws the previewed result of an action under the expression, faded
+     *
+     * @param canvas      view where to draw the preview
+     * @param visibleArea area of the expression currently on screen
+     */
+    private void drawPreview(final Canvas canvas, final Rect visibleArea) {
+        if (mPreviewLayout.getNodeCount() == 0) {
+            return;
+        }
+        int dy = PREVIEW_MARGIN - mPreviewLayout.getTop(ExpressionLayout.ROOT);
+        if (mLayout.getNodeCount() > 0) {
+            dy += mLayout.getBottom(ExpressionLayout.ROOT);
+        }
+        canvas.save();
+        canvas.translate(0, dy);
+        visibleArea.offset(0, -dy);
+        if (intersects(mPreviewLayout, ExpressionLayout.ROOT, visibleArea)) {
+            drawList(canvas, mPreviewLayout, ExpressionLayout.ROOT, visibleArea, getMinExpandedWidth(), false);
+        }
+        visibleArea.offset(0, dy);
+        canvas.restore();
+    }
+
+    /**
+     * Draws the visible children of a list
+     *
+     * @param canvas           view where to draw the list
+     * @param layout           layout the list belongs to
+     * @param list             index of the list in the layout
+     * @param visibleArea      area of the expression currently on screen
+     * @param minExpandedWidth lists narrower than this are drawn collapsed, 0 for full detail
+     * @param selected         if the list is selected (so all its elements are)
+     */
+    private void drawList(final Canvas canvas, final ExpressionLayout layout, final int list, final Rect visibleArea, final int minExpandedWidth, final boolean selected) {
+        final int end = layout.getFirstChild(list) + layout.getChildCount(list);
+        for (int node = layout.findFirstChildEndingAfter(list, visibleArea.left); node < end; node++) {
+            if (layout.getLeft(node) > visibleArea.right) {
+                break;//elements are placed from left to right, no one else is visible
+            }
+            final boolean nodeSelected = selected || layout.getColorState(node) == ExpressionLayout.COLOR_SELECTED;
+            if (!layout.isList(node)) {
+                drawGlyph(canvas, layout, node, layout.getText(node), nodeSelected);
+            } else if (layout.getWidth(node) < minExpandedWidth) {
+                drawGlyph(canvas, layout, node, COLLAPSED_GLYPH, nodeSelected);
+            } else if (intersects(layout, node, visibleArea)) {
+                drawList(canvas, layout, node, visibleArea, minExpandedWidth, nodeSelected);
+            }
+        }
+    }
+
+    private void drawGlyph(final Canvas canvas, final ExpressionLayout layout, final int node, final String text, final boolean selected) {
+        final Paint paint;
+        if (layout == mLayout) {
+            paint = mExpressionPaint;
+            paint.setColor(selected ? mSelectedColor : mNormalColor);
+        } else {
+            paint = mPreviewPaint;
+        }
+        canvas.drawText(text, layout.getCenterX(node), layout.getBottom(node), paint);
+    }
+
+    private boolean isSelected(final int node) {
+        return mLayout.getColorState(node) == ExpressionLayout.COLOR_SELECTED;
+    }
+
+    private static boolean intersects(final ExpressionLayout layout, final int node, final Rect area) {
+        return area.intersects(layout.getLeft(node), layout.getTop(node), layout.getRight(node), layout.getBottom(node));
+    }
+
+    /**
+     * @return the area of the expression currently on screen, in expression coordinates
+     */
+    private Rect getVisibleArea() {
+        mVisibleAreaF.set(0, 0, getWidth(), getHeight());
+        mInverseViewMatrix.mapRect(mVisibleAreaF);
+        mVisibleAreaF.roundOut(mVisibleArea);
+        return mVisibleArea;
+    }
+
+    /**
+     * @return minimal width (in expression coordinates) for a subexpression to be drawn with all its detail
+     */
+    private int getMinExpandedWidth() {
+        if (mScale >= LOD_SCALE_THRESHOLD) {
+            return 0;
+        }
+        return (int) (LOD_MIN_WIDTH / mScale);
+    }
+
+    /**
+     * Goes back to the original position and zoom of the expression
+     */
+    private void resetViewport() {
+        mScale = 1f;
+        //the expression is centered at (0,0)
+        mViewMatrix.setTranslate(getWidth() / 2, getHeight() / 2);
+        mViewMatrix.invert(mInverseViewMatrix);
+    }
+
+    /**
+     * Translates and zooms the expression
+     *
+     * @param dx     horizontal translation, in pixels
+     * @param dy     vertical translation, in pixels
+     * @param factor zoom factor, relative to the current one
+     * @param focusX x coordinate of the zoom center
+     * @param focusY y coordinate of the zoom center
+     */
+    private void moveViewport(final float dx, final float dy, final float factor, final float focusX, final float focusY) {
+        final float newScale = Math.max(MIN_SCALE, Math.min(mScale * factor, MAX_SCALE));
+        final float realFactor = newScale / mScale;
+        mScale = newScale;
+
+        mViewMatrix.postTranslate(dx, dy);
+        mViewMatrix.postScale(realFactor, realFactor, focusX, focusY);
+        mViewMatrix.invert(mInverseViewMatrix);
+        invalidate();
+    }
+
+    /**
+     * Converts a touch position into expression coordinates
+     *
+     * @param e touch event
+     * @return point in the expression coordinates system
+     */
+    private Point toExpressionCoordinates(final MotionEvent e) {
+        mTouchPoint[0] = e.getX();
+        mTouchPoint[1] = e.getY();
+        mInverseViewMatrix.mapPoints(mTouchPoint);
+        return new Point((int) mTouchPoint[0], (int) mTouchPoint[1]);
+    }
+
     /**
      * Sets a listener for doing actions every time an expression is selected
      *
@@ -111,23 +321,64 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
         mOnExpressionActionListener = onExpressionActionListener;
     }
 
+    /**
+     * Shows the result of an action under the current expression, until {@link #hidePreview()}
+     *
+     * @param result expression to preview. Must not be modified while it's shown
+     */
+    public void showPreview(final Operation result) {
+        mPreview = result;
+        mPreviewLayout = null;
+        mPreviewLoader.load(result, mCurrentTextSize);
+    }
+
+    /**
+     * Hides the result shown by {@link #showPreview(Operation)}
+     */
+    public void hidePreview() {
+        mPreviewLoader.cancel();
+        mPreview = null;
+        mPreviewLayout = null;
+        invalidate();
+    }
+
+    /**
+     * Stops making the layouts of the expression and the preview shown, so they can be modified.
+     * The view isn't updated until the next expression is given
+     */
+    public void releaseExpression() {
+        mLayoutLoader.stop();
+        mPreviewLoader.stop();
+    }
+
     @Override
     public void onExpressionUpdated(final Operation exp) {
-        Point coord = null;
-        if (mExp != null) {
-            coord = mExp.getCoordinates();
+        onExpressionUpdated(exp, null);
+    }
+
+    /**
+     * Shows a new expression, using a layout made before for it if there is one
+     *
+     * @param exp    expression to show
+     * @param layout layout of the expression, null to make a new one
+     */
+    public void onExpressionUpdated(final Operation exp, final ExpressionLayout layout) {
+        mExp = exp;
+        if (layout != null && layout.getRoot() == exp) {
+            mLayoutLoader.cancel();
+            layout.clearColorStates();
+            onLayoutReady(layout);
         } else {
-            coord = new Point(0, 0);
+            mLayoutLoader.load(exp, mCurrentTextSize);
         }
-        final int textSize = getResources().getDimensionPixelSize(R.dimen.exp_text_size);
-        mExp = new DrawableExpressionList(mFont, coord, exp, textSize);
+        hidePreview();
 
-        final int normalColor = PreferenceUtils.getExpressionColor(getContext());
-        final int selectedColor = PreferenceUtils.getExpressionHighlightColor(getContext());
-        mExp.setNormalColor(normalColor);
-        mExp.setSelectedColor(selectedColor);
+        mNormalColor = PreferenceUtils.getExpressionColor(getContext());
+        mSelectedColor = PreferenceUtils.getExpressionHighlightColor(getContext());
+        mPreviewPaint.setColor(mSelectedColor);
+        mPreviewPaint.setAlpha(PREVIEW_ALPHA);
 
-        mMultiSelectionTextPaint.setColor(selectedColor);
+        mMultiSelectionTextPaint.setColor(mSelectedColor);
         mMultiSelectionTextPaint.setTextSize(getResources().getDimension(R.dimen.card_title_size));
 
         mMultipleSelectionText = getResources().getString(R.string.popup_multiple_selection_enabled);
@@ -142,24 +393,50 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
     }
 
     /**
-     * Returns the expression located at given coordinates and the depth of it
-     *
-     * @param x     x coordinate
-     * @param y     y coordinate
-     * @param depth depth of the expression returned in position 0. must be allowed by the external caller
-     * @return expression located at the coordinates, null if no one was found
+     * @return layout of the current expression, null if it isn't ready yet
      */
-    private Operation getSelectedExp(final int x, final int y, final int[] depth) {
+    public ExpressionLayout getLayout() {
+        return (mLayout != null && mLayout.getRoot() == mExp) ? mLayout : null;
+    }
 
-        final DrawableExpression exp = mExp.select(x, y, depth);
+    @Override
+    public void onLayoutReady(final ExpressionLayout layout) {
+        mLayout = layout;
+        mExpressionPaint.setTextSize(layout.getTextSize());
+        invalidate();
+    }
 
-        if (exp != null) {
-            Log.d(Utils.LOG_TAG, "Clicked on expression: " + exp.getExpression().toString() + " DEPTH: " + depth[0]);
+    /**
+     * Returns the node of the layout located at given coordinates
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return index of the node located at the coordinates, NO_NODE if no one was found or the
+     * layout of the current expression is not ready yet
+     */
+    private int getSelectedNode(final int x, final int y) {
+        if (mLayout == null || mLayout.getRoot() != mExp) {
+            Log.d(Utils.LOG_TAG, "Expression layout not ready");
+            return ExpressionLayout.NO_NODE;
+        }
+        final long start = LatencyMetrics.start();
+        final int node = mLayout.findNodeAt(x, y);
+        LatencyMetrics.stop(LatencyMetrics.Step.HIT_TEST, null, mLayout.getNodeCount(), start);
 
-            return exp.getExpression();
+        if (node != ExpressionLayout.NO_NODE) {
+            Log.d(Utils.LOG_TAG, "Clicked on expression: " + mLayout.getExpression(node).toString());
         } else {
             Log.d(Utils.LOG_TAG, "Clicked out of the exp");
-            return null;
+        }
+        return node;
+    }
+
+    /**
+     * Clears all the selected expressions, going back to the normal colour
+     */
+    private void clearSelection() {
+        if (mLayout != null) {
+            mLayout.clearColorStates();
         }
     }
 
@@ -173,12 +450,13 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
         @Override
         public boolean onSingleTapUp(final MotionEvent e) {
 
+            final Point touched = toExpressionCoordinates(e);
             if (!mMultiSelection) {
 
-                selectSingleExpression((int) e.getX(), (int) e.getY());
+                selectSingleExpression(touched.x, touched.y);
 
             } else {
-                if (selectMultipleExpression((int) e.getX(), (int) e.getY(), false)) {
+                if (selectMultipleExpression(touched.x, touched.y, false)) {
                     mOnExpressionActionListener.onMultipleExpressionSelected(mSelectedExpressions);
                 }
             }
@@ -197,20 +475,21 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
         private boolean selectMultipleExpression(final int x, final int y, final boolean first) {
             Log.d(Utils.LOG_TAG, "multi-selection expression: ");
 
-            final int[] depth = {0};
-            final Operation selection = getSelectedExp(x, y, depth);
+            final int node = getSelectedNode(x, y);
 
-            if (selection != null) {
+            if (node != ExpressionLayout.NO_NODE) {
+                final Operation selection = mLayout.getExpression(node);
 
                 if (!mSelectedExpressions.contains(selection)) {
                     Log.d(Utils.LOG_TAG, "Added expression: " + selection.toString());
 
+                    mLayout.setColorState(node, ExpressionLayout.COLOR_SELECTED);
                     mSelectedExpressions.add(selection);
 
                 } else {
                     Log.d(Utils.LOG_TAG, "Already contained: " + selection.toString());
 
-                    mExp.clearSelection(x, y);
+                    mLayout.setColorState(node, ExpressionLayout.COLOR_NORMAL);
 
                     mSelectedExpressions.remove(selection);
                 }
@@ -230,10 +509,11 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
          */
         private void selectSingleExpression(final int x, final int y) {
             Log.d(Utils.LOG_TAG, "Single selection");
-            final int[] depth = {0};
-            mExp.clearSelection();
-            final Operation selection = getSelectedExp(x, y, depth);
-            if (selection != null) {
+            clearSelection();
+            final int node = getSelectedNode(x, y);
+            if (node != ExpressionLayout.NO_NODE) {
+                mLayout.setColorState(node, ExpressionLayout.COLOR_SELECTED);
+                final Operation selection = mLayout.getExpression(node);
                 Log.d(Utils.LOG_TAG, "Selected Exp: " + selection.toString());
                 mOnExpressionActionListener.onSingleExpressionSelected(selection);
             } else {
@@ -248,7 +528,7 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
         private void cancelSelection() {
             Log.d(Utils.LOG_TAG, "Selection cancelled");
             mMultiSelection = false;
-            mExp.clearSelection();
+            clearSelection();
             mSelectedExpressions = null;
             mOnExpressionActionListener.onCancelledSelectedExpression();
         }
@@ -257,17 +537,37 @@ public class ExpressionView extends View implements OnExpressionUpdateListener {
         public void onLongPress(final MotionEvent e) {
 
             Log.d(Utils.LOG_TAG, "Multiple selection started");
-            final int x = (int) e.getX();
-            final int y = (int) e.getY();
+            final Point touched = toExpressionCoordinates(e);
+            final int x = touched.x;
+            final int y = touched.y;
             mMultiSelection = true;
             mSelectedExpressions = new ArrayList<>();
-            mExp.clearSelection();
+            clearSelection();
 
             if (selectMultipleExpression(x, y, true)) {
                 mOnExpressionActionListener.onMultipleExpressionSelected(mSelectedExpressions);
             }
         }
 
+        @Override
+        public boolean onScroll(final MotionEvent e1, final MotionEvent e2, final float distanceX, final float distanceY) {
+            moveViewport(-distanceX, -distanceY, 1f, 0, 0);
+            return true;
+        }
+
     }/* END_GESTURELISTENER */
 
+    /**
+     * GestureListener for zooming the expression with two fingers
+     */
+    private class ZoomGestureListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+
+        @Override
+        public boolean onScale(final ScaleGestureDetector detector) {
+            moveViewport(0, 0, detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+            return true;
+        }
+
+    }/* END_ZOOMLISTENER */
+
 }
@@ -0,0 +1,291 @@
+package es.uam.eps.tfg.app.tfgapp.view.layout;
+
+import java.util.Arrays;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Result of placing an expression on a plane. The root list is centered at x = 0, with its
+ * baseline at y = 0.
+ * <p>
+ * Nodes are stored in breadth-first order, so the children of each list are contiguous and sorted
+ * from left to right. Every property of a node is kept in a parallel array and read by its index,
+ * so there is no object per node. All the nodes have the same baseline and height, so they are
+ * kept once. Glyph texts are interned in a table shared by all the nodes.
+ * <p>
+ * The geometry is immutable. The color state can only be changed from the main thread.
+ */
+public final class ExpressionLayout {
+    public static final int NO_NODE = -1;
+    public static final int ROOT = 0;
+
+    /**
+     * List of elements (an operation)
+     */
+    public static final int KIND_LIST = 0;
+    /**
+     * List of elements that is always selected as a whole (such as negative numbers)
+     */
+    public static final int KIND_CLOSED_LIST = 1;
+    /**
+     * Single element (such as numbers or variables)
+     */
+    public static final int KIND_SINGLE = 2;
+    public static final int KIND_OPERATOR = 3;
+    public static final int KIND_PARENTHESIS = 4;
+
+    public static final int COLOR_NORMAL = 0;
+    /**
+     * The node and all its descendants are drawn with the highlight color
+     */
+    public static final int COLOR_SELECTED = 1;
+
+    static final int NO_GLYPH = -1;
+
+    private final Operation mRoot;
+    private final float mTextSize;
+    private final int mCount;
+    private final int[] mKind;
+    private final int[] mParent;
+    private final int[] mFirstChild;
+    private final int[] mChildCount;
+    /**
+     * Left bound
+     */
+    private final int[] mX;
+    private final int[] mWidth;
+    /**
+     * Baseline of every node, which is its bottom bound
+     */
+    private final int mBaseline;
+    /**
+     * Height of every node
+     */
+    private final int mHeight;
+    /**
+     * Index in the glyph table, NO_GLYPH for lists
+     */
+    private final int[] mGlyph;
+    private final int[] mColor;
+    private final String[] mGlyphs;
+    private final Operation[] mExpression;
+
+    ExpressionLayout(final Operation root, final float textSize, final int count, final int[] kind, final int[] parent,
+                     final int[] firstChild, final int[] childCount, final int[] x, final int[] width,
+                     final int baseline, final int height, final int[] glyph, final String[] glyphs,
+                     final Operation[] expression) {
+        mRoot = root;
+        mTextSize = textSize;
+        mCount = count;
+        mKind = kind;
+        mParent = parent;
+        mFirstChild = firstChild;
+        mChildCount = childCount;
+        mX = x;
+        mWidth = width;
+        mBaseline = baseline;
+        mHeight = height;
+        mGlyph = glyph;
+        mColor = new int[count];
+        mGlyphs = glyphs;
+        mExpression = expression;
+    }
+
+    /**
+     * @return the expression this layout was created from
+     */
+    public Operation getRoot() {
+        return mRoot;
+    }
+
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    /**
+     * @return number of nodes, including lists
+     */
+    public int getNodeCount() {
+        return mCount;
+    }
+
+    public int getKind(final int node) {
+        return mKind[node];
+    }
+
+    /**
+     * @param node index of the node
+     * @return true if the node contains other nodes, false if it's a glyph
+     */
+    public boolean isList(final int node) {
+        return mKind[node] == KIND_LIST || mKind[node] == KIND_CLOSED_LIST;
+    }
+
+    /**
+     * @param node index of the node
+     * @return index of the list that contains the node, NO_NODE for the root
+     */
+    public int getParent(final int node) {
+        return mParent[node];
+    }
+
+    public int getFirstChild(final int node) {
+        return mFirstChild[node];
+    }
+
+    public int getChildCount(final int node) {
+        return mChildCount[node];
+    }
+
+    public int getLeft(final int node) {
+        return mX[node];
+    }
+
+    public int getTop(final int node) {
+        return mBaseline - mHeight;
+    }
+
+    public int getRight(final int node) {
+        return mX[node] + mWidth[node];
+    }
+
+    public int getBottom(final int node) {
+        return mBaseline;
+    }
+
+    public int getWidth(final int node) {
+        return mWidth[node];
+    }
+
+    public int getHeight(final int node) {
+        return mHeight;
+    }
+
+    /**
+     * @return x coordinate where the glyph of the node is centered
+     */
+    public int getCenterX(final int node) {
+        return mX[node] + mWidth[node] / 2;
+    }
+
+    /**
+     * @param node index of the node
+     * @return text to draw for a glyph, null for lists
+     */
+    public String getText(final int node) {
+        final int glyph = mGlyph[node];
+        return glyph == NO_GLYPH ? null : mGlyphs[glyph];
+    }
+
+    /**
+     * @return number of different glyph texts
+     */
+    public int getGlyphCount() {
+        return mGlyphs.length;
+    }
+
+    /**
+     * @param node index of the node
+     * @return the expression of single elements and lists, null for operators and parenthesis
+     */
+    public Operation getExpression(final int node) {
+        return mExpression[node];
+    }
+
+    /**
+     * Checks if a position is inside the node bounds
+     *
+     * @param node index of the node
+     * @param x
+     * @param y
+     * @return true if the node contains the coordinates, false otherwise
+     */
+    public boolean contains(final int node, final int x, final int y) {
+        return mX[node] <= x && x - mX[node] < mWidth[node] && mBaseline - mHeight <= y && y < mBaseline;
+    }
+
+    /**
+     * Binary search over the children of a list, which are sorted from left to right
+     *
+     * @param node index of the list
+     * @param x    x coordinate
+     * @return index of the first child whose right bound is after the given coordinate. If there is
+     * no one, the index after the last child
+     */
+    public int findFirstChildEndingAfter(final int node, final int x) {
+        int low = mFirstChild[node];
+        int high = low + mChildCount[node];
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mX[mid] + mWidth[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Given a position, returns the node that should be selected. Operators and parenthesis select
+     * the list they belong to.
+     *
+     * @param x
+     * @param y
+     * @return index of the selected node (a single element or a list), NO_NODE if no one was found
+     */
+    public int findNodeAt(final int x, final int y) {
+        if (mCount == 0 || !contains(ROOT, x, y)) {
+            return NO_NODE;
+        }
+        int list = ROOT;
+        while (true) {
+            final int child = findFirstChildEndingAfter(list, x);
+            if (child >= mFirstChild[list] + mChildCount[list] || !contains(child, x, y)) {
+                return NO_NODE;
+            }
+            switch (mKind[child]) {
+                case KIND_SINGLE:
+                case KIND_CLOSED_LIST:
+                    return child;
+                case KIND_OPERATOR:
+                case KIND_PARENTHESIS:
+                    return list;
+                default:
+                    list = child;
+            }
+        }
+    }
+
+    /**
+     * @param node index of the node
+     * @return the color state of the node itself, not including the one inherited from its lists
+     */
+    public int getColorState(final int node) {
+        return mColor[node];
+    }
+
+    public void setColorState(final int node, final int state) {
+        mColor[node] = state;
+    }
+
+    /**
+     * Sets every node back to the normal color
+     */
+    public void clearColorStates() {
+        Arrays.fill(mColor, COLOR_NORMAL);
+    }
+
+    /**
+     * @param exp expression to find
+     * @return index of the node that draws the expression, NO_NODE if it's not in the layout
+     */
+    public int indexOf(final Operation exp) {
+        for (int i = 0; i < mCount; i++) {
+            if (mExpression[i] == exp) {
+                return i;
+            }
+        }
+        return NO_NODE;
+    }
+}
@@ -0,0 +1,299 @@
+package es.uam.eps.tfg.app.tfgapp.view.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.app.tfgapp.util.metrics.LatencyMetrics;
+
+/**
+ * Computes the layout of an expression. It doesn't depend on any view, so it can be run on a
+ * worker thread (or a plain JVM) as long as the expression is not modified meanwhile.
+ * <p>
+ * Working arrays and glyphs (operators, parenthesis and other texts, already measured) are kept
+ * between builds, so rebuilding an expression of a similar size barely allocates memory.
+ * <p>
+ * Not thread safe: each thread must have its own builder.
+ */
+public class ExpressionLayoutBuilder {
+
+    private static final int INITIAL_CAPACITY = 64;
+    /**
+     * Maximum number of glyphs kept between builds. Numbers and variables change between
+     * expressions, so the pool is emptied when it grows over this size
+     */
+    private static final int MAX_POOLED_GLYPHS = 256;
+    private static final String OPEN_PARENTHESIS = "(";
+    private static final String CLOSE_PARENTHESIS = ")";
+    /**
+     * Number of nodes added between two checks of the cancellation
+     */
+    private static final int CANCELLATION_CHECK = 256;
+
+    private final TextMetrics mMetrics;
+    private final int[] mSize;
+
+    private int mCount;
+    private int[] mKind;
+    private int[] mParent;
+    private int[] mFirstChild;
+    private int[] mChildCount;
+    private int[] mWidth;
+    private int[] mHeight;
+    private int[] mGlyph;
+    private Operation[] mExpression;
+    /**
+     * Glyph texts and their sizes, shared by all the layouts with the same text size. Each
+     * different text is measured only once
+     */
+    private final List<String> mGlyphs;
+    private final Map<String, Integer> mGlyphIndex;
+    private int[] mGlyphWidth;
+    private int[] mGlyphHeight;
+    private float mGlyphTextSize;
+    /**
+     * Copy of the glyph list given to the layouts. Reused until a new glyph is added
+     */
+    private String[] mGlyphTable;
+
+    public ExpressionLayoutBuilder(final TextMetrics metrics) {
+        mMetrics = metrics;
+        mSize = new int[2];
+        mGlyphs = new ArrayList<>();
+        mGlyphIndex = new HashMap<>();
+        mGlyphWidth = new int[INITIAL_CAPACITY];
+        mGlyphHeight = new int[INITIAL_CAPACITY];
+        mGlyphTable = null;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Places every element of the expression, from left to right
+     *
+     * @param exp      expression to place
+     * @param textSize size of the text, in pixels
+     * @return the immutable layout of the expression
+     */
+    public ExpressionLayout build(final Operation exp, final float textSize) {
+        return build(exp, textSize, null);
+    }
+
+    /**
+     * Places every element of the expression, from left to right, unless the build is cancelled
+     *
+     * @param exp          expression to place
+     * @param textSize     size of the text, in pixels
+     * @param cancellation checked while the expression is read, null if the build can't be
+     *                     cancelled
+     * @return the immutable layout of the expression, null if the build was cancelled. Once
+     * cancelled, the expression isn't read again
+     */
+    public ExpressionLayout build(final Operation exp, final float textSize, final Cancellation cancellation) {
+        final long start = LatencyMetrics.start();
+        mCount = 0;
+        if (mGlyphTextSize != textSize || mGlyphs.size() > MAX_POOLED_GLYPHS) {
+            clearGlyphs(textSize);
+        }
+
+        addNode(ExpressionLayout.KIND_LIST, ExpressionLayout.NO_NODE, null, exp);
+        for (int node = 0; node < mCount; node++) {
+            if (cancellation != null && node % CANCELLATION_CHECK == 0 && cancellation.isCancelled()) {
+                Arrays.fill(mExpression, 0, mCount, null);
+                return null;
+            }
+            //breadth first: the children of each list are added together, after the previous ones
+            if (mKind[node] == ExpressionLayout.KIND_LIST || mKind[node] == ExpressionLayout.KIND_CLOSED_LIST) {
+                mFirstChild[node] = mCount;
+                addChildren(node);
+                mChildCount[node] = mCount - mFirstChild[node];
+            }
+        }
+        LatencyMetrics.stop(LatencyMetrics.Step.DRAWABLE_BUILD, null, mCount, start);
+
+        final long placeStart = LatencyMetrics.start();
+        final ExpressionLayout layout = place(exp, textSize);
+        LatencyMetrics.stop(LatencyMetrics.Step.LAYOUT, null, mCount, placeStart);
+        //don't keep references to the expression between builds
+        Arrays.fill(mExpression, 0, mCount, null);
+        return layout;
+    }
+
+    private void allocate(final int capacity) {
+        mKind = new int[capacity];
+        mParent = new int[capacity];
+        mFirstChild = new int[capacity];
+        mChildCount = new int[capacity];
+        mWidth = new int[capacity];
+        mHeight = new int[capacity];
+        mGlyph = new int[capacity];
+        mExpression = new Operation[capacity];
+    }
+
+    private void clearGlyphs(final float textSize) {
+        mGlyphs.clear();
+        mGlyphIndex.clear();
+        mGlyphTable = null;
+        mGlyphTextSize = textSize;
+    }
+
+    /**
+     * Returns the glyph of a text, measuring it if it's the first time it appears
+     *
+     * @param text text of the glyph, null for lists
+     * @return index of the glyph, NO_GLYPH if there is no text
+     */
+    private int internGlyph(final String text) {
+        if (text == null) {
+            return ExpressionLayout.NO_GLYPH;
+        }
+        final Integer pooled = mGlyphIndex.get(text);
+        if (pooled != null) {
+            return pooled;
+        }
+        final int glyph = mGlyphs.size();
+        if (glyph == mGlyphWidth.length) {
+            mGlyphWidth = Arrays.copyOf(mGlyphWidth, glyph * 2);
+            mGlyphHeight = Arrays.copyOf(mGlyphHeight, glyph * 2);
+        }
+        mMetrics.measure(text, mGlyphTextSize, mSize);
+        mGlyphWidth[glyph] = mSize[0];
+        mGlyphHeight[glyph] = mSize[1];
+        mGlyphs.add(text);
+        mGlyphIndex.put(text, glyph);
+        mGlyphTable = null;
+        return glyph;
+    }
+
+    private String[] getGlyphTable() {
+        if (mGlyphTable == null) {
+            mGlyphTable = mGlyphs.toArray(new String[mGlyphs.size()]);
+        }
+        return mGlyphTable;
+    }
+
+    private void addChildren(final int node) {
+        final Operation exp = mExpression[node];
+        if (node == ExpressionLayout.ROOT) {
+            addArgs(node, exp);
+        } else if (CASUtils.isMinusOne(exp)) {
+            addNode(ExpressionLayout.KIND_PARENTHESIS, node, OPEN_PARENTHESIS, null);
+            addNode(ExpressionLayout.KIND_SINGLE, node, CASUtils.getSymbolStringExpression(exp), exp);
+            addNode(ExpressionLayout.KIND_PARENTHESIS, node, CLOSE_PARENTHESIS, null);
+        } else {
+            addNode(ExpressionLayout.KIND_PARENTHESIS, node, OPEN_PARENTHESIS, null);
+            if (CASUtils.isInverseOperation(exp) || CASUtils.isMinusOperation(exp)) {
+                addNode(ExpressionLayout.KIND_OPERATOR, node, CASUtils.getStringOperatorSymbol(exp), null);
+            }
+            addArgs(node, exp);
+            addNode(ExpressionLayout.KIND_PARENTHESIS, node, CLOSE_PARENTHESIS, null);
+        }
+    }
+
+    /**
+     * Adds the arguments of an operation, separated by its operator
+     */
+    private void addArgs(final int node, final Operation exp) {
+        final String op = CASUtils.getStringOperatorSymbol(exp);
+        boolean first = true;
+        for (final Operation arg : exp.getArgs()) {
+            if (!first) {
+                addNode(ExpressionLayout.KIND_OPERATOR, node, op, null);
+            }
+            first = false;
+            addArg(node, arg);
+        }
+    }
+
+    private void addArg(final int parent, final Operation arg) {
+        if (CASUtils.isMathematicalOperation(arg)) {
+            final boolean closed = CASUtils.isMinusOperation(arg) && !CASUtils.minusOperationHasSubexpressions(arg);
+            addNode(closed ? ExpressionLayout.KIND_CLOSED_LIST : ExpressionLayout.KIND_LIST, parent, null, arg);
+        } else if (CASUtils.isMinusOne(arg)) {
+            addNode(ExpressionLayout.KIND_CLOSED_LIST, parent, null, arg);
+        } else {
+            addNode(ExpressionLayout.KIND_SINGLE, parent, CASUtils.getSymbolStringExpression(arg), arg);
+        }
+    }
+
+    private void addNode(final int kind, final int parent, final String text, final Operation exp) {
+        if (mCount == mKind.length) {
+            grow();
+        }
+        mKind[mCount] = kind;
+        mParent[mCount] = parent;
+        mFirstChild[mCount] = mCount;
+        mChildCount[mCount] = 0;
+        final int glyph = internGlyph(text);
+        mGlyph[mCount] = glyph;
+        if (glyph == ExpressionLayout.NO_GLYPH) {
+            mWidth[mCount] = 0;
+            mHeight[mCount] = 0;
+        } else {
+            mWidth[mCount] = mGlyphWidth[glyph];
+            mHeight[mCount] = mGlyphHeight[glyph];
+        }
+        mExpression[mCount] = exp;
+        mCount++;
+    }
+
+    private void grow() {
+        final int capacity = mKind.length * 2;
+        mKind = Arrays.copyOf(mKind, capacity);
+        mParent = Arrays.copyOf(mParent, capacity);
+        mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+        mChildCount = Arrays.copyOf(mChildCount, capacity);
+        mWidth = Arrays.copyOf(mWidth, capacity);
+        mHeight = Arrays.copyOf(mHeight, capacity);
+        mGlyph = Arrays.copyOf(mGlyph, capacity);
+        mExpression = Arrays.copyOf(mExpression, capacity);
+    }
+
+    /**
+     * Computes the bounds of every node. Lists are as wide as their children together, and all the
+     * elements have the same height
+     */
+    private ExpressionLayout place(final Operation exp, final float textSize) {
+        int height = 0;
+        //children always come after their parent, so the widths can be summed up backwards
+        for (int node = mCount - 1; node > 0; node--) {
+            mWidth[mParent[node]] += mWidth[node];
+            if (height < mHeight[node]) {
+                height = mHeight[node];
+            }
+        }
+
+        final int[] x = new int[mCount];
+        if (mCount > 0) {
+            x[ExpressionLayout.ROOT] = -mWidth[ExpressionLayout.ROOT] / 2;
+        }
+        for (int node = 0; node < mCount; node++) {
+            int nextX = x[node];
+            final int end = mFirstChild[node] + mChildCount[node];
+            for (int child = mFirstChild[node]; child < end; child++) {
+                x[child] = nextX;
+                nextX += mWidth[child];
+            }
+        }
+
+        return new ExpressionLayout(exp, textSize, mCount,
+                Arrays.copyOf(mKind, mCount), Arrays.copyOf(mParent, mCount),
+                Arrays.copyOf(mFirstChild, mCount), Arrays.copyOf(mChildCount, mCount),
+                x, Arrays.copyOf(mWidth, mCount), 0, height,
+                Arrays.copyOf(mGlyph, mCount), getGlyphTable(),
+                Arrays.copyOf(mExpression, mCount));
+    }
+
+    /**
+     * Tells a build to stop before it ends
+     */
+    public interface Cancellation {
+        /**
+         * @return true if the layout is no longer needed
+         */
+        boolean isCancelled();
+    }
+}
@@ -0,0 +1,118 @@
+package es.uam.eps.tfg.app.tfgapp.view.layout;
+
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Computes expression layouts on a background thread and delivers them on the main thread. Only
+ * the result of the latest request is delivered: older ones are discarded.
+ * <p>
+ * The expressions are read while their layout is made, so they must not be modified until the
+ * layout is delivered or {@link #stop()} returns.
+ */
+public class ExpressionLayoutLoader {
+
+    private static final ExecutorService LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "expression-layout");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Handler mMainHandler;
+    private final ExpressionLayoutBuilder mBuilder;
+    private final OnLayoutReadyListener mListener;
+    /**
+     * Held while an expression is read
+     */
+    private final Object mReadLock;
+    private volatile int mGeneration;
+
+    /**
+     * @param font     font used for drawing the expression
+     * @param listener listener that receives the layouts, called on the main thread
+     */
+    public ExpressionLayoutLoader(final Typeface font, final OnLayoutReadyListener listener) {
+        mMainHandler = new Handler(Looper.getMainLooper());
+        //only used from the executor thread
+        mBuilder = new ExpressionLayoutBuilder(new PaintTextMetrics(font));
+        mListener = listener;
+        mReadLock = new Object();
+        mGeneration = 0;
+    }
+
+    /**
+     * Requests a new layout, cancelling the previous ones
+     *
+     * @param exp      expression to place
+     * @param textSize size of the text, in pixels
+     */
+    public void load(final Operation exp, final float textSize) {
+        final int generation = ++mGeneration;
+        final ExpressionLayoutBuilder.Cancellation cancellation = new ExpressionLayoutBuilder.Cancellation() {
+            @Override
+            public boolean isCancelled() {
+                return generation != mGeneration;
+            }
+        };
+        LAYOUT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ExpressionLayout layout;
+                synchronized (mReadLock) {
+                    layout = mBuilder.build(exp, textSize, cancellation);
+                }
+                if (layout == null) {
+                    return;
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            mListener.onLayoutReady(layout);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Discards every pending layout
+     */
+    public void cancel() {
+        mGeneration++;
+    }
+
+    /**
+     * Discards every pending layout and waits until the one being made, if any, stops reading its
+     * expression. Afterwards the expressions given to the loader can be modified
+     */
+    public void stop() {
+        mGeneration++;
+        synchronized (mReadLock) {
+            //a build in progress sees the new generation at its next check and returns
+        }
+    }
+
+    /**
+     * Listener for receiving the computed layouts
+     */
+    public interface OnLayoutReadyListener {
+        /**
+         * Called on the main thread when a layout is ready
+         *
+         * @param layout layout of the last requested expression
+         */
+        void onLayoutReady(ExpressionLayout layout);
+    }
+}
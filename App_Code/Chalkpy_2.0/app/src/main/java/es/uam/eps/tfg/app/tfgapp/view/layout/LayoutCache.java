@@ -0,0 +1,71 @@
+package es.uam.eps.tfg.app.tfgapp.view.layout;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+/**
+ * Last layouts of several expressions, such as the ones of the boards of a workspace, so showing
+ * them again doesn't wait for a new layout. Each layout is kept for an owner (its board) and the
+ * version of its expression, and it's only given back while the expression has the same version.
+ * The least recently used layouts are dropped first, and the layout of an owner is dropped with
+ * {@link #remove} when the owner is no longer shown.
+ */
+public final class LayoutCache {
+    private final Map<Object, Entry> mEntries;
+
+    /**
+     * @param maxLayouts number of layouts that are kept
+     */
+    public LayoutCache(final int maxLayouts) {
+        mEntries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Object, Entry> eldest) {
+                return size() > maxLayouts;
+            }
+        };
+    }
+
+    /**
+     * @param owner   owner of the expression
+     * @param version version of the expression when the layout was made
+     * @param layout  layout of the expression
+     */
+    public void put(final Object owner, final int version, final ExpressionLayout layout) {
+        mEntries.put(owner, new Entry(version, layout));
+    }
+
+    /**
+     * Drops the layout of an owner
+     *
+     * @param owner owner of the expression
+     */
+    public void remove(final Object owner) {
+        mEntries.remove(owner);
+    }
+
+    /**
+     * @param owner   owner of the expression
+     * @param version current version of the expression
+     * @param root    current expression
+     * @return the layout of the expression, null if there is none for that version
+     */
+    public ExpressionLayout get(final Object owner, final int version, final Operation root) {
+        final Entry entry = mEntries.get(owner);
+        if (entry == null || entry.mVersion != version || entry.mLayout.getRoot() != root) {
+            return null;
+        }
+        return entry.mLayout;
+    }
+
+    private static final class Entry {
+        private final int mVersion;
+        private final ExpressionLayout mLayout;
+
+        private Entry(final int version, final ExpressionLayout layout) {
+            mVersion = version;
+            mLayout = layout;
+        }
+    }
+}
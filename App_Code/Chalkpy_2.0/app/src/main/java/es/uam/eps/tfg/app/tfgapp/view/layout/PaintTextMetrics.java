@@ -0,0 +1,31 @@
+package es.uam.eps.tfg.app.tfgapp.view.layout;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * Text metrics given by an Android paint. Not thread safe: each thread must have its own instance
+ */
+public class PaintTextMetrics implements TextMetrics {
+
+    private final Paint mPaint;
+    private final Rect mBounds;
+
+    public PaintTextMetrics(final Typeface font) {
+        mPaint = new Paint();
+        mPaint.setTypeface(font);
+        mPaint.setTextAlign(Paint.Align.CENTER);
+        mBounds = new Rect();
+    }
+
+    @Override
+    public void measure(final String text, final float textSize, final int[] size) {
+        if (mPaint.getTextSize() != textSize) {
+            mPaint.setTextSize(textSize);
+        }
+        mPaint.getTextBounds(text, 0, text.length(), mBounds);
+        size[0] = mBounds.width();
+        size[1] = mBounds.height();
+    }
+}
@@ -0,0 +1,16 @@
+package es.uam.eps.tfg.app.tfgapp.view.layout;
+
+/**
+ * Measures the text of the expression glyphs. Used by the layout so it can be computed without a view
+ */
+public interface TextMetrics {
+
+    /**
+     * Measures the bounds of a text
+     *
+     * @param text     text to measure
+     * @param textSize size of the text, in pixels
+     * @param size     array where width (position 0) and height (position 1) are returned. Must have length 2
+     */
+    void measure(String text, float textSize, int[] size);
+}
@@ -0,0 +1,141 @@
+package es.uam.eps.tfg.app.tfgapp.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.model.history.HistoryLog;
+import es.uam.eps.tfg.app.tfgapp.model.history.SnapshotCodec;
+import es.uam.eps.tfg.app.tfgapp.tools.BatchRunner;
+import es.uam.eps.tfg.app.tfgapp.tools.BatchTask;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class EngineContextTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final int ENGINES = 64;
+    private static final int ROUNDS = 50;
+
+    private static final String TASKS = "=[*[+[$[x],#[5]],#[3]],*[#[3],#[7]]] ; OPERATE 1 ; MOVE_RIGHT 0.0 ; OPERATE 0.1 0.0\n"
+            + "=[*[+[$[x],#[5]],#[3]],*[#[3],#[7]]] ; CHANGE_SIDE 0.1\n"
+            + "=[+[#[3],#[3],*[#[3],#[7],#[8]],#[4],*[#[3],#[2],#[4]]],+[$[x],*[#[3],$[x]]]] ; OPERATE 0.2 ; ASSOCIATE 0.0 0.1 ; OPERATE 0.0\n"
+            + "=[+[#[3],#[3]],#[4]] ; OPERATE 0 ; CHANGE_SIDE 1\n"
+            + "=[*[$[x],+[-[#[8]],+[#[2],#[4]]],@INV[#[3]]],@INV[+[$[x],-[#[5]]]]] ; DISASSOCIATE 0.1.1 ; OPERATE 0.1\n";
+
+    @Test
+    public void defaultContextIsUnique() {
+        assertSame(EngineContext.getDefault(), EngineContext.getDefault());
+        final EngineContext context = new EngineContext();
+        assertNotSame(EngineContext.getDefault().getCAS(), context.getCAS());
+        assertNotSame(EngineContext.getDefault().getHistory(), context.getHistory());
+    }
+
+    @Test
+    public void historiesAreIndependent() {
+        final EngineContext first = new EngineContext();
+        final EngineContext second = new EngineContext();
+        first.getCAS().initCAS("=[+[#[3],#[3]],#[4]]");
+        first.getHistory().addRecord(CASAdapter.Actions.OPERATE, "3+3=4",
+                SnapshotCodec.encode(first.getCAS().getCurrentExpression()), "3+3");
+
+        assertEquals(1, first.getHistory().getRecordCount());
+        assertEquals(0, second.getHistory().getRecordCount());
+    }
+
+    /**
+     * A checkpoint is only written when the expression changed since the last one
+     */
+    @Test
+    public void savesChangedExpressionsOnly() throws Exception {
+        final HistoryLog log = HistoryLog.open(mFolder.newFolder(), HistoryLog.DEFAULT_SEGMENT_SIZE);
+        final EngineContext context = new EngineContext(log, 0);
+        context.getCAS().initCAS("=[+[#[3],#[3]],#[4]]");
+        context.saveCheckpoint();
+        context.flushCheckpointAndWait();
+        assertEquals("=[+[#[3.0],#[3.0]],#[4.0]]", SnapshotCodec.decode(log.readCheckpoint()).toString());
+
+        //a checkpoint of the same version isn't requested again
+        log.writeCheckpoint(SnapshotCodec.encode(new AlgebraicEngine().createOper("=[#[1],#[1]]")));
+        context.saveCheckpoint();
+        context.flushCheckpointAndWait();
+        assertEquals("=[#[1.0],#[1.0]]", SnapshotCodec.decode(log.readCheckpoint()).toString());
+
+        final Operation sum = context.getCAS().getCurrentExpression().getArg(0);
+        context.getCAS().operate(sum);
+        context.saveCheckpoint();
+        context.flushCheckpointAndWait();
+        assertEquals(context.getCAS().getCurrentExpression().toString(), SnapshotCodec.decode(log.readCheckpoint()).toString());
+
+        //restoring it is the last checkpoint
+        final EngineContext restored = new EngineContext(log, 0);
+        log.writeCheckpoint(SnapshotCodec.encode(new AlgebraicEngine().createOper("=[#[1],#[1]]")));
+        restored.saveCheckpoint();
+        restored.flushCheckpointAndWait();
+        assertEquals("=[#[1.0],#[1.0]]", SnapshotCodec.decode(log.readCheckpoint()).toString());
+    }
+
+    @Test
+    public void enginesRunConcurrently() throws Exception {
+        final List<BatchTask> tasks = BatchRunner.readTasks(new StringReader(TASKS));
+        final List<String> expected = run(new EngineContext(), tasks);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(ENGINES);
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < ENGINES; i++) {
+            results.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    final EngineContext context = new EngineContext();
+                    startSignal.await();
+                    List<String> last = null;
+                    for (int round = 0; round < ROUNDS; round++) {
+                        last = run(context, tasks);
+                    }
+                    assertEquals(ROUNDS * tasks.size(), context.getHistory().getRecordCount());
+                    return last;
+                }
+            }));
+        }
+        startSignal.countDown();
+        try {
+            for (final Future<List<String>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs every task on the context, recording it in its history
+     *
+     * @return resulting expressions
+     */
+    private static List<String> run(final EngineContext context, final List<BatchTask> tasks) {
+        final List<String> expressions = new ArrayList<>();
+        for (final BatchTask task : tasks) {
+            final String result = task.run(context.getCAS()).getExpression();
+            context.getHistory().addRecord(CASAdapter.Actions.OPERATE, task.getExpression(),
+                    SnapshotCodec.encode(context.getCAS().getCurrentExpression()), result);
+            expressions.add(result);
+        }
+        return expressions;
+    }
+}
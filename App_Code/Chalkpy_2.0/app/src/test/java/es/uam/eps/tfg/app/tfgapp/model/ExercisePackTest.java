@@ -0,0 +1,181 @@
+package es.uam.eps.tfg.app.tfgapp.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExercisePackTest {
+    //unit tests run from the module directory
+    private static final File ASSET = new File("src/main/assets", ExercisePack.ASSET);
+
+    @Test
+    public void jumpsToTheSameExercisesItStreams() throws Exception {
+        final CountingSource source = new CountingSource(ASSET);
+        final ExercisePack pack = new ExercisePack(source);
+        assertEquals(0, source.mOpened);
+
+        final List<String> streamed = new ArrayList<>();
+        final List<String> topics = new ArrayList<>();
+        final List<Integer> starts = new ArrayList<>();
+        final ExercisePack.ExerciseReader reader = pack.read();
+        try {
+            String topic = null;
+            while (reader.next()) {
+                if (reader.getTopic() != null && !reader.getTopic().equals(topic)) {
+                    topic = reader.getTopic();
+                    topics.add(topic);
+                    starts.add(streamed.size());
+                }
+                streamed.add(reader.getExpression());
+            }
+        } finally {
+            reader.close();
+        }
+        assertTrue(streamed.size() >= 2000);
+        assertEquals(topics, pack.getTopics());
+        assertEquals("Showcase", topics.get(0));
+        for (int i = 0; i < topics.size(); i++) {
+            assertEquals((int) starts.get(i), pack.getTopicStart(i));
+        }
+        assertEquals(streamed.size(), pack.size());
+        assertEquals(CASUtils.createShortSampleExpression(), pack.getExpression(0));
+
+        //backwards, so each exercise is a jump to another block
+        final AlgebraicEngine parser = new AlgebraicEngine();
+        for (int i = streamed.size() - 1; i >= 0; i--) {
+            assertEquals(streamed.get(i), pack.getExpression(i));
+            assertNotNull(streamed.get(i), parser.createOper(streamed.get(i)));
+        }
+        //read, index, the first block twice and the rest once
+        assertEquals(3 + (streamed.size() + ExercisePack.BLOCK - 1) / ExercisePack.BLOCK, source.mOpened);
+    }
+
+    @Test
+    public void readsPacksWithoutTopics() throws Exception {
+        final String text = "// comment\r\n  " + CASUtils.createMediumSampleExpression() + "  \r\n\r\n[Empty]\n[Last]\n"
+                + CASUtils.createLongSampleExpression();
+        final ExercisePack pack = new ExercisePack(new ExercisePack.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return new ByteArrayInputStream(text.getBytes("UTF-8"));
+            }
+        });
+        assertEquals(Arrays.asList(CASUtils.createMediumSampleExpression(), CASUtils.createLongSampleExpression()),
+                pack.asList());
+        assertEquals(Arrays.asList("Last"), pack.getTopics());
+        assertEquals(1, pack.getTopicStart(0));
+    }
+
+    @Test
+    public void givesItsExercisesAsSamples() throws Exception {
+        final CountingSource source = new CountingSource(ASSET);
+        final ExercisePack pack = new ExercisePack(source);
+        final CASAdapter cas = CASImplementation.newInstance();
+        CASImplementation.setSampleExpressions(pack.asList());
+        try {
+            //the first equation doesn't read the pack
+            final String first = cas.getCurrentExpression().toString();
+            assertEquals(0, source.mOpened);
+            assertTrue(first, getBuiltInSamples().contains(first));
+            assertEquals(pack.size(), cas.getSampleExpressions().size());
+            assertEquals(pack.getExpression(pack.size() - 1),
+                    cas.getSampleExpressions().get(pack.size() - 1));
+        } finally {
+            CASImplementation.setSampleExpressions(null);
+        }
+        assertEquals(4, cas.getSampleExpressions().size());
+    }
+
+    private static List<String> getBuiltInSamples() throws Exception {
+        final AlgebraicEngine parser = new AlgebraicEngine();
+        final List<String> samples = new ArrayList<>();
+        for (final String sample : Arrays.asList(CASUtils.createShortSampleExpression(),
+                CASUtils.createMediumSampleExpression(), CASUtils.createLongSampleExpression(),
+                CASUtils.createUltraLongSampleExpression())) {
+            samples.add(parser.createOper(sample).toString());
+        }
+        return samples;
+    }
+
+    /**
+     * Jumping to an exercise skips to its block and reads only that block, whatever the size of
+     * the pack
+     */
+    @Test
+    public void jumpsReadingOnlyTheBlock() throws Exception {
+        final CountingSource source = new CountingSource(ASSET);
+        final ExercisePack pack = new ExercisePack(source);
+        final int size = pack.size();
+        final Random random = new Random(0);
+        int block = -1;
+        for (int i = 0; i < 500; i++) {
+            //in the second half, where reading from the start would read half the pack
+            final int position = size / 2 + random.nextInt(size - size / 2);
+            final int opened = source.mOpened;
+            final long read = source.mRead;
+            pack.getExpression(position);
+            if (position / ExercisePack.BLOCK == block) {
+                assertEquals(opened, source.mOpened);
+            } else {
+                assertEquals(opened + 1, source.mOpened);
+                assertTrue((source.mRead - read) + " bytes", source.mRead - read < ASSET.length() / 4);
+            }
+            block = position / ExercisePack.BLOCK;
+        }
+    }
+
+    /**
+     * Counts the streams opened and the bytes read from them, not the ones skipped
+     */
+    private static class CountingSource implements ExercisePack.Source {
+        private final File mFile;
+        private int mOpened;
+        private long mRead;
+
+        CountingSource(final File file) {
+            mFile = file;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            mOpened++;
+            return new FilterInputStream(new FileInputStream(mFile)) {
+                @Override
+                public int read() throws IOException {
+                    final int b = super.read();
+                    if (b >= 0) {
+                        mRead++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                    final int count = super.read(buffer, offset, length);
+                    if (count > 0) {
+                        mRead += count;
+                    }
+                    return count;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package es.uam.eps.tfg.app.tfgapp.model;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ShowcaseCatalogueTest {
+    //unit tests run from the module directory
+    private static final File ASSET = new File("src/main/assets", ExercisePack.ASSET);
+    private static final int SHOWN = 300;
+
+    @Test
+    public void rendersThePackInBackground() throws Exception {
+        final ShowcaseCatalogue catalogue = ShowcaseCatalogue.of(new ExercisePack(new ExercisePack.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(ASSET);
+            }
+        }).asList());
+        waitForSize(catalogue);
+        assertTrue(catalogue.size() >= SHOWN);
+        assertEquals(CASUtils.createShortSampleExpression(), catalogue.getExpression(0));
+
+        waitFor(catalogue, SHOWN);
+        final AlgebraicEngine parser = new AlgebraicEngine();
+        for (int i = 0; i < SHOWN; i++) {
+            final String infix = catalogue.getInfix(i);
+            assertNotNull(infix);
+            assertEquals(CASUtils.getInfixExpressionOf(parser.createOper(catalogue.getExpression(i))), infix);
+            //kept once made
+            assertSame(infix, catalogue.getInfix(i));
+        }
+    }
+
+    /**
+     * The pack is indexed on the render thread, and the samples are shown if it can't be read
+     */
+    @Test
+    public void sizesThePackInBackground() throws Exception {
+        final List<Thread> readers = new ArrayList<>();
+        final ShowcaseCatalogue catalogue = ShowcaseCatalogue.of(new ExercisePack(new ExercisePack.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                synchronized (readers) {
+                    readers.add(Thread.currentThread());
+                }
+                throw new FileNotFoundException(ExercisePack.ASSET);
+            }
+        }).asList(), CASImplementation.getBuiltInSamples());
+        waitForSize(catalogue);
+
+        assertEquals(CASImplementation.getBuiltInSamples().size(), catalogue.size());
+        assertEquals(CASUtils.createShortSampleExpression(), catalogue.getExpression(0));
+        synchronized (readers) {
+            assertEquals(1, readers.size());
+            assertNotSame(Thread.currentThread(), readers.get(0));
+        }
+    }
+
+    private static void waitForSize(final ShowcaseCatalogue catalogue) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (catalogue.size() == 0) {
+            assertTrue("Not sized", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void waitFor(final ShowcaseCatalogue catalogue, final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 30000;
+        for (int i = 0; i < count; i++) {
+            while (catalogue.getInfix(i) == null) {
+                assertTrue("Not ready: " + i, System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+}
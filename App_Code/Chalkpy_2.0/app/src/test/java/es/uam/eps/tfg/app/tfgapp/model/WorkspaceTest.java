@@ -0,0 +1,150 @@
+package es.uam.eps.tfg.app.tfgapp.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.model.history.SnapshotCodec;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WorkspaceTest {
+    private static final int BOARDS = 40;
+
+    @Test
+    public void restoresTheColdBoards() throws Exception {
+        final EngineContext first = new EngineContext();
+        final Workspace workspace = new Workspace(first, 5000, 4);
+        final List<String> expected = new ArrayList<>();
+        expected.add(first.getCAS().getCurrentExpression().toString());
+        for (int i = 1; i < 10; i++) {
+            final Operation exp = new ExpressionGenerator(i).generate(500).getExpression();
+            final EngineContext context = workspace.openBoard(exp);
+            context.getHistory().addRecord(CASAdapter.Actions.OPERATE, "board " + i, SnapshotCodec.encode(exp), "");
+            expected.add(exp.toString());
+        }
+        assertEquals(10, workspace.getBoards().size());
+        assertTrue(workspace.getHotCount() <= 4);
+        assertTrue(workspace.getBoards().get(0).isHot());
+        assertFalse(workspace.getBoards().get(1).isHot());
+
+        for (int i = 0; i < 10; i++) {
+            final Workspace.Board board = workspace.getBoards().get(i);
+            final EngineContext context = workspace.switchTo(board);
+            assertSame(board, workspace.getActiveBoard());
+            assertSame(context, workspace.getActiveContext());
+            assertEquals(expected.get(i), context.getCAS().getCurrentExpression().toString());
+            assertEquals(i == 0 ? 0 : 1, context.getHistory().getRecordCount());
+            if (i > 0) {
+                assertEquals("board " + i, context.getHistory().getHistory().get(0).getGlobalExp());
+            }
+            assertTrue(workspace.getHotCount() <= 4);
+        }
+        assertSame(first, workspace.switchTo(workspace.getBoards().get(0)));
+    }
+
+    @Test
+    public void closesBoards() throws Exception {
+        final Workspace workspace = new Workspace(new EngineContext(), Workspace.DEFAULT_MAX_HOT_NODES, 2);
+        final Operation second = new ExpressionGenerator(1).generate(50).getExpression();
+        workspace.openBoard(second);
+        final Operation third = new ExpressionGenerator(2).generate(50).getExpression();
+        workspace.openBoard(third);
+        final List<Workspace.Board> boards = new ArrayList<>(workspace.getBoards());
+
+        workspace.closeBoard(boards.get(2));
+        assertSame(boards.get(1), workspace.getActiveBoard());
+        assertEquals(second.toString(), workspace.getActiveContext().getCAS().getCurrentExpression().toString());
+        assertEquals(Arrays.asList(boards.get(0), boards.get(1)), workspace.getBoards());
+        assertSame(boards.get(0), workspace.getNextBoard());
+        try {
+            workspace.closeBoard(boards.get(0));
+        } catch (final IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("The first board was closed");
+    }
+
+    @Test
+    public void reopensTheBoardOfAnExercise() throws Exception {
+        final Workspace workspace = new Workspace(new EngineContext(), Workspace.DEFAULT_MAX_HOT_NODES, 2);
+        final EngineContext exercise = workspace.openExercise("=[+[#[3],#[3]],#[4]]");
+        exercise.getCAS().operate(exercise.getCAS().getCurrentExpression().getArg(0));
+        final Workspace.Board board = workspace.getActiveBoard();
+        workspace.openExercise("=[*[#[2],$[x]],#[8]]");
+        workspace.switchTo(workspace.getBoards().get(0));
+        assertEquals(3, workspace.getBoards().size());
+        assertFalse(board.isHot());
+
+        //the board is restored as it was left, not opened again
+        final EngineContext reopened = workspace.openExercise("=[+[#[3],#[3]],#[4]]");
+        assertSame(board, workspace.getActiveBoard());
+        assertEquals(3, workspace.getBoards().size());
+        assertEquals("=[#[6.0],#[4.0]]", reopened.getCAS().getCurrentExpression().toString());
+
+        workspace.closeBoard(board);
+        workspace.openExercise("=[+[#[3],#[3]],#[4]]");
+        assertNotSame(board, workspace.getActiveBoard());
+        assertEquals(3, workspace.getBoards().size());
+    }
+
+    @Test
+    public void releasesTheCooledAndClosedBoards() throws Exception {
+        final Workspace workspace = new Workspace(new EngineContext(), Workspace.DEFAULT_MAX_HOT_NODES, 3);
+        final List<Workspace.Board> released = new ArrayList<>();
+        workspace.setOnBoardReleasedListener(new Workspace.OnBoardReleasedListener() {
+            @Override
+            public void onBoardReleased(final Workspace.Board board) {
+                assertFalse(board.isHot());
+                released.add(board);
+            }
+        });
+        for (int i = 1; i < 4; i++) {
+            workspace.openBoard(new ExpressionGenerator(i).generate(50).getExpression());
+        }
+        final List<Workspace.Board> boards = new ArrayList<>(workspace.getBoards());
+        //the second board is cooled to keep three of them hot
+        assertEquals(Collections.singletonList(boards.get(1)), released);
+
+        workspace.closeBoard(boards.get(3));
+        assertEquals(Arrays.asList(boards.get(1), boards.get(3)), released);
+    }
+
+    /**
+     * With dozens of open boards, switching to a cold one only restores that board, and the number
+     * of hot boards stays bounded
+     */
+    @Test
+    public void switchesRestoringOnlyTheTargetBoard() throws Exception {
+        final Workspace workspace = new Workspace(new EngineContext(), Workspace.DEFAULT_MAX_HOT_NODES,
+                Workspace.DEFAULT_MAX_HOT_BOARDS);
+        for (int i = 0; i < BOARDS; i++) {
+            workspace.openBoard(new ExpressionGenerator(i).generate(1000).getExpression());
+        }
+        final List<Workspace.Board> boards = workspace.getBoards();
+        final boolean[] hot = new boolean[boards.size()];
+        for (int i = 0; i < 200; i++) {
+            final int target = (i * 13) % boards.size();
+            for (int j = 0; j < hot.length; j++) {
+                hot[j] = boards.get(j).isHot();
+            }
+            workspace.switchTo(boards.get(target));
+            assertTrue(boards.get(target).isHot());
+            for (int j = 0; j < hot.length; j++) {
+                //no other board is restored, at most some are cooled
+                assertTrue(j == target || hot[j] || !boards.get(j).isHot());
+            }
+            assertTrue(workspace.getHotCount() <= Workspace.DEFAULT_MAX_HOT_BOARDS);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.tools.BatchTask;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ActionClassifierTest {
+    private static final int NODES = 60;
+    private static final int SEEDS = 12;
+    private static final List<CASAdapter.Actions> SINGLE_ACTIONS = Arrays.asList(CASAdapter.Actions.CHANGE_SIDE,
+            CASAdapter.Actions.MOVE_LEFT, CASAdapter.Actions.MOVE_RIGHT, CASAdapter.Actions.DISASSOCIATE,
+            CASAdapter.Actions.OPERATE);
+    private static final List<CASAdapter.Actions> MULTIPLE_ACTIONS = Arrays.asList(CASAdapter.Actions.ASSOCIATE,
+            CASAdapter.Actions.OPERATE, CASAdapter.Actions.CHANGE_SIDE);
+
+    @Test
+    public void predictsSingleSelectionActions() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[#[3],*[#[2],#[4]],$[x]],@INV[#[3]]]");
+        final Operation sum = CAS.getCurrentExpression().getArg(0);
+
+        assertEquals(EnumSet.of(CASAdapter.Actions.MOVE_RIGHT, CASAdapter.Actions.CHANGE_SIDE),
+                CAS.getApplicableActions(Collections.singletonList(sum.getArg(0))));
+        assertEquals(EnumSet.of(CASAdapter.Actions.MOVE_LEFT, CASAdapter.Actions.MOVE_RIGHT,
+                CASAdapter.Actions.OPERATE, CASAdapter.Actions.CHANGE_SIDE),
+                CAS.getApplicableActions(Collections.singletonList(sum.getArg(1))));
+        assertEquals(EnumSet.of(CASAdapter.Actions.MOVE_LEFT),
+                CAS.getApplicableActions(Collections.singletonList(sum.getArg(1).getArg(1))));
+        assertTrue(CAS.getApplicableActions(Collections.singletonList(sum.getArg(2))).contains(CASAdapter.Actions.CHANGE_SIDE));
+        assertFalse(CAS.getApplicableActions(Collections.singletonList(sum)).contains(CASAdapter.Actions.OPERATE));
+    }
+
+    @Test
+    public void followsTheExpressionVersion() throws Exception {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[#[3],#[4]],#[7]]");
+        final int version = CAS.getExpressionVersion();
+        final Operation three = CAS.getCurrentExpression().getArg(0).getArg(0);
+        final String expression = CAS.getCurrentExpression().toString();
+
+        assertTrue(CAS.getApplicableActions(Collections.singletonList(three)).contains(CASAdapter.Actions.MOVE_RIGHT));
+        assertEquals(expression, CAS.getCurrentExpression().toString());
+        assertEquals(version, CAS.getExpressionVersion());
+
+        CAS.commutativeProperty(three, CASAdapter.Actions.MOVE_RIGHT);
+        assertTrue(CAS.getExpressionVersion() != version);
+        final Operation moved = CAS.getCurrentExpression().getArg(0).getArg(1);
+        assertEquals(EnumSet.of(CASAdapter.Actions.MOVE_LEFT, CASAdapter.Actions.CHANGE_SIDE),
+                CAS.getApplicableActions(Collections.singletonList(moved)));
+    }
+
+    @Test
+    public void predictsMultipleSelectionActionsWithoutTryingThem() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[*[#[2],$[x]],*[#[3],$[x]],#[1]],#[5]]");
+        final Operation sum = CAS.getCurrentExpression().getArg(0);
+        final int version = CAS.getExpressionVersion();
+
+        assertEquals(EnumSet.of(CASAdapter.Actions.ASSOCIATE, CASAdapter.Actions.CHANGE_SIDE),
+                CAS.getApplicableActions(Arrays.asList(sum.getArg(0), sum.getArg(1))));
+        assertEquals(EnumSet.of(CASAdapter.Actions.COMMON_FACTOR, CASAdapter.Actions.OPERATE),
+                CAS.getApplicableActions(Arrays.asList(sum.getArg(0).getArg(1), sum.getArg(1).getArg(1))));
+        assertTrue(CAS.getApplicableActions(Arrays.asList(sum.getArg(0).getArg(0), sum.getArg(1).getArg(1))).isEmpty());
+        assertEquals(version, CAS.getExpressionVersion());
+    }
+
+    /**
+     * Every prediction on generated equations must match the result of applying the action
+     */
+    @Test
+    public void predictionsMatchTheActions() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        final CASAdapter actionCAS = CASImplementation.newInstance();
+        int attempts = 0;
+        final List<String> mismatches = new ArrayList<>();
+        for (int seed = 0; seed < SEEDS; seed++) {
+            final ExpressionGenerator generator = new ExpressionGenerator(seed);
+            if (seed % 2 == 1) {
+                generator.setConstantWeights(2, 2, 2, 2);
+                generator.setMaxDepth(2);
+            }
+            CAS.initCAS(generator.generate(NODES).getExpression());
+            final Operation expression = CAS.getCurrentExpression();
+            final String CASExpression = expression.toString();
+
+            final List<int[]> paths = new ArrayList<>();
+            collectPaths(expression, new int[0], paths);
+            for (final int[] path : paths) {
+                final Set<CASAdapter.Actions> predicted = CAS.getApplicableActions(
+                        Collections.singletonList(getNode(expression, path)));
+                for (final CASAdapter.Actions action : SINGLE_ACTIONS) {
+                    attempts++;
+                    actionCAS.initCAS(generator.generate(NODES).getExpression());
+                    final boolean applied = apply(actionCAS, action, path);
+                    if (applied != predicted.contains(action)) {
+                        mismatches.add(action + " " + Arrays.toString(path) + " on " + CASExpression);
+                    }
+                }
+
+                final int[] next = getNextSibling(expression, path);
+                if (next != null) {
+                    final Set<CASAdapter.Actions> predictedPair = CAS.getApplicableActions(
+                            Arrays.asList(getNode(expression, path), getNode(expression, next)));
+                    for (final CASAdapter.Actions action : MULTIPLE_ACTIONS) {
+                        attempts++;
+                        actionCAS.initCAS(generator.generate(NODES).getExpression());
+                        final boolean applied = apply(actionCAS, action, path, next);
+                        if (applied != predictedPair.contains(action)) {
+                            mismatches.add(action + " " + Arrays.toString(path) + " " + Arrays.toString(next) + " on " + CASExpression);
+                        }
+                    }
+                }
+            }
+            assertEquals(CASExpression, CAS.getCurrentExpression().toString());
+        }
+        assertTrue(attempts > 0);
+        assertEquals(mismatches.toString(), 0, mismatches.size());
+    }
+
+    /**
+     * Applies an action like the expression fragment does, which doesn't try to operate or
+     * dissociate a single element that is not an operation
+     */
+    private static boolean apply(final CASAdapter CAS, final CASAdapter.Actions action, final int[]... paths) {
+        if (paths.length == 1 && (action == CASAdapter.Actions.OPERATE || action == CASAdapter.Actions.DISASSOCIATE)
+                && !CASUtils.isMathematicalOperation(getNode(CAS.getCurrentExpression(), paths[0]))) {
+            return false;
+        }
+        try {
+            new BatchTask.Step(action, Arrays.asList(paths)).apply(CAS);
+            return true;
+        } catch (final Exception e) {
+            return false;
+        }
+    }
+
+    private static void collectPaths(final Operation op, final int[] path, final List<int[]> paths) {
+        if (!CASUtils.isNumber(op) && !CASUtils.isVariable(op)) {
+            for (int i = 0; i < op.getArgs().size(); i++) {
+                final int[] argPath = Arrays.copyOf(path, path.length + 1);
+                argPath[path.length] = i;
+                paths.add(argPath);
+                collectPaths(op.getArg(i), argPath, paths);
+            }
+        }
+    }
+
+    private static int[] getNextSibling(final Operation root, final int[] path) {
+        final int[] parentPath = Arrays.copyOf(path, path.length - 1);
+        final Operation parent = getNode(root, parentPath);
+        final int index = path[path.length - 1];
+        if (index + 1 >= parent.getArgs().size()) {
+            return null;
+        }
+        final int[] next = path.clone();
+        next[path.length - 1] = index + 1;
+        return next;
+    }
+
+    private static Operation getNode(final Operation root, final int[] path) {
+        Operation node = root;
+        for (final int index : path) {
+            node = node.getArg(index);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,185 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ActionPreviewCacheTest {
+    private static final String EXPRESSION = "=[+[#[3],*[#[2],#[4]],$[x]],*[#[5],+[$[y],#[1]]]]";
+
+    private ExecutorService mExecutor;
+    private CASAdapter mCAS;
+    private ActionPreviewCache mPreviews;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(2);
+        mCAS = CASImplementation.newInstance();
+        mCAS.initCAS(EXPRESSION);
+        mPreviews = new ActionPreviewCache(mCAS, mExecutor);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void clickIsACacheHit() throws Exception {
+        final List<Operation> selection = Collections.singletonList(getProduct());
+        mPreviews.precompute(selection);
+
+        final DryRunResult preview = mPreviews.get(selection, CASAdapter.Actions.OPERATE);
+        assertSame(preview, mPreviews.getIfReady(selection, CASAdapter.Actions.OPERATE));
+        assertSame(preview, mPreviews.get(Collections.singletonList(getProduct()), CASAdapter.Actions.OPERATE));
+
+        final Operation result = mCAS.applyDryRun(preview);
+        assertEquals("=[+[#[3.0],#[8.0],$[x]],*[#[5.0],+[$[y],#[1.0]]]]", result.toString());
+
+        final CASAdapter reference = CASImplementation.newInstance();
+        reference.initCAS(EXPRESSION);
+        reference.operate(reference.getCurrentExpression().getArg(0).getArg(1));
+        assertEquals(reference.getCurrentExpression().toString(), result.toString());
+    }
+
+    /**
+     * A click doesn't wait for the actions queued before its own: it computes it on the caller
+     */
+    @Test
+    public void computesQueuedActionsOnTheCaller() throws Exception {
+        final CountDownLatch busy = new CountDownLatch(1);
+        final ExecutorService blocked = Executors.newSingleThreadExecutor();
+        try {
+            blocked.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        busy.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final ActionPreviewCache previews = new ActionPreviewCache(mCAS, blocked);
+            final List<Operation> selection = Collections.singletonList(getProduct());
+            previews.precompute(selection);
+
+            final DryRunResult result = previews.get(selection, CASAdapter.Actions.OPERATE);
+            assertSame(result, previews.getIfReady(selection, CASAdapter.Actions.OPERATE));
+        } finally {
+            busy.countDown();
+            blocked.shutdown();
+            blocked.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void tellsWhenAResultIsReady() throws Exception {
+        final List<Operation> selection = Collections.singletonList(getProduct());
+        final BlockingQueue<DryRunResult> ready = new LinkedBlockingQueue<>();
+        final ActionPreviewCache.OnResultReadyListener listener = new ActionPreviewCache.OnResultReadyListener() {
+            @Override
+            public void onResultReady(final DryRunResult result) {
+                ready.add(result);
+            }
+        };
+        mPreviews.whenReady(selection, CASAdapter.Actions.OPERATE, listener);
+        final DryRunResult result = ready.poll(10, TimeUnit.SECONDS);
+        assertSame(result, mPreviews.get(selection, CASAdapter.Actions.OPERATE));
+
+        //already computed
+        mPreviews.whenReady(selection, CASAdapter.Actions.OPERATE, listener);
+        assertSame(result, ready.poll());
+        assertEquals(0, ready.size());
+    }
+
+    @Test
+    public void precomputesTheApplicableActions() throws Exception {
+        final List<Operation> selection = Collections.singletonList(getProduct());
+        mPreviews.precompute(selection);
+        assertEquals(mCAS.getApplicableActions(selection).size(), mPreviews.size());
+
+        final List<Operation> multiple = Arrays.asList(mCAS.getCurrentExpression().getArg(0).getArg(0), getProduct());
+        mPreviews.precompute(multiple);
+        assertEquals(mCAS.getApplicableActions(selection).size() + 2, mPreviews.size());
+    }
+
+    @Test
+    public void keysByVersion() throws Exception {
+        final List<Operation> selection = Collections.singletonList(getProduct());
+        mPreviews.precompute(selection);
+        final DryRunResult old = mPreviews.get(selection, CASAdapter.Actions.OPERATE);
+
+        mCAS.initCAS(EXPRESSION);
+        assertEquals(null, mPreviews.getIfReady(selection, CASAdapter.Actions.OPERATE));
+        try {
+            mCAS.applyDryRun(old);
+            fail("A result of an older expression was applied");
+        } catch (final NotApplicableReductionException e) {
+            //the expression was replaced after the dry run
+        }
+
+        final List<Operation> newSelection = Collections.singletonList(getProduct());
+        mPreviews.precompute(newSelection);
+        assertEquals(mCAS.getApplicableActions(newSelection).size(), mPreviews.size());
+        assertNotSame(old, mPreviews.get(newSelection, CASAdapter.Actions.OPERATE));
+    }
+
+    @Test(expected = NotApplicableReductionException.class)
+    public void reportsNotApplicableActions() throws NotApplicableReductionException {
+        mPreviews.get(Collections.singletonList(mCAS.getCurrentExpression().getArg(0)), CASAdapter.Actions.OPERATE);
+    }
+
+    @Test
+    public void keepsALimitedNumberOfResults() {
+        final List<Operation> nodes = new ArrayList<>();
+        collectNodes(mCAS.getCurrentExpression(), nodes);
+        int requested = 0;
+        for (final Operation node : nodes) {
+            for (final CASAdapter.Actions action : CASAdapter.Actions.values()) {
+                try {
+                    mPreviews.get(Collections.singletonList(node), action);
+                } catch (final NotApplicableReductionException e) {
+                    //failures are kept too
+                }
+                requested++;
+            }
+        }
+        assertTrue(requested > 32);
+        assertEquals(32, mPreviews.size());
+        mPreviews.clear();
+        assertEquals(0, mPreviews.size());
+    }
+
+    private static void collectNodes(final Operation op, final List<Operation> nodes) {
+        nodes.add(op);
+        for (final Operation arg : op.getArgs()) {
+            collectNodes(arg, nodes);
+        }
+    }
+
+    private Operation getProduct() {
+        return mCAS.getCurrentExpression().getArg(0).getArg(1);
+    }
+}
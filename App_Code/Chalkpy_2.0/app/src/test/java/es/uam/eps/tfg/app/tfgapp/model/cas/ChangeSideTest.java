@@ -0,0 +1,144 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ChangeSideTest {
+    private static final String[] TERMS = {"$[a]", "-[$[b]]", "#[2]", "@INV[$[c]]", "*[#[3],$[x]]", "+[$[y],#[1]]"};
+
+    @Test
+    public void movesSeveralTermsAtOnce() throws NotApplicableReductionException {
+        assertEquals("=[+[$[a],$[e]],+[$[d],-[$[b]],$[c]]]",
+                changeSide("=[+[$[a],$[b],-[$[c]],$[e]],$[d]]", new int[]{0, 1}, new int[]{0, 2}));
+        assertEquals("=[*[$[d],$[b],@INV[$[c]]],$[a]]",
+                changeSide("=[$[d],*[$[a],@INV[$[b]],$[c]]]", new int[]{1, 2}, new int[]{1, 1}));
+        assertEquals("=[&ZERO[],+[$[d],-[$[a]],-[$[b]]]]",
+                changeSide("=[+[$[a],$[b]],$[d]]", new int[]{0, 0}, new int[]{0, 1}));
+    }
+
+    @Test(expected = NotApplicableReductionException.class)
+    public void failsWithTermsOfBothSides() throws NotApplicableReductionException {
+        changeSide("=[+[$[a],$[b]],+[$[c],$[d]]]", new int[]{0, 0}, new int[]{1, 1});
+    }
+
+    @Test(expected = NotApplicableReductionException.class)
+    public void failsDividingByZero() throws NotApplicableReductionException {
+        changeSide("=[*[$[a],&ZERO[],$[b]],$[d]]", new int[]{0, 0}, new int[]{0, 1});
+    }
+
+    /**
+     * Moving the terms at once gives the same equation as moving them one by one, except that the
+     * other side isn't nested once per term
+     */
+    @Test
+    public void matchesSingleMoves() throws NotApplicableReductionException {
+        final Random random = new Random(11);
+        for (int i = 0; i < 50; i++) {
+            final int side = random.nextInt(2);
+            final Operation equation = createEquation(random, 3 + random.nextInt(30), side);
+            final int terms = equation.getArg(side).getNumberArgs();
+            final List<int[]> paths = new ArrayList<>();
+            for (int term = 0; term < terms - 1; term++) {
+                if (random.nextBoolean()) {
+                    paths.add(new int[]{side, term});
+                }
+            }
+            if (paths.isEmpty()) {
+                paths.add(new int[]{side, terms - 1});
+            }
+
+            final CASAdapter single = CASImplementation.newInstance();
+            single.initCAS(CASUtils.copyOf(equation));
+            for (int moved = 0; moved < paths.size(); moved++) {
+                //the terms left keep their order
+                final int index = paths.get(moved)[1] - moved;
+                single.changeSide(single.getCurrentExpression().getArg(side).getArg(index));
+            }
+
+            final CASAdapter bulk = CASImplementation.newInstance();
+            bulk.initCAS(CASUtils.copyOf(equation));
+            bulk.changeSide(getTerms(bulk.getCurrentExpression(), paths));
+            checkParents(bulk.getCurrentExpression(), null);
+
+            final Operation expected = single.getCurrentExpression();
+            flattenOtherSide(expected, 1 - side, paths.size());
+            assertEquals(expected.toString(), bulk.getCurrentExpression().toString());
+        }
+    }
+
+    private static String changeSide(final String exp, final int[]... paths) throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS(exp);
+        final Operation result = CAS.changeSide(getTerms(CAS.getCurrentExpression(), Arrays.asList(paths)));
+        checkParents(result, null);
+        return result.toString();
+    }
+
+    private static List<Operation> getTerms(final Operation equation, final List<int[]> paths) {
+        final List<Operation> terms = new ArrayList<>();
+        for (final int[] path : paths) {
+            terms.add(equation.getArg(path[0]).getArg(path[1]));
+        }
+        return terms;
+    }
+
+    private static Operation createEquation(final Random random, final int terms, final int sideIndex) {
+        final AlgebraicEngine parser = new AlgebraicEngine();
+        final String operId = random.nextBoolean() ? AlgebraicEngine.Opers.SUM.toString() : AlgebraicEngine.Opers.PROD.toString();
+        final Operation side = new Operation(operId);
+        for (int i = 0; i < terms; i++) {
+            side.addArg(createOper(parser, TERMS[random.nextInt(TERMS.length)]));
+        }
+        final Operation equation = new Operation(AlgebraicEngine.Opers.EQU.toString());
+        final Operation otherSide = createOper(parser, TERMS[random.nextInt(TERMS.length)]);
+        equation.addArg(sideIndex == 0 ? side : otherSide);
+        equation.addArg(sideIndex == 0 ? otherSide : side);
+        return equation;
+    }
+
+    private static Operation createOper(final AlgebraicEngine parser, final String exp) {
+        try {
+            return parser.createOper(exp);
+        } catch (final Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Single moves nest the side the terms are moved to once per term
+     */
+    private static void flattenOtherSide(final Operation equation, final int side, final int levels) {
+        Operation nested = equation.getArg(side);
+        final List<Operation> args = new ArrayList<>();
+        for (int i = 0; i < levels; i++) {
+            args.add(0, nested.getArg(1));
+            nested = nested.getArg(0);
+        }
+        final Operation flat = new Operation(equation.getArg(side).getOperId());
+        flat.addArg(nested);
+        flat.getArgs().addAll(args);
+        equation.setArg(side, flat);
+    }
+
+    private static void checkParents(final Operation op, final Operation parent) {
+        if (op.getOperId() == null) {
+            return;
+        }
+        assertSame(parent == null ? null : parent.getId(), op.getParentID());
+        for (final Operation arg : op.getArgs()) {
+            checkParents(arg, op);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommonFactorsTest {
+    private static final String[] FACTORS = {"#[2]", "#[3]", "$[x]", "$[y]", "$[z]", "@INV[$[x]]", "-[$[y]]"};
+    private static final List<String> VALUES = Arrays.asList("x", "y", "z", "w");
+
+    @Test
+    public void findsEveryFactorableSet() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[*[#[3],$[x]],*[$[y],#[3]],$[w],-[*[#[3],$[x],$[y]]],$[x]],#[0]]");
+        final List<List<Operation>> common = CAS.findCommonFactors(CAS.getCurrentExpression().getArg(0));
+        assertEquals(3, common.size());
+        assertEquals("[#[3.0], #[3.0], #[3.0]]", common.get(0).toString());
+        assertEquals("[$[x], $[x], $[x]]", common.get(1).toString());
+        assertEquals("[$[y], $[y]]", common.get(2).toString());
+        assertTrue(CAS.findCommonFactors(CAS.getCurrentExpression()).isEmpty());
+    }
+
+    @Test
+    public void groupsEachTermOnce() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[*[$[x],$[x]],#[3],*[#[2],$[x]],*[#[3],#[2]]],#[0]]");
+        final List<List<Operation>> common = CAS.findCommonFactors(CAS.getCurrentExpression().getArg(0));
+        assertEquals("[[$[x], $[x]], [#[3.0], #[3.0]], [#[2.0], #[2.0]]]", common.toString());
+    }
+
+    @Test
+    public void extractsTheFactor() throws NotApplicableReductionException {
+        assertEquals("=[+[*[+[$[x],*[&MONE[],$[y]]],#[3.0]],$[w]],$[z]]",
+                factorize("=[+[$[w],*[#[3],$[x]],-[*[$[y],#[3]]]],$[z]]", 0));
+        assertEquals("=[+[*[+[&ONE[],$[x]],#[3.0]],$[w]],$[z]]",
+                factorize("=[+[$[w],#[3],*[#[3],$[x]]],$[z]]", 0));
+        assertEquals("=[*[+[$[x],$[y],$[q]],#[3.0]],$[z]]",
+                factorize("=[+[*[#[3],$[x]],*[#[3],$[y]],*[#[3],$[q]]],$[z]]", 0));
+    }
+
+    @Test(expected = NotApplicableReductionException.class)
+    public void failsWithDifferentFactors() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[*[#[3],$[x]],*[#[5],$[y]]],$[z]]");
+        final Operation sum = CAS.getCurrentExpression().getArg(0);
+        final List<Operation> selection = new ArrayList<>();
+        selection.add(sum.getArg(0).getArg(0));
+        selection.add(sum.getArg(1).getArg(0));
+        CAS.commonFactor(selection);
+    }
+
+    @Test
+    public void keepsTheValueOfLargeSums() throws NotApplicableReductionException {
+        final Random random = new Random(7);
+        for (int i = 0; i < 40; i++) {
+            final CASImplementation CAS = (CASImplementation) CASImplementation.newInstance();
+            CAS.initCAS(createEquation(random, 100 + random.nextInt(300)));
+            final Operation sum = CAS.getCurrentExpression().getArg(0);
+            final int terms = sum.getNumberArgs();
+            final double value = evaluate(sum);
+
+            final List<List<Operation>> common = CAS.findCommonFactors(sum);
+            final List<Operation> selection = new ArrayList<>(common.get(random.nextInt(common.size())));
+            Collections.shuffle(selection, random);
+            while (selection.size() > 2 && random.nextBoolean()) {
+                selection.remove(selection.size() - 1);
+            }
+
+            final Operation factorized = CAS.commonFactor(selection).getArg(0);
+            checkParents(CAS.getCurrentExpression(), null);
+            assertEquals(value, evaluate(factorized), Math.abs(value) * 1e-6 + 1e-6);
+            if (selection.size() < terms) {
+                assertEquals(terms - selection.size() + 1, (int) factorized.getNumberArgs());
+            }
+        }
+    }
+
+    private static String factorize(final String exp, final int commonFactor) throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS(exp);
+        final Operation sum = CAS.getCurrentExpression().getArg(0);
+        final Operation result = CAS.commonFactor(CAS.findCommonFactors(sum).get(commonFactor));
+        checkParents(result, null);
+        return result.toString();
+    }
+
+    /**
+     * Long sums are built from their terms, as the parser of the CAS only reads short expressions
+     */
+    private static Operation createEquation(final Random random, final int terms) {
+        final AlgebraicEngine parser = new AlgebraicEngine();
+        final Operation sum = new Operation(AlgebraicEngine.Opers.SUM.toString());
+        for (int i = 0; i < terms; i++) {
+            final int factors = random.nextInt(4);
+            if (factors == 0) {
+                sum.addArg(createOper(parser, FACTORS[random.nextInt(FACTORS.length)]));
+                continue;
+            }
+            final boolean negative = random.nextInt(4) == 0;
+            final StringBuilder sb = new StringBuilder(negative ? "-[*[" : "*[");
+            for (int j = 0; j <= factors; j++) {
+                sb.append(j > 0 ? "," : "").append(FACTORS[random.nextInt(FACTORS.length)]);
+            }
+            sb.append(negative ? "]]" : "]");
+            sum.addArg(createOper(parser, sb.toString()));
+        }
+        final Operation equation = new Operation(AlgebraicEngine.Opers.EQU.toString());
+        equation.addArg(sum);
+        equation.addArg(createOper(parser, "$[w]"));
+        return equation;
+    }
+
+    private static Operation createOper(final AlgebraicEngine parser, final String exp) {
+        try {
+            return parser.createOper(exp);
+        } catch (final Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Value of an expression giving every variable a fixed value
+     */
+    private static double evaluate(final Operation op) {
+        final String operId = op.getOperId();
+        if (operId == null) {
+            return (op.getArgNumber() != null) ? op.getArgNumber() : VALUES.indexOf(op.getArgStr()) + 1.5;
+        }
+        if (AlgebraicEngine.Opers.SUM.toString().equals(operId)) {
+            double value = 0;
+            for (final Operation arg : op.getArgs()) {
+                value += evaluate(arg);
+            }
+            return value;
+        }
+        if (AlgebraicEngine.Opers.PROD.toString().equals(operId)) {
+            double value = 1;
+            for (final Operation arg : op.getArgs()) {
+                value *= evaluate(arg);
+            }
+            return value;
+        }
+        if (AlgebraicEngine.Opers.MINUS.toString().equals(operId)) {
+            return -evaluate(op.getArg(0));
+        }
+        if (AlgebraicEngine.Opers.INV.toString().equals(operId)) {
+            return 1 / evaluate(op.getArg(0));
+        }
+        if (AlgebraicEngine.Opers.ZERO.toString().equals(operId)) {
+            return 0;
+        }
+        if (AlgebraicEngine.Opers.ONE.toString().equals(operId)) {
+            return 1;
+        }
+        if (AlgebraicEngine.Opers.MONE.toString().equals(operId)) {
+            return -1;
+        }
+        //numbers and variables
+        return evaluate(op.getArg(0));
+    }
+
+    private static void checkParents(final Operation op, final Operation parent) {
+        if (op.getOperId() == null) {
+            return;
+        }
+        assertSame(parent == null ? null : parent.getId(), op.getParentID());
+        for (final Operation arg : op.getArgs()) {
+            checkParents(arg, op);
+        }
+    }
+}
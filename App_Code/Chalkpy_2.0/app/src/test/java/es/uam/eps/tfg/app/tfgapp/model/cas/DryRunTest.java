@@ -0,0 +1,253 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.tools.BatchTask;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DryRunTest {
+    private static final int NODES = 60;
+    private static final int SEEDS = 8;
+    private static final int THREADS = 8;
+
+    @Test
+    public void sharesUntouchedSubtrees() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[#[3],*[#[2],#[4]],$[x]],*[#[5],+[$[y],#[1]]]]");
+        final Operation expression = CAS.getCurrentExpression();
+        final String before = expression.toString();
+        final int version = CAS.getExpressionVersion();
+        final Operation product = expression.getArg(0).getArg(1);
+
+        final DryRunResult result = CAS.dryRun(CASAdapter.Actions.OPERATE, Collections.singletonList(product));
+        assertEquals("=[+[#[3.0],#[8.0],$[x]],*[#[5.0],+[$[y],#[1.0]]]]", result.getExpression().toString());
+        assertSame(expression.getArg(1), result.getExpression().getArg(1));
+        assertSame(expression.getArg(0).getArg(0), result.getExpression().getArg(0).getArg(0));
+        assertNotSame(expression.getArg(0), result.getExpression().getArg(0));
+        assertTrue(result.getChangedIds().contains(expression.getId()));
+        assertTrue(result.getChangedIds().contains(expression.getArg(0).getId()));
+
+        assertSame(expression, CAS.getCurrentExpression());
+        assertEquals(before, expression.toString());
+        assertEquals(version, CAS.getExpressionVersion());
+    }
+
+    @Test
+    public void resolvesMultipleSelectionOperate() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[*[#[5],+[$[y],#[1]]],#[3]]");
+        final Operation product = CAS.getCurrentExpression().getArg(0);
+
+        final DryRunResult result = CAS.dryRun(CASAdapter.Actions.OPERATE,
+                Arrays.asList(product.getArg(1), product.getArg(0)));
+        assertEquals(CASAdapter.Actions.DISTRIBUTE, result.getAction());
+        assertSame(CAS.getCurrentExpression().getArg(1), result.getExpression().getArg(1));
+    }
+
+    @Test(expected = NotApplicableReductionException.class)
+    public void failsWithoutModifying() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[#[3],$[x]],#[3]]");
+        final Operation sum = CAS.getCurrentExpression().getArg(0);
+        try {
+            CAS.dryRun(CASAdapter.Actions.OPERATE, Collections.singletonList(sum));
+        } finally {
+            assertEquals("=[+[#[3.0],$[x]],#[3.0]]", CAS.getCurrentExpression().toString());
+        }
+    }
+
+    /**
+     * On generated equations, every dry run must give the same expression as the action, leave
+     * the current one untouched and only own the nodes it reports as changed
+     */
+    @Test
+    public void matchesTheActions() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        final CASAdapter actionCAS = CASImplementation.newInstance();
+        int applied = 0;
+        for (int seed = 0; seed < SEEDS; seed++) {
+            final ExpressionGenerator generator = new ExpressionGenerator(seed);
+            CAS.initCAS(generator.generate(NODES).getExpression());
+            final Operation expression = CAS.getCurrentExpression();
+            final String snapshot = describe(expression);
+
+            for (final BatchTask.Step step : getSteps(expression)) {
+                actionCAS.initCAS(generator.generate(NODES).getExpression());
+                String expected = null;
+                try {
+                    step.apply(actionCAS);
+                    expected = actionCAS.getCurrentExpression().toString();
+                } catch (final Exception e) {
+                    //the dry run must fail too
+                }
+
+                try {
+                    final DryRunResult result = CAS.dryRun(step.getAction(), step.getSelection(expression));
+                    assertEquals(step.toString(), expected, result.getExpression().toString());
+                    checkSharing(expression, result);
+                    applied++;
+                } catch (final NotApplicableReductionException e) {
+                    assertEquals(step + ": " + e.getMessageException(), null, expected);
+                }
+                assertEquals(snapshot, describe(expression));
+            }
+        }
+        assertTrue(applied > 0);
+    }
+
+    @Test
+    public void runsOnSeveralThreads() throws Exception {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS(new ExpressionGenerator(1).generate(NODES * 4).getExpression());
+        final Operation expression = CAS.getCurrentExpression();
+        final List<BatchTask.Step> steps = getSteps(expression);
+        final List<String> expected = dryRunAll(CAS, expression, steps);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    return dryRunAll(CAS, expression, steps);
+                }
+            }));
+        }
+        try {
+            for (final Future<List<String>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<String> dryRunAll(final CASAdapter CAS, final Operation expression, final List<BatchTask.Step> steps) {
+        final List<String> results = new ArrayList<>();
+        for (final BatchTask.Step step : steps) {
+            try {
+                results.add(CAS.dryRun(step.getAction(), step.getSelection(expression)).getExpression().toString());
+            } catch (final NotApplicableReductionException e) {
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Every single selection action on every node, and the multiple selection ones on every pair
+     * of consecutive arguments
+     */
+    private static List<BatchTask.Step> getSteps(final Operation expression) {
+        final List<int[]> paths = new ArrayList<>();
+        collectPaths(expression, new int[0], paths);
+        final List<BatchTask.Step> steps = new ArrayList<>();
+        for (final int[] path : paths) {
+            for (final CASAdapter.Actions action : Arrays.asList(CASAdapter.Actions.CHANGE_SIDE,
+                    CASAdapter.Actions.MOVE_LEFT, CASAdapter.Actions.MOVE_RIGHT,
+                    CASAdapter.Actions.DISASSOCIATE, CASAdapter.Actions.OPERATE)) {
+                steps.add(new BatchTask.Step(action, Collections.singletonList(path)));
+            }
+            final int[] next = path.clone();
+            next[next.length - 1]++;
+            if (contains(expression, next)) {
+                steps.add(new BatchTask.Step(CASAdapter.Actions.ASSOCIATE, Arrays.asList(path, next)));
+                steps.add(new BatchTask.Step(CASAdapter.Actions.OPERATE, Arrays.asList(path, next)));
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Nodes owned by the result must be the changed ones, and the shared ones must keep their
+     * parent
+     */
+    private static void checkSharing(final Operation expression, final DryRunResult result) {
+        final Map<Operation, Boolean> original = new IdentityHashMap<>();
+        collectNodes(expression, original);
+        final Set<UUID> owned = new HashSet<>();
+        checkNode(result.getExpression(), null, original, owned);
+        assertEquals(owned, new HashSet<>(result.getChangedIds()));
+    }
+
+    private static void checkNode(final Operation op, final UUID parentId, final Map<Operation, Boolean> original, final Set<UUID> owned) {
+        if (op.getOperId() == null) {
+            return;
+        }
+        assertSame(parentId, op.getParentID());
+        if (original.containsKey(op)) {
+            return;
+        }
+        owned.add(op.getId());
+        for (final Operation arg : op.getArgs()) {
+            checkNode(arg, op.getId(), original, owned);
+        }
+    }
+
+    private static void collectNodes(final Operation op, final Map<Operation, Boolean> nodes) {
+        nodes.put(op, Boolean.TRUE);
+        for (final Operation arg : op.getArgs()) {
+            collectNodes(arg, nodes);
+        }
+    }
+
+    /**
+     * @return the expression with the parent id of every node, to find any change
+     */
+    private static String describe(final Operation op) {
+        final StringBuilder sb = new StringBuilder(op.toString());
+        describe(op, sb);
+        return sb.toString();
+    }
+
+    private static void describe(final Operation op, final StringBuilder sb) {
+        sb.append(' ').append(op.getParentID());
+        for (final Operation arg : op.getArgs()) {
+            describe(arg, sb);
+        }
+    }
+
+    private static void collectPaths(final Operation op, final int[] path, final List<int[]> paths) {
+        if (op.getOperId() == null || "NUMBER".equals(op.getOperId()) || "VAR".equals(op.getOperId())) {
+            return;
+        }
+        for (int i = 0; i < op.getArgs().size(); i++) {
+            final int[] argPath = Arrays.copyOf(path, path.length + 1);
+            argPath[path.length] = i;
+            paths.add(argPath);
+            collectPaths(op.getArg(i), argPath, paths);
+        }
+    }
+
+    private static boolean contains(final Operation root, final int[] path) {
+        Operation node = root;
+        for (final int index : path) {
+            if (index >= node.getArgs().size()) {
+                return false;
+            }
+            node = node.getArg(index);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,178 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.tools.BatchTask;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NodeLevelsTest {
+
+    @Test
+    public void findsTheLevels() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[#[3],*[$[x],#[2]]],@INV[$[x]]]");
+        final Operation equation = CAS.getCurrentExpression();
+        final Operation product = equation.getArg(0).getArg(1);
+
+        assertEquals(0, CAS.getDepth(equation));
+        assertEquals(-1, CAS.getSideOfEquation(equation));
+        assertNull(CAS.getParent(equation));
+        assertEquals(2, CAS.getDepth(product));
+        assertSame(equation.getArg(0), CAS.getParent(product));
+        assertEquals(3, CAS.getDepth(product.getArg(0)));
+        assertEquals(0, CAS.getSideOfEquation(product.getArg(0)));
+        assertEquals(1, CAS.getSideOfEquation(equation.getArg(1).getArg(0)));
+
+        //a copy is placed under the parent of its parent id, like the CAS finds it
+        final Operation copy = CASUtils.copyOf(product);
+        assertEquals(2, CAS.getDepth(copy));
+        assertSame(equation.getArg(0), CAS.getParent(copy));
+        final Operation detached = new Operation(AlgebraicEngine.Opers.ONE.toString());
+        assertEquals(-1, CAS.getDepth(detached));
+        assertNull(CAS.getParent(detached));
+    }
+
+    /**
+     * The levels must be the ones found through the parent ids, before and after modifying the
+     * expression
+     */
+    @Test
+    public void matchesTheParentIds() throws Exception {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        for (int seed = 0; seed < 20; seed++) {
+            final ExpressionGenerator generator = new ExpressionGenerator(seed);
+            final ExpressionGenerator.GeneratedExpression generated = generator.generate(150);
+            CAS.initCAS(generated.getExpression());
+            checkTree(CAS, CAS.getCurrentExpression());
+
+            final List<BatchTask.Step> sites = generated.getActionSites();
+            for (int i = 0; i < sites.size(); i += 7) {
+                try {
+                    sites.get(i).apply(CAS);
+                } catch (final Exception e) {
+                    continue;
+                }
+                //the actions don't always update the parent ids of the whole expression
+                CAS.getCurrentExpression().setParentIdsRec(null);
+                checkTree(CAS, CAS.getCurrentExpression());
+            }
+        }
+    }
+
+    /**
+     * Updating the table with a dry run must give the levels of a rebuilt one, reusing the levels
+     * of the nodes the action didn't touch
+     */
+    @Test
+    public void updatesWhatADryRunChanged() throws Exception {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        int carried = 0;
+        for (int seed = 0; seed < 20; seed++) {
+            final ExpressionGenerator generator = new ExpressionGenerator(seed);
+            final ExpressionGenerator.GeneratedExpression generated = generator.generate(150);
+            CAS.initCAS(generated.getExpression());
+            final NodeLevels levels = new NodeLevels();
+
+            final List<BatchTask.Step> sites = generated.getActionSites();
+            for (int i = 0; i < sites.size(); i += 5) {
+                final Operation oldRoot = CAS.getCurrentExpression();
+                final DryRunResult result;
+                try {
+                    result = CAS.dryRun(sites.get(i).getAction(), sites.get(i).getSelection(oldRoot));
+                } catch (final Exception e) {
+                    continue;
+                }
+                final Map<Operation, NodeLevels.Level> before = getLevels(levels, oldRoot, CAS.getExpressionVersion());
+                CAS.applyDryRun(result);
+                levels.update(oldRoot, result, CAS.getExpressionVersion());
+
+                final Operation root = CAS.getCurrentExpression();
+                final Map<Operation, NodeLevels.Level> after = getLevels(levels, root, CAS.getExpressionVersion());
+                final Map<Operation, NodeLevels.Level> rebuilt = getLevels(new NodeLevels(), root, CAS.getExpressionVersion());
+                assertEquals(rebuilt.size(), after.size());
+                for (final Map.Entry<Operation, NodeLevels.Level> entry : rebuilt.entrySet()) {
+                    final NodeLevels.Level level = after.get(entry.getKey());
+                    assertSame(entry.getValue().getParent(), level.getParent());
+                    assertEquals(entry.getValue().getDepth(), level.getDepth());
+                    assertEquals(entry.getValue().getSide(), level.getSide());
+                    if (before.get(entry.getKey()) == level) {
+                        carried++;
+                    }
+                }
+                //the replaced nodes are dropped
+                for (final Operation op : before.keySet()) {
+                    if (!after.containsKey(op)) {
+                        assertNull(levels.get(root, CAS.getExpressionVersion(), op));
+                    }
+                }
+            }
+        }
+        assertTrue(carried > 0);
+    }
+
+    /**
+     * @return the level of every node of the expression
+     */
+    private static Map<Operation, NodeLevels.Level> getLevels(final NodeLevels levels, final Operation root, final int version) {
+        final Map<Operation, NodeLevels.Level> found = new IdentityHashMap<>();
+        final Deque<Operation> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Operation op = pending.pop();
+            found.put(op, levels.get(root, version, op));
+            for (final Operation arg : op.getArgs()) {
+                if (arg.getOperId() != null) {
+                    pending.push(arg);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void checkTree(final CASAdapter CAS, final Operation op) {
+        if (op.getOperId() == null) {
+            return;
+        }
+        assertEquals(isSideById(CAS, op), CASUtils.isSideOfEquation(CAS, op));
+        assertEquals(isMainTermById(CAS, op), CASUtils.isMainTermOfEquation(CAS, op));
+        assertEquals(getSideById(CAS, op), CASUtils.getSideOfEquation(CAS, op));
+        assertSame(CAS.getOperationById(op.getParentID()), CAS.getParent(op));
+        for (final Operation arg : op.getArgs()) {
+            checkTree(CAS, arg);
+        }
+    }
+
+    private static boolean isSideById(final CASAdapter CAS, final Operation op) {
+        final Operation parent = CAS.getOperationById(op.getParentID());
+        return parent != null && AlgebraicEngine.Opers.EQU.toString().equals(parent.getOperId());
+    }
+
+    private static boolean isMainTermById(final CASAdapter CAS, final Operation op) {
+        final Operation parent = CAS.getOperationById(op.getParentID());
+        return parent != null && isSideById(CAS, parent);
+    }
+
+    private static int getSideById(final CASAdapter CAS, final Operation op) {
+        final Operation parent = CAS.getOperationById(op.getParentID());
+        if (isMainTermById(CAS, op)) {
+            return CAS.getOperationById(parent.getParentID()).getIndexOfArg(parent);
+        } else if (isSideById(CAS, op)) {
+            return parent.getIndexOfArg(op);
+        }
+        return -1;
+    }
+}
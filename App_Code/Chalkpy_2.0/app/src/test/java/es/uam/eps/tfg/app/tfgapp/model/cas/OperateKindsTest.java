@@ -0,0 +1,94 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OperateKindsTest {
+    private static final int SEEDS = 40;
+
+    @Test
+    public void decidesByTheKindsOfTheNumbers() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[*[#[2],#[4]],*[#[3],$[x]],@INV[+[#[1],#[-1]]]],#[0]]");
+        final Operation sum = CAS.getCurrentExpression().getArg(0);
+        assertTrue(OperateKinds.canOperate(sum.getArg(0)));
+        assertFalse(OperateKinds.canOperate(sum.getArg(1)));
+        //1/0 is a number too
+        assertTrue(OperateKinds.canOperate(sum.getArg(2)));
+        assertFalse(OperateKinds.canOperate(sum));
+    }
+
+    /**
+     * Every decision on generated equations must match the result of operating
+     */
+    @Test
+    public void decisionsMatchOperating() {
+        final List<String> mismatches = new ArrayList<>();
+        int operable = 0;
+        for (int seed = 0; seed < SEEDS; seed++) {
+            final ExpressionGenerator generator = new ExpressionGenerator(seed);
+            if (seed % 2 == 1) {
+                generator.setConstantWeights(5, 5, 5, 1);
+                generator.setVariableDensity(0f);
+            }
+            final Operation expression = generator.generate(60).getExpression();
+            final List<int[]> paths = new ArrayList<>();
+            collectOperations(expression, new ArrayList<Integer>(), paths);
+            for (final int[] path : paths) {
+                final CASAdapter CAS = CASImplementation.newInstance();
+                CAS.initCAS(generator.generate(60).getExpression());
+                final Operation node = getNode(CAS.getCurrentExpression(), path);
+                final boolean predicted = OperateKinds.canOperate(node);
+                boolean operated;
+                try {
+                    CAS.operate(node);
+                    operated = true;
+                } catch (final Exception e) {
+                    operated = false;
+                }
+                if (predicted != operated) {
+                    mismatches.add(node.toString());
+                }
+                if (operated) {
+                    operable++;
+                }
+            }
+        }
+        assertTrue(operable > 0);
+        assertEquals(mismatches.toString(), 0, mismatches.size());
+    }
+
+    private static void collectOperations(final Operation op, final List<Integer> path, final List<int[]> paths) {
+        for (int i = 0; i < op.getArgs().size(); i++) {
+            final Operation arg = op.getArg(i);
+            path.add(i);
+            if (CASUtils.isMathematicalOperation(arg)) {
+                final int[] argPath = new int[path.size()];
+                for (int j = 0; j < argPath.length; j++) {
+                    argPath[j] = path.get(j);
+                }
+                paths.add(argPath);
+            }
+            collectOperations(arg, path, paths);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    private static Operation getNode(final Operation root, final int[] path) {
+        Operation node = root;
+        for (final int index : path) {
+            node = node.getArg(index);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,42 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class OperationIndexTest {
+
+    @Test
+    public void findsEveryOperation() {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[*[$[x],+[-[#[8]],+[#[2],#[4]]],@INV[#[3]]],@INV[+[$[x],-[#[5]]]]]");
+        checkTree(CAS, CAS.getCurrentExpression());
+        assertNull(CAS.getOperationById(null));
+    }
+
+    @Test
+    public void followsActions() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[#[3],#[3],*[#[3],#[7],#[8]],#[4]],+[$[x],*[#[3],$[x]]]]");
+        final Operation removed = CAS.getCurrentExpression().getArg(0).getArg(2);
+        checkTree(CAS, CAS.getCurrentExpression());
+
+        CAS.operate(removed);
+        checkTree(CAS, CAS.getCurrentExpression());
+        assertNull(CAS.getOperationById(removed.getId()));
+
+        CAS.changeSide(CAS.getCurrentExpression().getArg(1).getArg(0));
+        checkTree(CAS, CAS.getCurrentExpression());
+    }
+
+    private static void checkTree(final CASAdapter CAS, final Operation op) {
+        assertSame(op, CAS.getOperationById(op.getId()));
+        for (final Operation arg : op.getArgs()) {
+            checkTree(CAS, arg);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RewriteRulesTest {
+
+    @Test
+    public void parsesPatternsInPreorder() {
+        final RewriteRule rule = RewriteRule.reduction("EQU(SUM(*, MINUS), *)", RewriteRules.LEFT_TERM, 38, "");
+        assertEquals(Arrays.asList("EQU/2", "SUM/2", "*", "MINUS", "*"), rule.getSymbols());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadPatterns() {
+        RewriteRule.reduction("SUM(*,ZERO", RewriteRule.ROOT, 3, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownReductions() {
+        RewriteRule.reduction("SUM(*,*)", RewriteRule.ROOT, 47, "");
+    }
+
+    @Test
+    public void findsEveryMatchByPriority() {
+        final Operation sum = createOper("+[&ZERO[],&ONE[]]");
+        assertEquals(Arrays.asList("r3'", "r1", "r0"), getNames(RewriteRules.OPERATE.match(sum, RewriteRule.ROOT)));
+
+        final Operation product = createOper("*[#[2],#[3]]");
+        assertEquals(Arrays.asList("r5"), getNames(RewriteRules.OPERATE.match(product, RewriteRule.ROOT)));
+
+        final Operation longSum = createOper("+[#[2],#[3],#[4]]");
+        assertEquals(0, RewriteRules.OPERATE.match(longSum, RewriteRule.ROOT).size());
+    }
+
+    @Test
+    public void matchesByFocus() {
+        final Operation equation = createOper("=[+[$[x],-[#[3]]],#[5]]");
+        assertEquals(Arrays.asList("r38", "r30"), getNames(RewriteRules.CHANGE_SIDE.match(equation, RewriteRules.LEFT_TERM)));
+        assertEquals(Arrays.asList("r39"), getNames(RewriteRules.CHANGE_SIDE.match(equation, RewriteRules.LEFT_SIDE)));
+        assertEquals(Arrays.asList("r40"), getNames(RewriteRules.CHANGE_SIDE.match(equation, RewriteRules.RIGHT_SIDE)));
+        assertNull(RewriteRules.CHANGE_SIDE.findFirst(equation, RewriteRules.RIGHT_TERM));
+        assertNull(RewriteRules.OPERATE.findFirst(equation, RewriteRule.ROOT));
+    }
+
+    /**
+     * The first rule found must be the first of all the matches, for every node of generated
+     * expressions and every focus
+     */
+    @Test
+    public void findsTheFirstMatch() {
+        final int[][] foci = {RewriteRule.ROOT, RewriteRules.LEFT_TERM, RewriteRules.RIGHT_TERM, RewriteRules.LEFT_SINGLE_TERM,
+                RewriteRules.RIGHT_SINGLE_TERM, RewriteRules.LEFT_SIDE, RewriteRules.RIGHT_SIDE, {0, 1}};
+        int found = 0;
+        for (int seed = 0; seed < 10; seed++) {
+            final ExpressionGenerator generator = new ExpressionGenerator(seed);
+            generator.setMaxDepth(3);
+            final Deque<Operation> pending = new ArrayDeque<>();
+            pending.push(generator.generate(300).getExpression());
+            while (!pending.isEmpty()) {
+                final Operation op = pending.pop();
+                for (final RewriteRules rules : Arrays.asList(RewriteRules.OPERATE, RewriteRules.CHANGE_SIDE)) {
+                    for (final int[] focus : foci) {
+                        final List<RewriteRule> matches = rules.match(op, focus);
+                        final RewriteRule first = rules.findFirst(op, focus);
+                        assertSame(matches.isEmpty() ? null : matches.get(0), first);
+                        found += (first != null) ? 1 : 0;
+                    }
+                }
+                for (final Operation arg : op.getArgs()) {
+                    if (arg.getOperId() != null) {
+                        pending.push(arg);
+                    }
+                }
+            }
+        }
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void appliesTheReduction() throws NotApplicableReductionException {
+        final AlgebraicEngine CAS = new AlgebraicEngine();
+        final Operation sum = createOper("+[#[2],#[3]]");
+        final Operation result = RewriteRules.OPERATE.findFirst(sum, RewriteRule.ROOT).apply(CAS, sum);
+        assertEquals("#[5.0]", result.toString());
+
+        final Operation product = createOper("*[&ONE[],#[3]]");
+        assertEquals("#[3.0]", RewriteRules.OPERATE.findFirst(product, RewriteRule.ROOT).apply(CAS, product).toString());
+    }
+
+    @Test(expected = NotApplicableReductionException.class)
+    public void failureRulesThrow() throws NotApplicableReductionException {
+        final Operation inverse = createOper("@INV[&ZERO[]]");
+        RewriteRules.OPERATE.findFirst(inverse, RewriteRule.ROOT).apply(new AlgebraicEngine(), inverse);
+    }
+
+    @Test
+    public void catalogueIsOrdered() {
+        final List<RewriteRule> rules = RewriteRules.CHANGE_SIDE.getRules();
+        for (int i = 0; i < rules.size(); i++) {
+            assertEquals(i, rules.get(i).getPriority());
+        }
+    }
+
+    private static Operation createOper(final String exp) {
+        try {
+            return new AlgebraicEngine().createOper(exp);
+        } catch (final Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<String> getNames(final List<RewriteRule> rules) {
+        final List<String> names = new ArrayList<>();
+        for (final RewriteRule rule : rules) {
+            names.add(rule.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,114 @@
+package es.uam.eps.tfg.app.tfgapp.model.cas;
+
+import org.junit.Test;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SimplifierTest {
+    private static final int MAX_VISITS_PER_NODE = 3;
+
+    @Test
+    public void operatesNumbers() throws NotApplicableReductionException {
+        assertEquals("=[+[#[5.0],$[x]],#[8.0]]", simplify("=[+[#[2],$[x],#[3]],*[#[2],#[4]]]"));
+        assertEquals("=[+[-[#[2.0]],$[x]],&MONE[]]", simplify("=[+[#[2],$[x],-[#[4]]],*[-[#[1]],&ONE[]]]"));
+    }
+
+    @Test
+    public void removesIdentities() throws NotApplicableReductionException {
+        assertEquals("=[$[x],$[y]]", simplify("=[+[$[x],&ZERO[]],*[&ONE[],$[y]]]"));
+        assertEquals("=[&ZERO[],$[y]]", simplify("=[*[$[x],&ZERO[],+[$[y],#[2]]],$[y]]"));
+        assertEquals("=[$[x],$[y]]", simplify("=[-[-[$[x]]],@INV[@INV[$[y]]]]"));
+    }
+
+    @Test
+    public void joinsNestedOperations() throws NotApplicableReductionException {
+        assertEquals("=[+[$[x],#[3.0],$[y]],$[z]]", simplify("=[+[+[$[x],#[1]],+[$[y],#[2]]],$[z]]"));
+        //the product disappears and its sum is joined to the outer one
+        assertEquals("=[+[$[x],$[y],$[z]],#[2.0]]", simplify("=[+[$[x],*[&ONE[],+[$[y],$[z]]]],#[2]]"));
+    }
+
+    @Test
+    public void reachesAFixedPoint() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        for (int seed = 0; seed < 10; seed++) {
+            CAS.initCAS(new ExpressionGenerator(seed).generate(200).getExpression());
+            try {
+                CAS.simplify();
+            } catch (final NotApplicableReductionException e) {
+                continue;
+            }
+            checkParents(CAS.getCurrentExpression(), null);
+            try {
+                CAS.simplify();
+                fail("Simplified twice: " + CAS.getCurrentExpression());
+            } catch (final NotApplicableReductionException e) {
+                //nothing else to simplify
+            }
+        }
+    }
+
+    @Test(expected = NotApplicableReductionException.class)
+    public void failsWithNothingToSimplify() throws NotApplicableReductionException {
+        simplify("=[+[$[x],#[2]],$[y]]");
+    }
+
+    @Test
+    public void doesNotModifyTheOldExpression() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS("=[+[#[2],#[3]],$[y]]");
+        final Operation old = CAS.getCurrentExpression();
+        final int version = CAS.getExpressionVersion();
+        CAS.simplify();
+        assertEquals("=[+[#[2.0],#[3.0]],$[y]]", old.toString());
+        assertTrue(CAS.getExpressionVersion() != version);
+    }
+
+    /**
+     * Every node is simplified a bounded number of times, whatever the size of the expression
+     */
+    @Test
+    public void scalesLinearly() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        final Operation large = new ExpressionGenerator(3).generate(200000).getExpression();
+        CAS.initCAS(large);
+        final int nodes = countNodes(CAS.getCurrentExpression());
+        final Simplifier simplifier = new Simplifier();
+        simplifier.simplify(CAS.getCurrentExpression());
+        assertTrue(simplifier.getChanges() > 0);
+        assertTrue("Visited " + simplifier.getVisits() + " of " + nodes, simplifier.getVisits() <= MAX_VISITS_PER_NODE * nodes);
+    }
+
+    private static String simplify(final String exp) throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        CAS.initCAS(exp);
+        return CAS.simplify().toString();
+    }
+
+    private static int countNodes(final Operation op) {
+        if (op.getOperId() == null) {
+            return 0;
+        }
+        int count = 1;
+        for (final Operation arg : op.getArgs()) {
+            count += countNodes(arg);
+        }
+        return count;
+    }
+
+    private static void checkParents(final Operation op, final Operation parent) {
+        if (op.getOperId() == null) {
+            return;
+        }
+        assertSame(parent == null ? null : parent.getId(), op.getParentID());
+        for (final Operation arg : op.getArgs()) {
+            checkParents(arg, op);
+        }
+    }
+}
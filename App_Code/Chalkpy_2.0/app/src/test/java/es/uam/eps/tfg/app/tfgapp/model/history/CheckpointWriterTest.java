@@ -0,0 +1,81 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+
+import static org.junit.Assert.assertEquals;
+
+public class CheckpointWriterTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void gathersTheRequestsOfAWindow() throws Exception {
+        final HistoryLog log = HistoryLog.open(mFolder.newFolder(), HistoryLog.DEFAULT_SEGMENT_SIZE);
+        final CheckpointWriter writer = new CheckpointWriter(log, 60000);
+        final ExpressionGenerator generator = new ExpressionGenerator(1);
+        Operation last = null;
+        for (int i = 0; i < 100; i++) {
+            last = generator.generate(10 + 10 * i).getExpression();
+            writer.request(last);
+        }
+        assertEquals(0, writer.getWriteCount());
+
+        writer.flushAndWait();
+        assertEquals(1, writer.getWriteCount());
+        assertEquals(last.toString(), SnapshotCodec.decode(log.readCheckpoint()).toString());
+
+        //nothing left to write
+        writer.flushAndWait();
+        assertEquals(1, writer.getWriteCount());
+        writer.close();
+    }
+
+    @Test
+    public void writesWhenTheWindowEnds() throws Exception {
+        final HistoryLog log = HistoryLog.open(mFolder.newFolder(), HistoryLog.DEFAULT_SEGMENT_SIZE);
+        final CheckpointWriter writer = new CheckpointWriter(log, 20);
+        final Operation op = new ExpressionGenerator(2).generate(300).getExpression();
+        writer.request(op);
+        //the expression can be changed as soon as it's requested
+        op.getArg(0).getArgs().clear();
+        for (int i = 0; i < 500 && writer.getWriteCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, writer.getWriteCount());
+        assertEquals(new ExpressionGenerator(2).generate(300).getExpression().toString(),
+                SnapshotCodec.decode(log.readCheckpoint()).toString());
+
+        //the buffers are swapped, so both of them are reused
+        for (int i = 0; i < 3; i++) {
+            final Operation next = new ExpressionGenerator(10 + i).generate(2000).getExpression();
+            writer.request(next);
+            writer.flushAndWait();
+            assertEquals(next.toString(), SnapshotCodec.decode(log.readCheckpoint()).toString());
+        }
+        assertEquals(4, writer.getWriteCount());
+        writer.close();
+    }
+
+    /**
+     * Flushing is done by the writer thread: the caller goes on before the checkpoint is written
+     */
+    @Test
+    public void flushesOnTheWriterThread() throws Exception {
+        final HistoryLog log = HistoryLog.open(mFolder.newFolder(), HistoryLog.DEFAULT_SEGMENT_SIZE);
+        final CheckpointWriter writer = new CheckpointWriter(log, 60000);
+        final Operation op = new ExpressionGenerator(3).generate(500).getExpression();
+        writer.request(op);
+        writer.flush();
+        for (int i = 0; i < 500 && writer.getWriteCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, writer.getWriteCount());
+        assertEquals(op.toString(), SnapshotCodec.decode(log.readCheckpoint()).toString());
+        writer.close();
+    }
+}
@@ -0,0 +1,189 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionHistoryDBTest {
+    private static final int RECORDS = 1000000;
+
+    @Test
+    public void jumpsFromTheNewestToTheOldestRecord() throws Exception {
+        final ExpressionHistory history = ExpressionHistoryDB.newInstance();
+        final ByteBuffer oldest = SnapshotCodec.encode(new AlgebraicEngine().createOper(CASUtils.createShortSampleExpression()));
+        final ByteBuffer snapshot = SnapshotCodec.encode(new AlgebraicEngine().createOper(CASUtils.createMediumSampleExpression()));
+        history.addRecord(CASAdapter.Actions.OPERATE, "oldest", oldest, "");
+        for (int i = 1; i < RECORDS; i++) {
+            history.addRecord(CASAdapter.Actions.MOVE_LEFT, "exp", snapshot, "");
+        }
+        assertEquals(RECORDS, history.getRecordCount());
+        final List<ExpressionRecord> records = history.getHistory();
+        final ExpressionRecord first = records.get(RECORDS - 1);
+        assertEquals("oldest", first.getGlobalExp());
+        assertSame(first, history.getRecord(first.getId()));
+
+        final ExpressionRecord middle = records.get(RECORDS / 2);
+        final int sharedNodes = ((ExpressionHistoryDB) history).getSharedNodeCount();
+
+        final String restored = history.returnToExpression(first.getId(), SnapshotCodec.decode(snapshot.duplicate())).toString();
+
+        assertEquals(SnapshotCodec.decode(oldest.duplicate()).toString(), restored);
+        assertEquals(0, history.getRecordCount());
+        assertEquals(0, records.size());
+        //the records are kept as a branch, the same instances and no copy of their expressions
+        assertSame(first, history.getRecord(first.getId()));
+        assertSame(middle, history.getRecord(middle.getId()));
+        assertEquals(1, history.getBranches().size());
+        assertEquals(sharedNodes, ((ExpressionHistoryDB) history).getSharedNodeCount());
+        //no record was removed or copied, so the next id follows the last one added
+        history.addRecord(CASAdapter.Actions.OPERATE, "new", oldest, "");
+        assertEquals(RECORDS, records.get(0).getId());
+        assertEquals(1, records.size());
+    }
+
+    /**
+     * A record added from the expression is the same as one added from its snapshot
+     */
+    @Test
+    public void addsTheExpressionWithoutItsSnapshot() throws Exception {
+        final ExpressionHistory history = ExpressionHistoryDB.newInstance();
+        final Operation exp = new ExpressionGenerator(3).generate(200).getExpression();
+        final ByteBuffer snapshot = SnapshotCodec.encode(exp);
+        history.addRecord(CASAdapter.Actions.OPERATE, CASUtils.getInfixExpressionOf(exp), snapshot, "a", "b");
+        history.addRecord(CASAdapter.Actions.OPERATE, exp, snapshot, "a", "b");
+        final int sharedNodes = ((ExpressionHistoryDB) history).getSharedNodeCount();
+
+        final ExpressionRecord fromSnapshot = history.getHistory().get(1);
+        final ExpressionRecord fromExpression = history.getHistory().get(0);
+        assertEquals(fromSnapshot.getGlobalExp(), fromExpression.getGlobalExp());
+        assertEquals(fromSnapshot.getSelectedExp(), fromExpression.getSelectedExp());
+        assertEquals(exp.toString(), fromExpression.getExpression().toString());
+        //both share the same nodes
+        history.addRecord(CASAdapter.Actions.OPERATE, exp, snapshot, "");
+        assertEquals(sharedNodes, ((ExpressionHistoryDB) history).getSharedNodeCount());
+    }
+
+    @Test
+    public void idsAreNeverReused() throws Exception {
+        final ExpressionHistory history = ExpressionHistoryDB.newInstance();
+        final ByteBuffer snapshot = SnapshotCodec.encode(new AlgebraicEngine().createOper(CASUtils.createShortSampleExpression()));
+        for (int i = 0; i < 5; i++) {
+            history.addRecord(CASAdapter.Actions.OPERATE, "exp " + i, snapshot, "");
+        }
+        final ExpressionRecord third = history.getHistory().get(2);
+        history.returnToExpression(third, SnapshotCodec.decode(snapshot.duplicate()));
+        assertEquals(2, history.getRecordCount());
+        assertEquals("exp 1", history.getHistory().get(0).getGlobalExp());
+
+        history.addRecord(CASAdapter.Actions.OPERATE, "new", snapshot, "");
+        final ExpressionRecord added = history.getHistory().get(0);
+        assertTrue(added.getId() > third.getId());
+        assertSame(third, history.getRecord(third.getId()));
+        assertSame(added, history.getRecord(added.getId()));
+        assertEquals("exp 1", history.getHistory().get(1).getGlobalExp());
+
+        history.returnToPreviousExpression(SnapshotCodec.decode(snapshot.duplicate()));
+        assertEquals(2, history.getRecordCount());
+        assertEquals("exp 1", history.getHistory().get(0).getGlobalExp());
+    }
+
+    @Test
+    public void switchesBetweenBranches() throws Exception {
+        final ExpressionHistory history = ExpressionHistoryDB.newInstance();
+        final Operation[] states = new Operation[6];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new ExpressionGenerator(i).generate(20).getExpression();
+        }
+        //0 -> 1 -> 2 -> 3, back to 1, 1 -> 4 -> 5
+        for (int i = 0; i < 3; i++) {
+            history.addRecord(CASAdapter.Actions.OPERATE, "exp " + i, SnapshotCodec.encode(states[i]), "");
+        }
+        final ExpressionRecord second = history.getHistory().get(1);
+        assertEquals(states[1].toString(), history.returnToExpression(second, states[3]).toString());
+        history.addRecord(CASAdapter.Actions.OPERATE, "exp 1", SnapshotCodec.encode(states[1]), "");
+        history.addRecord(CASAdapter.Actions.OPERATE, "exp 4", SnapshotCodec.encode(states[4]), "");
+        assertEquals(3, history.getRecordCount());
+
+        final List<ExpressionRecord> branches = history.getBranches();
+        assertEquals(1, branches.size());
+        assertEquals("exp 2", branches.get(0).getGlobalExp());
+
+        assertEquals(states[3].toString(), history.switchToBranch(branches.get(0), states[5]).toString());
+        assertEquals(3, history.getRecordCount());
+        assertEquals(Arrays.asList("exp 2", "exp 1", "exp 0"), getGlobals(history.getHistory()));
+        assertEquals(Arrays.asList("exp 4"), getGlobals(history.getBranches()));
+        assertEquals(Arrays.asList("exp 1"), getGlobals(history.findRecordsWithAction(CASAdapter.Actions.OPERATE).subList(1, 2)));
+
+        assertEquals(states[5].toString(), history.switchToBranch(history.getBranches().get(0), states[3]).toString());
+        assertEquals(Arrays.asList("exp 4", "exp 1", "exp 0"), getGlobals(history.getHistory()));
+        assertEquals(Arrays.asList("exp 2"), getGlobals(history.getBranches()));
+    }
+
+    @Test
+    public void branchesShareTheirTerms() throws Exception {
+        final ExpressionHistoryDB history = (ExpressionHistoryDB) ExpressionHistoryDB.newInstance();
+        final Operation base = new ExpressionGenerator(7).generate(2000).getExpression();
+        history.addRecord(CASAdapter.Actions.OPERATE, "base", SnapshotCodec.encode(base), "");
+        final int baseNodes = history.getSharedNodeCount();
+        //repeated terms are already kept once
+        assertTrue(baseNodes <= getNodeCount(base));
+
+        //a hundred branches from the same record, each one changing a different term
+        final List<Operation> changed = new ArrayList<>();
+        int changedNodes = 0;
+        for (int i = 0; i < 100; i++) {
+            final Operation exp = SnapshotCodec.decode(SnapshotCodec.encode(base));
+            Operation term = exp;
+            changedNodes += 1;
+            while (!term.getArgs().isEmpty()) {
+                term = term.getArg(i % term.getArgs().size());
+                changedNodes += 1;
+            }
+            if (term.getArgNumber() != null) {
+                term.setArgNumber(1000f + i);
+            } else {
+                term.setArgStr("v" + i);
+            }
+            changed.add(exp);
+            history.addRecord(CASAdapter.Actions.MOVE_LEFT, "branch " + i, SnapshotCodec.encode(exp), "");
+            history.returnToPreviousExpression(exp);
+        }
+        assertEquals(100, history.getBranches().size());
+        //each branch only adds the nodes from the changed term to the root
+        assertTrue(history.getSharedNodeCount() + " nodes", history.getSharedNodeCount() <= baseNodes + changedNodes);
+        assertTrue(history.getSharedNodeCount() < 5 * baseNodes);
+
+        final ExpressionRecord branch = history.getBranches().get(50);
+        assertEquals("branch 49", branch.getGlobalExp());
+        assertEquals(changed.get(49).toString(), history.switchToBranch(branch, base).toString());
+    }
+
+    private static int getNodeCount(final Operation op) {
+        int count = 1;
+        for (final Operation arg : op.getArgs()) {
+            count += getNodeCount(arg);
+        }
+        return count;
+    }
+
+    private static List<String> getGlobals(final List<ExpressionRecord> records) {
+        final List<String> globals = new ArrayList<>();
+        for (final ExpressionRecord record : records) {
+            globals.add(record.getGlobalExp());
+        }
+        return globals;
+    }
+}
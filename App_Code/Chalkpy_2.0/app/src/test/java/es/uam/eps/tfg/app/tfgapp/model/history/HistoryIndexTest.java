@@ -0,0 +1,149 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistoryIndexTest {
+    private static final String[] QUERIES = {"3x", "x", "2", "y + 1", "5.0", "7 z", "a", "1/x"};
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void splitsNumbersAndVariables() {
+        assertEquals(new HashSet<>(Arrays.asList("3", "x")), HistoryIndex.tokenize("3x"));
+        assertEquals(new HashSet<>(Arrays.asList("3", "x", "2.5", "y")), HistoryIndex.tokenize("(3.0 * x) + (-2.5 * y) = x"));
+        assertEquals(0, HistoryIndex.tokenize("( + ) = -").size());
+    }
+
+    @Test
+    public void findsTheRecords() throws Exception {
+        final AlgebraicEngine parser = new AlgebraicEngine();
+        final ExpressionHistory history = ExpressionHistoryDB.newInstance();
+        addRecord(history, CASAdapter.Actions.OPERATE, parser.createOper(CASUtils.createShortSampleExpression()));
+        addRecord(history, CASAdapter.Actions.COMMON_FACTOR, parser.createOper(CASUtils.createMediumSampleExpression()));
+        addRecord(history, CASAdapter.Actions.OPERATE, parser.createOper(CASUtils.createShortSampleExpression()));
+
+        final List<ExpressionRecord> records = history.getHistory();
+        final long first = records.get(2).getId();
+        final long second = records.get(1).getId();
+        final long third = records.get(0).getId();
+
+        assertEquals(Arrays.asList(third, first), getIds(history.findRecordsWithTerms("3x")));
+        assertEquals(Arrays.asList(second), getIds(history.findRecordsWithTerms("15 x")));
+        assertEquals(Arrays.asList(second), getIds(history.findRecordsWithAction(CASAdapter.Actions.COMMON_FACTOR)));
+        assertEquals(Arrays.asList(third, first),
+                getIds(history.findRecordsEqualTo(parser.createOper(CASUtils.createShortSampleExpression()))));
+
+        final Operation current = parser.createOper(CASUtils.createLongSampleExpression());
+        assertEquals(parser.createOper(CASUtils.createMediumSampleExpression()).toString(),
+                history.returnToExpression(second, current).toString());
+        assertEquals(1, history.getRecordCount());
+        //the records left out are a branch, out of the search
+        assertEquals(Arrays.asList(third), getIds(history.getBranches()));
+        assertEquals(Arrays.asList(first), getIds(history.findRecordsWithTerms("3x")));
+    }
+
+    /**
+     * The indexes of both histories must find the same records as scanning them
+     */
+    @Test
+    public void matchesTheScans() throws Exception {
+        checkScans(ExpressionHistoryDB.newInstance(), 1);
+        checkScans(MappedExpressionHistory.newInstance(HistoryLog.open(mFolder.newFolder(), 1 << 16)), 2);
+    }
+
+    private static void checkScans(final ExpressionHistory history, final long seed) {
+        final Random random = new Random(seed);
+        final List<Operation> expressions = new ArrayList<>();
+        final CASAdapter.Actions[] actions = CASAdapter.Actions.values();
+        for (int i = 0; i < 400; i++) {
+            final int choice = random.nextInt(11);
+            final Operation current = new ExpressionGenerator(random.nextLong()).generate(10).getExpression();
+            if (choice < 7 || history.getRecordCount() == 0) {
+                //some expressions are repeated
+                final Operation exp = (expressions.isEmpty() || random.nextBoolean())
+                        ? new ExpressionGenerator(random.nextLong()).generate(10 + random.nextInt(40)).getExpression()
+                        : expressions.get(random.nextInt(expressions.size()));
+                expressions.add(exp);
+                addRecord(history, actions[random.nextInt(actions.length)], exp);
+            } else if (choice < 8) {
+                history.returnToPreviousExpression(current);
+            } else if (choice < 9) {
+                final ExpressionRecord record = history.getHistory().get(random.nextInt(history.getRecordCount()));
+                assertEquals(record.getExpression().toString(), history.returnToExpression(record.getId(), current).toString());
+            } else if (choice < 10) {
+                final List<ExpressionRecord> branches = history.getBranches();
+                if (!branches.isEmpty()) {
+                    history.switchToBranch(branches.get(random.nextInt(branches.size())), current);
+                }
+            } else {
+                for (final String query : QUERIES) {
+                    assertEquals(scanTerms(history, query), getIds(history.findRecordsWithTerms(query)));
+                }
+                for (final CASAdapter.Actions action : actions) {
+                    assertEquals(scanAction(history, action), getIds(history.findRecordsWithAction(action)));
+                }
+                final Operation exp = expressions.get(random.nextInt(expressions.size()));
+                assertEquals(scanEqual(history, exp), getIds(history.findRecordsEqualTo(exp)));
+            }
+        }
+    }
+
+    private static void addRecord(final ExpressionHistory history, final CASAdapter.Actions action, final Operation exp) {
+        history.addRecord(action, CASUtils.getInfixExpressionOf(exp), SnapshotCodec.encode(exp), "");
+    }
+
+    private static List<Long> scanTerms(final ExpressionHistory history, final String query) {
+        final List<Long> ids = new ArrayList<>();
+        for (final ExpressionRecord record : history.getHistory()) {
+            if (HistoryIndex.tokenize(record.getGlobalExp()).containsAll(HistoryIndex.tokenize(query))) {
+                ids.add(record.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static List<Long> scanAction(final ExpressionHistory history, final CASAdapter.Actions action) {
+        final List<Long> ids = new ArrayList<>();
+        for (final ExpressionRecord record : history.getHistory()) {
+            if (record.getAction() == action) {
+                ids.add(record.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static List<Long> scanEqual(final ExpressionHistory history, final Operation exp) {
+        final List<Long> ids = new ArrayList<>();
+        for (final ExpressionRecord record : history.getHistory()) {
+            if (record.getExpression().toString().equals(exp.toString())) {
+                ids.add(record.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static List<Long> getIds(final List<ExpressionRecord> records) {
+        final List<Long> ids = new ArrayList<>();
+        for (final ExpressionRecord record : records) {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+}
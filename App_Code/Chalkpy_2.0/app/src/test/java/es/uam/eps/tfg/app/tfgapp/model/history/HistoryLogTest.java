@@ -0,0 +1,126 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryLogTest {
+    private static final int SMALL_SEGMENT = 4096;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Checkpoints are written over the slots of the header, so saving them again and again doesn't
+     * make the log bigger
+     */
+    @Test
+    public void keepsTheCheckpointsInTheHeader() throws Exception {
+        final File directory = mFolder.newFolder();
+        final HistoryLog log = HistoryLog.open(directory, SMALL_SEGMENT);
+        final Operation big = new ExpressionGenerator(1).generate(20000).getExpression();
+        log.writeCheckpoint(SnapshotCodec.encode(big));
+        final long size = getSize(directory);
+
+        for (int i = 0; i < 200; i++) {
+            final Operation op = new ExpressionGenerator(i).generate(10 + 50 * (i % 20)).getExpression();
+            log.writeCheckpoint(SnapshotCodec.encode(op));
+            assertEquals(op.toString(), SnapshotCodec.decode(log.readCheckpoint()).toString());
+        }
+        assertEquals(size, getSize(directory));
+        assertEquals(1, directory.list().length);
+        assertEquals(0, log.getUsedBytes());
+
+        log.writeCheckpoint(SnapshotCodec.encode(big));
+        assertEquals(big.toString(), SnapshotCodec.decode(HistoryLog.open(directory, SMALL_SEGMENT).readCheckpoint()).toString());
+    }
+
+    @Test
+    public void mapsTheSegmentsWhenTheyAreRead() throws Exception {
+        final File directory = mFolder.newFolder();
+        final HistoryLog log = HistoryLog.open(directory, SMALL_SEGMENT);
+        for (int i = 0; i < 40; i++) {
+            append(log, i);
+        }
+        assertTrue(directory.list().length > 2);
+
+        final HistoryLog opened = HistoryLog.open(directory, SMALL_SEGMENT);
+        assertEquals(40, opened.getCount());
+        assertEquals(0, opened.getMappedSegmentCount());
+        assertEquals("global 39", opened.readRecord(opened.getNewest()).getGlobalExp());
+        assertEquals(1, opened.getMappedSegmentCount());
+    }
+
+    /**
+     * When most of the log can't be reached from the history, it copies the history to new
+     * segments and deletes the old ones, after opening it and before any location is known
+     */
+    @Test
+    public void compactsTheRecordsLeftOut() throws Exception {
+        final File directory = mFolder.newFolder();
+        final HistoryLog log = HistoryLog.open(directory, SMALL_SEGMENT);
+        for (int i = 0; i < 40; i++) {
+            append(log, i);
+        }
+        long id = log.getNewest();
+        for (int i = 0; i < 30; i++) {
+            id = log.getPrevious(id);
+        }
+        log.truncateBefore(id);
+        append(log, 40);
+        final int segments = directory.list().length;
+        assertTrue(log.getUsedBytes() > 2 * log.getLiveBytes());
+
+        final HistoryLog used = HistoryLog.open(directory, SMALL_SEGMENT);
+        used.getNewest();
+        assertFalse(used.compactIfNeeded());
+        assertEquals(segments, directory.list().length);
+
+        final HistoryLog compacted = HistoryLog.open(directory, SMALL_SEGMENT);
+        assertEquals(segments, directory.list().length);
+        assertTrue(compacted.compactIfNeeded());
+        assertEquals(10, compacted.getCount());
+        assertEquals(compacted.getLiveBytes(), compacted.getUsedBytes());
+        assertTrue(directory.list().length < segments);
+        long record = compacted.getNewest();
+        assertEquals("global 40", compacted.readRecord(record).getGlobalExp());
+        for (int i = 8; i >= 0; i--) {
+            record = compacted.getPrevious(record);
+            final ExpressionRecord read = compacted.readRecord(record);
+            assertEquals("global " + i, read.getGlobalExp());
+            assertEquals(new ExpressionGenerator(i).generate(100).getExpression().toString(), read.getExpression().toString());
+        }
+        assertEquals(HistoryLog.NONE, compacted.getPrevious(record));
+
+        //nothing else to compact
+        final HistoryLog reopened = HistoryLog.open(directory, SMALL_SEGMENT);
+        assertFalse(reopened.compactIfNeeded());
+        assertEquals(compacted.getNewest(), reopened.getNewest());
+        append(reopened, 41);
+        assertEquals(11, HistoryLog.open(directory, SMALL_SEGMENT).getCount());
+    }
+
+    private static void append(final HistoryLog log, final int i) throws Exception {
+        final ByteBuffer snapshot = SnapshotCodec.encode(new ExpressionGenerator(i).generate(100).getExpression());
+        log.appendRecord(CASAdapter.Actions.OPERATE, "global " + i, "selection " + i, snapshot);
+    }
+
+    private static long getSize(final File directory) {
+        long size = 0;
+        for (final File file : directory.listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+}
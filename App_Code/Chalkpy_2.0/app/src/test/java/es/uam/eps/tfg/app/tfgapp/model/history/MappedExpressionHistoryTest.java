@@ -0,0 +1,158 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.EngineContext;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MappedExpressionHistoryTest {
+    private static final int SMALL_SEGMENT = 4096;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void restoresTheHistory() throws Exception {
+        final File directory = mFolder.newFolder();
+        final List<Operation> expressions = new ArrayList<>();
+        final ExpressionHistory history = MappedExpressionHistory.newInstance(HistoryLog.open(directory, SMALL_SEGMENT));
+        for (int i = 0; i < 40; i++) {
+            final Operation op = new ExpressionGenerator(i).generate(100).getExpression();
+            expressions.add(op);
+            history.addRecord(CASAdapter.Actions.OPERATE, "global " + i, SnapshotCodec.encode(op), "a", "b" + i);
+        }
+
+        //several segments are needed
+        assertTrue(directory.list().length > 1);
+        final ExpressionHistory restored = MappedExpressionHistory.newInstance(HistoryLog.open(directory, SMALL_SEGMENT));
+        assertEquals(40, restored.getRecordCount());
+        final List<ExpressionRecord> records = restored.getHistory();
+        assertEquals(40, records.size());
+        for (int i = 0; i < 40; i++) {
+            final ExpressionRecord record = records.get(i);
+            assertEquals("global " + (39 - i), record.getGlobalExp());
+            assertEquals("a,b" + (39 - i), record.getSelectedExp());
+            assertEquals(CASAdapter.Actions.OPERATE, record.getAction());
+            assertEquals(expressions.get(39 - i).toString(), record.getExpression().toString());
+        }
+        assertSame(records.get(5), restored.getHistory().get(5));
+    }
+
+    /**
+     * Getting a record by its id only reads that record, not the whole history
+     */
+    @Test
+    public void getsARecordWithoutReadingTheOthers() throws Exception {
+        final File directory = mFolder.newFolder();
+        final ExpressionHistory history = MappedExpressionHistory.newInstance(HistoryLog.open(directory, SMALL_SEGMENT));
+        for (int i = 0; i < 40; i++) {
+            history.addRecord(CASAdapter.Actions.OPERATE, "global " + i, SnapshotCodec.encode(new ExpressionGenerator(i).generate(100).getExpression()), "a");
+        }
+        final long newest = history.getHistory().get(0).getId();
+        final long oldest = history.getHistory().get(39).getId();
+
+        final HistoryLog log = HistoryLog.open(directory, SMALL_SEGMENT);
+        final ExpressionHistory restored = MappedExpressionHistory.newInstance(log);
+        assertEquals("global 39", restored.getRecord(newest).getGlobalExp());
+        assertEquals(1, log.getMappedSegmentCount());
+        assertEquals("global 0", restored.getRecord(oldest).getGlobalExp());
+        assertEquals(2, log.getMappedSegmentCount());
+
+        assertNull(restored.getRecord(newest + 1));
+        assertNull(restored.getRecord(HistoryLog.NONE));
+        assertNull(restored.getRecord(Long.MAX_VALUE));
+    }
+
+    /**
+     * Adding and going back must leave the same records as the history kept in memory, also after
+     * opening the log again
+     */
+    @Test
+    public void matchesTheHistoryInMemory() throws Exception {
+        final File directory = mFolder.newFolder();
+        final ExpressionHistory memory = ExpressionHistoryDB.newInstance();
+        ExpressionHistory mapped = MappedExpressionHistory.newInstance(HistoryLog.open(directory, SMALL_SEGMENT));
+        final Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            final int choice = random.nextInt(11);
+            final Operation current = new ExpressionGenerator(-i).generate(10).getExpression();
+            if (choice < 6 || memory.getRecordCount() == 0) {
+                final ByteBuffer snapshot = SnapshotCodec.encode(new ExpressionGenerator(i).generate(20).getExpression());
+                memory.addRecord(CASAdapter.Actions.MOVE_LEFT, "exp " + i, snapshot, "sel " + i);
+                mapped.addRecord(CASAdapter.Actions.MOVE_LEFT, "exp " + i, snapshot, "sel " + i);
+            } else if (choice < 8) {
+                assertEquals(memory.returnToPreviousExpression(current).toString(), mapped.returnToPreviousExpression(current).toString());
+            } else if (choice < 9) {
+                final int index = random.nextInt(memory.getRecordCount());
+                final Operation expected = memory.returnToExpression(memory.getHistory().get(index), current);
+                assertEquals(expected.toString(), mapped.returnToExpression(mapped.getHistory().get(index), current).toString());
+            } else if (choice < 10) {
+                //the branches are only kept while the app runs
+                final List<ExpressionRecord> memoryBranches = memory.getBranches();
+                final List<ExpressionRecord> mappedBranches = mapped.getBranches();
+                if (!memoryBranches.isEmpty() && getGlobals(memoryBranches).equals(getGlobals(mappedBranches))) {
+                    final int index = random.nextInt(memoryBranches.size());
+                    final Operation expected = memory.switchToBranch(memoryBranches.get(index), current);
+                    assertEquals(expected.toString(), mapped.switchToBranch(mappedBranches.get(index), current).toString());
+                }
+            } else {
+                mapped = MappedExpressionHistory.newInstance(HistoryLog.open(directory, SMALL_SEGMENT));
+            }
+            checkSameRecords(memory, mapped);
+        }
+    }
+
+    @Test
+    public void restoresTheLastCheckpoint() throws Exception {
+        final File directory = mFolder.newFolder();
+        assertNull(HistoryLog.open(directory, SMALL_SEGMENT).readCheckpoint());
+
+        final HistoryLog log = HistoryLog.open(directory, SMALL_SEGMENT);
+        final EngineContext context = new EngineContext(log, 10);
+        for (int i = 0; i < 10; i++) {
+            context.getCAS().initCAS(new ExpressionGenerator(i).generate(50 + 100 * i).getExpression());
+            context.saveCheckpoint();
+        }
+        context.flushCheckpointAndWait();
+        final String last = context.getCAS().getCurrentExpression().toString();
+        assertEquals(last, new EngineContext(HistoryLog.open(directory, SMALL_SEGMENT), 10).getCAS().getCurrentExpression().toString());
+
+        log.clear();
+        assertNull(HistoryLog.open(directory, SMALL_SEGMENT).readCheckpoint());
+        assertEquals(0, HistoryLog.open(directory, SMALL_SEGMENT).getCount());
+    }
+
+    private static List<String> getGlobals(final List<ExpressionRecord> records) {
+        final List<String> globals = new ArrayList<>();
+        for (final ExpressionRecord record : records) {
+            globals.add(record.getGlobalExp());
+        }
+        return globals;
+    }
+
+    private static void checkSameRecords(final ExpressionHistory expected, final ExpressionHistory actual) {
+        assertEquals(expected.getRecordCount(), actual.getRecordCount());
+        final List<ExpressionRecord> expectedRecords = expected.getHistory();
+        final List<ExpressionRecord> actualRecords = actual.getHistory();
+        assertEquals(expectedRecords.size(), actualRecords.size());
+        for (int i = 0; i < expectedRecords.size(); i++) {
+            assertEquals(expectedRecords.get(i).getGlobalExp(), actualRecords.get(i).getGlobalExp());
+            assertEquals(expectedRecords.get(i).getSelectedExp(), actualRecords.get(i).getSelectedExp());
+        }
+    }
+}
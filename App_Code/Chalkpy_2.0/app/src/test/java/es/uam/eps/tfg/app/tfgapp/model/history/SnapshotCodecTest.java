@@ -0,0 +1,107 @@
+package es.uam.eps.tfg.app.tfgapp.model.history;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.tools.ExpressionGenerator;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotCodecTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] SAMPLES = {CASUtils.createShortSampleExpression(),
+            CASUtils.createMediumSampleExpression(), CASUtils.createLongSampleExpression(),
+            CASUtils.createUltraLongSampleExpression(), "=[$[x],#[-2.5]]", "&ZERO[]"};
+
+    @Test
+    public void decodesTheSameExpression() throws Exception {
+        final AlgebraicEngine parser = new AlgebraicEngine();
+        for (final String sample : SAMPLES) {
+            checkRoundTrip(parser.createOper(sample));
+        }
+        for (int seed = 0; seed < 20; seed++) {
+            checkRoundTrip(new ExpressionGenerator(seed).generate(50 + 200 * seed).getExpression());
+        }
+    }
+
+    @Test
+    public void encodesIntoABuffer() throws Exception {
+        final Operation op = new ExpressionGenerator(3).generate(500).getExpression();
+        final int size = SnapshotCodec.getEncodedSize(op);
+        final ByteBuffer buffer = ByteBuffer.allocate(size + 10);
+        buffer.position(7);
+        SnapshotCodec.encode(op, buffer);
+        assertEquals(7 + size, buffer.position());
+
+        buffer.position(7);
+        assertEquals(CASUtils.getNumberOfNodes(op), SnapshotCodec.getNodeCount(buffer));
+        assertEquals(7, buffer.position());
+        assertEquals(op.toString(), SnapshotCodec.decode(buffer).toString());
+        assertEquals(7 + size, buffer.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownVersions() {
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.put((byte) 99).flip();
+        SnapshotCodec.decode(buffer);
+    }
+
+    @Test
+    public void varintsRoundTrip() {
+        final int[] values = {0, 1, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, -1};
+        final ByteBuffer buffer = ByteBuffer.allocate(5 * values.length);
+        for (final int value : values) {
+            final int start = buffer.position();
+            SnapshotCodec.putVarint(buffer, value);
+            assertEquals(SnapshotCodec.getVarintSize(value), buffer.position() - start);
+        }
+        buffer.flip();
+        for (final int value : values) {
+            assertEquals(value, SnapshotCodec.getVarint(buffer));
+        }
+    }
+
+    /**
+     * The snapshot must be less than half the size of the CAS string. The time of reading it is
+     * measured by {@link es.uam.eps.tfg.app.tfgapp.tools.SnapshotBenchmark}
+     */
+    @Test
+    public void isSmallerThanTheCASString() throws Exception {
+        for (int seed = 0; seed < 5; seed++) {
+            final Operation op = new ExpressionGenerator(seed).generate(2000).getExpression();
+            final int stringSize = op.toString().getBytes(UTF_8).length;
+            assertTrue(SnapshotCodec.getEncodedSize(op) * 2 < stringSize);
+        }
+    }
+
+    private static void checkRoundTrip(final Operation op) {
+        final ByteBuffer snapshot = SnapshotCodec.encode(op);
+        assertEquals(SnapshotCodec.getEncodedSize(op), snapshot.remaining());
+        assertEquals(CASUtils.getNumberOfNodes(op), SnapshotCodec.getNodeCount(snapshot));
+
+        final Operation decoded = SnapshotCodec.decode(snapshot.duplicate());
+        assertEquals(op.toString(), decoded.toString());
+        checkIds(decoded, null, new HashSet<UUID>(), op.getId());
+    }
+
+    private static void checkIds(final Operation op, final Operation parent, final Set<UUID> ids, final UUID originalRoot) {
+        assertFalse(op.getId().equals(originalRoot));
+        assertTrue(ids.add(op.getId()));
+        assertSame(parent == null ? null : parent.getId(), op.getParentID());
+        for (final Operation arg : op.getArgs()) {
+            checkIds(arg, op, ids, originalRoot);
+        }
+    }
+}
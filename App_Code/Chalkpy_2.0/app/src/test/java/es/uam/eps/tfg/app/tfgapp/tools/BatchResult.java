@@ -0,0 +1,52 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+/**
+ * Outcome of replaying a task
+ */
+public class BatchResult {
+    private final int mLineNumber;
+    private final String mExpression;
+    private final String mError;
+    private final long mNanos;
+
+    public BatchResult(final int lineNumber, final String expression, final String error, final long nanos) {
+        mLineNumber = lineNumber;
+        mExpression = expression;
+        mError = error;
+        mNanos = nanos;
+    }
+
+    public int getLineNumber() {
+        return mLineNumber;
+    }
+
+    /**
+     * @return CAS expression after the last step applied
+     */
+    public String getExpression() {
+        return mExpression;
+    }
+
+    /**
+     * @return description of the failed step, null if all of them were applied
+     */
+    public String getError() {
+        return mError;
+    }
+
+    public boolean isSuccess() {
+        return mError == null;
+    }
+
+    public long getNanos() {
+        return mNanos;
+    }
+
+    /**
+     * @return the result as a tab separated line: line number, status, microseconds, expression and error
+     */
+    public String toLine() {
+        return mLineNumber + "\t" + (isSuccess() ? "OK" : "FAIL") + "\t" + mNanos / 1000 + "\t" + mExpression
+                + (isSuccess() ? "" : "\t" + mError);
+    }
+}
@@ -0,0 +1,187 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+
+/**
+ * Replays exercise traces against the CAS without any UI. Tasks (see {@link BatchTask} for the
+ * format) are split between the threads of a fork/join pool, and every thread works with its own
+ * CAS instance, so no state is shared between them.
+ * <p>
+ * Usage: {@code BatchRunner <tasks file> <results file> [threads]}. Results are written in the same
+ * order as the tasks, one per line (see {@link BatchResult#toLine()}).
+ */
+public class BatchRunner {
+    private static final String CHARSET = "UTF-8";
+    /**
+     * Maximum number of tasks run by a single fork/join leaf
+     */
+    private static final int TASKS_PER_LEAF = 16;
+
+    private final ForkJoinPool mPool;
+    private final ThreadLocal<CASAdapter> mEngines;
+
+    /**
+     * @param threads number of worker threads
+     */
+    public BatchRunner(final int threads) {
+        mPool = new ForkJoinPool(threads);
+        mEngines = new ThreadLocal<CASAdapter>() {
+            @Override
+            protected CASAdapter initialValue() {
+                return CASImplementation.newInstance();
+            }
+        };
+    }
+
+    /**
+     * Reads all the tasks of a file
+     *
+     * @param input task file
+     * @return tasks, in order of appearance
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if a line is not well formed
+     */
+    public static List<BatchTask> readTasks(final Reader input) throws IOException {
+        final BufferedReader reader = new BufferedReader(input);
+        final List<BatchTask> tasks = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            try {
+                final BatchTask task = BatchTask.parse(lineNumber, line);
+                if (task != null) {
+                    tasks.add(task);
+                }
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Runs all the tasks in parallel
+     *
+     * @param tasks tasks to run
+     * @return results, in the same order as the tasks
+     */
+    public List<BatchResult> run(final List<BatchTask> tasks) {
+        final BatchResult[] results = new BatchResult[tasks.size()];
+        mPool.invoke(new Shard(tasks, results, 0, tasks.size()));
+        final List<BatchResult> list = new ArrayList<>(results.length);
+        for (final BatchResult result : results) {
+            list.add(result);
+        }
+        return list;
+    }
+
+    /**
+     * Stops the worker threads. The runner can't be used anymore
+     */
+    public void shutdown() {
+        mPool.shutdown();
+    }
+
+    /**
+     * Writes the results, followed by a summary line
+     *
+     * @param results     results of the tasks
+     * @param elapsedNanos total time of the run
+     * @param output      where the results are written
+     * @throws IOException if the results can't be written
+     */
+    public static void writeResults(final List<BatchResult> results, final long elapsedNanos, final Writer output) throws IOException {
+        int failed = 0;
+        for (final BatchResult result : results) {
+            if (!result.isSuccess()) {
+                failed++;
+            }
+            output.write(result.toLine());
+            output.write('\n');
+        }
+        output.write("# tasks: " + results.size() + ", failed: " + failed + ", elapsed ms: " + elapsedNanos / 1000000 + '\n');
+        output.flush();
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchRunner <tasks file> <results file> [threads]");
+            System.exit(1);
+        }
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        final List<BatchTask> tasks;
+        final Reader input = new InputStreamReader(new FileInputStream(args[0]), CHARSET);
+        try {
+            tasks = readTasks(input);
+        } finally {
+            input.close();
+        }
+
+        final BatchRunner runner = new BatchRunner(threads);
+        final long start = System.nanoTime();
+        final List<BatchResult> results;
+        try {
+            results = runner.run(tasks);
+        } finally {
+            runner.shutdown();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        final Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), CHARSET));
+        try {
+            writeResults(results, elapsed, output);
+        } finally {
+            output.close();
+        }
+        System.out.println(tasks.size() + " tasks in " + elapsed / 1000000 + " ms using " + threads + " threads");
+    }
+
+    /**
+     * Range of tasks, split in halves until it's small enough to be run by a single thread
+     */
+    private class Shard extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<BatchTask> mTasks;
+        private final BatchResult[] mResults;
+        private final int mFrom;
+        private final int mTo;
+
+        Shard(final List<BatchTask> tasks, final BatchResult[] results, final int from, final int to) {
+            mTasks = tasks;
+            mResults = results;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= TASKS_PER_LEAF) {
+                final CASAdapter engine = mEngines.get();
+                for (int i = mFrom; i < mTo; i++) {
+                    mResults[i] = mTasks.get(i).run(engine);
+                }
+                return;
+            }
+            final int mid = (mFrom + mTo) >>> 1;
+            invokeAll(new Shard(mTasks, mResults, mFrom, mid), new Shard(mTasks, mResults, mid, mTo));
+        }
+    }
+}
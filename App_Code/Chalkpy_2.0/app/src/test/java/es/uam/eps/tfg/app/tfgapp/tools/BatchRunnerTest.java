@@ -0,0 +1,83 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRunnerTest {
+
+    private static final String TASKS = "// sample traces\n"
+            + "=[*[+[$[x],#[5]],#[3]],*[#[3],#[7]]] ; OPERATE 1\n"
+            + "\n"
+            + "=[*[+[$[x],#[5]],#[3]],*[#[3],#[7]]] ; OPERATE 1 ; MOVE_RIGHT 0.0 ; OPERATE 0.1 0.0\n"
+            + "=[*[+[$[x],#[5]],#[3]],*[#[3],#[7]]] ; CHANGE_SIDE 0.1\n"
+            + "=[+[#[3],#[3]],#[4]] ; OPERATE 0 ; CHANGE_SIDE 1\n"
+            + "=[+[#[3],#[3]],#[4]] ; OPERATE 0.7\n";
+
+    @Test
+    public void parsesTasks() throws IOException {
+        final List<BatchTask> tasks = BatchRunner.readTasks(new StringReader(TASKS));
+
+        assertEquals(5, tasks.size());
+        assertEquals(2, tasks.get(0).getLineNumber());
+        assertEquals("=[*[+[$[x],#[5]],#[3]],*[#[3],#[7]]]", tasks.get(0).getExpression());
+        assertEquals(3, tasks.get(1).getSteps().size());
+        assertEquals("OPERATE 0.1 0.0", tasks.get(1).getSteps().get(2).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownActions() throws IOException {
+        BatchRunner.readTasks(new StringReader("=[#[3],#[3]] ; FLIP 0"));
+    }
+
+    @Test
+    public void appliesSteps() throws IOException {
+        final List<BatchTask> tasks = BatchRunner.readTasks(new StringReader(TASKS));
+        final BatchRunner runner = new BatchRunner(2);
+        final List<BatchResult> results = runner.run(tasks);
+        runner.shutdown();
+
+        assertEquals("=[*[+[$[x],#[5.0]],#[3.0]],#[21.0]]", results.get(0).getExpression());
+        assertEquals("=[+[*[#[3.0],$[x]],*[#[3.0],#[5.0]]],#[21.0]]", results.get(1).getExpression());
+        assertEquals("=[+[#[6.0],-[#[4.0]]],&ZERO[]]", results.get(3).getExpression());
+        assertNull(results.get(3).getError());
+
+        final BatchResult failed = results.get(4);
+        assertFalse(failed.isSuccess());
+        assertEquals(7, failed.getLineNumber());
+        assertTrue(failed.getError(), failed.getError().startsWith("Step 1 (OPERATE 0.7)"));
+    }
+
+    @Test
+    public void parallelRunMatchesSequentialRun() throws IOException {
+        final List<BatchTask> sample = BatchRunner.readTasks(new StringReader(TASKS));
+        final List<BatchTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tasks.addAll(sample);
+        }
+
+        final List<String> expected = new ArrayList<>();
+        for (final BatchTask task : tasks) {
+            expected.add(task.run(CASImplementation.newInstance()).getExpression());
+        }
+
+        final BatchRunner runner = new BatchRunner(4);
+        final List<BatchResult> results = runner.run(tasks);
+        runner.shutdown();
+
+        assertEquals(tasks.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(expected.get(i), results.get(i).getExpression());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+/**
+ * Exercise trace to replay against the CAS: an initial expression and a sequence of actions.
+ * <p>
+ * Format (one task per line): the CAS expression followed by the steps, separated by ';'. Each step
+ * is the name of an action and the paths of the selected nodes. A path is the list of argument
+ * indexes from the root, separated by dots:
+ * <pre>
+ * =[+[#[3],$[x]],#[5]] ; CHANGE_SIDE 0.0 ; OPERATE 1
+ * </pre>
+ */
+public class BatchTask {
+    private static final String STEP_SEPARATOR = ";";
+    private static final String PATH_SEPARATOR = "\\.";
+
+    private final int mLineNumber;
+    private final String mExpression;
+    private final List<Step> mSteps;
+
+    private BatchTask(final int lineNumber, final String expression, final List<Step> steps) {
+        mLineNumber = lineNumber;
+        mExpression = expression;
+        mSteps = steps;
+    }
+
+    /**
+     * Parses a line of a task file
+     *
+     * @param lineNumber number of the line, used to identify the task
+     * @param line       text of the line
+     * @return the task, null if the line is empty or a comment (starts with "//")
+     * @throws IllegalArgumentException if the line is not well formed
+     */
+    public static BatchTask parse(final int lineNumber, final String line) {
+        final String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("//")) {
+            return null;
+        }
+        final String[] parts = trimmed.split(STEP_SEPARATOR);
+        final List<Step> steps = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            steps.add(Step.parse(parts[i].trim()));
+        }
+        return new BatchTask(lineNumber, parts[0].trim(), Collections.unmodifiableList(steps));
+    }
+
+    public int getLineNumber() {
+        return mLineNumber;
+    }
+
+    public String getExpression() {
+        return mExpression;
+    }
+
+    public List<Step> getSteps() {
+        return mSteps;
+    }
+
+    /**
+     * Applies all the steps of the task, stopping at the first one that fails
+     *
+     * @param CAS CAS used only by the current thread
+     * @return result of the task
+     */
+    public BatchResult run(final CASAdapter CAS) {
+        final long start = System.nanoTime();
+        if (CAS.createOperationFromString(mExpression) == null) {
+            return new BatchResult(mLineNumber, mExpression, "Invalid expression", System.nanoTime() - start);
+        }
+        CAS.initCAS(mExpression);
+
+        for (int i = 0; i < mSteps.size(); i++) {
+            final Step step = mSteps.get(i);
+            try {
+                step.apply(CAS);
+            } catch (final NotApplicableReductionException e) {
+                final String error = "Step " + (i + 1) + " (" + step + "): " + e.getMessageException();
+                return new BatchResult(mLineNumber, CAS.getCurrentExpression().toString(), error, System.nanoTime() - start);
+            } catch (final RuntimeException e) {
+                final String error = "Step " + (i + 1) + " (" + step + "): " + e;
+                return new BatchResult(mLineNumber, CAS.getCurrentExpression().toString(), error, System.nanoTime() - start);
+            }
+        }
+        return new BatchResult(mLineNumber, CAS.getCurrentExpression().toString(), null, System.nanoTime() - start);
+    }
+
+    /**
+     * Action performed over one or more nodes of the current expression
+     */
+    public static class Step {
+        private final CASAdapter.Actions mAction;
+        private final List<int[]> mPaths;
+
+        public Step(final CASAdapter.Actions action, final List<int[]> paths) {
+            mAction = action;
+            mPaths = paths;
+        }
+
+        public CASAdapter.Actions getAction() {
+            return mAction;
+        }
+
+        /**
+         * @param text action name and node paths, separated by spaces
+         * @return the step
+         * @throws IllegalArgumentException if the step is not well formed
+         */
+        public static Step parse(final String text) {
+            final String[] tokens = text.split("\\s+");
+            final CASAdapter.Actions action = CASAdapter.Actions.valueOf(tokens[0]);
+            final List<int[]> paths = new ArrayList<>();
+            for (int i = 1; i < tokens.length; i++) {
+                final String[] indexes = tokens[i].split(PATH_SEPARATOR);
+                final int[] path = new int[indexes.length];
+                for (int j = 0; j < indexes.length; j++) {
+                    path[j] = Integer.parseInt(indexes[j]);
+                }
+                paths.add(path);
+            }
+            if (paths.isEmpty()) {
+                throw new IllegalArgumentException("No selection for step: " + text);
+            }
+            return new Step(action, paths);
+        }
+
+        /**
+         * Performs the action, the same way the expression board does
+         *
+         * @param CAS CAS with the current expression
+         * @throws NotApplicableReductionException if the action can't be applied to the selection
+         */
+        public void apply(final CASAdapter CAS) throws NotApplicableReductionException {
+            final List<Operation> selection = getSelection(CAS.getCurrentExpression());
+            final Operation first = selection.get(0);
+            switch (mAction) {
+                case CHANGE_SIDE:
+                    CAS.changeSide(selection);
+                    break;
+                case MOVE_LEFT:
+                case MOVE_RIGHT:
+                    CAS.commutativeProperty(first, mAction);
+                    break;
+                case ASSOCIATE:
+                    checkSelectionSize(selection, 2);
+                    CAS.associativeProperty(first, selection.get(1));
+                    break;
+                case DISASSOCIATE:
+                    CAS.dissociativeProperty(first);
+                    break;
+                case OPERATE:
+                    if (selection.size() == 1) {
+                        CAS.operate(first);
+                    } else if (CAS.isOnDistributiveForm(first, selection.get(1))) {
+                        CAS.distribute(first, selection.get(1));
+                    } else if (CAS.isOnDistributiveForm(selection.get(1), first)) {
+                        CAS.distribute(selection.get(1), first);
+                    } else {
+                        CAS.commonFactor(selection);
+                    }
+                    break;
+                case DISTRIBUTE:
+                    checkSelectionSize(selection, 2);
+                    CAS.distribute(first, selection.get(1));
+                    break;
+                case COMMON_FACTOR:
+                    CAS.commonFactor(selection);
+                    break;
+                case SIMPLIFY:
+                    //the whole expression, the selection is ignored
+                    CAS.simplify();
+                    break;
+                default:
+                    throw new NotApplicableReductionException("Unknown action: " + mAction);
+            }
+        }
+
+        /**
+         * @param expression expression where the step is performed
+         * @return the selected nodes of the expression
+         * @throws NotApplicableReductionException if a path doesn't lead to a node
+         */
+        public List<Operation> getSelection(final Operation expression) throws NotApplicableReductionException {
+            final List<Operation> selection = new ArrayList<>();
+            for (final int[] path : mPaths) {
+                selection.add(getNode(expression, path));
+            }
+            return selection;
+        }
+
+        private static void checkSelectionSize(final List<Operation> selection, final int size) throws NotApplicableReductionException {
+            if (selection.size() != size) {
+                throw new NotApplicableReductionException("Expected " + size + " selected nodes");
+            }
+        }
+
+        private static Operation getNode(final Operation root, final int[] path) throws NotApplicableReductionException {
+            Operation node = root;
+            for (final int index : path) {
+                if (index < 0 || index >= node.getArgs().size()) {
+                    throw new NotApplicableReductionException("No node at path " + pathToString(path));
+                }
+                node = node.getArg(index);
+            }
+            return node;
+        }
+
+        private static String pathToString(final int[] path) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < path.length; i++) {
+                if (i > 0) {
+                    sb.append('.');
+                }
+                sb.append(path[i]);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder(mAction.name());
+            for (final int[] path : mPaths) {
+                sb.append(' ').append(pathToString(path));
+            }
+            return sb.toString();
+        }
+    }
+}
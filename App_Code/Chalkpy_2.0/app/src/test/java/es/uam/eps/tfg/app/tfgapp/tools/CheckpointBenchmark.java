@@ -0,0 +1,84 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.model.history.CheckpointWriter;
+import es.uam.eps.tfg.app.tfgapp.model.history.HistoryLog;
+import es.uam.eps.tfg.app.tfgapp.model.history.SnapshotCodec;
+
+/**
+ * Measures the time that saving the checkpoint of the expression takes on the thread doing the
+ * actions, writing it at once to the log or giving it to a {@link CheckpointWriter}.
+ * <p>
+ * Usage: {@code CheckpointBenchmark <log directory> [max nodes] [actions] [seed]}. For each size it
+ * prints the median time, in microseconds, of an action alone, of an action followed by a
+ * synchronous checkpoint and of an action followed by a checkpoint request.
+ */
+public class CheckpointBenchmark {
+    private static final int MIN_NODES = 16;
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CheckpointBenchmark <log directory> [max nodes] [actions] [seed]");
+            System.exit(1);
+        }
+        final int maxNodes = args.length > 1 ? Integer.parseInt(args[1]) : 8192;
+        final int actions = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        final long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        final HistoryLog log = HistoryLog.open(new File(args[0]), HistoryLog.DEFAULT_SEGMENT_SIZE);
+        final CheckpointWriter writer = new CheckpointWriter(log, CheckpointWriter.DEFAULT_WINDOW_MILLIS);
+        final ExpressionGenerator generator = new ExpressionGenerator(seed);
+        final CASAdapter CAS = CASImplementation.newInstance();
+        System.out.println("nodes\taction\tsync\tasync");
+        try {
+            for (int nodes = MIN_NODES; nodes <= maxNodes; nodes *= 2) {
+                final long[] plain = new long[actions];
+                final long[] sync = new long[actions];
+                final long[] async = new long[actions];
+                for (int i = 0; i < actions; i++) {
+                    plain[i] = measure(CAS, generator.generate(nodes), null, null);
+                    sync[i] = measure(CAS, generator.generate(nodes), log, null);
+                    async[i] = measure(CAS, generator.generate(nodes), null, writer);
+                }
+                System.out.println(nodes + "\t" + median(plain) + "\t" + median(sync) + "\t" + median(async));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Applies the first action site of the expression and saves the checkpoint as asked
+     *
+     * @return nanoseconds taken
+     */
+    private static long measure(final CASAdapter CAS, final ExpressionGenerator.GeneratedExpression generated,
+                                final HistoryLog log, final CheckpointWriter writer) throws IOException {
+        CAS.initCAS(generated.getExpression());
+        final List<BatchTask.Step> sites = generated.getActionSites();
+        final long start = System.nanoTime();
+        try {
+            sites.get(0).apply(CAS);
+        } catch (final Exception e) {
+            //only the checkpoint matters when the action isn't applicable
+        }
+        if (log != null) {
+            log.writeCheckpoint(SnapshotCodec.encode(CAS.getCurrentExpression()));
+        } else if (writer != null) {
+            writer.request(CAS.getCurrentExpression());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long median(final long[] nanos) {
+        final long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1000;
+    }
+}
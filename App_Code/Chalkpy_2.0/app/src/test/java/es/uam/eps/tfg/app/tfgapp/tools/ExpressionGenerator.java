@@ -0,0 +1,303 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+/**
+ * Generates random equations of a given size. The same seed and settings always give the same
+ * equation.
+ * <p>
+ * Both sides are sums of random terms. The left one also contains a group of terms where every
+ * action can be applied, so each equation comes with a list of legal action sites (see
+ * {@link GeneratedExpression#getActionSites()}).
+ * <p>
+ * Expressions are built directly as operations: the CAS parser can't read strings with more than
+ * 127 brackets, so big equations must be loaded with {@link CASAdapter#initCAS(Operation)}.
+ */
+public class ExpressionGenerator {
+    private static final String[] VARIABLES = {"x", "y", "z"};
+    private static final int MAX_NUMBER = 9;
+    /**
+     * Part of the nodes that go to the right side of the equation
+     */
+    private static final int RIGHT_SIDE_RATIO = 4;
+
+    private final long mSeed;
+    private int mMaxDepth;
+    private int mMaxArity;
+    private float mVariableDensity;
+    private final int[] mOperatorWeights;
+    private final int[] mConstantWeights;
+
+    /**
+     * Creates a generator with the default settings: terms up to depth 4 with up to 3 arguments,
+     * a quarter of the leaves are variables, and every operator and constant can appear
+     *
+     * @param seed seed of the random generator
+     */
+    public ExpressionGenerator(final long seed) {
+        mSeed = seed;
+        mMaxDepth = 4;
+        mMaxArity = 3;
+        mVariableDensity = 0.25f;
+        mOperatorWeights = new int[]{4, 4, 1, 1};
+        mConstantWeights = new int[]{8, 1, 1, 1};
+    }
+
+    /**
+     * @param maxDepth maximum depth of each term of the sides, 0 for terms that are leaves
+     */
+    public void setMaxDepth(final int maxDepth) {
+        mMaxDepth = maxDepth;
+    }
+
+    /**
+     * @param maxArity maximum number of arguments of sums and products (at least 2). The sides
+     *                 have as many terms as needed to reach the size
+     */
+    public void setMaxArity(final int maxArity) {
+        mMaxArity = Math.max(2, maxArity);
+    }
+
+    /**
+     * @param variableDensity probability of a leaf being a variable instead of a constant
+     */
+    public void setVariableDensity(final float variableDensity) {
+        mVariableDensity = variableDensity;
+    }
+
+    /**
+     * Relative frequency of each operation on inner nodes
+     */
+    public void setOperatorWeights(final int sum, final int prod, final int minus, final int inv) {
+        mOperatorWeights[0] = sum;
+        mOperatorWeights[1] = prod;
+        mOperatorWeights[2] = minus;
+        mOperatorWeights[3] = inv;
+    }
+
+    /**
+     * Relative frequency of each kind of constant on leaves
+     */
+    public void setConstantWeights(final int number, final int zero, final int one, final int minusOne) {
+        mConstantWeights[0] = number;
+        mConstantWeights[1] = zero;
+        mConstantWeights[2] = one;
+        mConstantWeights[3] = minusOne;
+    }
+
+    /**
+     * @param nodes minimum number of nodes (counted as {@link CASUtils#getNumberOfNodes(Operation)})
+     * @return a new equation with at least the given number of nodes
+     */
+    public GeneratedExpression generate(final int nodes) {
+        final Random random = new Random(mSeed);
+        final int rightNodes = Math.max(1, nodes / RIGHT_SIDE_RATIO);
+
+        final List<Operation> rightTerms = new ArrayList<>();
+        int count = 0;
+        do {
+            final Operation term = randomTerm(random, mMaxDepth);
+            rightTerms.add(term);
+            count += CASUtils.getNumberOfNodes(term);
+        } while (count < rightNodes);
+
+        final List<Operation> sites = createSiteTerms(random);
+        for (final Operation term : sites) {
+            count += CASUtils.getNumberOfNodes(term);
+        }
+        final List<Operation> leftTerms = new ArrayList<>();
+        //sum, equation and the right side sum
+        count += 3;
+        while (count < nodes) {
+            final Operation term = randomTerm(random, mMaxDepth);
+            leftTerms.add(term);
+            count += CASUtils.getNumberOfNodes(term);
+        }
+        final int siteIndex = random.nextInt(leftTerms.size() + 1);
+        leftTerms.addAll(siteIndex, sites);
+
+        final Operation equation = new Operation(AlgebraicEngine.Opers.EQU.toString());
+        equation.addArg(createOperation(AlgebraicEngine.Opers.SUM, leftTerms));
+        equation.addArg(createOperation(AlgebraicEngine.Opers.SUM, rightTerms));
+        equation.setParentIdsRec(null);
+        return new GeneratedExpression(equation, CASUtils.getNumberOfNodes(equation), createActionSites(siteIndex));
+    }
+
+    /**
+     * Terms where every action can be applied. They are placed consecutively on the left side:
+     * a product of numbers, a sum of numbers, a number times a sum, and a sum of two products with
+     * a common factor
+     */
+    private List<Operation> createSiteTerms(final Random random) {
+        final String variable = VARIABLES[random.nextInt(VARIABLES.length)];
+        final Operation factor = createNumber(random);
+        return Arrays.asList(
+                createOperation(AlgebraicEngine.Opers.PROD, createNumber(random), createNumber(random)),
+                createOperation(AlgebraicEngine.Opers.SUM, createNumber(random), createNumber(random)),
+                createOperation(AlgebraicEngine.Opers.PROD, createNumber(random),
+                        createOperation(AlgebraicEngine.Opers.SUM, createVariable(variable), createNumber(random))),
+                createOperation(AlgebraicEngine.Opers.SUM,
+                        createOperation(AlgebraicEngine.Opers.PROD, factor, createVariable(variable)),
+                        createOperation(AlgebraicEngine.Opers.PROD, copyNumber(factor), createNumber(random))));
+    }
+
+    private static List<BatchTask.Step> createActionSites(final int index) {
+        final List<BatchTask.Step> sites = new ArrayList<>();
+        sites.add(createStep(CASAdapter.Actions.OPERATE, new int[]{0, index}));
+        sites.add(createStep(CASAdapter.Actions.MOVE_RIGHT, new int[]{0, index}));
+        sites.add(createStep(CASAdapter.Actions.MOVE_LEFT, new int[]{0, index + 1}));
+        sites.add(createStep(CASAdapter.Actions.ASSOCIATE, new int[]{0, index}, new int[]{0, index + 1}));
+        sites.add(createStep(CASAdapter.Actions.DISASSOCIATE, new int[]{0, index + 1}));
+        sites.add(createStep(CASAdapter.Actions.DISTRIBUTE, new int[]{0, index + 2, 0}, new int[]{0, index + 2, 1}));
+        sites.add(createStep(CASAdapter.Actions.COMMON_FACTOR, new int[]{0, index + 3, 0, 0}, new int[]{0, index + 3, 1, 0}));
+        sites.add(createStep(CASAdapter.Actions.CHANGE_SIDE, new int[]{0, index}));
+        sites.add(createStep(CASAdapter.Actions.SIMPLIFY, new int[]{0, index}));
+        return Collections.unmodifiableList(sites);
+    }
+
+    private static BatchTask.Step createStep(final CASAdapter.Actions action, final int[]... paths) {
+        return new BatchTask.Step(action, Arrays.asList(paths));
+    }
+
+    private Operation randomTerm(final Random random, final int depth) {
+        if (depth == 0 || random.nextInt(mMaxDepth + 1) < mMaxDepth - depth) {
+            return randomLeaf(random);
+        }
+        switch (pick(random, mOperatorWeights)) {
+            case 0:
+                return randomOperation(random, AlgebraicEngine.Opers.SUM, depth);
+            case 1:
+                return randomOperation(random, AlgebraicEngine.Opers.PROD, depth);
+            case 2:
+                return createOperation(AlgebraicEngine.Opers.MINUS, randomTerm(random, depth - 1));
+            default:
+                return createOperation(AlgebraicEngine.Opers.INV, randomTerm(random, depth - 1));
+        }
+    }
+
+    private Operation randomOperation(final Random random, final AlgebraicEngine.Opers oper, final int depth) {
+        final int arity = 2 + random.nextInt(mMaxArity - 1);
+        final List<Operation> args = new ArrayList<>(arity);
+        for (int i = 0; i < arity; i++) {
+            args.add(randomTerm(random, depth - 1));
+        }
+        return createOperation(oper, args);
+    }
+
+    private Operation randomLeaf(final Random random) {
+        if (random.nextFloat() < mVariableDensity) {
+            return createVariable(VARIABLES[random.nextInt(VARIABLES.length)]);
+        }
+        switch (pick(random, mConstantWeights)) {
+            case 0:
+                return createNumber(random);
+            case 1:
+                return new Operation(AlgebraicEngine.Opers.ZERO.toString());
+            case 2:
+                return new Operation(AlgebraicEngine.Opers.ONE.toString());
+            default:
+                return new Operation(AlgebraicEngine.Opers.MONE.toString());
+        }
+    }
+
+    /**
+     * @return index of the chosen weight, with a probability proportional to it
+     */
+    private static int pick(final Random random, final int[] weights) {
+        int total = 0;
+        for (final int weight : weights) {
+            total += weight;
+        }
+        int value = random.nextInt(Math.max(1, total));
+        for (int i = 0; i < weights.length; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static Operation createOperation(final AlgebraicEngine.Opers oper, final Operation... args) {
+        return createOperation(oper, Arrays.asList(args));
+    }
+
+    private static Operation createOperation(final AlgebraicEngine.Opers oper, final List<Operation> args) {
+        final Operation op = new Operation(oper.toString());
+        for (final Operation arg : args) {
+            op.addArg(arg);
+        }
+        return op;
+    }
+
+    /**
+     * Numbers are a NUMBER operation wrapping the value, the same way the CAS parser creates them
+     */
+    private static Operation createNumber(final Random random) {
+        return createNumber(1 + random.nextInt(MAX_NUMBER));
+    }
+
+    private static Operation createNumber(final float value) {
+        final Operation number = new Operation(AlgebraicEngine.Opers.NUMBER.toString());
+        number.addArg(new Operation(value));
+        return number;
+    }
+
+    private static Operation copyNumber(final Operation number) {
+        return createNumber(number.getArg(0).getArgNumber());
+    }
+
+    private static Operation createVariable(final String name) {
+        final Operation value = new Operation();
+        value.setArgStr(name);
+        final Operation variable = new Operation(AlgebraicEngine.Opers.VAR.toString());
+        variable.addArg(value);
+        return variable;
+    }
+
+    /**
+     * Generated equation, with the actions that can be applied to it
+     */
+    public static class GeneratedExpression {
+        private final Operation mExpression;
+        private final int mNodeCount;
+        private final List<BatchTask.Step> mActionSites;
+
+        GeneratedExpression(final Operation expression, final int nodeCount, final List<BatchTask.Step> actionSites) {
+            mExpression = expression;
+            mNodeCount = nodeCount;
+            mActionSites = actionSites;
+        }
+
+        public Operation getExpression() {
+            return mExpression;
+        }
+
+        /**
+         * @return the equation in the CAS notation, including the changes made by the actions
+         */
+        public String getCASExpression() {
+            return mExpression.toString();
+        }
+
+        public int getNodeCount() {
+            return mNodeCount;
+        }
+
+        /**
+         * @return one step for each action, applicable to the equation as it was generated
+         */
+        public List<BatchTask.Step> getActionSites() {
+            return mActionSites;
+        }
+    }
+}
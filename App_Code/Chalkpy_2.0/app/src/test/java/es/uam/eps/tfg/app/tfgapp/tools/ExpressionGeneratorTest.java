@@ -0,0 +1,92 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionGeneratorTest {
+
+    @Test
+    public void sameSeedGivesSameEquation() {
+        final String first = new ExpressionGenerator(42).generate(500).getCASExpression();
+        final String second = new ExpressionGenerator(42).generate(500).getCASExpression();
+        final String other = new ExpressionGenerator(43).generate(500).getCASExpression();
+
+        assertEquals(first, second);
+        assertFalse(first.equals(other));
+    }
+
+    @Test
+    public void reachesTheRequestedSize() {
+        final ExpressionGenerator generator = new ExpressionGenerator(1);
+        for (int nodes = 16; nodes <= 16384; nodes *= 4) {
+            final ExpressionGenerator.GeneratedExpression generated = generator.generate(nodes);
+            assertEquals(CASUtils.getNumberOfNodes(generated.getExpression()), generated.getNodeCount());
+            assertTrue(generated.getNodeCount() >= nodes);
+            assertTrue(generated.getNodeCount() < nodes * 2 + 64);
+        }
+    }
+
+    @Test
+    public void smallEquationsCanBeParsed() {
+        final ExpressionGenerator generator = new ExpressionGenerator(7);
+        generator.setMaxDepth(2);
+        final String CASExpression = generator.generate(40).getCASExpression();
+        final Operation parsed = CASImplementation.newInstance().createOperationFromString(CASExpression);
+
+        assertNotNull(parsed);
+        assertEquals(CASExpression, parsed.toString());
+    }
+
+    @Test
+    public void usesEveryKindOfNode() {
+        final String CASExpression = new ExpressionGenerator(3).generate(2000).getCASExpression();
+        for (final String node : new String[]{"+[", "*[", "-[", "@INV[", "&ZERO[", "&ONE[", "&MONE[", "$[", "#["}) {
+            assertTrue(node, CASExpression.contains(node));
+        }
+    }
+
+    @Test
+    public void variableDensityCanBeZero() {
+        final ExpressionGenerator generator = new ExpressionGenerator(5);
+        generator.setVariableDensity(0);
+        generator.setOperatorWeights(1, 1, 0, 0);
+        generator.setConstantWeights(1, 0, 0, 0);
+        final String CASExpression = generator.generate(1000).getCASExpression();
+
+        //only the action sites have variables
+        assertEquals(2, CASExpression.split("\\$\\[").length - 1);
+        assertFalse(CASExpression.contains("@INV["));
+        assertFalse(CASExpression.contains("&"));
+    }
+
+    @Test
+    public void actionSitesAreLegal() throws NotApplicableReductionException {
+        final CASAdapter CAS = CASImplementation.newInstance();
+        for (int seed = 0; seed < 20; seed++) {
+            final ExpressionGenerator generator = new ExpressionGenerator(seed);
+            final Set<CASAdapter.Actions> actions = new HashSet<>();
+            for (final BatchTask.Step step : generator.generate(300).getActionSites()) {
+                final ExpressionGenerator.GeneratedExpression generated = generator.generate(300);
+                final String before = generated.getCASExpression();
+                CAS.initCAS(generated.getExpression());
+                step.apply(CAS);
+                assertFalse(step.toString(), before.equals(CAS.getCurrentExpression().toString()));
+                actions.add(step.getAction());
+            }
+            assertEquals(CASAdapter.Actions.values().length, actions.size());
+        }
+    }
+}
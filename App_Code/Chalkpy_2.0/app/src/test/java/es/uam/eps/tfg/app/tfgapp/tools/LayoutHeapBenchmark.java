@@ -0,0 +1,69 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.view.layout.ExpressionLayout;
+import es.uam.eps.tfg.app.tfgapp.view.layout.ExpressionLayoutBuilder;
+import es.uam.eps.tfg.app.tfgapp.view.layout.TextMetrics;
+
+/**
+ * Measures the heap taken by the layout of a very long expression, with the used heap before and
+ * after building it.
+ * <p>
+ * Usage: {@code LayoutHeapBenchmark [nodes]}. Prints the number of nodes and glyphs of the layout and
+ * the bytes taken per node.
+ */
+public class LayoutHeapBenchmark {
+    /**
+     * Every term "(3*x)+" has 7 nodes: the list, 2 parenthesis, 2 single elements and 2 operators
+     */
+    private static final int NODES_PER_TERM = 7;
+
+    public static void main(final String[] args) throws Exception {
+        final int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        final Operation exp = createLongExpression(nodes / NODES_PER_TERM);
+        final ExpressionLayoutBuilder builder = new ExpressionLayoutBuilder(new TextMetrics() {
+            @Override
+            public void measure(final String text, final float textSize, final int[] size) {
+                size[0] = 10 * text.length();
+                size[1] = 12;
+            }
+        });
+
+        //the builder keeps its working arrays, only the layout is measured
+        builder.build(exp, 27f);
+
+        final long before = usedHeap();
+        final ExpressionLayout layout = builder.build(exp, 27f);
+        final long after = usedHeap();
+
+        final double bytesPerNode = (after - before) / (double) layout.getNodeCount();
+        System.out.println("nodes\tglyphs\tbytes per node");
+        System.out.println(layout.getNodeCount() + "\t" + layout.getGlyphCount() + "\t" + String.format("%.1f", bytesPerNode));
+    }
+
+    /**
+     * Creates the equation 0*x + 1*x + ... = y. The terms are parsed one by one because the CAS
+     * parser doesn't accept so many nested brackets in a single argument.
+     */
+    private static Operation createLongExpression(final int terms) throws Exception {
+        final AlgebraicEngine engine = new AlgebraicEngine();
+        final Operation sum = new Operation("SUM");
+        for (int i = 0; i < terms; i++) {
+            sum.addArg(engine.createOper("*[#[" + (i % 10) + "],$[x]]"));
+        }
+        final Operation equation = new Operation("EQU");
+        equation.addArg(sum);
+        equation.addArg(engine.createOper("$[y]"));
+        return equation;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,169 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASAdapter;
+import es.uam.eps.tfg.app.tfgapp.model.cas.CASImplementation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.app.tfgapp.view.layout.ExpressionLayoutBuilder;
+import es.uam.eps.tfg.app.tfgapp.view.layout.TextMetrics;
+import es.uam.eps.tfg.exception.NotApplicableReductionException;
+
+/**
+ * Measures how the time of each operation grows with the size of the expression, using generated
+ * equations of doubling sizes.
+ * <p>
+ * Usage: {@code ScalingBenchmark <results file> [max nodes] [repetitions] [seed]}. The results are a
+ * tab separated table with the median time, in microseconds, of parsing, infix conversion, layout
+ * and every action for each size. Parsing is only measured while the CAS parser accepts the
+ * expression ("-" otherwise).
+ */
+public class ScalingBenchmark {
+    private static final String NOT_MEASURED = "-";
+    private static final int MIN_NODES = 16;
+    private static final float TEXT_SIZE = 40f;
+
+    private final ExpressionGenerator mGenerator;
+    private final CASAdapter mCAS;
+    private final ExpressionLayoutBuilder mLayoutBuilder;
+    private final int mRepetitions;
+
+    /**
+     * @param seed        seed of the generated equations
+     * @param repetitions times each operation is measured for each size
+     */
+    public ScalingBenchmark(final long seed, final int repetitions) {
+        mGenerator = new ExpressionGenerator(seed);
+        mCAS = CASImplementation.newInstance();
+        mLayoutBuilder = new ExpressionLayoutBuilder(new TextMetrics() {
+            @Override
+            public void measure(final String text, final float textSize, final int[] size) {
+                size[0] = (int) (text.length() * textSize / 2);
+                size[1] = (int) textSize;
+            }
+        });
+        mRepetitions = repetitions;
+    }
+
+    /**
+     * @return names of the columns of each row
+     */
+    public static String[] getColumns() {
+        final CASAdapter.Actions[] actions = CASAdapter.Actions.values();
+        final String[] columns = new String[4 + actions.length];
+        columns[0] = "nodes";
+        columns[1] = "parse";
+        columns[2] = "infix";
+        columns[3] = "layout";
+        for (int i = 0; i < actions.length; i++) {
+            columns[4 + i] = actions[i].name();
+        }
+        return columns;
+    }
+
+    /**
+     * Measures every operation on an equation of the given size
+     *
+     * @param nodes minimum number of nodes of the equation
+     * @return a row with the real number of nodes and the median microseconds of each operation
+     * @throws NotApplicableReductionException if an action site is not legal
+     */
+    public String[] measure(final int nodes) throws NotApplicableReductionException {
+        final ExpressionGenerator.GeneratedExpression generated = mGenerator.generate(nodes);
+        final Operation expression = generated.getExpression();
+        final String CASExpression = generated.getCASExpression();
+        final List<BatchTask.Step> sites = generated.getActionSites();
+        final CASAdapter.Actions[] actions = CASAdapter.Actions.values();
+        final String[] row = new String[4 + actions.length];
+        Arrays.fill(row, NOT_MEASURED);
+        row[0] = String.valueOf(generated.getNodeCount());
+
+        final long[] times = new long[mRepetitions];
+        if (mCAS.createOperationFromString(CASExpression) != null) {
+            for (int i = 0; i < mRepetitions; i++) {
+                final long start = System.nanoTime();
+                mCAS.createOperationFromString(CASExpression);
+                times[i] = System.nanoTime() - start;
+            }
+            row[1] = median(times);
+        }
+
+        for (int i = 0; i < mRepetitions; i++) {
+            final long start = System.nanoTime();
+            CASUtils.getInfixExpressionOf(expression);
+            times[i] = System.nanoTime() - start;
+        }
+        row[2] = median(times);
+
+        for (int i = 0; i < mRepetitions; i++) {
+            final long start = System.nanoTime();
+            mLayoutBuilder.build(expression, TEXT_SIZE);
+            times[i] = System.nanoTime() - start;
+        }
+        row[3] = median(times);
+
+        for (int site = 0; site < sites.size(); site++) {
+            final BatchTask.Step step = sites.get(site);
+            for (int i = 0; i < mRepetitions; i++) {
+                //actions modify the equation, so every repetition works on a new copy
+                mCAS.initCAS(mGenerator.generate(nodes).getExpression());
+                final long start = System.nanoTime();
+                step.apply(mCAS);
+                times[i] = System.nanoTime() - start;
+            }
+            row[4 + step.getAction().ordinal()] = median(times);
+        }
+        return row;
+    }
+
+    private static String median(final long[] nanos) {
+        final long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.valueOf(sorted[sorted.length / 2] / 1000);
+    }
+
+    private static String toLine(final String[] values) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append('\t');
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    public static void main(final String[] args) throws IOException, NotApplicableReductionException {
+        if (args.length < 1) {
+            System.err.println("Usage: ScalingBenchmark <results file> [max nodes] [repetitions] [seed]");
+            System.exit(1);
+        }
+        final int maxNodes = args.length > 1 ? Integer.parseInt(args[1]) : 16384;
+        final int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 9;
+        final long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        final ScalingBenchmark benchmark = new ScalingBenchmark(seed, repetitions);
+        //warm up, so the first sizes aren't measured on the interpreter
+        for (int i = 0; i < 20; i++) {
+            benchmark.measure(MIN_NODES * 4);
+        }
+
+        final PrintWriter output = new PrintWriter(new OutputStreamWriter(new FileOutputStream(args[0]), "UTF-8"));
+        try {
+            output.println(toLine(getColumns()));
+            for (int nodes = MIN_NODES; nodes <= maxNodes; nodes *= 2) {
+                final String line = toLine(benchmark.measure(nodes));
+                output.println(line);
+                System.out.println(line);
+            }
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import java.nio.ByteBuffer;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.app.tfgapp.model.history.SnapshotCodec;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+/**
+ * Compares reading an expression from its snapshot with parsing its CAS string.
+ * <p>
+ * Usage: {@code SnapshotBenchmark [rounds]}. Prints the time, in microseconds, of parsing and of
+ * decoding the long sample expression the given number of times, after warming up both.
+ */
+public class SnapshotBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final AlgebraicEngine parser = new AlgebraicEngine();
+        final String sample = CASUtils.createLongSampleExpression();
+        final ByteBuffer snapshot = SnapshotCodec.encode(parser.createOper(sample));
+        for (int i = 0; i < rounds; i++) {
+            parser.createOper(sample);
+            SnapshotCodec.decode(snapshot.duplicate());
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            parser.createOper(sample);
+        }
+        final long parsing = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            SnapshotCodec.decode(snapshot.duplicate());
+        }
+        final long decoding = System.nanoTime() - start;
+
+        System.out.println("rounds\tparsing\tdecoding");
+        System.out.println(rounds + "\t" + parsing / 1000 + "\t" + decoding / 1000);
+    }
+}
@@ -0,0 +1,43 @@
+package es.uam.eps.tfg.app.tfgapp.tools;
+
+import java.util.Arrays;
+import java.util.List;
+
+import es.uam.eps.tfg.app.tfgapp.model.EngineContext;
+import es.uam.eps.tfg.app.tfgapp.model.Workspace;
+
+/**
+ * Measures switching between the boards of a workspace with many of them, most of them cold.
+ * <p>
+ * Usage: {@code WorkspaceBenchmark [boards] [switches]}. Prints the median and the maximum time,
+ * in microseconds, of switching to a board and getting its expression, after warming up.
+ */
+public class WorkspaceBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        final int boards = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        final int switches = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final Workspace workspace = new Workspace(new EngineContext(), Workspace.DEFAULT_MAX_HOT_NODES,
+                Workspace.DEFAULT_MAX_HOT_BOARDS);
+        for (int i = 0; i < boards; i++) {
+            workspace.openBoard(new ExpressionGenerator(i).generate(1000).getExpression());
+        }
+        final List<Workspace.Board> open = workspace.getBoards();
+        for (int i = 0; i < open.size(); i++) {
+            workspace.switchTo(open.get((i * 7) % open.size()));
+        }
+
+        final long[] nanos = new long[switches];
+        for (int i = 0; i < switches; i++) {
+            final Workspace.Board board = open.get((i * 13) % open.size());
+            final long start = System.nanoTime();
+            workspace.switchTo(board).getCAS().getCurrentExpression();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+
+        System.out.println("boards\tswitches\tmedian\tmax");
+        System.out.println(open.size() + "\t" + switches + "\t" + nanos[switches / 2] / 1000 + "\t"
+                + nanos[switches - 1] / 1000);
+    }
+}
@@ -0,0 +1,104 @@
+package es.uam.eps.tfg.app.tfgapp.util.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+import es.uam.eps.tfg.app.tfgapp.view.layout.ExpressionLayout;
+import es.uam.eps.tfg.app.tfgapp.view.layout.ExpressionLayoutBuilder;
+import es.uam.eps.tfg.app.tfgapp.view.layout.TextMetrics;
+
+import static org.junit.Assert.*;
+
+/**
+ * Latency histograms and their JSON dump
+ */
+public class LatencyMetricsTest {
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    @Before
+    public void setUp() {
+        LatencyMetrics.reset();
+        LatencyMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        LatencyMetrics.setEnabled(false);
+        LatencyMetrics.reset();
+    }
+
+    @Test
+    public void nothingIsRecordedWhenDisabled() {
+        LatencyMetrics.setEnabled(false);
+        final long start = LatencyMetrics.start();
+        assertEquals(LatencyMetrics.NOT_MEASURED, start);
+
+        LatencyMetrics.stop(LatencyMetrics.Step.DRAW, null, 10, start);
+        assertNull(LatencyMetrics.getHistogram(LatencyMetrics.Step.DRAW, null, 10));
+    }
+
+    @Test
+    public void percentiles() {
+        for (int millis = 1; millis <= 100; millis++) {
+            LatencyMetrics.record(LatencyMetrics.Step.CAS_ACTION, "OPERATE", 30, millis * NANOS_PER_MILLI);
+        }
+        final LatencyHistogram histogram = LatencyMetrics.getHistogram(LatencyMetrics.Step.CAS_ACTION, "OPERATE", 30);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMeanMillis(), 0.001);
+        assertEquals(100, histogram.getMaxMillis(), 0.001);
+        assertEquals(84, histogram.getOverBudgetCount());
+
+        final double p50 = histogram.getPercentileMillis(50);
+        assertTrue(p50 >= 50 && p50 <= 50 * 1.25);
+        final double p90 = histogram.getPercentileMillis(90);
+        assertTrue(p90 >= 90 && p90 <= 100);
+        assertEquals(100, histogram.getPercentileMillis(100), 0.001);
+    }
+
+    @Test
+    public void histogramsAreGroupedBySize() {
+        assertEquals(1, LatencyMetrics.getSizeGroup(0));
+        assertEquals(32, LatencyMetrics.getSizeGroup(17));
+        assertEquals(32, LatencyMetrics.getSizeGroup(32));
+        assertEquals(64, LatencyMetrics.getSizeGroup(33));
+
+        LatencyMetrics.record(LatencyMetrics.Step.HIT_TEST, null, 20, 1000);
+        LatencyMetrics.record(LatencyMetrics.Step.HIT_TEST, null, 30, 1000);
+        LatencyMetrics.record(LatencyMetrics.Step.HIT_TEST, null, 40, 1000);
+
+        assertEquals(2, LatencyMetrics.getHistogram(LatencyMetrics.Step.HIT_TEST, null, 32).getCount());
+        assertEquals(1, LatencyMetrics.getHistogram(LatencyMetrics.Step.HIT_TEST, null, 64).getCount());
+    }
+
+    @Test
+    public void layoutIsMeasured() throws Exception {
+        final ExpressionLayoutBuilder builder = new ExpressionLayoutBuilder(new TextMetrics() {
+            @Override
+            public void measure(final String text, final float textSize, final int[] size) {
+                size[0] = text.length();
+                size[1] = 1;
+            }
+        });
+        final ExpressionLayout layout = builder.build(new AlgebraicEngine().createOper(CASUtils.createLongSampleExpression()), 27f);
+        final int nodes = layout.getNodeCount();
+
+        assertEquals(1, LatencyMetrics.getHistogram(LatencyMetrics.Step.DRAWABLE_BUILD, null, nodes).getCount());
+        assertEquals(1, LatencyMetrics.getHistogram(LatencyMetrics.Step.LAYOUT, null, nodes).getCount());
+    }
+
+    @Test
+    public void jsonDump() {
+        LatencyMetrics.record(LatencyMetrics.Step.CAS_ACTION, "CHANGE_SIDE", 12, 20 * NANOS_PER_MILLI);
+        LatencyMetrics.record(LatencyMetrics.Step.DRAW, null, 100, 2 * NANOS_PER_MILLI);
+
+        final String json = LatencyMetrics.toJson();
+        assertTrue(json.startsWith("{\"enabled\":true,\"frame_budget_ms\":16,\"histograms\":[{\"step\":\"CAS_ACTION\",\"tag\":\"CHANGE_SIDE\",\"max_nodes\":16,\"count\":1,\"over_budget\":1,"));
+        assertTrue(json.contains("{\"step\":\"DRAW\",\"max_nodes\":128,\"count\":1,\"over_budget\":0,"));
+        assertTrue(json.endsWith("}]}"));
+    }
+}
@@ -0,0 +1,194 @@
+package es.uam.eps.tfg.app.tfgapp.view.layout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+import es.uam.eps.tfg.app.tfgapp.util.CASUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Layout of expressions with fixed size glyphs
+ */
+public class ExpressionLayoutBuilderTest {
+
+    private static final int GLYPH_WIDTH = 10;
+    private static final int GLYPH_HEIGHT = 12;
+
+    private ExpressionLayoutBuilder mBuilder;
+    private int mMeasures;
+
+    @Before
+    public void setUp() {
+        mMeasures = 0;
+        mBuilder = new ExpressionLayoutBuilder(new TextMetrics() {
+            @Override
+            public void measure(final String text, final float textSize, final int[] size) {
+                mMeasures++;
+                size[0] = GLYPH_WIDTH * text.length();
+                size[1] = GLYPH_HEIGHT;
+            }
+        });
+    }
+
+    private static Operation parse(final String exp) throws Exception {
+        return new AlgebraicEngine().createOper(exp);
+    }
+
+    @Test
+    public void nodesAreStoredBreadthFirst() throws Exception {
+        final Operation exp = parse(CASUtils.createShortSampleExpression());
+        final ExpressionLayout layout = mBuilder.build(exp, 27f);
+
+        assertSame(exp, layout.getRoot());
+        assertEquals(ExpressionLayout.NO_NODE, layout.getParent(ExpressionLayout.ROOT));
+        //(x+5)*3 = 3*7
+        assertEquals(3, layout.getChildCount(ExpressionLayout.ROOT));
+        assertEquals(1, layout.getFirstChild(ExpressionLayout.ROOT));
+        assertEquals(ExpressionLayout.KIND_LIST, layout.getKind(1));
+        assertEquals(ExpressionLayout.KIND_OPERATOR, layout.getKind(2));
+        assertEquals("=", layout.getText(2));
+        assertEquals(ExpressionLayout.KIND_LIST, layout.getKind(3));
+        assertSame(exp.getArg(0), layout.getExpression(1));
+        assertSame(exp.getArg(1), layout.getExpression(3));
+
+        for (int node = 1; node < layout.getNodeCount(); node++) {
+            final int parent = layout.getParent(node);
+            assertTrue(parent < node);
+            assertTrue(node >= layout.getFirstChild(parent));
+            assertTrue(node < layout.getFirstChild(parent) + layout.getChildCount(parent));
+        }
+    }
+
+    @Test
+    public void childrenAreContiguous() throws Exception {
+        final ExpressionLayout layout = mBuilder.build(parse(CASUtils.createLongSampleExpression()), 27f);
+
+        final int rootWidth = layout.getWidth(ExpressionLayout.ROOT);
+        assertEquals(-rootWidth / 2, layout.getLeft(ExpressionLayout.ROOT));
+
+        for (int node = 0; node < layout.getNodeCount(); node++) {
+            assertEquals(-GLYPH_HEIGHT, layout.getTop(node));
+            assertEquals(0, layout.getBottom(node));
+            if (!layout.isList(node)) {
+                assertEquals(GLYPH_WIDTH * layout.getText(node).length(), layout.getWidth(node));
+                continue;
+            }
+            int left = layout.getLeft(node);
+            final int end = layout.getFirstChild(node) + layout.getChildCount(node);
+            for (int child = layout.getFirstChild(node); child < end; child++) {
+                assertEquals(left, layout.getLeft(child));
+                left = layout.getRight(child);
+            }
+            assertEquals(layout.getRight(node), left);
+        }
+    }
+
+    @Test
+    public void nestedOperationsHaveParenthesis() throws Exception {
+        final ExpressionLayout layout = mBuilder.build(parse(CASUtils.createShortSampleExpression()), 27f);
+
+        final int list = 1;
+        final int first = layout.getFirstChild(list);
+        final int last = first + layout.getChildCount(list) - 1;
+        assertEquals("(", layout.getText(first));
+        assertEquals(ExpressionLayout.KIND_PARENTHESIS, layout.getKind(first));
+        assertEquals(")", layout.getText(last));
+        assertEquals(ExpressionLayout.KIND_PARENTHESIS, layout.getKind(last));
+    }
+
+    @Test
+    public void minusOneIsSelectedAsAWhole() throws Exception {
+        final Operation exp = parse("=[+[&MONE[],$[x]],$[y]]");
+        final ExpressionLayout layout = mBuilder.build(exp, 27f);
+
+        final int minusOne = layout.indexOf(exp.getArg(0).getArg(0));
+        assertEquals(ExpressionLayout.KIND_CLOSED_LIST, layout.getKind(minusOne));
+        assertEquals(3, layout.getChildCount(minusOne));
+
+        final int inner = layout.getFirstChild(minusOne) + 1;
+        final int y = layout.getBottom(inner) - 1;
+        assertEquals(minusOne, layout.findNodeAt(layout.getCenterX(inner), y));
+    }
+
+    @Test
+    public void findNodeAtPosition() throws Exception {
+        final Operation exp = parse(CASUtils.createShortSampleExpression());
+        final ExpressionLayout layout = mBuilder.build(exp, 27f);
+        final int y = -GLYPH_HEIGHT / 2;
+
+        //the equal operator selects the whole equation
+        assertEquals(ExpressionLayout.ROOT, layout.findNodeAt(layout.getCenterX(2), y));
+
+        //a single element selects itself
+        final Operation three = exp.getArg(1).getArg(0);
+        final int threeNode = layout.indexOf(three);
+        assertEquals(ExpressionLayout.KIND_SINGLE, layout.getKind(threeNode));
+        assertEquals(threeNode, layout.findNodeAt(layout.getCenterX(threeNode), y));
+
+        //a parenthesis selects its list
+        final int plus = layout.indexOf(exp.getArg(0).getArg(0));
+        final int parenthesis = layout.getFirstChild(plus);
+        assertEquals(plus, layout.findNodeAt(layout.getCenterX(parenthesis), y));
+
+        assertEquals(ExpressionLayout.NO_NODE, layout.findNodeAt(layout.getLeft(ExpressionLayout.ROOT) - 1, y));
+        assertEquals(ExpressionLayout.NO_NODE, layout.findNodeAt(0, 1));
+    }
+
+    @Test
+    public void glyphsAreSharedBetweenBuilds() throws Exception {
+        final Operation exp = parse(CASUtils.createUltraLongSampleExpression());
+        final ExpressionLayout first = mBuilder.build(exp, 27f);
+        final int measures = mMeasures;
+        assertEquals(first.getGlyphCount(), measures);
+
+        final ExpressionLayout second = mBuilder.build(exp, 27f);
+        assertEquals(measures, mMeasures);
+        assertEquals(first.getNodeCount(), second.getNodeCount());
+        for (int node = 0; node < first.getNodeCount(); node++) {
+            assertSame(first.getText(node), second.getText(node));
+            assertEquals(first.getLeft(node), second.getLeft(node));
+        }
+
+        //a different size needs new measures
+        mBuilder.build(exp, 30f);
+        assertEquals(2 * measures, mMeasures);
+    }
+
+    @Test
+    public void noTrailingSeparators() throws Exception {
+        final ExpressionLayout layout = mBuilder.build(parse(CASUtils.createUltraLongSampleExpression()), 27f);
+
+        for (int node = 0; node < layout.getNodeCount(); node++) {
+            if (!layout.isList(node)) {
+                continue;
+            }
+            final int first = layout.getFirstChild(node);
+            final int last = first + layout.getChildCount(node) - 1;
+            assertNotEquals(ExpressionLayout.KIND_OPERATOR, layout.getKind(last));
+            for (int child = first; child < last; child++) {
+                assertFalse(layout.getKind(child) == ExpressionLayout.KIND_OPERATOR
+                        && layout.getKind(child + 1) == ExpressionLayout.KIND_OPERATOR);
+            }
+        }
+    }
+
+    @Test
+    public void cancelledBuildsStopReadingTheExpression() throws Exception {
+        final Operation exp = parse(CASUtils.createUltraLongSampleExpression());
+        final int[] checks = new int[1];
+        final ExpressionLayout cancelled = mBuilder.build(exp, 27f, new ExpressionLayoutBuilder.Cancellation() {
+            @Override
+            public boolean isCancelled() {
+                checks[0]++;
+                return true;
+            }
+        });
+        assertNull(cancelled);
+        assertEquals(1, checks[0]);
+        //the builder is still usable
+        assertSame(exp, mBuilder.build(exp, 27f).getRoot());
+    }
+}
@@ -0,0 +1,93 @@
+package es.uam.eps.tfg.app.tfgapp.view.layout;
+
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import es.uam.eps.tfg.algebraicEngine.AlgebraicEngine;
+import es.uam.eps.tfg.algebraicEngine.Operation;
+
+import static org.junit.Assert.*;
+
+/**
+ * Memory kept per node by the layout of a very long expression
+ */
+public class ExpressionLayoutHeapTest {
+
+    private static final int NODES = 50000;
+    /**
+     * Every term "(3*x)+" has 7 nodes: the list, 2 parenthesis, 2 single elements and 2 operators
+     */
+    private static final int NODES_PER_TERM = 7;
+    /**
+     * Kind, parent, first child, child count, left, width, glyph and color
+     */
+    private static final int INT_ARRAYS_PER_NODE = 8;
+    /**
+     * The expression of each node
+     */
+    private static final int REFERENCE_ARRAYS_PER_NODE = 1;
+
+    /**
+     * Creates the equation 0*x + 1*x + ... = y. The terms are parsed one by one because the CAS
+     * parser doesn't accept so many nested brackets in a single argument.
+     */
+    private static Operation createLongExpression(final int terms) throws Exception {
+        final AlgebraicEngine engine = new AlgebraicEngine();
+        final Operation sum = new Operation("SUM");
+        for (int i = 0; i < terms; i++) {
+            sum.addArg(engine.createOper("*[#[" + (i % 10) + "],$[x]]"));
+        }
+        final Operation equation = new Operation("EQU");
+        equation.addArg(sum);
+        equation.addArg(engine.createOper("$[y]"));
+        return equation;
+    }
+
+    private static ExpressionLayoutBuilder createBuilder() {
+        return new ExpressionLayoutBuilder(new TextMetrics() {
+            @Override
+            public void measure(final String text, final float textSize, final int[] size) {
+                size[0] = 10 * text.length();
+                size[1] = 12;
+            }
+        });
+    }
+
+    /**
+     * The layout only keeps one array of each property per node, with no slack, and no object per
+     * node: the per node size doesn't depend on the JVM heap
+     */
+    @Test
+    public void keepsOnlyParallelArraysPerNode() throws Exception {
+        final ExpressionLayout layout = createBuilder().build(createLongExpression(NODES / NODES_PER_TERM), 27f);
+        final int nodes = layout.getNodeCount();
+        assertTrue(nodes >= NODES - NODES_PER_TERM);
+
+        int intArrays = 0;
+        int referenceArrays = 0;
+        for (final Field field : ExpressionLayout.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || !field.getType().isArray()) {
+                continue;
+            }
+            field.setAccessible(true);
+            final Object array = field.get(layout);
+            final int length = Array.getLength(array);
+            if (field.getType() == String[].class) {
+                //the glyph table
+                assertEquals(layout.getGlyphCount(), length);
+            } else if (field.getType() == int[].class) {
+                assertEquals(field.getName(), nodes, length);
+                intArrays++;
+            } else {
+                assertEquals(field.getName(), nodes, length);
+                referenceArrays++;
+            }
+        }
+        assertEquals(INT_ARRAYS_PER_NODE, intArrays);
+        assertEquals(REFERENCE_ARRAYS_PER_NODE, referenceArrays);
+        assertTrue(layout.getGlyphCount() < 32);
+    }
+}